@@ -2,6 +2,7 @@ plugins {
     java
     id("org.springframework.boot") version "4.0.0"
     id("io.spring.dependency-management") version "1.1.7"
+    id("me.champeau.jmh") version "0.7.3"
 }
 
 group = "pyc.lopatuxin"
@@ -57,6 +58,12 @@ dependencies {
     testRuntimeOnly("org.junit.platform:junit-platform-launcher")
 }
 
+jmh {
+    fork = 1
+    warmupIterations = 3
+    iterations = 5
+}
+
 tasks.withType<Test> {
     useJUnitPlatform()
 }
@@ -0,0 +1,109 @@
+package pyc.lopatuxin.investment.client.moex;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import pyc.lopatuxin.investment.client.moex.dto.MoexCandleDto;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the streaming {@link MoexIssDecoder} against the former tree-based path
+ * (whole body as String -> Map tree of boxed lists) on a history page of {@code rows} candles.
+ * Run with {@code ./gradlew jmh}; enable the gc profiler to compare allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MoexIssDecoderBenchmark {
+
+    @Param({"100", "750", "3000"})
+    private int rows;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private byte[] payload;
+
+    @Setup
+    public void setUp() {
+        StringBuilder sb = new StringBuilder("{\"history\":{\"columns\":[\"BOARDID\",\"TRADEDATE\",\"SHORTNAME\",\"SECID\","
+                + "\"NUMTRADES\",\"VALUE\",\"OPEN\",\"LOW\",\"HIGH\",\"LEGALCLOSEPRICE\",\"WAPRICE\",\"CLOSE\",\"VOLUME\"],\"data\":[");
+        LocalDate date = LocalDate.of(2015, 1, 1);
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            double close = 250 + (i % 50) * 0.37;
+            sb.append("[\"TQBR\",\"").append(date.plusDays(i)).append("\",\"Сбербанк\",\"SBER\",")
+                    .append(12000 + i).append(',').append(3_000_000.0 + i).append(',')
+                    .append(close - 1).append(',').append(close - 2).append(',').append(close + 1).append(',')
+                    .append(close).append(',').append(close).append(',').append(close).append(',')
+                    .append(11000 + i).append(']');
+        }
+        sb.append("]},\"history.cursor\":{\"columns\":[\"INDEX\",\"TOTAL\",\"PAGESIZE\"],\"data\":[[0,")
+                .append(rows).append(',').append(rows).append("]]}}");
+        payload = sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public List<MoexCandleDto> streaming() throws IOException {
+        List<MoexCandleDto> result = new ArrayList<>(rows);
+        MoexIssDecoder.decode(objectMapper.getFactory(), new ByteArrayInputStream(payload), Map.of("history", cols -> {
+            int dateIdx = cols.indexOf("TRADEDATE");
+            int openIdx = cols.indexOf("OPEN");
+            int closeIdx = cols.indexOf("CLOSE");
+            int highIdx = cols.indexOf("HIGH");
+            int lowIdx = cols.indexOf("LOW");
+            int volumeIdx = cols.indexOf("VOLUME");
+            return row -> result.add(new MoexCandleDto("SBER",
+                    LocalDate.parse(row[dateIdx]),
+                    MoexJsonMapper.decimal(row, openIdx),
+                    MoexJsonMapper.decimal(row, closeIdx),
+                    MoexJsonMapper.decimal(row, highIdx),
+                    MoexJsonMapper.decimal(row, lowIdx),
+                    MoexJsonMapper.longValue(row, volumeIdx)));
+        }));
+        return result;
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public List<MoexCandleDto> tree() throws IOException {
+        String json = new String(payload, StandardCharsets.UTF_8);
+        Map<String, Object> root = objectMapper.readValue(json, new TypeReference<>() {});
+        Map<String, Object> block = (Map<String, Object>) root.get("history");
+        List<String> cols = (List<String>) block.get("columns");
+        List<List<Object>> data = (List<List<Object>>) block.get("data");
+        int dateIdx = cols.indexOf("TRADEDATE");
+        int openIdx = cols.indexOf("OPEN");
+        int closeIdx = cols.indexOf("CLOSE");
+        int highIdx = cols.indexOf("HIGH");
+        int lowIdx = cols.indexOf("LOW");
+        int volumeIdx = cols.indexOf("VOLUME");
+        List<MoexCandleDto> result = new ArrayList<>();
+        for (List<Object> row : data) {
+            result.add(new MoexCandleDto("SBER",
+                    LocalDate.parse(row.get(dateIdx).toString()),
+                    new BigDecimal(row.get(openIdx).toString()),
+                    new BigDecimal(row.get(closeIdx).toString()),
+                    new BigDecimal(row.get(highIdx).toString()),
+                    new BigDecimal(row.get(lowIdx).toString()),
+                    new BigDecimal(row.get(volumeIdx).toString()).longValue()));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,51 @@
+package pyc.lopatuxin.investment.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full Monte Carlo projection: {@code paths} × {@code months} simulation plus the per-month percentile quickselect.
+ * The target is 10,000 × 360 well under a second on four cores, so the simulation runs on a four-worker pool.
+ * Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MonteCarloSimulatorBenchmark {
+
+    @Param({"10000"})
+    private int paths;
+
+    @Param({"120", "360"})
+    private int months;
+
+    private long seed;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setUp() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public double[][] simulate() {
+        return MonteCarloSimulator.simulate(pool, 1_000_000, 0.008, 0.06, 10_000, 0.0, months, paths, ++seed);
+    }
+}
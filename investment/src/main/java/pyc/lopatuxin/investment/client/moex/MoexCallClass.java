@@ -0,0 +1,10 @@
+package pyc.lopatuxin.investment.client.moex;
+
+/**
+ * Who is waiting on an ISS call. Interactive calls have a user request behind them; background calls are
+ * schedulers, loaders and startup jobs that can wait.
+ */
+public enum MoexCallClass {
+    INTERACTIVE,
+    BACKGROUND
+}
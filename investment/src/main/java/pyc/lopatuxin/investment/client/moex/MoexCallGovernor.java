@@ -0,0 +1,221 @@
+package pyc.lopatuxin.investment.client.moex;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import io.github.resilience4j.ratelimiter.RequestNotPermitted;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import pyc.lopatuxin.investment.config.MoexProperties;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Outbound governor for every HTTP request to ISS. A request first takes a slot in the bulkhead of its
+ * {@link MoexCallClass}, then a token from the shared {@code moex} rate limiter.
+ * <p>
+ * Interactive latency is tracked as a moving average. While it stays above
+ * {@code governorCongestedLatencyMs}, the background bulkhead shrinks to {@code governorBackgroundYieldConcurrency}
+ * slots so loaders and schedulers give way to user requests; it grows back once latency recovers.
+ */
+@Slf4j
+@Component
+public class MoexCallGovernor {
+
+    private static final String RATE_LIMITER = "moex";
+    private static final double LATENCY_SMOOTHING = 0.2;
+    // without fresh interactive samples the average says nothing about current ISS latency
+    private static final long LATENCY_SAMPLE_TTL_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private static final ThreadLocal<Boolean> BACKGROUND_SCOPE = ThreadLocal.withInitial(() -> false);
+
+    private final MoexProperties moexProperties;
+    private final RateLimiter rateLimiter;
+    private final Map<MoexCallClass, Bulkhead> bulkheads = new EnumMap<>(MoexCallClass.class);
+    private final Map<MoexCallClass, Timer> waitTimers = new EnumMap<>(MoexCallClass.class);
+    private final Map<MoexCallClass, Counter> bulkheadRejections = new EnumMap<>(MoexCallClass.class);
+    private final Map<MoexCallClass, Counter> rateRejections = new EnumMap<>(MoexCallClass.class);
+    private final BulkheadConfig backgroundConfig;
+    private final BulkheadConfig backgroundYieldConfig;
+
+    private volatile double interactiveLatencyMs;
+    private volatile long lastInteractiveSampleNanos;
+    private volatile boolean yielding;
+
+    public MoexCallGovernor(RateLimiterRegistry rateLimiterRegistry,
+                            BulkheadRegistry bulkheadRegistry,
+                            MoexProperties moexProperties,
+                            MeterRegistry meterRegistry) {
+        this.moexProperties = moexProperties;
+        this.rateLimiter = rateLimiterRegistry.rateLimiter(RATE_LIMITER);
+        bulkheads.put(MoexCallClass.INTERACTIVE, bulkheadRegistry.bulkhead("moexInteractive"));
+        bulkheads.put(MoexCallClass.BACKGROUND, bulkheadRegistry.bulkhead("moexBackground"));
+
+        this.backgroundConfig = bulkheads.get(MoexCallClass.BACKGROUND).getBulkheadConfig();
+        this.backgroundYieldConfig = BulkheadConfig.from(backgroundConfig)
+                .maxConcurrentCalls(Math.clamp(moexProperties.getGovernorBackgroundYieldConcurrency(),
+                        1, backgroundConfig.getMaxConcurrentCalls()))
+                .build();
+
+        for (MoexCallClass callClass : MoexCallClass.values()) {
+            String tag = callClass.name().toLowerCase();
+            Bulkhead bulkhead = bulkheads.get(callClass);
+            waitTimers.put(callClass, Timer.builder("investment.moex.governor.wait")
+                    .description("Time an ISS request waited for a bulkhead slot and a rate token")
+                    .tag("class", tag)
+                    .register(meterRegistry));
+            bulkheadRejections.put(callClass, rejectionCounter(meterRegistry, tag, "bulkhead"));
+            rateRejections.put(callClass, rejectionCounter(meterRegistry, tag, "rate"));
+            Gauge.builder("investment.moex.governor.permits.available", bulkhead,
+                            b -> b.getMetrics().getAvailableConcurrentCalls())
+                    .description("Free bulkhead slots for ISS requests")
+                    .tag("class", tag)
+                    .register(meterRegistry);
+        }
+        Gauge.builder("investment.moex.governor.tokens.available", rateLimiter,
+                        r -> r.getMetrics().getAvailablePermissions())
+                .description("Rate limiter tokens left in the current period")
+                .register(meterRegistry);
+        Gauge.builder("investment.moex.governor.interactive.latency", this, g -> g.interactiveLatencyMs)
+                .description("Moving average of interactive ISS request latency, ms")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        Gauge.builder("investment.moex.governor.yielding", this, g -> g.yielding ? 1 : 0)
+                .description("1 while background ISS traffic is throttled in favour of interactive requests")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs the supplier with every ISS request it makes on this thread treated as background traffic.
+     */
+    public static <T> T inBackground(Supplier<T> action) {
+        boolean outer = BACKGROUND_SCOPE.get();
+        BACKGROUND_SCOPE.set(true);
+        try {
+            return action.get();
+        } finally {
+            BACKGROUND_SCOPE.set(outer);
+        }
+    }
+
+    /**
+     * {@link #inBackground(Supplier)} for an action without a result.
+     */
+    public static void runInBackground(Runnable action) {
+        inBackground(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Whether ISS requests made on this thread are currently treated as background traffic.
+     */
+    public static boolean isBackgroundScope() {
+        return BACKGROUND_SCOPE.get();
+    }
+
+    /**
+     * Wraps a task handed to another thread so it runs in the scope of the thread that submitted it; meant as the
+     * task decorator of every executor that may end up calling ISS.
+     */
+    public static Runnable inCurrentScope(Runnable task) {
+        if (!BACKGROUND_SCOPE.get()) {
+            return task;
+        }
+        return () -> runInBackground(task);
+    }
+
+    /**
+     * Executes one ISS request under the bulkhead of its class and the shared rate limiter.
+     *
+     * @throws BulkheadFullException if no slot frees up within the bulkhead's max wait
+     * @throws RequestNotPermitted   if no rate token is available within the limiter's timeout
+     */
+    public <T> T call(MoexCallClass requested, Supplier<T> request) {
+        MoexCallClass callClass = BACKGROUND_SCOPE.get() ? MoexCallClass.BACKGROUND : requested;
+        long waitStarted = System.nanoTime();
+        if (callClass == MoexCallClass.BACKGROUND) {
+            adjustBackgroundLimit();
+        }
+        Bulkhead bulkhead = bulkheads.get(callClass);
+        try {
+            bulkhead.acquirePermission();
+        } catch (BulkheadFullException e) {
+            bulkheadRejections.get(callClass).increment();
+            throw e;
+        }
+        try {
+            try {
+                RateLimiter.waitForPermission(rateLimiter);
+            } catch (RequestNotPermitted e) {
+                rateRejections.get(callClass).increment();
+                throw e;
+            }
+            long callStarted = System.nanoTime();
+            waitTimers.get(callClass).record(callStarted - waitStarted, TimeUnit.NANOSECONDS);
+            try {
+                return request.get();
+            } finally {
+                if (callClass == MoexCallClass.INTERACTIVE) {
+                    recordInteractiveLatency(System.nanoTime() - callStarted);
+                }
+            }
+        } finally {
+            bulkhead.onComplete();
+        }
+    }
+
+    boolean isYielding() {
+        return yielding;
+    }
+
+    private void recordInteractiveLatency(long nanos) {
+        double sampleMs = nanos / 1_000_000.0;
+        double previous = interactiveLatencyMs;
+        interactiveLatencyMs = previous == 0 ? sampleMs : previous + LATENCY_SMOOTHING * (sampleMs - previous);
+        lastInteractiveSampleNanos = System.nanoTime();
+    }
+
+    // Only background threads resize: shrinking waits for in-flight background calls to release their slots, so the
+    // new limit is decided under the lock and applied outside it. A thread that lost the race to a newer decision
+    // may apply a stale limit; the next background call sees the mismatch and puts it right.
+    private void adjustBackgroundLimit() {
+        boolean recentSample = lastInteractiveSampleNanos != 0
+                && System.nanoTime() - lastInteractiveSampleNanos < LATENCY_SAMPLE_TTL_NANOS;
+        boolean congested = recentSample && interactiveLatencyMs > moexProperties.getGovernorCongestedLatencyMs();
+        boolean switched;
+        synchronized (this) {
+            switched = congested != yielding;
+            yielding = congested;
+        }
+        BulkheadConfig target = congested ? backgroundYieldConfig : backgroundConfig;
+        Bulkhead background = bulkheads.get(MoexCallClass.BACKGROUND);
+        if (!switched && background.getBulkheadConfig().getMaxConcurrentCalls() == target.getMaxConcurrentCalls()) {
+            return;
+        }
+        background.changeConfig(target);
+        if (switched) {
+            log.info("MOEX governor: interactive latency {} ms, background concurrency set to {}",
+                    Math.round(interactiveLatencyMs), target.getMaxConcurrentCalls());
+        }
+    }
+
+    private static Counter rejectionCounter(MeterRegistry meterRegistry, String callClass, String reason) {
+        return Counter.builder("investment.moex.governor.rejections")
+                .description("ISS requests rejected before reaching the network")
+                .tag("class", callClass)
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+}
@@ -1,31 +1,44 @@
 package pyc.lopatuxin.investment.client.moex;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
 import io.github.resilience4j.retry.annotation.Retry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.RestClient;
+import pyc.lopatuxin.investment.client.moex.dto.MoexBoardQuoteDto;
 import pyc.lopatuxin.investment.client.moex.dto.MoexCandleDto;
 import pyc.lopatuxin.investment.client.moex.dto.MoexDividendDto;
 import pyc.lopatuxin.investment.client.moex.dto.MoexSecurityDto;
 import pyc.lopatuxin.investment.client.moex.dto.MoexSnapshotDto;
+import pyc.lopatuxin.investment.config.MoexProperties;
 import pyc.lopatuxin.investment.entity.enums.SecurityType;
 import pyc.lopatuxin.investment.service.market.SectorDefaults;
 
+import java.io.InputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
 
 @Slf4j
 @Component
@@ -34,15 +47,14 @@ public class MoexIssClient {
 
     private final RestClient moexRestClient;
     private final ObjectMapper objectMapper;
+    private final MoexProperties moexProperties;
+    private final MoexCallGovernor moexCallGovernor;
 
     @Retry(name = "moex", fallbackMethod = "fetchSecurityFallback")
     @CircuitBreaker(name = "moex", fallbackMethod = "fetchSecurityFallback")
     public Optional<MoexSecurityDto> fetchSecurity(String ticker) {
-        String json = moexRestClient.get()
-                .uri("/securities/{ticker}.json?iss.only=description,securities&iss.meta=off", ticker)
-                .retrieve()
-                .body(String.class);
-        return parseSecurity(json, ticker);
+        return exchange(MoexCallClass.INTERACTIVE, body -> parseSecurity(body, ticker),
+                "/securities/{ticker}.json?iss.only=description,securities&iss.meta=off", ticker);
     }
 
     @SuppressWarnings("unused")
@@ -73,11 +85,8 @@ public class MoexIssClient {
     @Retry(name = "moex", fallbackMethod = "searchSecuritiesFallback")
     @CircuitBreaker(name = "moex", fallbackMethod = "searchSecuritiesFallback")
     public List<MoexSecurityDto> searchSecurities(String query) {
-        String json = moexRestClient.get()
-                .uri("/securities.json?q={q}&limit=20&iss.only=securities&iss.meta=off", query)
-                .retrieve()
-                .body(String.class);
-        return parseSearchResults(json);
+        return exchange(MoexCallClass.INTERACTIVE, this::parseSearchResults,
+                "/securities.json?q={q}&limit=20&iss.only=securities&iss.meta=off", query);
     }
 
     @SuppressWarnings("unused")
@@ -89,12 +98,9 @@ public class MoexIssClient {
     @Retry(name = "moex", fallbackMethod = "listBoardSecuritiesFallback")
     @CircuitBreaker(name = "moex", fallbackMethod = "listBoardSecuritiesFallback")
     public List<MoexSecurityDto> listBoardSecurities(String market, String board, SecurityType securityType) {
-        String json = moexRestClient.get()
-                .uri("/engines/stock/markets/{market}/boards/{board}/securities.json?iss.only=securities&iss.meta=off&securities.columns=SECID,BOARDID,SHORTNAME,STATUS",
-                        market, board)
-                .retrieve()
-                .body(String.class);
-        return parseBoardSecurities(json, securityType);
+        return exchange(MoexCallClass.INTERACTIVE, body -> parseBoardSecurities(body, securityType),
+                "/engines/stock/markets/{market}/boards/{board}/securities.json?iss.only=securities&iss.meta=off&securities.columns=SECID,BOARDID,SHORTNAME,STATUS",
+                market, board);
     }
 
     @SuppressWarnings("unused")
@@ -103,6 +109,21 @@ public class MoexIssClient {
         throw new MoexUnavailableException("MOEX unavailable: " + t.getMessage());
     }
 
+    @Retry(name = "moex", fallbackMethod = "fetchBoardQuotesFallback")
+    @CircuitBreaker(name = "moex", fallbackMethod = "fetchBoardQuotesFallback")
+    public List<MoexBoardQuoteDto> fetchBoardQuotes(String market, String board) {
+        return exchange(MoexCallClass.BACKGROUND, this::parseBoardQuotes,
+                "/engines/stock/markets/{market}/boards/{board}/securities.json?iss.only=securities,marketdata&iss.meta=off"
+                        + "&securities.columns=SECID,PREVPRICE,DECIMALS&marketdata.columns=SECID,LAST",
+                market, board);
+    }
+
+    @SuppressWarnings("unused")
+    public List<MoexBoardQuoteDto> fetchBoardQuotesFallback(String market, String board, Throwable t) {
+        log.warn("MOEX fetchBoardQuotes fallback for {}/{}: {}", market, board, t.getMessage());
+        throw new MoexUnavailableException("MOEX unavailable: " + t.getMessage());
+    }
+
     @Retry(name = "moex", fallbackMethod = "fetchHistoryFallback")
     @CircuitBreaker(name = "moex", fallbackMethod = "fetchHistoryFallback")
     public List<MoexCandleDto> fetchHistory(String ticker, LocalDate from, LocalDate to) {
@@ -113,6 +134,16 @@ public class MoexIssClient {
         return result;
     }
 
+    /**
+     * Daily candles of a market index such as IMOEX. Only for tickers known to be indices: the index market is
+     * never tried for an ordinary security.
+     */
+    @Retry(name = "moex", fallbackMethod = "fetchHistoryFallback")
+    @CircuitBreaker(name = "moex", fallbackMethod = "fetchHistoryFallback")
+    public List<MoexCandleDto> fetchIndexHistory(String ticker, LocalDate from, LocalDate to) {
+        return fetchHistoryFromMarket(ticker, "index", from, to);
+    }
+
     @SuppressWarnings("unused")
     public List<MoexCandleDto> fetchHistoryFallback(String ticker, LocalDate from, LocalDate to, Throwable t) {
         log.warn("MOEX fetchHistory fallback for {}: {}", ticker, t.getMessage());
@@ -122,11 +153,8 @@ public class MoexIssClient {
     @Retry(name = "moex", fallbackMethod = "fetchDividendsFallback")
     @CircuitBreaker(name = "moex", fallbackMethod = "fetchDividendsFallback")
     public List<MoexDividendDto> fetchDividends(String ticker) {
-        String json = moexRestClient.get()
-                .uri("/securities/{ticker}/dividends.json?iss.meta=off&iss.only=dividends", ticker)
-                .retrieve()
-                .body(String.class);
-        return parseDividends(json);
+        return exchange(MoexCallClass.BACKGROUND, this::parseDividends,
+                "/securities/{ticker}/dividends.json?iss.meta=off&iss.only=dividends", ticker);
     }
 
     @SuppressWarnings("unused")
@@ -135,168 +163,134 @@ public class MoexIssClient {
         throw new MoexUnavailableException("MOEX unavailable: " + t.getMessage());
     }
 
+    // First page tells TOTAL/PAGESIZE; the remaining offsets are then fetched concurrently with a bounded limit
     private List<MoexCandleDto> fetchHistoryFromMarket(String ticker, String market, LocalDate from, LocalDate to) {
-        List<MoexCandleDto> all = new ArrayList<>();
-        int start = 0;
-        while (true) {
-            String json = fetchHistoryPageJson(ticker, market, from, to, start);
-            if (json == null) {
-                break;
+        HistoryPage first = fetchHistoryPage(ticker, market, from, to, 0);
+        HistoryCursor cursor = first.cursor();
+        if (cursor == null || cursor.pageSize() <= 0 || cursor.index() + cursor.pageSize() >= cursor.total()) {
+            return first.candles();
+        }
+
+        List<MoexCandleDto> all = new ArrayList<>(cursor.total());
+        all.addAll(first.candles());
+        Semaphore permits = new Semaphore(Math.max(1, moexProperties.getHistoryPageConcurrency()));
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<HistoryPage>> pages = new ArrayList<>();
+            for (int start = cursor.index() + cursor.pageSize(); start < cursor.total(); start += cursor.pageSize()) {
+                int offset = start;
+                pages.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return fetchHistoryPage(ticker, market, from, to, offset);
+                    } finally {
+                        permits.release();
+                    }
+                }));
             }
-            List<MoexCandleDto> page = parseHistoryPage(json, ticker);
-            all.addAll(page);
-            if (page.isEmpty()) {
-                break;
+            for (Future<HistoryPage> page : pages) {
+                all.addAll(page.get().candles());
             }
-            int[] cursor = parseHistoryCursor(json);
-            if (cursor == null || cursor[0] + cursor[2] >= cursor[1]) {
-                break;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
             }
-            start = cursor[0] + cursor[2];
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MoexUnavailableException("Interrupted while loading history for " + ticker);
         }
         return all;
     }
 
-    private String fetchHistoryPageJson(String ticker, String market, LocalDate from, LocalDate to, int start) {
-        return moexRestClient.get()
-                .uri("/history/engines/stock/markets/{market}/securities/{ticker}.json?from={from}&till={to}&iss.meta=off&iss.only=history,history.cursor&start={start}",
-                        market, ticker, from, to, start)
-                .retrieve()
-                .body(String.class);
+    private HistoryPage fetchHistoryPage(String ticker, String market, LocalDate from, LocalDate to, int start) {
+        return exchange(MoexCallClass.BACKGROUND, body -> parseHistoryPage(body, ticker),
+                "/history/engines/stock/markets/{market}/securities/{ticker}.json?from={from}&till={to}&iss.meta=off&iss.only=history,history.cursor&start={start}",
+                market, ticker, from, to, start);
     }
 
-    @SuppressWarnings("unchecked")
-    private List<MoexCandleDto> parseHistoryPage(String json, String ticker) {
-        if (json == null) {
-            return Collections.emptyList();
-        }
+    // a bad page fails the whole range: pages load in parallel, so dropping one would leave a gap behind the watermark
+    private HistoryPage parseHistoryPage(InputStream body, String ticker) {
+        List<MoexCandleDto> candles = new ArrayList<>();
+        HistoryCursor[] cursor = new HistoryCursor[1];
         try {
-            Map<String, Object> root = objectMapper.readValue(json, new TypeReference<>() {});
-            Map<String, Object> historyBlock = (Map<String, Object>) root.get("history");
-            if (historyBlock == null) {
-                return Collections.emptyList();
-            }
-
-            List<String> cols = (List<String>) historyBlock.get("columns");
-            List<List<Object>> data = (List<List<Object>>) historyBlock.get("data");
-            if (cols == null || data == null || data.isEmpty()) return Collections.emptyList();
-
-            int dateIdx = MoexJsonMapper.indexOf(cols, "TRADEDATE");
-            int openIdx = MoexJsonMapper.indexOf(cols, "OPEN");
-            int closeIdx = MoexJsonMapper.indexOf(cols, "CLOSE");
-            int highIdx = MoexJsonMapper.indexOf(cols, "HIGH");
-            int lowIdx = MoexJsonMapper.indexOf(cols, "LOW");
-            int volumeIdx = MoexJsonMapper.indexOf(cols, "VOLUME");
-
-            List<MoexCandleDto> result = new ArrayList<>();
-            for (List<Object> row : data) {
-                BigDecimal close = MoexJsonMapper.decimal(row, closeIdx);
-                if (close == null || close.compareTo(BigDecimal.ZERO) == 0) {
-                    continue;
-                }
-                String dateStr = MoexJsonMapper.str(row, dateIdx);
-                if (dateStr == null) {
-                    continue;
-                }
-                LocalDate tradeDate = LocalDate.parse(dateStr);
-                BigDecimal open = MoexJsonMapper.decimal(row, openIdx);
-                BigDecimal high = MoexJsonMapper.decimal(row, highIdx);
-                BigDecimal low = MoexJsonMapper.decimal(row, lowIdx);
-                Long volume = parseVolume(row, volumeIdx);
-                result.add(new MoexCandleDto(ticker, tradeDate, open, close, high, low, volume));
-            }
-            return result;
+            MoexIssDecoder.decode(objectMapper.getFactory(), body, Map.of(
+                    "history", cols -> historyRowReader(cols, ticker, candles),
+                    "history.cursor", cols -> cursorRowReader(cols, cursor)));
+            return new HistoryPage(candles, cursor[0]);
         } catch (Exception e) {
             log.error("Failed to parse MOEX history page for {}: {}", ticker, e.getMessage());
-            return Collections.emptyList();
+            throw new MoexUnavailableException("Malformed MOEX history page for " + ticker + ": " + e.getMessage());
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private int[] parseHistoryCursor(String json) {
-        if (json == null) {
-            return null;
-        }
-        try {
-            Map<String, Object> root = objectMapper.readValue(json, new TypeReference<>() {});
-            Map<String, Object> cursorBlock = (Map<String, Object>) root.get("history.cursor");
-            if (cursorBlock == null) {
-                return null;
+    private static MoexIssDecoder.RowReader historyRowReader(List<String> cols, String ticker, List<MoexCandleDto> sink) {
+        int dateIdx = cols.indexOf("TRADEDATE");
+        int openIdx = cols.indexOf("OPEN");
+        int closeIdx = cols.indexOf("CLOSE");
+        int highIdx = cols.indexOf("HIGH");
+        int lowIdx = cols.indexOf("LOW");
+        int volumeIdx = cols.indexOf("VOLUME");
+        return row -> {
+            BigDecimal close = MoexJsonMapper.decimal(row, closeIdx);
+            if (close == null || close.signum() == 0) {
+                return;
             }
-
-            List<String> cols = (List<String>) cursorBlock.get("columns");
-            List<List<Object>> data = (List<List<Object>>) cursorBlock.get("data");
-            if (cols == null || data == null || data.isEmpty()) return null;
-
-            List<Object> row = data.get(0);
-            int indexIdx = MoexJsonMapper.indexOf(cols, "INDEX");
-            int totalIdx = MoexJsonMapper.indexOf(cols, "TOTAL");
-            int pageSizeIdx = MoexJsonMapper.indexOf(cols, "PAGESIZE");
-
-            BigDecimal index = MoexJsonMapper.decimal(row, indexIdx);
-            BigDecimal total = MoexJsonMapper.decimal(row, totalIdx);
-            BigDecimal pageSize = MoexJsonMapper.decimal(row, pageSizeIdx);
-            if (index == null || total == null || pageSize == null) {
-                return null;
+            String dateStr = MoexJsonMapper.str(row, dateIdx);
+            if (dateStr == null) {
+                return;
             }
-
-            return new int[]{index.intValue(), total.intValue(), pageSize.intValue()};
-        } catch (Exception e) {
-            log.error("Failed to parse MOEX history cursor: {}", e.getMessage());
-            return null;
-        }
+            sink.add(new MoexCandleDto(
+                    ticker,
+                    LocalDate.parse(dateStr),
+                    MoexJsonMapper.decimal(row, openIdx),
+                    close,
+                    MoexJsonMapper.decimal(row, highIdx),
+                    MoexJsonMapper.decimal(row, lowIdx),
+                    MoexJsonMapper.longValue(row, volumeIdx)));
+        };
     }
 
-    private Long parseVolume(List<Object> row, int idx) {
-        if (idx < 0 || idx >= row.size()) {
-            return null;
-        }
-        Object val = row.get(idx);
-        if (val == null) {
-            return null;
-        }
-        try {
-            return new BigDecimal(val.toString()).longValue();
-        } catch (NumberFormatException e) {
-            return null;
-        }
+    private static MoexIssDecoder.RowReader cursorRowReader(List<String> cols, HistoryCursor[] sink) {
+        int indexIdx = cols.indexOf("INDEX");
+        int totalIdx = cols.indexOf("TOTAL");
+        int pageSizeIdx = cols.indexOf("PAGESIZE");
+        return row -> {
+            if (sink[0] != null) {
+                return;
+            }
+            Long index = MoexJsonMapper.longValue(row, indexIdx);
+            Long total = MoexJsonMapper.longValue(row, totalIdx);
+            Long pageSize = MoexJsonMapper.longValue(row, pageSizeIdx);
+            if (index != null && total != null && pageSize != null) {
+                sink[0] = new HistoryCursor(index.intValue(), total.intValue(), pageSize.intValue());
+            }
+        };
     }
 
     private Map<String, MoexSnapshotDto> fetchMarketData(String csv, String engine, String market) {
         try {
-            String json = moexRestClient.get()
-                    .uri("/engines/{engine}/markets/{market}/securities.json?securities={csv}&iss.only=marketdata,securities&iss.meta=off",
-                            engine, market, csv)
-                    .retrieve()
-                    .body(String.class);
-            return parseMarketData(json);
+            return exchange(MoexCallClass.INTERACTIVE, this::parseMarketData,
+                    "/engines/{engine}/markets/{market}/securities.json?securities={csv}&iss.only=marketdata,securities&iss.meta=off",
+                    engine, market, csv);
         } catch (HttpClientErrorException e) {
             log.debug("Market data fetch failed for {}/{}: {}", engine, market, e.getStatusCode());
             return Collections.emptyMap();
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private Optional<MoexSecurityDto> parseSecurity(String json, String ticker) {
+    private Optional<MoexSecurityDto> parseSecurity(InputStream body, String ticker) {
         try {
-            Map<String, Object> root = objectMapper.readValue(json, new TypeReference<>() {});
-
-            Map<String, Object> descBlock = (Map<String, Object>) root.get("description");
-            if (descBlock == null) {
+            Map<String, String> descMap = new HashMap<>();
+            String[] boards = new String[3];
+            MoexIssDecoder.decode(objectMapper.getFactory(), body, Map.of(
+                    "description", cols -> descriptionRowReader(cols, descMap),
+                    "securities", cols -> boardRowReader(cols, boards)));
+            if (descMap.isEmpty()) {
                 return Optional.empty();
             }
 
-            List<String> descCols = (List<String>) descBlock.get("columns");
-            List<List<Object>> descData = (List<List<Object>>) descBlock.get("data");
-            if (descData == null || descData.isEmpty()) return Optional.empty();
-
-            int nameIdx = MoexJsonMapper.indexOf(descCols, "name");
-            int valueIdx = MoexJsonMapper.indexOf(descCols, "value");
-
-            Map<String, String> descMap = buildDescMap(descData, nameIdx, valueIdx);
-
-            Map<String, Object> secBlock = (Map<String, Object>) root.get("securities");
-            String boardId = extractPrimaryBoardId(secBlock);
+            // primary board first, then the first traded one, then whatever is listed first
+            String boardId = boards[0] != null ? boards[0] : boards[1] != null ? boards[1] : boards[2];
             String name = descMap.getOrDefault("NAME", ticker);
 
             String group = descMap.get("GROUP");
@@ -313,6 +307,39 @@ public class MoexIssClient {
         }
     }
 
+    private static MoexIssDecoder.RowReader descriptionRowReader(List<String> cols, Map<String, String> sink) {
+        int nameIdx = cols.indexOf("name");
+        int valueIdx = cols.indexOf("value");
+        return row -> {
+            String key = MoexJsonMapper.str(row, nameIdx);
+            if (key != null) {
+                sink.put(key, MoexJsonMapper.str(row, valueIdx));
+            }
+        };
+    }
+
+    // boards[0] = primary, boards[1] = first traded, boards[2] = first listed
+    private static MoexIssDecoder.RowReader boardRowReader(List<String> cols, String[] boards) {
+        int boardIdx = cols.indexOf("BOARDID");
+        int primaryIdx = cols.indexOf("is_primary");
+        int tradedIdx = cols.indexOf("is_traded");
+        return row -> {
+            String boardId = MoexJsonMapper.str(row, boardIdx);
+            if (boardId == null) {
+                return;
+            }
+            if (boards[0] == null && MoexJsonMapper.flag(row, primaryIdx, 1)) {
+                boards[0] = boardId;
+            }
+            if (boards[1] == null && MoexJsonMapper.flag(row, tradedIdx, 1)) {
+                boards[1] = boardId;
+            }
+            if (boards[2] == null) {
+                boards[2] = boardId;
+            }
+        };
+    }
+
     private SecurityType resolveSecurityType(String group, String moexType, Map<String, String> descMap) {
         SecurityType fromGroup = MoexSecurityClassifier.fromGroup(group).orElse(null);
 
@@ -350,73 +377,11 @@ public class MoexIssClient {
         return sector;
     }
 
-    private Map<String, String> buildDescMap(List<List<Object>> descData, int nameIdx, int valueIdx) {
-        Map<String, String> map = new HashMap<>();
-        for (List<Object> row : descData) {
-            String key = MoexJsonMapper.str(row, nameIdx);
-            String val = MoexJsonMapper.str(row, valueIdx);
-            if (key != null) {
-                map.put(key, val);
-            }
-        }
-        return map;
-    }
-
-    private String extractPrimaryBoardId(Map<String, Object> secBlock) {
-        if (secBlock == null) {
-            return null;
-        }
-        List<Map<String, Object>> rows = MoexJsonMapper.parseTableFromBlock(secBlock);
-        return rows.stream()
-                .filter(r -> MoexJsonMapper.boolFromMap(r, "is_primary", 1))
-                .map(r -> MoexJsonMapper.strFromMap(r, "BOARDID"))
-                .filter(Objects::nonNull)
-                .findFirst()
-                .orElseGet(() -> rows.stream()
-                        .filter(r -> MoexJsonMapper.boolFromMap(r, "is_traded", 1))
-                        .map(r -> MoexJsonMapper.strFromMap(r, "BOARDID"))
-                        .filter(Objects::nonNull)
-                        .findFirst()
-                        .orElseGet(() -> rows.isEmpty() ? null : MoexJsonMapper.strFromMap(rows.get(0), "BOARDID")));
-    }
-
-    @SuppressWarnings("unchecked")
-    private Map<String, MoexSnapshotDto> parseMarketData(String json) {
-        if (json == null) {
-            return Collections.emptyMap();
-        }
+    private Map<String, MoexSnapshotDto> parseMarketData(InputStream body) {
         try {
-            Map<String, Object> root = objectMapper.readValue(json, new TypeReference<>() {});
-            Map<String, Object> mdBlock = (Map<String, Object>) root.get("marketdata");
-            if (mdBlock == null) {
-                return Collections.emptyMap();
-            }
-
-            List<String> cols = (List<String>) mdBlock.get("columns");
-            List<List<Object>> data = (List<List<Object>>) mdBlock.get("data");
-            if (cols == null || data == null) {
-                return Collections.emptyMap();
-            }
-
-            int secidIdx = MoexJsonMapper.indexOf(cols, "SECID");
-            int lastIdx = MoexJsonMapper.indexOf(cols, "LAST");
-            int prevIdx = MoexJsonMapper.indexOf(cols, "PREVPRICE");
-
             Map<String, MoexSnapshotDto> result = new HashMap<>();
-            for (List<Object> row : data) {
-                String secid = MoexJsonMapper.str(row, secidIdx);
-                BigDecimal last = MoexJsonMapper.decimal(row, lastIdx);
-                if (secid == null) {
-                    continue;
-                }
-                BigDecimal prev = MoexJsonMapper.decimal(row, prevIdx);
-                boolean lastEmpty = last == null || last.compareTo(BigDecimal.ZERO) == 0;
-                boolean prevEmpty = prev == null || prev.compareTo(BigDecimal.ZERO) == 0;
-                if (lastEmpty && prevEmpty) {
-                    continue;
-                }
-                result.put(secid, new MoexSnapshotDto(secid, lastEmpty ? null : last, prevEmpty ? null : prev));
-            }
+            MoexIssDecoder.decode(objectMapper.getFactory(), body, Map.of(
+                    "marketdata", cols -> marketDataRowReader(cols, result)));
             return result;
         } catch (Exception e) {
             log.error("Failed to parse MOEX market data: {}", e.getMessage());
@@ -424,70 +389,127 @@ public class MoexIssClient {
         }
     }
 
-    private List<MoexDividendDto> parseDividends(String json) {
-        if (json == null) {
-            return Collections.emptyList();
-        }
+    // securities carries PREVPRICE and DECIMALS, marketdata carries LAST; both blocks list the same SECIDs, in board order
+    private List<MoexBoardQuoteDto> parseBoardQuotes(InputStream body) {
         try {
-            List<Map<String, Object>> rows = MoexJsonMapper.parseTable(objectMapper, json, "dividends");
-            List<MoexDividendDto> result = new ArrayList<>();
-            for (Map<String, Object> row : rows) {
-                MoexDividendDto dto = new MoexDividendDto();
-                dto.setSecid(MoexJsonMapper.strFromMap(row, "secid"));
-                String recordDateStr = MoexJsonMapper.strFromMap(row, "registryclosedate");
-                if (recordDateStr != null) {
-                    dto.setRegistryCloseDate(LocalDate.parse(recordDateStr));
-                }
-                dto.setValue(MoexJsonMapper.decimalFromMap(row, "value"));
-                dto.setCurrencyId(MoexJsonMapper.strFromMap(row, "currencyid"));
-                result.add(dto);
+            Map<String, BigDecimal> previous = new LinkedHashMap<>();
+            Map<String, Integer> decimals = new HashMap<>();
+            Map<String, BigDecimal> last = new LinkedHashMap<>();
+            MoexIssDecoder.decode(objectMapper.getFactory(), body, Map.of(
+                    "securities", cols -> {
+                        int secidIdx = cols.indexOf("SECID");
+                        int prevIdx = cols.indexOf("PREVPRICE");
+                        int decimalsIdx = cols.indexOf("DECIMALS");
+                        return row -> {
+                            String secid = MoexJsonMapper.str(row, secidIdx);
+                            if (secid == null) {
+                                return;
+                            }
+                            BigDecimal prev = MoexJsonMapper.decimal(row, prevIdx);
+                            if (prev != null && prev.signum() != 0) {
+                                previous.put(secid, prev);
+                            }
+                            Long dec = MoexJsonMapper.longValue(row, decimalsIdx);
+                            if (dec != null) {
+                                decimals.put(secid, dec.intValue());
+                            }
+                        };
+                    },
+                    "marketdata", cols -> {
+                        int secidIdx = cols.indexOf("SECID");
+                        int lastIdx = cols.indexOf("LAST");
+                        return row -> {
+                            String secid = MoexJsonMapper.str(row, secidIdx);
+                            BigDecimal value = MoexJsonMapper.decimal(row, lastIdx);
+                            if (secid != null && value != null && value.signum() != 0) {
+                                last.put(secid, value);
+                            }
+                        };
+                    }));
+            Set<String> tickers = new LinkedHashSet<>(previous.keySet());
+            tickers.addAll(last.keySet());
+            List<MoexBoardQuoteDto> result = new ArrayList<>(tickers.size());
+            for (String ticker : tickers) {
+                BigDecimal lastPrice = last.get(ticker);
+                BigDecimal prev = previous.get(ticker);
+                int scale = decimals.getOrDefault(ticker,
+                        Math.max(lastPrice != null ? lastPrice.scale() : 0, prev != null ? prev.scale() : 0));
+                result.add(new MoexBoardQuoteDto(ticker, lastPrice, prev, scale));
             }
             return result;
         } catch (Exception e) {
-            log.error("Failed to parse MOEX dividends response: {}", e.getMessage());
+            log.error("Failed to parse MOEX board quotes: {}", e.getMessage());
             return Collections.emptyList();
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private List<MoexSecurityDto> parseBoardSecurities(String json, SecurityType securityType) {
-        if (json == null) {
-            return Collections.emptyList();
-        }
-        try {
-            Map<String, Object> root = objectMapper.readValue(json, new TypeReference<>() {});
-            Map<String, Object> secBlock = (Map<String, Object>) root.get("securities");
-            if (secBlock == null) {
-                return Collections.emptyList();
+    private static MoexIssDecoder.RowReader marketDataRowReader(List<String> cols, Map<String, MoexSnapshotDto> sink) {
+        int secidIdx = cols.indexOf("SECID");
+        int lastIdx = cols.indexOf("LAST");
+        int prevIdx = cols.indexOf("PREVPRICE");
+        return row -> {
+            String secid = MoexJsonMapper.str(row, secidIdx);
+            if (secid == null) {
+                return;
             }
-
-            List<String> cols = (List<String>) secBlock.get("columns");
-            List<List<Object>> data = (List<List<Object>>) secBlock.get("data");
-            if (cols == null || data == null) {
-                return Collections.emptyList();
+            BigDecimal last = MoexJsonMapper.decimal(row, lastIdx);
+            BigDecimal prev = MoexJsonMapper.decimal(row, prevIdx);
+            boolean lastEmpty = last == null || last.signum() == 0;
+            boolean prevEmpty = prev == null || prev.signum() == 0;
+            if (lastEmpty && prevEmpty) {
+                return;
             }
+            sink.put(secid, new MoexSnapshotDto(secid, lastEmpty ? null : last, prevEmpty ? null : prev));
+        };
+    }
 
-            int secidIdx  = MoexJsonMapper.indexOf(cols, "SECID");
-            int boardIdx  = MoexJsonMapper.indexOf(cols, "BOARDID");
-            int nameIdx   = MoexJsonMapper.indexOf(cols, "SHORTNAME");
-            int statusIdx = MoexJsonMapper.indexOf(cols, "STATUS");
+    private List<MoexDividendDto> parseDividends(InputStream body) {
+        try {
+            List<MoexDividendDto> result = new ArrayList<>();
+            MoexIssDecoder.decode(objectMapper.getFactory(), body, Map.of("dividends", cols -> {
+                int secidIdx = cols.indexOf("secid");
+                int recordDateIdx = cols.indexOf("registryclosedate");
+                int valueIdx = cols.indexOf("value");
+                int currencyIdx = cols.indexOf("currencyid");
+                return row -> {
+                    MoexDividendDto dto = new MoexDividendDto();
+                    dto.setSecid(MoexJsonMapper.str(row, secidIdx));
+                    String recordDateStr = MoexJsonMapper.str(row, recordDateIdx);
+                    if (recordDateStr != null) {
+                        dto.setRegistryCloseDate(LocalDate.parse(recordDateStr));
+                    }
+                    dto.setValue(MoexJsonMapper.decimal(row, valueIdx));
+                    dto.setCurrencyId(MoexJsonMapper.str(row, currencyIdx));
+                    result.add(dto);
+                };
+            }));
+            return result;
+        } catch (Exception e) {
+            log.error("Failed to parse MOEX dividends response: {}", e.getMessage());
+            return Collections.emptyList();
+        }
+    }
 
+    private List<MoexSecurityDto> parseBoardSecurities(InputStream body, SecurityType securityType) {
+        try {
             List<MoexSecurityDto> result = new ArrayList<>();
-            for (List<Object> row : data) {
-                String status = MoexJsonMapper.str(row, statusIdx);
-                if (!"A".equals(status)) {
-                    continue;
-                }
-
-                String secid   = MoexJsonMapper.str(row, secidIdx);
-                String boardId = MoexJsonMapper.str(row, boardIdx);
-                String name    = MoexJsonMapper.str(row, nameIdx);
-                if (secid == null) {
-                    continue;
-                }
-
-                result.add(new MoexSecurityDto(secid, boardId, name, securityType, null, null));
-            }
+            MoexIssDecoder.decode(objectMapper.getFactory(), body, Map.of("securities", cols -> {
+                int secidIdx  = cols.indexOf("SECID");
+                int boardIdx  = cols.indexOf("BOARDID");
+                int nameIdx   = cols.indexOf("SHORTNAME");
+                int statusIdx = cols.indexOf("STATUS");
+                return row -> {
+                    if (!"A".equals(MoexJsonMapper.str(row, statusIdx))) {
+                        return;
+                    }
+                    String secid = MoexJsonMapper.str(row, secidIdx);
+                    if (secid == null) {
+                        return;
+                    }
+                    result.add(new MoexSecurityDto(secid, MoexJsonMapper.str(row, boardIdx),
+                            MoexJsonMapper.str(row, nameIdx), securityType, null, null));
+                };
+            }));
             return result;
         } catch (Exception e) {
             log.error("Failed to parse MOEX board securities: {}", e.getMessage());
@@ -495,30 +517,56 @@ public class MoexIssClient {
         }
     }
 
-    private List<MoexSecurityDto> parseSearchResults(String json) {
-        if (json == null) {
-            return Collections.emptyList();
-        }
+    private List<MoexSecurityDto> parseSearchResults(InputStream body) {
         try {
-            List<Map<String, Object>> rows = MoexJsonMapper.parseTable(objectMapper, json, "securities");
             List<MoexSecurityDto> result = new ArrayList<>();
-            for (Map<String, Object> row : rows) {
-                String isTradedStr = MoexJsonMapper.strFromMap(row, "is_traded");
-                if (!"1".equals(isTradedStr)) continue;
-
-                String group = MoexJsonMapper.strFromMap(row, "group");
-                Optional<SecurityType> typeOpt = MoexSecurityClassifier.fromGroup(group);
-                if (typeOpt.isEmpty()) continue;
-
-                String secid = MoexJsonMapper.strFromMap(row, "secid");
-                String boardId = MoexJsonMapper.strFromMap(row, "primary_boardid");
-                String name = MoexJsonMapper.strFromMap(row, "shortname");
-                result.add(new MoexSecurityDto(secid, boardId, name, typeOpt.get(), null, null));
-            }
+            MoexIssDecoder.decode(objectMapper.getFactory(), body, Map.of("securities", cols -> {
+                int isTradedIdx = cols.indexOf("is_traded");
+                int groupIdx = cols.indexOf("group");
+                int secidIdx = cols.indexOf("secid");
+                int boardIdx = cols.indexOf("primary_boardid");
+                int nameIdx = cols.indexOf("shortname");
+                return row -> {
+                    if (!"1".equals(MoexJsonMapper.str(row, isTradedIdx))) return;
+
+                    Optional<SecurityType> typeOpt = MoexSecurityClassifier.fromGroup(MoexJsonMapper.str(row, groupIdx));
+                    if (typeOpt.isEmpty()) return;
+
+                    result.add(new MoexSecurityDto(MoexJsonMapper.str(row, secidIdx),
+                            MoexJsonMapper.str(row, boardIdx), MoexJsonMapper.str(row, nameIdx),
+                            typeOpt.get(), null, null));
+                };
+            }));
             return result;
         } catch (Exception e) {
             log.error("Failed to parse MOEX search results: {}", e.getMessage());
             return Collections.emptyList();
         }
     }
+
+    // Streams the response body into the decoder; error statuses surface as the same exceptions retrieve() throws
+    private <T> T exchange(MoexCallClass callClass, Function<InputStream, T> decoder, String uri,
+                           Object... uriVariables) {
+        return moexCallGovernor.call(callClass, () -> moexRestClient.get()
+                .uri(uri, uriVariables)
+                .exchange((request, response) -> {
+                    HttpStatusCode status = response.getStatusCode();
+                    if (status.isError()) {
+                        byte[] body = response.getBody().readAllBytes();
+                        if (status.is4xxClientError()) {
+                            throw HttpClientErrorException.create(status, response.getStatusText(),
+                                    response.getHeaders(), body, StandardCharsets.UTF_8);
+                        }
+                        throw HttpServerErrorException.create(status, response.getStatusText(),
+                                response.getHeaders(), body, StandardCharsets.UTF_8);
+                    }
+                    return decoder.apply(response.getBody());
+                }));
+    }
+
+    private record HistoryCursor(int index, int total, int pageSize) {
+    }
+
+    private record HistoryPage(List<MoexCandleDto> candles, HistoryCursor cursor) {
+    }
 }
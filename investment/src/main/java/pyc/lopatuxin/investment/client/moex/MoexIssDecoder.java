@@ -0,0 +1,104 @@
+package pyc.lopatuxin.investment.client.moex;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Single-pass decoder for the ISS columnar format: {@code {"block": {"columns": [...], "data": [[...], ...]}}}.
+ * Rows are pushed to the bound {@link RowReader} as they are read from the stream, so neither the whole
+ * response nor a per-row map is ever materialized.
+ */
+final class MoexIssDecoder {
+
+    private MoexIssDecoder() {
+    }
+
+    /**
+     * Binds a reader to the column layout of a block. Called once per block, before its first row.
+     */
+    @FunctionalInterface
+    interface RowBinder {
+        RowReader bind(List<String> columns);
+    }
+
+    /**
+     * Receives one row at a time. The array is reused between rows and must not be retained;
+     * JSON {@code null} and nested values are passed as {@code null}.
+     */
+    @FunctionalInterface
+    interface RowReader {
+        void read(String[] row);
+    }
+
+    static void decode(JsonFactory factory, InputStream in, Map<String, RowBinder> blocks) throws IOException {
+        try (JsonParser parser = factory.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("ISS response is not a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                RowBinder binder = blocks.get(parser.currentName());
+                parser.nextToken();
+                if (binder == null || parser.currentToken() != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    continue;
+                }
+                readBlock(parser, binder);
+            }
+        }
+    }
+
+    private static void readBlock(JsonParser parser, RowBinder binder) throws IOException {
+        List<String> columns = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("columns".equals(field) && value == JsonToken.START_ARRAY) {
+                columns = readColumns(parser);
+            } else if ("data".equals(field) && value == JsonToken.START_ARRAY && columns != null) {
+                readRows(parser, columns.size(), binder.bind(columns));
+            } else {
+                // metadata, or data that arrived before its columns
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static List<String> readColumns(JsonParser parser) throws IOException {
+        List<String> columns = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            columns.add(parser.getValueAsString());
+        }
+        return columns;
+    }
+
+    private static void readRows(JsonParser parser, int width, RowReader reader) throws IOException {
+        String[] row = new String[width];
+        while (parser.nextToken() == JsonToken.START_ARRAY) {
+            int i = 0;
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                String value = null;
+                if (token == JsonToken.START_ARRAY || token == JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                } else if (token != JsonToken.VALUE_NULL) {
+                    value = parser.getText();
+                }
+                if (i < width) {
+                    row[i] = value;
+                }
+                i++;
+            }
+            for (; i < width; i++) {
+                row[i] = null;
+            }
+            reader.read(row);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package pyc.lopatuxin.investment.client.moex;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import pyc.lopatuxin.investment.client.moex.dto.MoexSnapshotDto;
+import pyc.lopatuxin.investment.config.MoexProperties;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges snapshot requests that arrive within {@code snapshotBatchWindowMs} into one
+ * {@link MoexIssClient#fetchSnapshots} call over the union of their tickers, so overlapping portfolios
+ * opened at the same time cost one round of ISS requests instead of one per caller.
+ */
+@Slf4j
+@Component
+public class MoexSnapshotDispatcher {
+
+    private final MoexIssClient moexIssClient;
+    private final MoexProperties moexProperties;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("moex-snapshot-batch").daemon().factory());
+    private final Object lock = new Object();
+    private Batch open;
+
+    public MoexSnapshotDispatcher(MoexIssClient moexIssClient, MoexProperties moexProperties) {
+        this.moexIssClient = moexIssClient;
+        this.moexProperties = moexProperties;
+    }
+
+    /**
+     * Same contract as {@link MoexIssClient#fetchSnapshots}: returns quotes for the requested tickers that MOEX
+     * knows about, or throws {@link MoexUnavailableException}.
+     */
+    public Map<String, MoexSnapshotDto> fetchSnapshots(Collection<String> tickers) {
+        if (tickers.isEmpty()) {
+            return Map.of();
+        }
+        if (moexProperties.getSnapshotBatchWindowMs() <= 0) {
+            return moexIssClient.fetchSnapshots(tickers);
+        }
+        CompletableFuture<Map<String, MoexSnapshotDto>> shared = enqueue(tickers);
+        Map<String, MoexSnapshotDto> quotes = await(shared);
+        Map<String, MoexSnapshotDto> result = new HashMap<>();
+        for (String ticker : tickers) {
+            MoexSnapshotDto dto = quotes.get(ticker);
+            if (dto != null) {
+                result.put(ticker, dto);
+            }
+        }
+        return result;
+    }
+
+    private CompletableFuture<Map<String, MoexSnapshotDto>> enqueue(Collection<String> tickers) {
+        Batch full = null;
+        CompletableFuture<Map<String, MoexSnapshotDto>> shared;
+        synchronized (lock) {
+            if (open == null) {
+                Batch batch = new Batch();
+                open = batch;
+                timer.schedule(() -> flush(batch), moexProperties.getSnapshotBatchWindowMs(), TimeUnit.MILLISECONDS);
+            }
+            open.tickers.addAll(tickers);
+            // one interactive caller is enough for the whole batch to be fetched as interactive
+            open.background &= MoexCallGovernor.isBackgroundScope();
+            shared = open.result;
+            // ISS takes the tickers as a query-string CSV; a batch that grew too large goes out right away
+            if (open.tickers.size() >= moexProperties.getSnapshotBatchMaxTickers()) {
+                full = open;
+                open = null;
+            }
+        }
+        if (full != null) {
+            dispatch(full);
+        }
+        return shared;
+    }
+
+    private void flush(Batch batch) {
+        synchronized (lock) {
+            if (open != batch) {
+                return; // already sent because it filled up
+            }
+            open = null;
+        }
+        dispatch(batch);
+    }
+
+    // The HTTP calls run on a virtual thread so a slow ISS response never delays the next window's timer; the
+    // callers' governor scope does not follow them there and is re-applied from the batch
+    private void dispatch(Batch batch) {
+        Thread.ofVirtual().name("moex-snapshot-fetch").start(() -> {
+            try {
+                batch.result.complete(batch.background
+                        ? MoexCallGovernor.inBackground(() -> moexIssClient.fetchSnapshots(batch.tickers))
+                        : moexIssClient.fetchSnapshots(batch.tickers));
+            } catch (RuntimeException e) {
+                batch.result.completeExceptionally(e);
+            }
+        });
+        log.debug("Dispatched snapshot batch of {} tickers", batch.tickers.size());
+    }
+
+    private Map<String, MoexSnapshotDto> await(CompletableFuture<Map<String, MoexSnapshotDto>> shared) {
+        // no timeout of its own: the HTTP client timeouts and the moex retry policy bound the shared call
+        try {
+            return shared.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new MoexUnavailableException("MOEX unavailable: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MoexUnavailableException("Interrupted while waiting for MOEX snapshots");
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        timer.shutdownNow();
+    }
+
+    private static final class Batch {
+        private final Set<String> tickers = new LinkedHashSet<>();
+        private final CompletableFuture<Map<String, MoexSnapshotDto>> result = new CompletableFuture<>();
+        private boolean background = true;
+    }
+}
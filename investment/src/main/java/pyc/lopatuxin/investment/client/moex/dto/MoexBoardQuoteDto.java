@@ -0,0 +1,11 @@
+package pyc.lopatuxin.investment.client.moex.dto;
+
+import java.math.BigDecimal;
+
+public record MoexBoardQuoteDto(
+        String ticker,
+        BigDecimal lastPrice,
+        BigDecimal previousClose,
+        int decimals
+) {
+}
@@ -4,9 +4,17 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import pyc.lopatuxin.investment.client.moex.MoexCallGovernor;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ThreadPoolExecutor;
 
+/**
+ * Application executors. Each carries the submitting thread's {@link MoexCallGovernor} scope into its tasks, so
+ * work handed off by a background job stays background traffic.
+ */
 @EnableAsync
 @Configuration
 public class AsyncConfig {
@@ -17,8 +25,61 @@ public class AsyncConfig {
         executor.setCorePoolSize(2);
         executor.setMaxPoolSize(4);
         executor.setQueueCapacity(50);
+        executor.setTaskDecorator(MoexCallGovernor::inCurrentScope);
         executor.setThreadNamePrefix("history-loader-");
         executor.initialize();
         return executor;
     }
+
+    @Bean("quoteRefreshExecutor")
+    public Executor quoteRefreshExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(4);
+        executor.setQueueCapacity(100);
+        executor.setTaskDecorator(MoexCallGovernor::inCurrentScope);
+        executor.setThreadNamePrefix("quote-refresh-");
+        executor.initialize();
+        return executor;
+    }
+
+    // one drain at a time; a nudge arriving while another waits adds nothing, since a drain takes every due event
+    @Bean("outboxExecutor")
+    public Executor outboxExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(1);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.DiscardPolicy());
+        executor.setTaskDecorator(MoexCallGovernor::inCurrentScope);
+        executor.setThreadNamePrefix("outbox-");
+        executor.initialize();
+        return executor;
+    }
+
+    // valuation recomputes after trade writes; when the queue is full the committing thread runs the recompute itself
+    // rather than dropping it, since a dropped recompute leaves the series stale until the next trade
+    @Bean("valuationExecutor")
+    public Executor valuationExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(2);
+        executor.setQueueCapacity(200);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setTaskDecorator(MoexCallGovernor::inCurrentScope);
+        executor.setThreadNamePrefix("valuation-");
+        executor.initialize();
+        return executor;
+    }
+
+    // Monte Carlo projections (ProjectionService); kept off the common fork-join pool so they neither starve other
+    // parallel streams nor wait behind them
+    @Bean(name = "projectionPool", destroyMethod = "shutdown")
+    public ForkJoinPool projectionPool() {
+        return new ForkJoinPool(Runtime.getRuntime().availableProcessors(), pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("projection-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
 }
@@ -20,4 +20,42 @@ public class MoexProperties {
     private int connectTimeoutMs = 3000;
 
     private int snapshotTtlMinutes = 5;
+
+    // quotes older than the TTL but younger than this are served as-is while refreshed in the background
+    private int snapshotMaxStaleMinutes = 60;
+
+    // snapshot requests arriving within this window share one ISS call; 0 disables batching
+    private int snapshotBatchWindowMs = 15;
+
+    // a batch is sent early once it holds this many distinct tickers
+    private int snapshotBatchMaxTickers = 200;
+
+    // poll the full marketdata of TQBR/TQTF/TQOB during trading hours and serve quotes from memory
+    private boolean boardPollEnabled = true;
+
+    private long boardPollIntervalMs = 15000;
+
+    // tickers held in the in-memory quote cache
+    private int quoteCacheMaxSize = 5000;
+
+    // users whose portfolio page is kept in memory (PortfolioService)
+    private int portfolioPageCacheMaxSize = 10000;
+
+    // heap budget for the columnar price history cache (PriceSeriesStore)
+    private long priceSeriesCacheMaxMb = 64;
+
+    // a cached series is dropped after this long, so tickers read once do not keep their share of the heap budget
+    private long priceSeriesCacheTtlMinutes = 360;
+
+    // max history pages of one ticker fetched in parallel after the first page
+    private int historyPageConcurrency = 4;
+
+    // tickers synced in parallel by the nightly dividend run
+    private int dividendSyncConcurrency = 4;
+
+    // interactive ISS latency (moving average) above which background calls give way
+    private long governorCongestedLatencyMs = 1500;
+
+    // background bulkhead size while interactive latency is above the threshold
+    private int governorBackgroundYieldConcurrency = 1;
 }
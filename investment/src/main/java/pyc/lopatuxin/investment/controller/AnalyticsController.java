@@ -1,26 +1,38 @@
 package pyc.lopatuxin.investment.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import pyc.lopatuxin.investment.dto.common.ApiRequest;
 import pyc.lopatuxin.investment.dto.request.DateRangeDto;
 import pyc.lopatuxin.investment.dto.request.ProjectionRequestDto;
+import pyc.lopatuxin.investment.dto.request.RiskRequestDto;
 import pyc.lopatuxin.investment.dto.request.SecurityHistoryRequestDto;
 import pyc.lopatuxin.investment.dto.request.SecurityTickerRequestDto;
+import pyc.lopatuxin.investment.dto.request.TaxReportRequestDto;
 import pyc.lopatuxin.investment.dto.response.PaidDividendDto;
 import pyc.lopatuxin.investment.dto.response.PortfolioValuePointDto;
 import pyc.lopatuxin.investment.dto.response.PricePointDto;
 import pyc.lopatuxin.investment.dto.response.ProjectionResultDto;
 import pyc.lopatuxin.investment.dto.response.ResponseApi;
+import pyc.lopatuxin.investment.dto.response.RiskMetricsDto;
 import pyc.lopatuxin.investment.dto.response.SeriesResponseDto;
+import pyc.lopatuxin.investment.dto.response.TaxReportDto;
 import pyc.lopatuxin.investment.service.AnalyticsService;
 import pyc.lopatuxin.investment.service.ProjectionService;
+import pyc.lopatuxin.investment.service.RiskMetricsService;
+import pyc.lopatuxin.investment.service.TaxLotService;
 
 import java.time.LocalDate;
 import java.util.List;
@@ -33,30 +45,109 @@ import java.util.UUID;
 @Tag(name = "Аналитика")
 public class AnalyticsController {
 
+    // tickers whose history is still loading, for streamed series that have no envelope to carry them
+    static final String PENDING_TICKERS_HEADER = "X-Pending-Tickers";
+
     private final AnalyticsService analyticsService;
     private final ProjectionService projectionService;
+    private final RiskMetricsService riskMetricsService;
+    private final TaxLotService taxLotService;
+    private final ObjectMapper objectMapper;
 
+    /**
+     * Answers 304 when {@code If-None-Match} carries the ETag of the same range at the current portfolio version.
+     */
     @PostMapping("/portfolio/value-history")
-    public ResponseApi<SeriesResponseDto<PortfolioValuePointDto>> portfolioValueHistory(
-            @RequestBody @Valid ApiRequest<DateRangeDto> request) {
+    public ResponseEntity<ResponseApi<SeriesResponseDto<PortfolioValuePointDto>>> portfolioValueHistory(
+            @RequestBody @Valid ApiRequest<DateRangeDto> request,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         DateRangeDto dto = request.getData();
         LocalDate from = dto.getFrom() != null ? dto.getFrom() : LocalDate.now().minusYears(1);
         LocalDate to = dto.getTo() != null ? dto.getTo() : LocalDate.now();
         validateDateRange(from, to);
+        UUID userId = request.getUser().getUserId();
+        String etag = portfolioEtag("json", userId, from, to, dto);
+        if (ConditionalRequests.matches(ifNoneMatch, etag)) {
+            return ConditionalRequests.notModified(etag);
+        }
         SeriesResponseDto<PortfolioValuePointDto> result = analyticsService.portfolioValueHistory(
-                request.getUser().getUserId(), from, to);
-        return ResponseApi.success("История стоимости портфеля", result);
+                userId, from, to, dto.getResolution(), dto.getMaxPoints());
+        return ConditionalRequests.ok(ResponseApi.success("История стоимости портфеля", result),
+                result.isHistoryPending() ? null : etag);
     }
 
+    /**
+     * Answers 304 when {@code If-None-Match} carries the ETag of the same range at the current history version.
+     */
     @PostMapping("/security/price-history")
-    public ResponseApi<SeriesResponseDto<PricePointDto>> securityPriceHistory(
-            @RequestBody @Valid ApiRequest<SecurityHistoryRequestDto> request) {
+    public ResponseEntity<ResponseApi<SeriesResponseDto<PricePointDto>>> securityPriceHistory(
+            @RequestBody @Valid ApiRequest<SecurityHistoryRequestDto> request,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        SecurityHistoryRequestDto dto = request.getData();
+        LocalDate from = dto.getFrom() != null ? dto.getFrom() : LocalDate.now().minusYears(1);
+        LocalDate to = dto.getTo() != null ? dto.getTo() : LocalDate.now();
+        validateDateRange(from, to);
+        String etag = priceHistoryEtag("json", from, to, dto);
+        if (ConditionalRequests.matches(ifNoneMatch, etag)) {
+            return ConditionalRequests.notModified(etag);
+        }
+        SeriesResponseDto<PricePointDto> result = analyticsService.securityPriceHistory(
+                dto.getTicker(), from, to, dto.getResolution(), dto.getMaxPoints());
+        return ConditionalRequests.ok(ResponseApi.success("История цен инструмента", result),
+                result.isHistoryPending() ? null : etag);
+    }
+
+    /**
+     * NDJSON variant of {@code /portfolio/value-history}: one point per line, written while the valuations are read.
+     */
+    @PostMapping(value = "/portfolio/value-history/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> portfolioValueHistoryStream(
+            @RequestBody @Valid ApiRequest<DateRangeDto> request,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        DateRangeDto dto = request.getData();
+        LocalDate from = dto.getFrom() != null ? dto.getFrom() : LocalDate.now().minusYears(1);
+        LocalDate to = dto.getTo() != null ? dto.getTo() : LocalDate.now();
+        validateDateRange(from, to);
+        UUID userId = request.getUser().getUserId();
+        String etag = portfolioEtag("ndjson", userId, from, to, dto);
+        if (ConditionalRequests.matches(ifNoneMatch, etag)) {
+            return ConditionalRequests.notModified(etag);
+        }
+        List<String> pendingTickers = analyticsService.pendingPortfolioTickers(userId);
+        return ndjson(pendingTickers, pendingTickers.isEmpty() ? etag : null, out -> {
+            NdjsonWriter<PortfolioValuePointDto> writer = new NdjsonWriter<>(objectMapper, out);
+            analyticsService.streamPortfolioValueHistory(
+                    userId, from, to, dto.getResolution(), dto.getMaxPoints(), writer);
+            writer.finish();
+        });
+    }
+
+    /**
+     * NDJSON variant of {@code /security/price-history}; the body is empty while the history is loading.
+     */
+    @PostMapping(value = "/security/price-history/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> securityPriceHistoryStream(
+            @RequestBody @Valid ApiRequest<SecurityHistoryRequestDto> request,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         SecurityHistoryRequestDto dto = request.getData();
         LocalDate from = dto.getFrom() != null ? dto.getFrom() : LocalDate.now().minusYears(1);
         LocalDate to = dto.getTo() != null ? dto.getTo() : LocalDate.now();
         validateDateRange(from, to);
-        SeriesResponseDto<PricePointDto> result = analyticsService.securityPriceHistory(dto.getTicker(), from, to);
-        return ResponseApi.success("История цен инструмента", result);
+        String etag = priceHistoryEtag("ndjson", from, to, dto);
+        if (ConditionalRequests.matches(ifNoneMatch, etag)) {
+            return ConditionalRequests.notModified(etag);
+        }
+        String ticker = dto.getTicker();
+        if (analyticsService.isPendingAndTrigger(ticker)) {
+            return ndjson(List.of(ticker), null, out -> {
+            });
+        }
+        return ndjson(List.of(), etag, out -> {
+            NdjsonWriter<PricePointDto> writer = new NdjsonWriter<>(objectMapper, out);
+            analyticsService.streamSecurityPriceHistory(
+                    ticker, from, to, dto.getResolution(), dto.getMaxPoints(), writer);
+            writer.finish();
+        });
     }
 
     @PostMapping("/security/dividends-history")
@@ -73,6 +164,43 @@ public class AnalyticsController {
         return ResponseApi.success("Прогноз роста портфеля", projectionService.project(userId, request.getData()));
     }
 
+    @PostMapping("/risk")
+    public ResponseApi<RiskMetricsDto> risk(@RequestBody @Valid ApiRequest<RiskRequestDto> request) {
+        UUID userId = request.getUser().getUserId();
+        return ResponseApi.success("Риск-метрики портфеля",
+                riskMetricsService.riskMetrics(userId, request.getData().getRiskFreeRate()));
+    }
+
+    @PostMapping("/tax-report")
+    public ResponseApi<TaxReportDto> taxReport(@RequestBody @Valid ApiRequest<TaxReportRequestDto> request) {
+        UUID userId = request.getUser().getUserId();
+        return ResponseApi.success("Налоговый отчёт", taxLotService.report(userId, request.getData().getYear()));
+    }
+
+    // ETags are issued only for complete series, and a READY history never goes back to PENDING, so a matching
+    // tag can be answered without checking the loading status
+    private String portfolioEtag(String format, UUID userId, LocalDate from, LocalDate to, DateRangeDto dto) {
+        return ConditionalRequests.etag("value-history", format, userId, analyticsService.portfolioVersion(userId),
+                from, to, dto.getResolution(), dto.getMaxPoints());
+    }
+
+    private String priceHistoryEtag(String format, LocalDate from, LocalDate to, SecurityHistoryRequestDto dto) {
+        return ConditionalRequests.etag("price-history", format, dto.getTicker(),
+                analyticsService.priceHistoryVersion(dto.getTicker()), from, to, dto.getResolution(), dto.getMaxPoints());
+    }
+
+    private ResponseEntity<StreamingResponseBody> ndjson(List<String> pendingTickers, String etag,
+                                                         StreamingResponseBody body) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON);
+        if (!pendingTickers.isEmpty()) {
+            response.header(PENDING_TICKERS_HEADER, String.join(",", pendingTickers));
+        }
+        if (etag != null) {
+            response.eTag(etag);
+        }
+        return response.body(body);
+    }
+
     private void validateDateRange(LocalDate from, LocalDate to) {
         if (from.isAfter(to)) {
             throw new IllegalArgumentException("Дата начала не может быть позже даты окончания");
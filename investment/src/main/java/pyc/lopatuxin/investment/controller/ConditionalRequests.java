@@ -0,0 +1,54 @@
+package pyc.lopatuxin.investment.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Strong ETags built from data versions and request parameters, so a repeated request is answered with 304 before
+ * any repository is read. The API is POST-based, where Spring's {@code checkNotModified} would answer 412, so
+ * {@code If-None-Match} is compared here.
+ */
+final class ConditionalRequests {
+
+    private ConditionalRequests() {
+    }
+
+    static String etag(Object... parts) {
+        return "\"" + DigestUtils.md5DigestAsHex(Arrays.toString(parts).getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag) || tag.equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static <T> ResponseEntity<T> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+    }
+
+    /**
+     * 200 with the ETag, or without one when {@code etag} is {@code null} (partial data that must not be reused).
+     */
+    static <T> ResponseEntity<T> ok(T body, String etag) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (etag != null) {
+            response.eTag(etag);
+        }
+        return response.body(body);
+    }
+}
@@ -3,10 +3,12 @@ package pyc.lopatuxin.investment.controller;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -30,11 +32,21 @@ public class MarketDataController {
 
     private final MarketDataService marketDataService;
 
+    /**
+     * The catalog comes from a cache, so its version is the hash of the cached list: a repeat within a refresh
+     * cycle, or after a refresh that changed nothing, is answered with 304 and skips serialization.
+     */
     @GetMapping("/securities")
     public ResponseEntity<ResponseApi<List<MoexSecurityDto>>> listSecurities(
-            @RequestParam(required = false) SearchCategory category) {
+            @RequestParam(required = false) SearchCategory category,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         List<MoexSecurityDto> results = marketDataService.listSecurities(category);
-        return ResponseEntity.ok(ResponseApi.success("Список бумаг", results));
+        String etag = ConditionalRequests.etag("securities", category, results.size(), results.hashCode());
+        if (ConditionalRequests.matches(ifNoneMatch, etag)) {
+            return ConditionalRequests.notModified(etag);
+        }
+        // an empty list means MOEX was unavailable, which must not be cached by the client
+        return ConditionalRequests.ok(ResponseApi.success("Список бумаг", results), results.isEmpty() ? null : etag);
     }
 
     @PostMapping("/search")
@@ -0,0 +1,47 @@
+package pyc.lopatuxin.investment.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+/**
+ * Writes one JSON document per line to a response stream. Only the first line is flushed explicitly, so a client
+ * sees data as soon as the first point exists; the rest leave as the servlet buffer fills.
+ */
+final class NdjsonWriter<T> implements Consumer<T> {
+
+    private final ObjectWriter writer;
+    private final JsonGenerator generator;
+    private boolean flushed;
+
+    NdjsonWriter(ObjectMapper objectMapper, OutputStream out) throws IOException {
+        this.writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.generator = objectMapper.getFactory().createGenerator(out)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.generator.setRootValueSeparator(null);
+    }
+
+    @Override
+    public void accept(T value) {
+        try {
+            writer.writeValue(generator, value);
+            generator.writeRaw('\n');
+            if (!flushed) {
+                generator.flush();
+                flushed = true;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void finish() throws IOException {
+        generator.close();
+    }
+}
@@ -13,11 +13,16 @@ import org.springframework.web.bind.annotation.RestController;
 import pyc.lopatuxin.investment.dto.common.ApiRequest;
 import pyc.lopatuxin.investment.dto.request.CreateTransactionDto;
 import pyc.lopatuxin.investment.dto.request.DeleteTransactionDto;
+import pyc.lopatuxin.investment.dto.request.ImportTransactionsDto;
 import pyc.lopatuxin.investment.dto.request.ListTransactionsDto;
+import pyc.lopatuxin.investment.dto.request.TransactionPageRequestDto;
 import pyc.lopatuxin.investment.dto.response.ResponseApi;
+import pyc.lopatuxin.investment.dto.response.TransactionImportResultDto;
+import pyc.lopatuxin.investment.dto.response.TransactionPageDto;
 import pyc.lopatuxin.investment.dto.response.TransactionResponseDto;
 import pyc.lopatuxin.investment.service.TransactionService;
 
+import java.io.StringReader;
 import java.util.List;
 
 @Slf4j
@@ -40,6 +45,17 @@ public class TransactionController {
         return ResponseApi.created("Сделка добавлена", dto);
     }
 
+    @PostMapping("/import")
+    @ResponseStatus(HttpStatus.CREATED)
+    public ResponseApi<TransactionImportResultDto> importTransactions(
+            @RequestBody @Valid ApiRequest<ImportTransactionsDto> request) {
+        TransactionImportResultDto result = transactionService.importTransactions(
+                request.getUser().getUserId(),
+                new StringReader(request.getData().getCsv())
+        );
+        return ResponseApi.created("Сделки импортированы", result);
+    }
+
     @PostMapping("/list")
     @ResponseStatus(HttpStatus.OK)
     public ResponseApi<List<TransactionResponseDto>> list(
@@ -51,6 +67,17 @@ public class TransactionController {
         return ResponseApi.success("Список сделок", list);
     }
 
+    @PostMapping("/page")
+    @ResponseStatus(HttpStatus.OK)
+    public ResponseApi<TransactionPageDto> page(
+            @RequestBody @Valid ApiRequest<TransactionPageRequestDto> request) {
+        TransactionPageDto page = transactionService.page(
+                request.getUser().getUserId(),
+                request.getData()
+        );
+        return ResponseApi.success("Страница сделок", page);
+    }
+
     @PostMapping("/delete")
     @ResponseStatus(HttpStatus.OK)
     public ResponseApi<Void> delete(
@@ -1,5 +1,8 @@
 package pyc.lopatuxin.investment.dto.request;
 
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
 import lombok.Data;
 
 import java.time.LocalDate;
@@ -8,4 +11,11 @@ import java.time.LocalDate;
 public class DateRangeDto {
     private LocalDate from;
     private LocalDate to;
+
+    @NotNull
+    private SeriesResolution resolution = SeriesResolution.DAY;
+
+    // upper bound on returned points, reached by LTTB downsampling; AUTO picks the finest resolution within it
+    @Min(3) @Max(10_000)
+    private Integer maxPoints;
 }
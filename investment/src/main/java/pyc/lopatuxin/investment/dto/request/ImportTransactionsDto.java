@@ -0,0 +1,20 @@
+package pyc.lopatuxin.investment.dto.request;
+
+import jakarta.validation.constraints.NotBlank;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Builder
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportTransactionsDto {
+
+    // CSV with a header row: executed_at, ticker, type, quantity, price[, security_type]
+    @NotBlank
+    private String csv;
+}
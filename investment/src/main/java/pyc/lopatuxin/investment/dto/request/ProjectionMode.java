@@ -0,0 +1,5 @@
+package pyc.lopatuxin.investment.dto.request;
+
+public enum ProjectionMode {
+    DETERMINISTIC, MONTE_CARLO
+}
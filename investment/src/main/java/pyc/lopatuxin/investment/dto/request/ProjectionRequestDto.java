@@ -4,6 +4,7 @@ import jakarta.validation.constraints.DecimalMax;
 import jakarta.validation.constraints.DecimalMin;
 import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
 import lombok.Data;
 
 import java.math.BigDecimal;
@@ -22,6 +23,15 @@ public class ProjectionRequestDto {
     @DecimalMin("0") @DecimalMax("1")
     private BigDecimal withdrawalRatePerYear = BigDecimal.ZERO;
 
+    @NotNull
+    private ProjectionMode mode = ProjectionMode.DETERMINISTIC;
+
+    // MONTE_CARLO only: number of simulated paths and an optional seed for reproducible bands
+    @Min(100) @Max(50_000)
+    private int paths = 10_000;
+
+    private Long seed;
+
     // ticker -> annual return override (e.g. 0.12 for 12%)
     private Map<String, BigDecimal> overrides = Map.of();
 
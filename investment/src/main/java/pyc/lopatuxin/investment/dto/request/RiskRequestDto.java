@@ -0,0 +1,17 @@
+package pyc.lopatuxin.investment.dto.request;
+
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+@Data
+public class RiskRequestDto {
+
+    // annual risk-free rate for Sharpe and Sortino (e.g. 0.16 for the CBR key rate of 16%)
+    @NotNull
+    @DecimalMin("0") @DecimalMax("1")
+    private BigDecimal riskFreeRate = BigDecimal.ZERO;
+}
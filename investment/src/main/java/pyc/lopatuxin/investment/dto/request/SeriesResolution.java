@@ -0,0 +1,5 @@
+package pyc.lopatuxin.investment.dto.request;
+
+public enum SeriesResolution {
+    DAY, WEEK, MONTH, AUTO
+}
@@ -0,0 +1,15 @@
+package pyc.lopatuxin.investment.dto.request;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+
+@Data
+public class TaxReportRequestDto {
+
+    // calendar year of the sales, Moscow time
+    @NotNull
+    @Min(1990) @Max(2100)
+    private Integer year;
+}
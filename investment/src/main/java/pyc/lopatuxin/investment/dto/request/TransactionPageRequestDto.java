@@ -0,0 +1,30 @@
+package pyc.lopatuxin.investment.dto.request;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+import pyc.lopatuxin.investment.entity.enums.TransactionType;
+
+import java.time.LocalDate;
+
+@Data
+public class TransactionPageRequestDto {
+
+    private String ticker;
+
+    private TransactionType type;
+
+    // inclusive trade dates, Moscow time
+    private LocalDate from;
+    private LocalDate to;
+
+    // nextCursor of the previous page; absent for the first page
+    @Size(max = 200)
+    private String cursor;
+
+    @NotNull
+    @Min(1) @Max(500)
+    private Integer limit = 50;
+}
@@ -0,0 +1,19 @@
+package pyc.lopatuxin.investment.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+@Data
+@AllArgsConstructor
+public class ProjectionBandDto {
+    private int month;
+    private LocalDate date;
+    private BigDecimal p5;
+    private BigDecimal p25;
+    private BigDecimal p50;
+    private BigDecimal p75;
+    private BigDecimal p95;
+}
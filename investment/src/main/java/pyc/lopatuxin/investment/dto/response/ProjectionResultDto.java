@@ -1,5 +1,6 @@
 package pyc.lopatuxin.investment.dto.response;
 
+import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.Builder;
 import lombok.Data;
 
@@ -13,5 +14,13 @@ public class ProjectionResultDto {
     private BigDecimal portfolioWeightedAnnualReturn;
     private BigDecimal monthlyReturn;
     private List<ProjectionPointDto> series;
+    // MONTE_CARLO only: monthly volatility of the portfolio and 5/25/50/75/95 percentile bands of its value
+    @Schema(description = "Только MONTE_CARLO: месячная волатильность портфеля — взвешенная по стоимости сумма "
+            + "волатильностей бумаг, то есть оценка сверху в предположении полной корреляции между ними; "
+            + "диверсифицированный портфель на практике колеблется меньше", example = "0.061200")
+    private BigDecimal monthlyVolatility;
+    @Schema(description = "Только MONTE_CARLO: перцентили 5/25/50/75/95 стоимости портфеля по месяцам; "
+            + "из-за оценки волатильности сверху полосы шире, чем у диверсифицированного портфеля")
+    private List<ProjectionBandDto> bands;
     private List<String> pendingHistoryTickers;
 }
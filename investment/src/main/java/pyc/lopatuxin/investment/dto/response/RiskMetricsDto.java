@@ -0,0 +1,26 @@
+package pyc.lopatuxin.investment.dto.response;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+@Data
+@Builder
+public class RiskMetricsDto {
+    private LocalDate asOf;
+    private int observations;
+    private BigDecimal annualizedVolatility;
+    private BigDecimal maxDrawdown;
+    private BigDecimal sharpeRatio;
+    private BigDecimal sortinoRatio;
+    // against IMOEX; null while the index history is loading
+    private BigDecimal beta;
+    private boolean benchmarkPending;
+    // correlation of daily returns, rows and columns in the order of tickers; null where a pair cannot be estimated
+    private List<String> tickers;
+    private List<List<BigDecimal>> correlation;
+    private List<String> pendingHistoryTickers;
+}
@@ -0,0 +1,20 @@
+package pyc.lopatuxin.investment.dto.response;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Data
+@Builder
+public class TaxReportDto {
+    private int year;
+    // FIFO result of the sales made in the year
+    private BigDecimal proceeds;
+    private BigDecimal costBasis;
+    private BigDecimal realizedPnl;
+    // lots still held, at current quotes; tickers without a quote are left out of the total
+    private BigDecimal unrealizedPnl;
+    private List<TaxTickerReportDto> tickers;
+}
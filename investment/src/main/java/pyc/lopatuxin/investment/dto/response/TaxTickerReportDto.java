@@ -0,0 +1,20 @@
+package pyc.lopatuxin.investment.dto.response;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+@Data
+@Builder
+public class TaxTickerReportDto {
+    private String ticker;
+    private BigDecimal soldQuantity;
+    private BigDecimal proceeds;
+    private BigDecimal costBasis;
+    private BigDecimal realizedPnl;
+    private BigDecimal openQuantity;
+    private BigDecimal openCost;
+    private BigDecimal currentPrice;
+    private BigDecimal unrealizedPnl;
+}
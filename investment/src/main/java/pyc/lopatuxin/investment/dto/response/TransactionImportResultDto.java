@@ -0,0 +1,19 @@
+package pyc.lopatuxin.investment.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TransactionImportResultDto {
+
+    private int imported;
+    private int skipped;
+    private List<String> tickers;
+}
@@ -0,0 +1,14 @@
+package pyc.lopatuxin.investment.dto.response;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class TransactionPageDto {
+    private List<TransactionResponseDto> items;
+    // null on the last page
+    private String nextCursor;
+}
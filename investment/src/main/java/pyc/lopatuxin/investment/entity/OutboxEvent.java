@@ -0,0 +1,54 @@
+package pyc.lopatuxin.investment.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+import pyc.lopatuxin.investment.entity.enums.OutboxEventType;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Market data work committed together with the write that needs it and done after the commit, see
+ * {@code MarketDataOutbox}. A row is deleted once its work succeeded.
+ */
+@Entity
+@Table(
+        name = "outbox_events",
+        indexes = {
+                @Index(name = "idx_outbox_events_next_attempt", columnList = "next_attempt_at"),
+                @Index(name = "idx_outbox_events_type_key", columnList = "type, aggregate_key")
+        }
+)
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 30)
+    private OutboxEventType type;
+
+    // the ticker for every current type
+    @Column(nullable = false, length = 20)
+    private String aggregateKey;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(nullable = false)
+    private Instant nextAttemptAt;
+
+    @CreationTimestamp
+    @Column(nullable = false, updatable = false)
+    private Instant createdAt;
+
+    @Column(length = 500)
+    private String lastError;
+}
@@ -0,0 +1,28 @@
+package pyc.lopatuxin.investment.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.UUID;
+
+@Entity
+@Table(name = "portfolio_valuations")
+@IdClass(PortfolioValuationId.class)
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PortfolioValuation {
+
+    @Id
+    private UUID userId;
+
+    @Id
+    private LocalDate valuationDate;
+
+    @Column(nullable = false, precision = 19, scale = 2)
+    private BigDecimal value;
+}
@@ -0,0 +1,18 @@
+package pyc.lopatuxin.investment.entity;
+
+import lombok.*;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.UUID;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+public class PortfolioValuationId implements Serializable {
+
+    private UUID userId;
+    private LocalDate valuationDate;
+}
@@ -6,6 +6,7 @@ import pyc.lopatuxin.investment.entity.enums.HistoryStatus;
 import pyc.lopatuxin.investment.entity.enums.SecurityType;
 
 import java.time.Instant;
+import java.time.LocalDate;
 
 @Entity
 @Table(name = "securities")
@@ -39,4 +40,7 @@ public class Security {
     private HistoryStatus historyStatus;
 
     private Instant lastPriceUpdatedAt;
+
+    // last trade_date present in price_history; the next load starts the day after
+    private LocalDate historyLoadedThrough;
 }
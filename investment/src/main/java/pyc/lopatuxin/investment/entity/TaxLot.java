@@ -0,0 +1,53 @@
+package pyc.lopatuxin.investment.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Shares of one BUY that are matched against later SELLs first in, first out. Fully sold lots stay with a zero
+ * remainder; their closures hold the realized result.
+ */
+@Entity
+@Table(
+        name = "tax_lots",
+        indexes = {
+                @Index(name = "idx_tax_lots_user_ticker_acquired", columnList = "user_id, security_ticker, acquired_at"),
+                @Index(name = "idx_tax_lots_buy_transaction", columnList = "buy_transaction_id")
+        }
+)
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TaxLot {
+
+    // assigned by the ledger, rows are written by TaxLotBulkWriter
+    @Id
+    private UUID id;
+
+    @Column(nullable = false)
+    private UUID userId;
+
+    @Column(name = "security_ticker", nullable = false, length = 20)
+    private String ticker;
+
+    @Column(nullable = false)
+    private UUID buyTransactionId;
+
+    @Column(nullable = false)
+    private Instant acquiredAt;
+
+    @Column(nullable = false, precision = 15, scale = 2)
+    private BigDecimal price;
+
+    @Column(nullable = false, precision = 19, scale = 8)
+    private BigDecimal quantity;
+
+    @Column(nullable = false, precision = 19, scale = 8)
+    private BigDecimal remainingQuantity;
+}
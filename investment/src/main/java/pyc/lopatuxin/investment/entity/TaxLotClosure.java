@@ -0,0 +1,61 @@
+package pyc.lopatuxin.investment.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * The part of a lot sold by one SELL, with its realized result. The tax year is the Moscow calendar year of the sale.
+ */
+@Entity
+@Table(
+        name = "tax_lot_closures",
+        indexes = {
+                @Index(name = "idx_tax_lot_closures_user_year", columnList = "user_id, tax_year"),
+                @Index(name = "idx_tax_lot_closures_user_ticker_closed", columnList = "user_id, security_ticker, closed_at"),
+                @Index(name = "idx_tax_lot_closures_lot", columnList = "lot_id")
+        }
+)
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TaxLotClosure {
+
+    @Id
+    private UUID id;
+
+    @Column(nullable = false)
+    private UUID lotId;
+
+    @Column(nullable = false)
+    private UUID userId;
+
+    @Column(name = "security_ticker", nullable = false, length = 20)
+    private String ticker;
+
+    @Column(nullable = false)
+    private UUID sellTransactionId;
+
+    @Column(nullable = false)
+    private Instant closedAt;
+
+    @Column(nullable = false)
+    private int taxYear;
+
+    @Column(nullable = false, precision = 19, scale = 8)
+    private BigDecimal quantity;
+
+    @Column(nullable = false, precision = 28, scale = 10)
+    private BigDecimal costBasis;
+
+    @Column(nullable = false, precision = 28, scale = 10)
+    private BigDecimal proceeds;
+
+    @Column(nullable = false, precision = 28, scale = 10)
+    private BigDecimal realizedPnl;
+}
@@ -12,7 +12,10 @@ import java.util.UUID;
 @Entity
 @Table(
         name = "transactions",
-        indexes = @Index(name = "idx_transactions_user_id", columnList = "user_id")
+        indexes = {
+                @Index(name = "idx_transactions_user_executed_id", columnList = "user_id, executed_at DESC, id DESC"),
+                @Index(name = "idx_transactions_user_ticker_executed", columnList = "user_id, security_ticker, executed_at")
+        }
 )
 @Getter
 @Setter
@@ -48,4 +51,12 @@ public class Transaction {
 
     @CreationTimestamp
     private Instant createdAt;
+
+    // position after this trade in (executedAt, createdAt) order; null until the trade is first replayed
+    @Column(precision = 19, scale = 8)
+    private BigDecimal positionQuantity;
+
+    // unrounded average cost basis, see PositionState
+    @Column(precision = 38, scale = 16)
+    private BigDecimal positionCost;
 }
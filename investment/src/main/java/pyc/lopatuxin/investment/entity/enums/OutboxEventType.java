@@ -0,0 +1,6 @@
+package pyc.lopatuxin.investment.entity.enums;
+
+public enum OutboxEventType {
+    SECURITY_ENRICHMENT,
+    DIVIDEND_SYNC
+}
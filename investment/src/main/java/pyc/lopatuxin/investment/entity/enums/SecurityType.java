@@ -4,5 +4,7 @@ public enum SecurityType {
     STOCK,
     BOND,
     ETF,
-    OFZ
+    OFZ,
+    // market index (the IMOEX benchmark): seeded by migration, has history only and is never traded
+    INDEX
 }
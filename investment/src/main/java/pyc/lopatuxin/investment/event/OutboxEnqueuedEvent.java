@@ -0,0 +1,7 @@
+package pyc.lopatuxin.investment.event;
+
+/**
+ * Outbox events were stored; listeners run once the storing transaction committed.
+ */
+public record OutboxEnqueuedEvent() {
+}
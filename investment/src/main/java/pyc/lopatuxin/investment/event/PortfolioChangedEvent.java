@@ -0,0 +1,9 @@
+package pyc.lopatuxin.investment.event;
+
+import java.util.UUID;
+
+/**
+ * The user's transactions changed, so their positions may differ from any cached projection.
+ */
+public record PortfolioChangedEvent(UUID userId) {
+}
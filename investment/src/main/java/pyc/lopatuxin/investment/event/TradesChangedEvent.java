@@ -0,0 +1,11 @@
+package pyc.lopatuxin.investment.event;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Trades of the user executed at or after {@code since} were created or deleted, so their valuation series is stale
+ * from that day on.
+ */
+public record TradesChangedEvent(UUID userId, Instant since) {
+}
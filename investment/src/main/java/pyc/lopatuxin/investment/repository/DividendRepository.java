@@ -1,6 +1,7 @@
 package pyc.lopatuxin.investment.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import pyc.lopatuxin.investment.entity.Dividend;
@@ -8,14 +9,20 @@ import pyc.lopatuxin.investment.entity.Dividend;
 import java.time.LocalDate;
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 public interface DividendRepository extends JpaRepository<Dividend, UUID> {
 
     List<Dividend> findBySecurity_Ticker(String ticker);
 
+    boolean existsBySecurity_Ticker(String ticker);
+
     boolean existsBySecurity_TickerAndRecordDate(String ticker, LocalDate recordDate);
 
+    @Query("SELECT d.recordDate FROM Dividend d WHERE d.security.ticker = :ticker")
+    Set<LocalDate> findRecordDatesByTicker(@Param("ticker") String ticker);
+
     @Query("SELECT d FROM Dividend d JOIN FETCH d.security WHERE d.security.ticker IN :tickers AND d.paymentDate BETWEEN :from AND :to")
     List<Dividend> findByTickerInAndPaymentDateBetweenWithSecurity(@Param("tickers") Collection<String> tickers, @Param("from") LocalDate from, @Param("to") LocalDate to);
 
@@ -33,4 +40,13 @@ public interface DividendRepository extends JpaRepository<Dividend, UUID> {
            "AND d.status = pyc.lopatuxin.investment.entity.enums.DividendStatus.PAID " +
            "ORDER BY d.paymentDate DESC")
     List<Dividend> findPaidByTickerWithSecurity(@Param("ticker") String ticker);
+
+    /**
+     * Moves the ticker's announced dividends whose record date has passed to PAID and returns how many changed.
+     */
+    @Modifying
+    @Query(value = "UPDATE dividends SET status = 'PAID' " +
+                   "WHERE security_ticker = :ticker AND status = 'ANNOUNCED' AND record_date < :today",
+           nativeQuery = true)
+    int markPaidBefore(@Param("ticker") String ticker, @Param("today") LocalDate today);
 }
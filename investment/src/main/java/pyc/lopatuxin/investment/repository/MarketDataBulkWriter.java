@@ -0,0 +1,148 @@
+package pyc.lopatuxin.investment.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import pyc.lopatuxin.investment.entity.Dividend;
+import pyc.lopatuxin.investment.entity.PortfolioValuation;
+import pyc.lopatuxin.investment.entity.PriceHistory;
+import pyc.lopatuxin.investment.entity.PriceHistoryId;
+import pyc.lopatuxin.investment.entity.PriceSnapshot;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Batched JDBC writes for market data and derived tables with natural keys.
+ * <p>
+ * {@code saveAll} on an entity with an assigned id issues a merge {@code SELECT} per row before the insert;
+ * here rows go out as one batched statement per chunk, which the driver rewrites into multi-row inserts
+ * ({@code reWriteBatchedInserts}).
+ */
+@Repository
+@RequiredArgsConstructor
+public class MarketDataBulkWriter {
+
+    static final int BATCH_SIZE = 1000;
+
+    private static final String UPSERT_PRICE_HISTORY = """
+            INSERT INTO price_history (ticker, trade_date, open, close, high, low, volume)
+            VALUES (?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT (ticker, trade_date) DO UPDATE SET
+                open = EXCLUDED.open,
+                close = EXCLUDED.close,
+                high = EXCLUDED.high,
+                low = EXCLUDED.low,
+                volume = EXCLUDED.volume
+            """;
+
+    private static final String INSERT_DIVIDENDS = """
+            INSERT INTO dividends (id, security_ticker, record_date, payment_date, amount_per_share, currency, status)
+            VALUES (?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT (security_ticker, record_date) DO NOTHING
+            """;
+
+    private static final String UPSERT_SNAPSHOTS = """
+            INSERT INTO price_snapshots (ticker, last_price, previous_close, fetched_at)
+            VALUES (?, ?, ?, ?)
+            ON CONFLICT (ticker) DO UPDATE SET
+                last_price = EXCLUDED.last_price,
+                previous_close = EXCLUDED.previous_close,
+                fetched_at = EXCLUDED.fetched_at
+            """;
+
+    private static final String UPSERT_VALUATIONS = """
+            INSERT INTO portfolio_valuations (user_id, valuation_date, value)
+            VALUES (?, ?, ?)
+            ON CONFLICT (user_id, valuation_date) DO UPDATE SET value = EXCLUDED.value
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Inserts or overwrites candles by (ticker, trade_date). Returns the number of rows sent.
+     */
+    public int upsertPriceHistory(Collection<PriceHistory> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        // ON CONFLICT DO UPDATE rejects a statement that touches the same key twice, so the last candle per key wins here
+        Map<PriceHistoryId, PriceHistory> unique = new LinkedHashMap<>();
+        for (PriceHistory ph : rows) {
+            unique.put(new PriceHistoryId(ph.getTicker(), ph.getTradeDate()), ph);
+        }
+        jdbcTemplate.batchUpdate(UPSERT_PRICE_HISTORY, unique.values(), BATCH_SIZE, (ps, ph) -> {
+            ps.setString(1, ph.getTicker());
+            ps.setDate(2, Date.valueOf(ph.getTradeDate()));
+            ps.setBigDecimal(3, ph.getOpen() != null ? ph.getOpen() : ph.getClose());
+            ps.setBigDecimal(4, ph.getClose());
+            ps.setBigDecimal(5, ph.getHigh() != null ? ph.getHigh() : ph.getClose());
+            ps.setBigDecimal(6, ph.getLow() != null ? ph.getLow() : ph.getClose());
+            if (ph.getVolume() != null) {
+                ps.setLong(7, ph.getVolume());
+            } else {
+                ps.setNull(7, Types.BIGINT);
+            }
+        });
+        return unique.size();
+    }
+
+    /**
+     * Inserts dividends, skipping rows whose (ticker, record_date) already exists. Returns the number of rows sent.
+     */
+    public int insertDividends(Collection<Dividend> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        jdbcTemplate.batchUpdate(INSERT_DIVIDENDS, rows, BATCH_SIZE, (ps, d) -> {
+            ps.setObject(1, d.getId() != null ? d.getId() : UUID.randomUUID());
+            ps.setString(2, d.getSecurity().getTicker());
+            ps.setDate(3, Date.valueOf(d.getRecordDate()));
+            ps.setDate(4, d.getPaymentDate() != null ? Date.valueOf(d.getPaymentDate()) : null);
+            ps.setBigDecimal(5, d.getAmountPerShare());
+            ps.setString(6, d.getCurrency());
+            ps.setString(7, d.getStatus().name());
+        });
+        return rows.size();
+    }
+
+    /**
+     * Inserts or overwrites quote snapshots by ticker. Returns the number of rows sent.
+     */
+    public int upsertSnapshots(Collection<PriceSnapshot> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        Map<String, PriceSnapshot> unique = new LinkedHashMap<>();
+        for (PriceSnapshot snapshot : rows) {
+            unique.put(snapshot.getTicker(), snapshot);
+        }
+        jdbcTemplate.batchUpdate(UPSERT_SNAPSHOTS, unique.values(), BATCH_SIZE, (ps, s) -> {
+            ps.setString(1, s.getTicker());
+            ps.setBigDecimal(2, s.getLastPrice());
+            ps.setBigDecimal(3, s.getPreviousClose());
+            ps.setTimestamp(4, Timestamp.from(s.getFetchedAt()));
+        });
+        return unique.size();
+    }
+
+    /**
+     * Inserts or overwrites daily portfolio values by (user_id, valuation_date). Returns the number of rows sent.
+     */
+    public int upsertValuations(Collection<PortfolioValuation> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        jdbcTemplate.batchUpdate(UPSERT_VALUATIONS, rows, BATCH_SIZE, (ps, v) -> {
+            ps.setObject(1, v.getUserId());
+            ps.setDate(2, Date.valueOf(v.getValuationDate()));
+            ps.setBigDecimal(3, v.getValue());
+        });
+        return rows.size();
+    }
+}
@@ -0,0 +1,35 @@
+package pyc.lopatuxin.investment.repository;
+
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import pyc.lopatuxin.investment.entity.OutboxEvent;
+import pyc.lopatuxin.investment.entity.enums.OutboxEventType;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, UUID> {
+
+    boolean existsByTypeAndAggregateKeyAndAttemptsLessThan(OutboxEventType type, String aggregateKey, int maxAttempts);
+
+    // lock timeout -2 is SKIP LOCKED: concurrent workers claim disjoint events instead of waiting on each other
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("""
+            SELECT e FROM OutboxEvent e
+            WHERE e.nextAttemptAt <= :now AND e.attempts < :maxAttempts
+            ORDER BY e.nextAttemptAt""")
+    List<OutboxEvent> findDueForUpdate(@Param("now") Instant now, @Param("maxAttempts") int maxAttempts, Pageable page);
+
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.lastError = :error WHERE e.id = :id")
+    int recordError(@Param("id") UUID id, @Param("error") String error);
+}
@@ -0,0 +1,59 @@
+package pyc.lopatuxin.investment.repository;
+
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import pyc.lopatuxin.investment.entity.PortfolioValuation;
+import pyc.lopatuxin.investment.entity.PortfolioValuationId;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+public interface PortfolioValuationRepository extends JpaRepository<PortfolioValuation, PortfolioValuationId> {
+
+    List<PortfolioValuation> findByUserIdAndValuationDateBetweenOrderByValuationDateAsc(
+            UUID userId, LocalDate from, LocalDate to);
+
+    /**
+     * The first {@code limit} days of the range as unmanaged projections; a keyset page for streaming a long range.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    List<ValuationPoint> findPointsByUserIdAndValuationDateBetweenOrderByValuationDateAsc(
+            UUID userId, LocalDate from, LocalDate to, Limit limit);
+
+    @Query("SELECT max(v.valuationDate) FROM PortfolioValuation v WHERE v.userId = :userId")
+    Optional<LocalDate> findLastValuationDate(@Param("userId") UUID userId);
+
+    /**
+     * Counts a recompute of the user's series. The row stays locked until the recompute commits, so recomputes of
+     * one user run one after another.
+     */
+    @Modifying
+    @Query(value = """
+            INSERT INTO portfolio_valuation_versions (user_id, version) VALUES (:userId, 1)
+            ON CONFLICT (user_id) DO UPDATE SET version = portfolio_valuation_versions.version + 1""",
+            nativeQuery = true)
+    int incrementVersion(@Param("userId") UUID userId);
+
+    @Query(value = "SELECT version FROM portfolio_valuation_versions WHERE user_id = :userId", nativeQuery = true)
+    Optional<Long> findVersion(@Param("userId") UUID userId);
+
+    @Modifying
+    @Query("DELETE FROM PortfolioValuation v WHERE v.userId = :userId AND v.valuationDate >= :from")
+    int deleteFrom(@Param("userId") UUID userId, @Param("from") LocalDate from);
+
+    interface ValuationPoint {
+
+        LocalDate getValuationDate();
+
+        BigDecimal getValue();
+    }
+}
@@ -1,6 +1,7 @@
 package pyc.lopatuxin.investment.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import pyc.lopatuxin.investment.entity.Position;
@@ -20,4 +21,21 @@ public interface PositionRepository extends JpaRepository<Position, UUID> {
 
     @Query("SELECT p FROM Position p JOIN FETCH p.security WHERE p.userId = :userId")
     List<Position> findByUserIdWithSecurity(@Param("userId") UUID userId);
+
+    @Query("SELECT DISTINCT p.userId FROM Position p WHERE p.security.ticker = :ticker")
+    List<UUID> findUserIdsByTicker(@Param("ticker") String ticker);
+
+    /**
+     * Counts a committed change to what the user's portfolio page shows. Runs in the changing transaction, so every
+     * instance sees the new version together with the data.
+     */
+    @Modifying
+    @Query(value = """
+            INSERT INTO portfolio_versions (user_id, version) VALUES (:userId, 1)
+            ON CONFLICT (user_id) DO UPDATE SET version = portfolio_versions.version + 1""",
+            nativeQuery = true)
+    int incrementPortfolioVersion(@Param("userId") UUID userId);
+
+    @Query(value = "SELECT version FROM portfolio_versions WHERE user_id = :userId", nativeQuery = true)
+    Optional<Long> findPortfolioVersion(@Param("userId") UUID userId);
 }
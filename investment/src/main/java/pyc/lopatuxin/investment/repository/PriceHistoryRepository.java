@@ -1,13 +1,20 @@
 package pyc.lopatuxin.investment.repository;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import pyc.lopatuxin.investment.entity.PriceHistory;
 import pyc.lopatuxin.investment.entity.PriceHistoryId;
 
+import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface PriceHistoryRepository extends JpaRepository<PriceHistory, PriceHistoryId> {
 
@@ -22,4 +29,41 @@ public interface PriceHistoryRepository extends JpaRepository<PriceHistory, Pric
     Optional<PriceHistory> findFirstByTickerAndTradeDateLessThanEqualOrderByTradeDateDesc(String ticker, LocalDate date);
 
     List<PriceHistory> findByTickerOrderByTradeDateAsc(String ticker);
+
+    /**
+     * Closes ordered by date, read through a cursor. Must be consumed inside a transaction and closed.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")})
+    @Query("""
+            SELECT p.ticker AS ticker, p.tradeDate AS tradeDate, p.close AS close FROM PriceHistory p
+            WHERE p.ticker IN :tickers AND p.tradeDate BETWEEN :from AND :to
+            ORDER BY p.tradeDate""")
+    Stream<ClosePrice> streamClosesBetween(@Param("tickers") Collection<String> tickers,
+                                           @Param("from") LocalDate from,
+                                           @Param("to") LocalDate to);
+
+    /**
+     * The last close strictly before {@code before} for each ticker that has one.
+     */
+    @Query("""
+            SELECT p.ticker AS ticker, p.tradeDate AS tradeDate, p.close AS close FROM PriceHistory p
+            WHERE p.ticker IN :tickers AND p.tradeDate = (
+                SELECT max(q.tradeDate) FROM PriceHistory q
+                WHERE q.ticker = p.ticker AND q.tradeDate < :before)""")
+    List<ClosePrice> findLastClosesBefore(@Param("tickers") Collection<String> tickers,
+                                          @Param("before") LocalDate before);
+
+    @Query("SELECT max(p.tradeDate) FROM PriceHistory p WHERE p.ticker = :ticker")
+    Optional<LocalDate> findLastTradeDate(@Param("ticker") String ticker);
+
+    interface ClosePrice {
+
+        String getTicker();
+
+        LocalDate getTradeDate();
+
+        BigDecimal getClose();
+    }
 }
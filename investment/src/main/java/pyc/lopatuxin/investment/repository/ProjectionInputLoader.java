@@ -0,0 +1,126 @@
+package pyc.lopatuxin.investment.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import pyc.lopatuxin.investment.repository.ProjectionInputs.PaidDividend;
+import pyc.lopatuxin.investment.repository.ProjectionInputs.PriceRange;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads projection inputs for a whole portfolio in two statements, independent of the number of tickers and
+ * dividends. Each lookup is a {@code LATERAL ... LIMIT 1} over the {@code (ticker, trade_date)} primary key,
+ * so only the rows that are returned are read from {@code price_history}.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ProjectionInputLoader {
+
+    private static final String SELECT_PRICE_RANGES = """
+            SELECT s.ticker, f.trade_date, f.close, l.trade_date, l.close
+            FROM securities s
+            JOIN LATERAL (
+                SELECT p.trade_date, p.close FROM price_history p
+                WHERE p.ticker = s.ticker
+                ORDER BY p.trade_date
+                LIMIT 1
+            ) f ON true
+            JOIN LATERAL (
+                SELECT p.trade_date, p.close FROM price_history p
+                WHERE p.ticker = s.ticker
+                ORDER BY p.trade_date DESC
+                LIMIT 1
+            ) l ON true
+            WHERE s.ticker = ANY (?)
+            """;
+
+    private static final String SELECT_PAID_DIVIDENDS = """
+            SELECT d.security_ticker, COALESCE(d.payment_date, d.record_date) AS effective_date,
+                   d.amount_per_share, c.close
+            FROM dividends d
+            LEFT JOIN LATERAL (
+                SELECT p.close FROM price_history p
+                WHERE p.ticker = d.security_ticker
+                  AND p.trade_date <= COALESCE(d.payment_date, d.record_date)
+                ORDER BY p.trade_date DESC
+                LIMIT 1
+            ) c ON true
+            WHERE d.security_ticker = ANY (?)
+              AND d.status = 'PAID'
+            ORDER BY d.security_ticker, effective_date
+            """;
+
+    // stddev of month-over-month log returns of the last close in each calendar month
+    private static final String SELECT_MONTHLY_VOLATILITY = """
+            SELECT ticker, stddev_samp(r)
+            FROM (
+                SELECT ticker, ln(close / lag(close) OVER (PARTITION BY ticker ORDER BY month)) AS r
+                FROM (
+                    SELECT DISTINCT ON (ticker, date_trunc('month', trade_date))
+                           ticker, date_trunc('month', trade_date) AS month, close
+                    FROM price_history
+                    WHERE ticker = ANY (?) AND close > 0
+                    ORDER BY ticker, date_trunc('month', trade_date), trade_date DESC
+                ) month_end
+            ) monthly
+            WHERE r IS NOT NULL
+            GROUP BY ticker
+            HAVING count(r) >= 2
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ProjectionInputs load(Collection<String> tickers) {
+        if (tickers.isEmpty()) {
+            return ProjectionInputs.empty();
+        }
+        Object[] tickerArray = tickers.toArray();
+
+        Map<String, PriceRange> priceRanges = new HashMap<>();
+        jdbcTemplate.query(SELECT_PRICE_RANGES, ps -> ps.setArray(1, toSqlArray(ps.getConnection(), tickerArray)),
+                rs -> {
+                    priceRanges.put(rs.getString(1), new PriceRange(
+                            rs.getObject(2, LocalDate.class), rs.getBigDecimal(3),
+                            rs.getObject(4, LocalDate.class), rs.getBigDecimal(5)));
+                });
+
+        Map<String, List<PaidDividend>> paidDividends = new HashMap<>();
+        jdbcTemplate.query(SELECT_PAID_DIVIDENDS, ps -> ps.setArray(1, toSqlArray(ps.getConnection(), tickerArray)),
+                rs -> {
+                    paidDividends.computeIfAbsent(rs.getString(1), t -> new ArrayList<>()).add(new PaidDividend(
+                            rs.getObject(2, LocalDate.class), rs.getBigDecimal(3), rs.getBigDecimal(4)));
+                });
+
+        return new ProjectionInputs(priceRanges, paidDividends);
+    }
+
+    /**
+     * Monthly volatility per ticker; tickers with fewer than three months of history are absent.
+     */
+    public Map<String, Double> loadMonthlyVolatility(Collection<String> tickers) {
+        if (tickers.isEmpty()) {
+            return Map.of();
+        }
+        Object[] tickerArray = tickers.toArray();
+        Map<String, Double> volatility = new HashMap<>();
+        jdbcTemplate.query(SELECT_MONTHLY_VOLATILITY,
+                ps -> ps.setArray(1, toSqlArray(ps.getConnection(), tickerArray)),
+                rs -> {
+                    volatility.put(rs.getString(1), rs.getDouble(2));
+                });
+        return volatility;
+    }
+
+    private static Array toSqlArray(Connection connection, Object[] tickers) throws SQLException {
+        return connection.createArrayOf("varchar", tickers);
+    }
+}
@@ -0,0 +1,40 @@
+package pyc.lopatuxin.investment.repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Everything {@code ProjectionService} reads from the database for historical returns, keyed by ticker.
+ */
+public record ProjectionInputs(
+        Map<String, PriceRange> priceRanges,
+        Map<String, List<PaidDividend>> paidDividends
+) {
+
+    public static ProjectionInputs empty() {
+        return new ProjectionInputs(Map.of(), Map.of());
+    }
+
+    /**
+     * First and last stored candle, or {@code null} when the ticker has no history.
+     */
+    public PriceRange priceRange(String ticker) {
+        return priceRanges.get(ticker);
+    }
+
+    public List<PaidDividend> paidDividends(String ticker) {
+        return paidDividends.getOrDefault(ticker, List.of());
+    }
+
+    public record PriceRange(LocalDate firstDate, BigDecimal firstClose, LocalDate lastDate, BigDecimal lastClose) {
+    }
+
+    /**
+     * A paid dividend with the close on or before its payment date, or its record date when the payment date is
+     * unknown; {@code close} is {@code null} when history starts after that date.
+     */
+    public record PaidDividend(LocalDate effectiveDate, BigDecimal amountPerShare, BigDecimal close) {
+    }
+}
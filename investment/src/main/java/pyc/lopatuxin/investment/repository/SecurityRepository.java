@@ -1,6 +1,9 @@
 package pyc.lopatuxin.investment.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import pyc.lopatuxin.investment.entity.Security;
 import pyc.lopatuxin.investment.entity.enums.HistoryStatus;
 import pyc.lopatuxin.investment.entity.enums.SecurityType;
@@ -16,4 +19,13 @@ public interface SecurityRepository extends JpaRepository<Security, String> {
     List<Security> findBySectorIsNull();
 
     List<Security> findByTypeAndSector(SecurityType type, String sector);
+
+    /**
+     * Counts a committed write to the ticker's price history. The column is not mapped on the entity, so a stale
+     * {@link Security} saved later cannot roll it back.
+     */
+    @Modifying
+    @Query(value = "UPDATE securities SET history_version = history_version + 1 WHERE ticker = :ticker",
+            nativeQuery = true)
+    int incrementHistoryVersion(@Param("ticker") String ticker);
 }
@@ -0,0 +1,72 @@
+package pyc.lopatuxin.investment.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import pyc.lopatuxin.investment.entity.TaxLot;
+import pyc.lopatuxin.investment.entity.TaxLotClosure;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+
+/**
+ * Batched JDBC inserts for lots and closures opened by the tax-lot ledger. Ids are assigned by the caller.
+ */
+@Repository
+@RequiredArgsConstructor
+public class TaxLotBulkWriter {
+
+    private static final String INSERT_LOTS = """
+            INSERT INTO tax_lots (id, user_id, security_ticker, buy_transaction_id, acquired_at, price, quantity,
+                                  remaining_quantity)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private static final String INSERT_CLOSURES = """
+            INSERT INTO tax_lot_closures (id, lot_id, user_id, security_ticker, sell_transaction_id, closed_at,
+                                          tax_year, quantity, cost_basis, proceeds, realized_pnl)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public int insertLots(Collection<TaxLot> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        jdbcTemplate.batchUpdate(INSERT_LOTS, rows, MarketDataBulkWriter.BATCH_SIZE, (ps, l) -> {
+            ps.setObject(1, l.getId());
+            ps.setObject(2, l.getUserId());
+            ps.setString(3, l.getTicker());
+            ps.setObject(4, l.getBuyTransactionId());
+            ps.setTimestamp(5, Timestamp.from(l.getAcquiredAt()));
+            ps.setBigDecimal(6, l.getPrice());
+            ps.setBigDecimal(7, l.getQuantity());
+            ps.setBigDecimal(8, l.getRemainingQuantity());
+        });
+        return rows.size();
+    }
+
+    /**
+     * The lots referenced by the closures must be inserted first.
+     */
+    public int insertClosures(Collection<TaxLotClosure> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        jdbcTemplate.batchUpdate(INSERT_CLOSURES, rows, MarketDataBulkWriter.BATCH_SIZE, (ps, c) -> {
+            ps.setObject(1, c.getId());
+            ps.setObject(2, c.getLotId());
+            ps.setObject(3, c.getUserId());
+            ps.setString(4, c.getTicker());
+            ps.setObject(5, c.getSellTransactionId());
+            ps.setTimestamp(6, Timestamp.from(c.getClosedAt()));
+            ps.setInt(7, c.getTaxYear());
+            ps.setBigDecimal(8, c.getQuantity());
+            ps.setBigDecimal(9, c.getCostBasis());
+            ps.setBigDecimal(10, c.getProceeds());
+            ps.setBigDecimal(11, c.getRealizedPnl());
+        });
+        return rows.size();
+    }
+}
@@ -0,0 +1,40 @@
+package pyc.lopatuxin.investment.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import pyc.lopatuxin.investment.entity.TaxLotClosure;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+public interface TaxLotClosureRepository extends JpaRepository<TaxLotClosure, UUID> {
+
+    @Modifying
+    @Query("DELETE FROM TaxLotClosure c WHERE c.userId = :userId AND c.ticker = :ticker AND c.closedAt >= :since")
+    int deleteClosedSince(@Param("userId") UUID userId, @Param("ticker") String ticker, @Param("since") Instant since);
+
+    @Query("""
+            SELECT c.ticker AS ticker, sum(c.quantity) AS quantity, sum(c.costBasis) AS costBasis,
+                   sum(c.proceeds) AS proceeds, sum(c.realizedPnl) AS realizedPnl
+            FROM TaxLotClosure c
+            WHERE c.userId = :userId AND c.taxYear = :year
+            GROUP BY c.ticker""")
+    List<RealizedTotal> findRealizedByYear(@Param("userId") UUID userId, @Param("year") int year);
+
+    interface RealizedTotal {
+
+        String getTicker();
+
+        BigDecimal getQuantity();
+
+        BigDecimal getCostBasis();
+
+        BigDecimal getProceeds();
+
+        BigDecimal getRealizedPnl();
+    }
+}
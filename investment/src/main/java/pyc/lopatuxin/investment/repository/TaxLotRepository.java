@@ -0,0 +1,61 @@
+package pyc.lopatuxin.investment.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import pyc.lopatuxin.investment.entity.TaxLot;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+public interface TaxLotRepository extends JpaRepository<TaxLot, UUID> {
+
+    boolean existsByUserIdAndTicker(UUID userId, String ticker);
+
+    /**
+     * Lots with shares left, in the order they are sold: by acquisition time, then by the order the BUYs were entered.
+     */
+    @Query("""
+            SELECT l FROM TaxLot l JOIN Transaction t ON t.id = l.buyTransactionId
+            WHERE l.userId = :userId AND l.ticker = :ticker AND l.remainingQuantity > 0
+            ORDER BY l.acquiredAt, t.createdAt""")
+    List<TaxLot> findOpenLots(@Param("userId") UUID userId, @Param("ticker") String ticker);
+
+    /**
+     * Gives the shares of closures from {@code since} on back to their lots; the closures themselves are deleted by
+     * {@link TaxLotClosureRepository#deleteClosedSince}.
+     */
+    @Modifying
+    @Query(value = """
+            UPDATE tax_lots l SET remaining_quantity = l.remaining_quantity + c.quantity
+            FROM (
+                SELECT lot_id, sum(quantity) AS quantity FROM tax_lot_closures
+                WHERE user_id = :userId AND security_ticker = :ticker AND closed_at >= :since
+                GROUP BY lot_id
+            ) c
+            WHERE l.id = c.lot_id""", nativeQuery = true)
+    int restoreClosedSince(@Param("userId") UUID userId, @Param("ticker") String ticker, @Param("since") Instant since);
+
+    @Modifying
+    @Query("DELETE FROM TaxLot l WHERE l.userId = :userId AND l.ticker = :ticker AND l.acquiredAt >= :since")
+    int deleteAcquiredSince(@Param("userId") UUID userId, @Param("ticker") String ticker, @Param("since") Instant since);
+
+    @Query("""
+            SELECT l.ticker AS ticker, sum(l.remainingQuantity) AS quantity, sum(l.remainingQuantity * l.price) AS cost
+            FROM TaxLot l
+            WHERE l.userId = :userId AND l.remainingQuantity > 0
+            GROUP BY l.ticker""")
+    List<OpenHolding> findOpenHoldings(@Param("userId") UUID userId);
+
+    interface OpenHolding {
+
+        String getTicker();
+
+        BigDecimal getQuantity();
+
+        BigDecimal getCost();
+    }
+}
@@ -0,0 +1,48 @@
+package pyc.lopatuxin.investment.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import pyc.lopatuxin.investment.entity.Transaction;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+
+/**
+ * Batched JDBC insert for imported trades. Ids, creation times and position states are assigned by the caller, so
+ * nothing has to be read back and the rows never enter the persistence context.
+ */
+@Repository
+@RequiredArgsConstructor
+public class TransactionBulkWriter {
+
+    private static final String INSERT_TRANSACTIONS = """
+            INSERT INTO transactions (id, user_id, security_ticker, quantity, price, executed_at, type, created_at,
+                                      position_quantity, position_cost)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Inserts the trades as given. Returns the number of rows sent.
+     */
+    public int insertTransactions(Collection<Transaction> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        jdbcTemplate.batchUpdate(INSERT_TRANSACTIONS, rows, MarketDataBulkWriter.BATCH_SIZE, (ps, t) -> {
+            ps.setObject(1, t.getId());
+            ps.setObject(2, t.getUserId());
+            ps.setString(3, t.getSecurity().getTicker());
+            ps.setBigDecimal(4, t.getQuantity());
+            ps.setBigDecimal(5, t.getPrice());
+            ps.setTimestamp(6, Timestamp.from(t.getExecutedAt()));
+            ps.setString(7, t.getType().name());
+            ps.setTimestamp(8, Timestamp.from(t.getCreatedAt()));
+            ps.setBigDecimal(9, t.getPositionQuantity());
+            ps.setBigDecimal(10, t.getPositionCost());
+        });
+        return rows.size();
+    }
+}
@@ -0,0 +1,12 @@
+package pyc.lopatuxin.investment.repository;
+
+import pyc.lopatuxin.investment.entity.enums.TransactionType;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Trades of a user, optionally narrowed to a ticker, a type and a half-open {@code [from, to)} range of execution times.
+ */
+public record TransactionFilter(UUID userId, String ticker, TransactionType type, Instant from, Instant to) {
+}
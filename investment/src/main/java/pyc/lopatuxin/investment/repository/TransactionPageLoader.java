@@ -0,0 +1,63 @@
+package pyc.lopatuxin.investment.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import org.springframework.stereotype.Repository;
+import pyc.lopatuxin.investment.entity.Transaction;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Keyset pages of a user's trades, newest first by {@code (executed_at, id)}. Only the filters that are set go into
+ * the query, so each combination gets a plan on {@code idx_transactions_user_executed_id} (or on the ticker index)
+ * that reads one page of rows however long the history is.
+ */
+@Repository
+public class TransactionPageLoader {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Up to {@code limit} trades after {@code afterExecutedAt}/{@code afterId} in page order, with their securities;
+     * the whole filter from the top when the key is {@code null}.
+     */
+    public List<Transaction> load(TransactionFilter filter, Instant afterExecutedAt, UUID afterId, int limit) {
+        StringBuilder jpql = new StringBuilder("SELECT t FROM Transaction t JOIN FETCH t.security WHERE t.userId = :userId");
+        Map<String, Object> params = new HashMap<>();
+        params.put("userId", filter.userId());
+        if (filter.ticker() != null) {
+            jpql.append(" AND t.security.ticker = :ticker");
+            params.put("ticker", filter.ticker());
+        }
+        if (filter.type() != null) {
+            jpql.append(" AND t.type = :type");
+            params.put("type", filter.type());
+        }
+        if (filter.from() != null) {
+            jpql.append(" AND t.executedAt >= :from");
+            params.put("from", filter.from());
+        }
+        if (filter.to() != null) {
+            jpql.append(" AND t.executedAt < :to");
+            params.put("to", filter.to());
+        }
+        if (afterExecutedAt != null) {
+            // row comparison, so the index range starts right after the key
+            jpql.append(" AND (t.executedAt, t.id) < (:afterExecutedAt, :afterId)");
+            params.put("afterExecutedAt", afterExecutedAt);
+            params.put("afterId", afterId);
+        }
+        jpql.append(" ORDER BY t.executedAt DESC, t.id DESC");
+
+        TypedQuery<Transaction> query = entityManager.createQuery(jpql.toString(), Transaction.class)
+                .setMaxResults(limit);
+        params.forEach(query::setParameter);
+        return query.getResultList();
+    }
+}
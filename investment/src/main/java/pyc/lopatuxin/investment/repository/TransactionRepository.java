@@ -1,12 +1,20 @@
 package pyc.lopatuxin.investment.repository;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import pyc.lopatuxin.investment.entity.Transaction;
+import pyc.lopatuxin.investment.entity.enums.TransactionType;
 
+import java.math.BigDecimal;
+import java.time.Instant;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 public interface TransactionRepository extends JpaRepository<Transaction, UUID> {
 
@@ -14,9 +22,111 @@ public interface TransactionRepository extends JpaRepository<Transaction, UUID>
 
     List<Transaction> findByUserIdAndSecurity_Ticker(UUID userId, String ticker);
 
-    @Query("SELECT t FROM Transaction t JOIN FETCH t.security WHERE t.userId = :userId")
+    @Query("SELECT t FROM Transaction t JOIN FETCH t.security WHERE t.userId = :userId ORDER BY t.executedAt DESC, t.id DESC")
     List<Transaction> findByUserIdWithSecurity(@Param("userId") UUID userId);
 
-    @Query("SELECT t FROM Transaction t JOIN FETCH t.security WHERE t.userId = :userId AND t.security.ticker = :ticker ORDER BY t.executedAt DESC")
+    @Query("SELECT t FROM Transaction t JOIN FETCH t.security WHERE t.userId = :userId AND t.security.ticker = :ticker ORDER BY t.executedAt DESC, t.id DESC")
     List<Transaction> findByUserIdAndTickerWithSecurity(@Param("userId") UUID userId, @Param("ticker") String ticker);
+
+    /**
+     * The trade right before {@code before} in replay order; its stored position state is where a replay resumes.
+     */
+    @Query("""
+            SELECT t FROM Transaction t
+            WHERE t.userId = :userId AND t.security.ticker = :ticker AND t.executedAt < :before
+            ORDER BY t.executedAt DESC, t.createdAt DESC
+            LIMIT 1""")
+    Optional<Transaction> findLastBefore(@Param("userId") UUID userId, @Param("ticker") String ticker,
+                                         @Param("before") Instant before);
+
+    @Query("""
+            SELECT t FROM Transaction t
+            WHERE t.userId = :userId AND t.security.ticker = :ticker AND t.executedAt >= :since
+            ORDER BY t.executedAt, t.createdAt""")
+    List<Transaction> findSince(@Param("userId") UUID userId, @Param("ticker") String ticker,
+                                @Param("since") Instant since);
+
+    @Query("SELECT DISTINCT t.userId FROM Transaction t")
+    List<UUID> findDistinctUserIds();
+
+    @Query("SELECT min(t.executedAt) FROM Transaction t WHERE t.userId = :userId")
+    Optional<Instant> findFirstExecutedAt(@Param("userId") UUID userId);
+
+    @Query("""
+            SELECT t.userId AS userId, min(t.executedAt) AS firstExecutedAt FROM Transaction t
+            WHERE t.security.ticker = :ticker
+            GROUP BY t.userId""")
+    List<FirstTrade> findFirstTradesByTicker(@Param("ticker") String ticker);
+
+    @Query("SELECT DISTINCT t.security.ticker FROM Transaction t WHERE t.userId = :userId")
+    List<String> findDistinctTickersByUserId(@Param("userId") UUID userId);
+
+    @Query("""
+            SELECT t.security.ticker AS ticker,
+                   sum(CASE WHEN t.type = pyc.lopatuxin.investment.entity.enums.TransactionType.BUY
+                            THEN t.quantity ELSE -t.quantity END) AS quantity
+            FROM Transaction t
+            WHERE t.userId = :userId AND t.executedAt < :before
+            GROUP BY t.security.ticker""")
+    List<NetQuantity> findNetQuantitiesBefore(@Param("userId") UUID userId, @Param("before") Instant before);
+
+    /**
+     * Trades from {@code since} in execution order, read through a cursor. Must be consumed inside a transaction
+     * and closed.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")})
+    @Query("""
+            SELECT t.security.ticker AS ticker, t.type AS type, t.quantity AS quantity, t.executedAt AS executedAt
+            FROM Transaction t
+            WHERE t.userId = :userId AND t.executedAt >= :since
+            ORDER BY t.executedAt""")
+    Stream<TradeDelta> streamTradesSince(@Param("userId") UUID userId, @Param("since") Instant since);
+
+    @Query("""
+            SELECT t.security.ticker AS ticker, t.type AS type, t.quantity AS quantity, t.price AS price,
+                   t.executedAt AS executedAt
+            FROM Transaction t
+            WHERE t.userId = :userId AND t.executedAt BETWEEN :from AND :to""")
+    List<StoredTrade> findTradesBetween(@Param("userId") UUID userId, @Param("from") Instant from,
+                                        @Param("to") Instant to);
+
+    interface NetQuantity {
+
+        String getTicker();
+
+        BigDecimal getQuantity();
+    }
+
+    interface TradeDelta {
+
+        String getTicker();
+
+        TransactionType getType();
+
+        BigDecimal getQuantity();
+
+        Instant getExecutedAt();
+    }
+
+    interface FirstTrade {
+
+        UUID getUserId();
+
+        Instant getFirstExecutedAt();
+    }
+
+    interface StoredTrade {
+
+        String getTicker();
+
+        TransactionType getType();
+
+        BigDecimal getQuantity();
+
+        BigDecimal getPrice();
+
+        Instant getExecutedAt();
+    }
 }
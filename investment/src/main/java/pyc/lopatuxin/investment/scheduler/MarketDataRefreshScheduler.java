@@ -4,9 +4,12 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import pyc.lopatuxin.investment.client.moex.MoexCallGovernor;
 import pyc.lopatuxin.investment.client.moex.MoexUnavailableException;
 import pyc.lopatuxin.investment.repository.PositionRepository;
-import pyc.lopatuxin.investment.service.market.DividendSyncService;
+import pyc.lopatuxin.investment.service.PortfolioValuationService;
+import pyc.lopatuxin.investment.service.market.DividendBatchSyncService;
+import pyc.lopatuxin.investment.service.market.HistorySyncService;
 import pyc.lopatuxin.investment.service.market.MarketDataService;
 
 import java.util.List;
@@ -18,7 +21,9 @@ public class MarketDataRefreshScheduler {
 
     private final PositionRepository positionRepository;
     private final MarketDataService marketDataService;
-    private final DividendSyncService dividendSyncService;
+    private final DividendBatchSyncService dividendBatchSyncService;
+    private final HistorySyncService historySyncService;
+    private final PortfolioValuationService portfolioValuationService;
 
     // every 5 min during MSK trading hours Mon-Fri
     @Scheduled(cron = "0 */5 10-18 * * MON-FRI", zone = "Europe/Moscow")
@@ -27,7 +32,7 @@ public class MarketDataRefreshScheduler {
         if (tickers.isEmpty()) return;
         log.debug("Refreshing snapshots for {} tickers", tickers.size());
         try {
-            marketDataService.getSnapshots(tickers);
+            MoexCallGovernor.runInBackground(() -> marketDataService.refreshSnapshots(tickers));
         } catch (MoexUnavailableException e) {
             log.warn("MOEX unavailable during snapshot refresh: {}", e.getMessage());
         } catch (Exception e) {
@@ -41,13 +46,8 @@ public class MarketDataRefreshScheduler {
         List<String> tickers = positionRepository.findActiveTickers();
         if (tickers.isEmpty()) return;
         log.info("Nightly refresh for {} tickers", tickers.size());
-        for (String ticker : tickers) {
-            try {
-                marketDataService.triggerHistoryAsync(ticker);
-                dividendSyncService.syncDividends(ticker);
-            } catch (Exception e) {
-                log.warn("Nightly refresh failed for {}: {}", ticker, e.getMessage());
-            }
-        }
+        historySyncService.syncDeltas(tickers);
+        dividendBatchSyncService.syncAll(tickers);
+        portfolioValuationService.extendThroughLatestClose();
     }
 }
@@ -3,39 +3,38 @@ package pyc.lopatuxin.investment.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import pyc.lopatuxin.investment.dto.request.SeriesResolution;
 import pyc.lopatuxin.investment.dto.response.PaidDividendDto;
 import pyc.lopatuxin.investment.dto.response.PortfolioValuePointDto;
 import pyc.lopatuxin.investment.dto.response.PricePointDto;
 import pyc.lopatuxin.investment.dto.response.SeriesResponseDto;
 import pyc.lopatuxin.investment.entity.Dividend;
-import pyc.lopatuxin.investment.entity.PriceHistory;
+import pyc.lopatuxin.investment.entity.PortfolioValuation;
 import pyc.lopatuxin.investment.entity.Position;
 import pyc.lopatuxin.investment.entity.enums.HistoryStatus;
 import pyc.lopatuxin.investment.repository.DividendRepository;
 import pyc.lopatuxin.investment.repository.PositionRepository;
-import pyc.lopatuxin.investment.repository.PriceHistoryRepository;
 import pyc.lopatuxin.investment.service.market.MarketDataService;
+import pyc.lopatuxin.investment.service.market.PriceSeries;
+import pyc.lopatuxin.investment.service.market.PriceSeriesStore;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.TreeMap;
 import java.util.UUID;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class AnalyticsService {
 
-    private final PriceHistoryRepository priceHistoryRepository;
+    private final PriceSeriesStore priceSeriesStore;
     private final PositionRepository positionRepository;
     private final MarketDataService marketDataService;
     private final DividendRepository dividendRepository;
+    private final PortfolioValuationService portfolioValuationService;
 
     public List<PaidDividendDto> securityDividendsHistory(String ticker) {
         return dividendRepository.findPaidByTickerWithSecurity(ticker).stream()
@@ -43,50 +42,118 @@ public class AnalyticsService {
                 .toList();
     }
 
-    public SeriesResponseDto<PortfolioValuePointDto> portfolioValueHistory(UUID userId, LocalDate from, LocalDate to) {
-        List<Position> positions = positionRepository.findByUserIdWithSecurity(userId);
-        if (positions.isEmpty()) {
-            return new SeriesResponseDto<>(List.of(), false, List.of());
+    /**
+     * Daily values, or the last value of each week/month, capped at {@code maxPoints} by LTTB when set.
+     */
+    public SeriesResponseDto<PortfolioValuePointDto> portfolioValueHistory(UUID userId, LocalDate from, LocalDate to,
+                                                                           SeriesResolution resolution,
+                                                                           Integer maxPoints) {
+        List<String> pendingTickers = pendingPortfolioTickers(userId);
+        List<PortfolioValuePointDto> series = new ArrayList<>();
+        LastPerBucket bucketer = new LastPerBucket(SeriesSampling.resolve(resolution, from, to, maxPoints), series::add);
+        for (PortfolioValuation v : portfolioValuationService.findRange(userId, from, to)) {
+            bucketer.accept(v.getValuationDate(), v.getValue());
         }
+        bucketer.finish();
+        series = SeriesSampling.lttb(series, maxPoints,
+                p -> p.getDate().toEpochDay(), p -> p.getValue().doubleValue());
+        return new SeriesResponseDto<>(series, !pendingTickers.isEmpty(), pendingTickers);
+    }
 
-        List<String> pendingTickers = collectPendingAndTrigger(positions);
+    /**
+     * Opaque version of everything {@link #portfolioValueHistory} reads for the user, one primary-key lookup.
+     */
+    public String portfolioVersion(UUID userId) {
+        return portfolioValuationService.version(userId);
+    }
 
-        Map<String, BigDecimal> quantitiesByTicker = positions.stream()
-                .filter(p -> !pendingTickers.contains(p.getSecurity().getTicker()))
-                .collect(Collectors.toMap(
-                        p -> p.getSecurity().getTicker(),
-                        Position::getQuantity
-                ));
+    /**
+     * Opaque version of the ticker's stored history, one primary-key lookup.
+     */
+    public String priceHistoryVersion(String ticker) {
+        return priceSeriesStore.version(ticker);
+    }
 
-        if (quantitiesByTicker.isEmpty()) {
-            return new SeriesResponseDto<>(List.of(), !pendingTickers.isEmpty(), pendingTickers);
-        }
+    /**
+     * Tickers of the user's positions whose history is still loading; their loads are triggered.
+     */
+    public List<String> pendingPortfolioTickers(UUID userId) {
+        return collectPendingAndTrigger(positionRepository.findByUserIdWithSecurity(userId));
+    }
 
-        Set<String> readyTickers = quantitiesByTicker.keySet();
-        List<PriceHistory> history = priceHistoryRepository
-                .findByTickerInAndTradeDateBetweenOrderByTradeDateAsc(readyTickers, from, to);
-        if (history.isEmpty()) {
-            return new SeriesResponseDto<>(List.of(), !pendingTickers.isEmpty(), pendingTickers);
+    /**
+     * Streaming form of {@link #portfolioValueHistory}: points go to {@code sink} page by page as valuations are
+     * read (see {@link PortfolioValuationService#streamRange}). LTTB needs the whole series, so {@code maxPoints}
+     * only steers {@code AUTO}.
+     */
+    public void streamPortfolioValueHistory(UUID userId, LocalDate from, LocalDate to, SeriesResolution resolution,
+                                            Integer maxPoints, Consumer<PortfolioValuePointDto> sink) {
+        LastPerBucket bucketer = new LastPerBucket(SeriesSampling.resolve(resolution, from, to, maxPoints), sink);
+        portfolioValuationService.streamRange(userId, from, to,
+                v -> bucketer.accept(v.getValuationDate(), v.getValue()));
+        bucketer.finish();
+    }
+
+    /**
+     * Daily candles, or weekly/monthly OHLC bars built in one pass over the cached series; with
+     * {@code maxPoints} the bars are further thinned by LTTB on the close.
+     */
+    public SeriesResponseDto<PricePointDto> securityPriceHistory(String ticker, LocalDate from, LocalDate to,
+                                                                 SeriesResolution resolution, Integer maxPoints) {
+        if (isPendingAndTrigger(ticker)) {
+            return new SeriesResponseDto<>(List.of(), true, List.of(ticker));
         }
+        List<PricePointDto> series = new ArrayList<>();
+        streamSecurityPriceHistory(ticker, from, to, resolution, maxPoints, series::add);
+        series = SeriesSampling.lttb(series, maxPoints,
+                p -> p.getDate().toEpochDay(), p -> p.getClose().doubleValue());
+        return new SeriesResponseDto<>(series, false, List.of());
+    }
 
-        Map<LocalDate, Map<String, BigDecimal>> closePriceByDate = groupCloseByDate(history);
-        List<LocalDate> sortedDates = closePriceByDate.keySet().stream().sorted().toList();
+    /**
+     * Whether the ticker's history is still loading; if so, its load is triggered.
+     */
+    public boolean isPendingAndTrigger(String ticker) {
+        if (isHistoryPending(ticker)) {
+            marketDataService.triggerHistoryAsync(ticker);
+            return true;
+        }
+        return false;
+    }
 
-        Map<String, BigDecimal> lastKnownClose = new HashMap<>();
-        List<PortfolioValuePointDto> series = buildValuePoints(quantitiesByTicker, sortedDates, closePriceByDate, lastKnownClose);
-        return new SeriesResponseDto<>(series, !pendingTickers.isEmpty(), pendingTickers);
+    /**
+     * Streaming form of {@link #securityPriceHistory}: bars go to {@code sink} one at a time, read straight from
+     * the cached columns. As with portfolio values, {@code maxPoints} only steers {@code AUTO}.
+     */
+    public void streamSecurityPriceHistory(String ticker, LocalDate from, LocalDate to, SeriesResolution resolution,
+                                           Integer maxPoints, Consumer<PricePointDto> sink) {
+        PriceSeries history = priceSeriesStore.get(ticker);
+        int startIndex = history.indexAtOrAfter(from);
+        int end = history.indexAtOrBefore(to);
+        forEachCandle(history, startIndex, end, SeriesSampling.resolve(resolution, from, to, maxPoints), sink);
     }
 
-    public SeriesResponseDto<PricePointDto> securityPriceHistory(String ticker, LocalDate from, LocalDate to) {
-        boolean isPending = isHistoryPending(ticker);
-        if (isPending) {
-            marketDataService.triggerHistoryAsync(ticker);
-            return new SeriesResponseDto<>(List.of(), true, List.of(ticker));
+    /**
+     * OHLC bars dated by their first trading day: first open, max high, min low, last close, summed volume. At
+     * DAY resolution every candle is its own bar.
+     */
+    private void forEachCandle(PriceSeries history, int startIndex, int end, SeriesResolution bucket,
+                               Consumer<PricePointDto> sink) {
+        int i = startIndex;
+        while (i <= end) {
+            LocalDate barStart = SeriesSampling.bucketStart(history.date(i), bucket);
+            PricePointDto bar = toPricePointDto(history, i);
+            for (i++; i <= end && SeriesSampling.bucketStart(history.date(i), bucket).equals(barStart); i++) {
+                bar.setClose(history.close(i));
+                bar.setHigh(bar.getHigh().max(history.high(i)));
+                bar.setLow(bar.getLow().min(history.low(i)));
+                Long volume = history.volume(i);
+                if (volume != null) {
+                    bar.setVolume(bar.getVolume() != null ? bar.getVolume() + volume : volume);
+                }
+            }
+            sink.accept(bar);
         }
-        List<PriceHistory> history = priceHistoryRepository
-                .findByTickerAndTradeDateBetweenOrderByTradeDateAsc(ticker, from, to);
-        List<PricePointDto> series = history.stream().map(this::toPricePointDto).toList();
-        return new SeriesResponseDto<>(series, false, List.of());
     }
 
     private boolean isHistoryPending(String ticker) {
@@ -105,54 +172,6 @@ public class AnalyticsService {
         return pending;
     }
 
-    private Map<LocalDate, Map<String, BigDecimal>> groupCloseByDate(List<PriceHistory> history) {
-        Map<LocalDate, Map<String, BigDecimal>> result = new TreeMap<>();
-        for (PriceHistory ph : history) {
-            result.computeIfAbsent(ph.getTradeDate(), k -> new HashMap<>())
-                    .put(ph.getTicker(), ph.getClose());
-        }
-        return result;
-    }
-
-    private List<PortfolioValuePointDto> buildValuePoints(
-            Map<String, BigDecimal> quantitiesByTicker,
-            List<LocalDate> sortedDates,
-            Map<LocalDate, Map<String, BigDecimal>> closePriceByDate,
-            Map<String, BigDecimal> lastKnownClose) {
-
-        List<PortfolioValuePointDto> points = new ArrayList<>();
-        for (LocalDate date : sortedDates) {
-            updateLastKnownClose(lastKnownClose, closePriceByDate.get(date));
-            BigDecimal dayValue = calcDayValue(quantitiesByTicker, lastKnownClose);
-            if (dayValue.compareTo(BigDecimal.ZERO) > 0) {
-                points.add(PortfolioValuePointDto.builder().date(date).value(dayValue).build());
-            }
-        }
-        return points;
-    }
-
-    private void updateLastKnownClose(Map<String, BigDecimal> lastKnownClose, Map<String, BigDecimal> dayPrices) {
-        if (dayPrices != null) {
-            lastKnownClose.putAll(dayPrices);
-        }
-    }
-
-    private BigDecimal calcDayValue(Map<String, BigDecimal> quantities, Map<String, BigDecimal> lastKnownClose) {
-        BigDecimal total = BigDecimal.ZERO;
-        for (Map.Entry<String, BigDecimal> entry : quantities.entrySet()) {
-            BigDecimal qty = entry.getValue();
-            if (qty.compareTo(BigDecimal.ZERO) <= 0) {
-                continue;
-            }
-            BigDecimal price = lastKnownClose.get(entry.getKey());
-            if (price == null) {
-                continue;
-            }
-            total = total.add(qty.multiply(price));
-        }
-        return total;
-    }
-
     private PaidDividendDto toPaidDividendDto(Dividend d) {
         return PaidDividendDto.builder()
                 .ticker(d.getSecurity().getTicker())
@@ -163,14 +182,46 @@ public class AnalyticsService {
                 .build();
     }
 
-    private PricePointDto toPricePointDto(PriceHistory ph) {
+    private PricePointDto toPricePointDto(PriceSeries history, int i) {
         return PricePointDto.builder()
-                .date(ph.getTradeDate())
-                .open(ph.getOpen())
-                .close(ph.getClose())
-                .high(ph.getHigh())
-                .low(ph.getLow())
-                .volume(ph.getVolume())
+                .date(history.date(i))
+                .open(history.open(i))
+                .close(history.close(i))
+                .high(history.high(i))
+                .low(history.low(i))
+                .volume(history.volume(i))
                 .build();
     }
+
+    /**
+     * Emits the last value of each bucket once the next bucket starts, holding a single point.
+     */
+    private static final class LastPerBucket {
+
+        private final SeriesResolution bucket;
+        private final Consumer<PortfolioValuePointDto> sink;
+        private LocalDate currentBucket;
+        private PortfolioValuePointDto last;
+
+        LastPerBucket(SeriesResolution bucket, Consumer<PortfolioValuePointDto> sink) {
+            this.bucket = bucket;
+            this.sink = sink;
+        }
+
+        void accept(LocalDate date, BigDecimal value) {
+            LocalDate start = SeriesSampling.bucketStart(date, bucket);
+            if (last != null && !start.equals(currentBucket)) {
+                sink.accept(last);
+            }
+            currentBucket = start;
+            last = PortfolioValuePointDto.builder().date(date).value(value).build();
+        }
+
+        void finish() {
+            if (last != null) {
+                sink.accept(last);
+                last = null;
+            }
+        }
+    }
 }
@@ -0,0 +1,143 @@
+package pyc.lopatuxin.investment.service;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Monte Carlo paths of a portfolio value under lognormal monthly returns, reduced to percentile bands.
+ * <p>
+ * Paths are simulated in fixed-size chunks on the fork-join pool passed in, not the common one, so projections
+ * neither starve nor queue behind other parallel work in the JVM. Each chunk draws from its own
+ * {@link SplittableRandom}, split from the seed before the parallel section, so a seed reproduces the same bands
+ * whatever the parallelism. The simulation advances all paths one month at a time and reduces that month to its
+ * percentiles before moving on, so memory stays at two {@code double[paths]} rows — the current values and a
+ * scratch copy reordered in place by the quickselect — whatever the horizon.
+ */
+final class MonteCarloSimulator {
+
+    static final double[] PERCENTILES = {0.05, 0.25, 0.50, 0.75, 0.95};
+    static final int CHUNK_PATHS = 512;
+
+    private MonteCarloSimulator() {
+    }
+
+    /**
+     * Each month a path grows by a lognormal factor whose mean is {@code 1 + monthlyReturn}, then receives the
+     * deposit and pays the withdrawal, in the same order as the deterministic series.
+     *
+     * @return values indexed {@code [percentile][month - 1]}, percentiles as in {@link #PERCENTILES}
+     */
+    static double[][] simulate(ForkJoinPool pool, double startValue, double monthlyReturn, double monthlyVolatility,
+                               double monthlyDeposit, double monthlyWithdrawalRate,
+                               int months, int paths, long seed) {
+        double[] current = new double[paths];
+        double[] scratch = new double[paths];
+        Arrays.fill(current, startValue);
+        double drift = Math.log1p(monthlyReturn) - 0.5 * monthlyVolatility * monthlyVolatility;
+
+        int chunks = (paths + CHUNK_PATHS - 1) / CHUNK_PATHS;
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] randoms = new SplittableRandom[chunks];
+        for (int c = 0; c < chunks; c++) {
+            randoms[c] = root.split();
+        }
+
+        double[][] bands = new double[PERCENTILES.length][months];
+        // a parallel stream started from a task of the pool forks into that pool
+        pool.submit(() -> {
+            for (int m = 0; m < months; m++) {
+                advanceMonth(current, drift, monthlyVolatility, monthlyDeposit, monthlyWithdrawalRate, randoms);
+                System.arraycopy(current, 0, scratch, 0, paths);
+                double[] row = percentiles(scratch);
+                for (int k = 0; k < PERCENTILES.length; k++) {
+                    bands[k][m] = row[k];
+                }
+            }
+        }).join();
+        return bands;
+    }
+
+    /**
+     * Moves every path one month forward. A chunk always draws from its own random in path order, so the draws
+     * of a path do not depend on which worker ran the chunk.
+     */
+    private static void advanceMonth(double[] current, double drift, double monthlyVolatility,
+                                     double monthlyDeposit, double monthlyWithdrawalRate,
+                                     SplittableRandom[] randoms) {
+        IntStream.range(0, randoms.length).parallel().forEach(c -> {
+            int from = c * CHUNK_PATHS;
+            int to = Math.min(from + CHUNK_PATHS, current.length);
+            SplittableRandom random = randoms[c];
+            for (int p = from; p < to; p++) {
+                double value = current[p] * Math.exp(drift + monthlyVolatility * random.nextGaussian())
+                        + monthlyDeposit;
+                current[p] = value - value * monthlyWithdrawalRate;
+            }
+        });
+    }
+
+    /**
+     * {@link #PERCENTILES} of the values, interpolating linearly between the closest ranks. The array is reordered
+     * in place: each rank is found by quickselect to the right of the previous one, so five percentiles cost a few
+     * linear passes instead of a full sort.
+     */
+    static double[] percentiles(double[] values) {
+        int n = values.length;
+        double[] result = new double[PERCENTILES.length];
+        int from = 0;
+        for (int k = 0; k < PERCENTILES.length; k++) {
+            double rank = PERCENTILES[k] * (n - 1);
+            int lower = (int) rank;
+            select(values, from, n - 1, lower);
+            double lowerValue = values[lower];
+            double upperValue = lowerValue;
+            if (rank > lower) {
+                select(values, lower + 1, n - 1, lower + 1);
+                upperValue = values[lower + 1];
+            }
+            result[k] = lowerValue + (rank - lower) * (upperValue - lowerValue);
+            from = lower;
+        }
+        return result;
+    }
+
+    /**
+     * Moves the k-th smallest element of {@code a[left..right]} to index k, smaller ones to its left and larger
+     * ones to its right.
+     */
+    private static void select(double[] a, int left, int right, int k) {
+        while (left < right) {
+            double pivot = medianOfThree(a[left], a[(left + right) >>> 1], a[right]);
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (a[i] < pivot) {
+                    i++;
+                }
+                while (a[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    double tmp = a[i];
+                    a[i] = a[j];
+                    a[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static double medianOfThree(double a, double b, double c) {
+        return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+    }
+}
@@ -1,15 +1,22 @@
 package pyc.lopatuxin.investment.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import jakarta.persistence.EntityNotFoundException;
-import lombok.RequiredArgsConstructor;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import pyc.lopatuxin.investment.config.MoexProperties;
 import pyc.lopatuxin.investment.dto.response.PortfolioOverviewDto;
 import pyc.lopatuxin.investment.dto.response.PortfolioPageResponseDto;
 import pyc.lopatuxin.investment.dto.response.PositionResponseDto;
 import pyc.lopatuxin.investment.dto.response.UpcomingDividendDto;
 import pyc.lopatuxin.investment.entity.Dividend;
 import pyc.lopatuxin.investment.entity.Position;
+import pyc.lopatuxin.investment.event.PortfolioChangedEvent;
 import pyc.lopatuxin.investment.mapper.PositionMapper;
 import pyc.lopatuxin.investment.repository.DividendRepository;
 import pyc.lopatuxin.investment.repository.PositionRepository;
@@ -18,6 +25,7 @@ import pyc.lopatuxin.investment.service.market.dto.SnapshotResult;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
@@ -25,17 +33,78 @@ import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
+/**
+ * Portfolio page projection. Pages are cached per user under the user's portfolio version, which is kept in
+ * {@code portfolio_versions} and moved in the same transaction as a trade or a dividend change of a held ticker, so
+ * every instance sees it. A cached page also remembers the quote versions of its own tickers and is rebuilt once one
+ * of them moves; quotes of other tickers do not touch it. Entries expire after the snapshot TTL, because a page that
+ * is never rebuilt never asks {@code QuoteCache} to revalidate.
+ * <p>
+ * Building a page is not transactional: each query runs on its own, and no connection is held while quotes are
+ * fetched from MOEX.
+ */
 @Service
-@RequiredArgsConstructor
 public class PortfolioService {
 
     private final PositionRepository positionRepository;
     private final PositionMapper positionMapper;
     private final MarketDataService marketDataService;
     private final DividendRepository dividendRepository;
+    private final Cache<PageKey, CachedPage> pages;
+    private final Timer rebuildTimer;
+
+    public PortfolioService(PositionRepository positionRepository,
+                            PositionMapper positionMapper,
+                            MarketDataService marketDataService,
+                            DividendRepository dividendRepository,
+                            MoexProperties moexProperties,
+                            MeterRegistry meterRegistry) {
+        this.positionRepository = positionRepository;
+        this.positionMapper = positionMapper;
+        this.marketDataService = marketDataService;
+        this.dividendRepository = dividendRepository;
+        this.pages = Caffeine.newBuilder()
+                .maximumSize(moexProperties.getPortfolioPageCacheMaxSize())
+                .expireAfterWrite(Duration.ofMinutes(moexProperties.getSnapshotTtlMinutes()))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, pages, "portfolioPages");
+        this.rebuildTimer = Timer.builder("investment.portfolio.page.rebuild")
+                .description("Time to build a portfolio page on a cache miss")
+                .register(meterRegistry);
+    }
 
-    @Transactional(readOnly = true)
     public PortfolioPageResponseDto getPortfolioPage(UUID userId) {
+        PageKey key = new PageKey(userId, positionRepository.findPortfolioVersion(userId).orElse(0L));
+        CachedPage cached = pages.getIfPresent(key);
+        if (cached != null
+                && !cached.quoteVersions().equals(marketDataService.quoteVersions(cached.quoteVersions().keySet()))) {
+            pages.asMap().remove(key, cached);
+            cached = null;
+        }
+        return cached != null ? cached.page() : pages.get(key, k -> build(k.userId())).page();
+    }
+
+    /**
+     * Moves the user's portfolio version inside the publishing transaction. Pages under the old version stay
+     * unreachable until size or age evicts them.
+     */
+    @EventListener
+    @Transactional
+    public void onPortfolioChanged(PortfolioChangedEvent event) {
+        positionRepository.incrementPortfolioVersion(event.userId());
+    }
+
+    // quote versions are read after the build, which is what loaded the quotes it shows into memory
+    private CachedPage build(UUID userId) {
+        PortfolioPageResponseDto page = rebuildTimer.record(() -> buildPortfolioPage(userId));
+        Set<String> tickers = page.getPositions().stream()
+                .map(PositionResponseDto::getTicker)
+                .collect(Collectors.toSet());
+        return new CachedPage(marketDataService.quoteVersions(tickers), page);
+    }
+
+    private PortfolioPageResponseDto buildPortfolioPage(UUID userId) {
         List<Position> positions = positionRepository.findByUserIdWithSecurity(userId);
         if (positions.isEmpty()) {
             return PortfolioPageResponseDto.builder()
@@ -177,4 +246,10 @@ public class PortfolioService {
                 .dividends12m(dividends12m)
                 .build();
     }
+
+    private record PageKey(UUID userId, long version) {
+    }
+
+    private record CachedPage(Map<String, String> quoteVersions, PortfolioPageResponseDto page) {
+    }
 }
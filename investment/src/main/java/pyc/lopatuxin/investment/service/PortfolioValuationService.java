@@ -0,0 +1,329 @@
+package pyc.lopatuxin.investment.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.domain.Limit;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import pyc.lopatuxin.investment.entity.PortfolioValuation;
+import pyc.lopatuxin.investment.entity.enums.TransactionType;
+import pyc.lopatuxin.investment.event.TradesChangedEvent;
+import pyc.lopatuxin.investment.repository.MarketDataBulkWriter;
+import pyc.lopatuxin.investment.repository.PortfolioValuationRepository;
+import pyc.lopatuxin.investment.repository.PortfolioValuationRepository.ValuationPoint;
+import pyc.lopatuxin.investment.repository.PriceHistoryRepository;
+import pyc.lopatuxin.investment.repository.PriceHistoryRepository.ClosePrice;
+import pyc.lopatuxin.investment.repository.TransactionRepository;
+import pyc.lopatuxin.investment.repository.TransactionRepository.FirstTrade;
+import pyc.lopatuxin.investment.repository.TransactionRepository.NetQuantity;
+import pyc.lopatuxin.investment.repository.TransactionRepository.TradeDelta;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Maintains {@code portfolio_valuations}: one row per user and trading day with the value of the quantities held
+ * that day at the last known close. Rows are recomputed from the earliest affected date onward — by transaction
+ * writes, by a first history load for a ticker and by the nightly close — so reads are a single range scan.
+ */
+@Slf4j
+@Service
+public class PortfolioValuationService {
+
+    static final int WRITE_BATCH = 500;
+    static final int STREAM_PAGE = 1000;
+
+    private static final ZoneId MSK = ZoneId.of("Europe/Moscow");
+
+    private final PortfolioValuationRepository portfolioValuationRepository;
+    private final TransactionRepository transactionRepository;
+    private final PriceHistoryRepository priceHistoryRepository;
+    private final MarketDataBulkWriter marketDataBulkWriter;
+    private final PortfolioValuationService self;
+
+    public PortfolioValuationService(PortfolioValuationRepository portfolioValuationRepository,
+                                     TransactionRepository transactionRepository,
+                                     PriceHistoryRepository priceHistoryRepository,
+                                     MarketDataBulkWriter marketDataBulkWriter,
+                                     @Lazy PortfolioValuationService self) {
+        this.portfolioValuationRepository = portfolioValuationRepository;
+        this.transactionRepository = transactionRepository;
+        this.priceHistoryRepository = priceHistoryRepository;
+        this.marketDataBulkWriter = marketDataBulkWriter;
+        this.self = self;
+    }
+
+    @Transactional(readOnly = true)
+    public List<PortfolioValuation> findRange(UUID userId, LocalDate from, LocalDate to) {
+        return portfolioValuationRepository.findByUserIdAndValuationDateBetweenOrderByValuationDateAsc(userId, from, to);
+    }
+
+    /**
+     * Changes with every committed recompute of the user's valuations, which covers trades, first history loads
+     * and the nightly close. Read from the database, so it holds across restarts and instances.
+     */
+    public String version(UUID userId) {
+        return "v" + portfolioValuationRepository.findVersion(userId).orElse(0L);
+    }
+
+    /**
+     * Passes the range to {@code sink} in date order. Rows are read in keyset pages of {@link #STREAM_PAGE} days,
+     * each in its own short read, so no connection or cursor stays open while the sink writes to a slow client.
+     */
+    public void streamRange(UUID userId, LocalDate from, LocalDate to, Consumer<ValuationPoint> sink) {
+        LocalDate next = from;
+        while (!next.isAfter(to)) {
+            List<ValuationPoint> page = portfolioValuationRepository
+                    .findPointsByUserIdAndValuationDateBetweenOrderByValuationDateAsc(userId, next, to,
+                            Limit.of(STREAM_PAGE));
+            page.forEach(sink);
+            if (page.size() < STREAM_PAGE) {
+                return;
+            }
+            // one row per user and day, so the next page starts the day after the last row
+            next = page.getLast().getValuationDate().plusDays(1);
+        }
+    }
+
+    /**
+     * Replaces the user's valuations from {@code from} through today. Returns the number of rows written.
+     * <p>
+     * A single pass merge-joins the user's trades with the closes of the tickers they traded, both streamed in date
+     * order, so memory is a slot per ticker plus one write batch whatever the length of the range.
+     */
+    @Transactional
+    public int recomputeFrom(UUID userId, LocalDate from) {
+        portfolioValuationRepository.incrementVersion(userId);
+        portfolioValuationRepository.deleteFrom(userId, from);
+        LocalDate to = LocalDate.now(MSK);
+        List<String> tickers = transactionRepository.findDistinctTickersByUserId(userId);
+        if (tickers.isEmpty() || from.isAfter(to)) {
+            return 0;
+        }
+
+        // quantities and closes as of the start of `from`
+        Holdings holdings = new Holdings(tickers);
+        Instant since = from.atStartOfDay(MSK).toInstant();
+        for (NetQuantity net : transactionRepository.findNetQuantitiesBefore(userId, since)) {
+            holdings.addQuantity(net.getTicker(), net.getQuantity());
+        }
+        for (ClosePrice close : priceHistoryRepository.findLastClosesBefore(tickers, from)) {
+            holdings.setClose(close.getTicker(), close.getClose());
+        }
+
+        List<PortfolioValuation> batch = new ArrayList<>(WRITE_BATCH);
+        int written = 0;
+        try (Stream<TradeDelta> tradeStream = transactionRepository.streamTradesSince(userId, since);
+             Stream<ClosePrice> closeStream = priceHistoryRepository.streamClosesBetween(tickers, from, to)) {
+            Iterator<TradeDelta> trades = tradeStream.iterator();
+            TradeDelta nextTrade = trades.hasNext() ? trades.next() : null;
+            LocalDate day = null;
+            for (Iterator<ClosePrice> closes = closeStream.iterator(); closes.hasNext(); ) {
+                ClosePrice close = closes.next();
+                if (!close.getTradeDate().equals(day)) {
+                    if (day != null) {
+                        written += append(batch, userId, day, holdings);
+                    }
+                    day = close.getTradeDate();
+                    // trades on weekends or holidays take effect on the next trading day
+                    while (nextTrade != null && !toTradeDate(nextTrade.getExecutedAt()).isAfter(day)) {
+                        holdings.apply(nextTrade);
+                        nextTrade = trades.hasNext() ? trades.next() : null;
+                    }
+                }
+                holdings.setClose(close.getTicker(), close.getClose());
+            }
+            if (day != null) {
+                written += append(batch, userId, day, holdings);
+            }
+        }
+        if (!batch.isEmpty()) {
+            marketDataBulkWriter.upsertValuations(batch);
+        }
+        log.debug("Valuations recomputed: userId={}, from={}, rows={}", userId, from, written);
+        return written;
+    }
+
+    /**
+     * Recomputes from the trade date of the earliest trade created or deleted. Runs after the writing transaction
+     * commits, so a trade never waits for the series; on failure the series stays stale until the next change or
+     * the nightly extension.
+     */
+    @Async("valuationExecutor")
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTradesChanged(TradesChangedEvent event) {
+        try {
+            self.recomputeFrom(event.userId(), toTradeDate(event.since()));
+        } catch (Exception e) {
+            log.warn("Valuation recompute failed for userId={}: {}", event.userId(), e.getMessage());
+        }
+    }
+
+    /**
+     * A ticker's history was loaded for the first time: every holder gets values from their first trade in it.
+     */
+    public void onHistoryLoaded(String ticker) {
+        for (FirstTrade trade : transactionRepository.findFirstTradesByTicker(ticker)) {
+            self.recomputeFrom(trade.getUserId(), toTradeDate(trade.getFirstExecutedAt()));
+        }
+    }
+
+    /**
+     * Nightly extension: each user is recomputed from their last stored day, which also picks up that day's
+     * final close. Returns the number of users processed.
+     */
+    public int extendThroughLatestClose() {
+        int processed = 0;
+        for (UUID userId : transactionRepository.findDistinctUserIds()) {
+            Optional<LocalDate> from = portfolioValuationRepository.findLastValuationDate(userId)
+                    .or(() -> transactionRepository.findFirstExecutedAt(userId).map(this::toTradeDate));
+            if (from.isEmpty()) {
+                continue;
+            }
+            try {
+                self.recomputeFrom(userId, from.get());
+                processed++;
+            } catch (Exception e) {
+                log.warn("Valuation extension failed for userId={}: {}", userId, e.getMessage());
+            }
+        }
+        log.info("Valuations extended for {} users", processed);
+        return processed;
+    }
+
+    /**
+     * Users who traded before the valuation table existed get their series built once on startup, in the background
+     * so a long backfill does not hold up readiness.
+     */
+    @Async("valuationExecutor")
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillMissing() {
+        int built = 0;
+        for (UUID userId : transactionRepository.findDistinctUserIds()) {
+            if (portfolioValuationRepository.findLastValuationDate(userId).isPresent()) {
+                continue;
+            }
+            Optional<LocalDate> firstTrade = transactionRepository.findFirstExecutedAt(userId).map(this::toTradeDate);
+            if (firstTrade.isPresent()) {
+                self.recomputeFrom(userId, firstTrade.get());
+                built++;
+            }
+        }
+        if (built > 0) {
+            log.info("Valuation backfill: built series for {} users", built);
+        }
+    }
+
+    private LocalDate toTradeDate(Instant executedAt) {
+        return executedAt.atZone(MSK).toLocalDate();
+    }
+
+    /**
+     * Adds the day's value to the batch and writes the batch once full. Returns 1 if a row was added.
+     */
+    private int append(List<PortfolioValuation> batch, UUID userId, LocalDate day, Holdings holdings) {
+        if (holdings.value().signum() <= 0) {
+            return 0;
+        }
+        batch.add(PortfolioValuation.builder()
+                .userId(userId)
+                .valuationDate(day)
+                .value(holdings.value().setScale(2, RoundingMode.HALF_UP))
+                .build());
+        if (batch.size() == WRITE_BATCH) {
+            marketDataBulkWriter.upsertValuations(batch);
+            batch.clear();
+        }
+        return 1;
+    }
+
+    /**
+     * Running quantity and forward-filled close per ticker. The portfolio value is adjusted by the changed
+     * ticker's contribution on every update, so reading it per day does not sum over all tickers.
+     * <p>
+     * Slots are sized for the tickers known up front and grow for any other: the trade and close streams are read
+     * after the ticker list, so a trade committed in between may bring a ticker the list does not have.
+     */
+    private static final class Holdings {
+
+        private final Map<String, Integer> slots = new HashMap<>();
+        private BigDecimal[] quantity;
+        private BigDecimal[] close;
+        private BigDecimal[] contribution;
+        private BigDecimal value = BigDecimal.ZERO;
+
+        Holdings(List<String> tickers) {
+            int capacity = Math.max(tickers.size(), 1);
+            quantity = new BigDecimal[capacity];
+            close = new BigDecimal[capacity];
+            contribution = new BigDecimal[capacity];
+            for (String ticker : tickers) {
+                slot(ticker);
+            }
+        }
+
+        void apply(TradeDelta trade) {
+            BigDecimal delta = trade.getType() == TransactionType.BUY ? trade.getQuantity() : trade.getQuantity().negate();
+            addQuantity(trade.getTicker(), delta);
+        }
+
+        void addQuantity(String ticker, BigDecimal delta) {
+            int slot = slot(ticker);
+            quantity[slot] = quantity[slot].add(delta);
+            revalue(slot);
+        }
+
+        void setClose(String ticker, BigDecimal price) {
+            int slot = slot(ticker);
+            close[slot] = price;
+            revalue(slot);
+        }
+
+        BigDecimal value() {
+            return value;
+        }
+
+        private void revalue(int slot) {
+            BigDecimal next = close[slot] == null || quantity[slot].signum() <= 0
+                    ? BigDecimal.ZERO
+                    : quantity[slot].multiply(close[slot]);
+            value = value.add(next).subtract(contribution[slot]);
+            contribution[slot] = next;
+        }
+
+        private int slot(String ticker) {
+            Integer existing = slots.get(ticker);
+            if (existing != null) {
+                return existing;
+            }
+            int slot = slots.size();
+            if (slot == quantity.length) {
+                int capacity = quantity.length * 2;
+                quantity = Arrays.copyOf(quantity, capacity);
+                close = Arrays.copyOf(close, capacity);
+                contribution = Arrays.copyOf(contribution, capacity);
+            }
+            quantity[slot] = BigDecimal.ZERO;
+            contribution[slot] = BigDecimal.ZERO;
+            slots.put(ticker, slot);
+            return slot;
+        }
+    }
+}
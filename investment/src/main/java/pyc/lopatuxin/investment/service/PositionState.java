@@ -0,0 +1,55 @@
+package pyc.lopatuxin.investment.service;
+
+import pyc.lopatuxin.investment.entity.Transaction;
+import pyc.lopatuxin.investment.entity.enums.TransactionType;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Average-cost position after a prefix of a ticker's trades. The cost is kept unrounded, so applying trades one at a
+ * time from a stored state gives exactly what a replay of the whole history gives; it is rounded to kopecks only when
+ * written to {@code Position}.
+ */
+record PositionState(BigDecimal quantity, BigDecimal cost) {
+
+    static final PositionState EMPTY = new PositionState(BigDecimal.ZERO, BigDecimal.ZERO);
+
+    /**
+     * The state stored on the trade by the last replay, or {@code null} for trades written before states were kept.
+     */
+    static PositionState after(Transaction transaction) {
+        if (transaction.getPositionQuantity() == null || transaction.getPositionCost() == null) {
+            return null;
+        }
+        return new PositionState(transaction.getPositionQuantity(), transaction.getPositionCost());
+    }
+
+    PositionState apply(Transaction transaction) {
+        BigDecimal tradeQuantity = transaction.getQuantity();
+        if (transaction.getType() == TransactionType.BUY) {
+            return new PositionState(quantity.add(tradeQuantity), cost.add(tradeQuantity.multiply(transaction.getPrice())));
+        }
+        if (quantity.compareTo(tradeQuantity) < 0) {
+            throw new IllegalStateException(
+                    "Insufficient shares for SELL: ticker=" + transaction.getSecurity().getTicker() +
+                    ", tried to sell " + tradeQuantity + " but only " + quantity + " available");
+        }
+        BigDecimal left = quantity.subtract(tradeQuantity);
+        if (left.signum() == 0) {
+            // the rounding residue of the average cost goes away with the position
+            return EMPTY;
+        }
+        BigDecimal avgCost = cost.divide(quantity, 8, RoundingMode.HALF_UP);
+        return new PositionState(left, cost.subtract(avgCost.multiply(tradeQuantity)));
+    }
+
+    void storeOn(Transaction transaction) {
+        transaction.setPositionQuantity(quantity);
+        transaction.setPositionCost(cost);
+    }
+
+    boolean isEmpty() {
+        return quantity.signum() == 0;
+    }
+}
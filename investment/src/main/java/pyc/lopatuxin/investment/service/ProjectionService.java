@@ -3,17 +3,17 @@ package pyc.lopatuxin.investment.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import pyc.lopatuxin.investment.dto.request.ProjectionMode;
 import pyc.lopatuxin.investment.dto.request.ProjectionRequestDto;
+import pyc.lopatuxin.investment.dto.response.ProjectionBandDto;
 import pyc.lopatuxin.investment.dto.response.ProjectionPointDto;
 import pyc.lopatuxin.investment.dto.response.ProjectionResultDto;
-import pyc.lopatuxin.investment.entity.Dividend;
 import pyc.lopatuxin.investment.entity.Position;
-import pyc.lopatuxin.investment.entity.PriceHistory;
-import pyc.lopatuxin.investment.entity.enums.DividendStatus;
-import pyc.lopatuxin.investment.repository.DividendRepository;
 import pyc.lopatuxin.investment.repository.PositionRepository;
-import pyc.lopatuxin.investment.repository.PriceHistoryRepository;
+import pyc.lopatuxin.investment.repository.ProjectionInputLoader;
+import pyc.lopatuxin.investment.repository.ProjectionInputs;
+import pyc.lopatuxin.investment.repository.ProjectionInputs.PaidDividend;
+import pyc.lopatuxin.investment.repository.ProjectionInputs.PriceRange;
 import pyc.lopatuxin.investment.service.market.MarketDataService;
 import pyc.lopatuxin.investment.service.market.dto.SnapshotResult;
 
@@ -27,12 +27,21 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
 
+/**
+ * Projects the value of the user's portfolio. Historical inputs — the first and last close, closes at dividend
+ * dates and monthly volatility — come from {@link ProjectionInputLoader}, which reduces them in SQL for all tickers
+ * at once, so a projection never loads a full price series.
+ * <p>
+ * Projecting is not transactional: each query runs on its own and every input is loaded before the Monte Carlo
+ * simulation starts, so no connection is held while it runs.
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
-@Transactional(readOnly = true)
 public class ProjectionService {
 
     private static final MathContext MC = MathContext.DECIMAL128;
@@ -40,9 +49,9 @@ public class ProjectionService {
     private static final RoundingMode RM = RoundingMode.HALF_UP;
 
     private final PositionRepository positionRepository;
-    private final PriceHistoryRepository priceHistoryRepository;
-    private final DividendRepository dividendRepository;
+    private final ProjectionInputLoader projectionInputLoader;
     private final MarketDataService marketDataService;
+    private final ForkJoinPool projectionPool;
 
     public ProjectionResultDto project(UUID userId, ProjectionRequestDto req) {
         List<Position> positions = positionRepository.findByUserIdWithSecurity(userId);
@@ -78,13 +87,75 @@ public class ProjectionService {
         List<ProjectionPointDto> series = simulateSeries(
                 totalValue, monthlyReturn, monthlyWithdrawalRate, req, now);
 
-        return ProjectionResultDto.builder()
+        ProjectionResultDto.ProjectionResultDtoBuilder result = ProjectionResultDto.builder()
                 .startValue(totalValue.setScale(SCALE, RM))
                 .portfolioWeightedAnnualReturn(weightedAnnualReturn.setScale(4, RM))
                 .monthlyReturn(monthlyReturn)
                 .series(series)
-                .pendingHistoryTickers(pendingTickers)
-                .build();
+                .pendingHistoryTickers(pendingTickers);
+
+        if (req.getMode() == ProjectionMode.MONTE_CARLO) {
+            double monthlyVolatility = computePortfolioVolatility(tickers, currentValues, totalValue);
+            result.monthlyVolatility(BigDecimal.valueOf(monthlyVolatility).setScale(6, RM))
+                    .bands(simulateBands(totalValue, monthlyReturn, monthlyVolatility, monthlyWithdrawalRate, req, now));
+        }
+        return result.build();
+    }
+
+    /**
+     * Weighted sum of per-ticker volatilities, i.e. fully correlated holdings: an upper bound that keeps the
+     * bands conservative without a covariance estimate, and is documented as such on
+     * {@code ProjectionResultDto.monthlyVolatility}. Tickers without enough history contribute nothing.
+     */
+    private double computePortfolioVolatility(List<String> tickers,
+                                              Map<String, BigDecimal> currentValues,
+                                              BigDecimal totalValue) {
+        Map<String, Double> volatility = projectionInputLoader.loadMonthlyVolatility(tickers);
+        double portfolio = 0.0;
+        for (String ticker : tickers) {
+            Double tickerVolatility = volatility.get(ticker);
+            if (tickerVolatility != null) {
+                portfolio += currentValues.get(ticker).divide(totalValue, MC).doubleValue() * tickerVolatility;
+            }
+        }
+        return portfolio;
+    }
+
+    private List<ProjectionBandDto> simulateBands(BigDecimal startValue,
+                                                  BigDecimal monthlyReturn,
+                                                  double monthlyVolatility,
+                                                  BigDecimal monthlyWithdrawalRate,
+                                                  ProjectionRequestDto req,
+                                                  LocalDate now) {
+        long seed = req.getSeed() != null ? req.getSeed() : ThreadLocalRandom.current().nextLong();
+        double[][] bands = MonteCarloSimulator.simulate(
+                projectionPool,
+                startValue.doubleValue(),
+                monthlyReturn.doubleValue(),
+                monthlyVolatility,
+                req.getMonthlyDeposit().doubleValue(),
+                monthlyWithdrawalRate.doubleValue(),
+                req.getHorizonMonths(),
+                req.getPaths(),
+                seed);
+
+        List<ProjectionBandDto> result = new ArrayList<>(req.getHorizonMonths());
+        for (int m = 1; m <= req.getHorizonMonths(); m++) {
+            result.add(new ProjectionBandDto(
+                    m,
+                    now.plusMonths(m),
+                    toMoney(bands[0][m - 1]),
+                    toMoney(bands[1][m - 1]),
+                    toMoney(bands[2][m - 1]),
+                    toMoney(bands[3][m - 1]),
+                    toMoney(bands[4][m - 1])
+            ));
+        }
+        return result;
+    }
+
+    private static BigDecimal toMoney(double value) {
+        return BigDecimal.valueOf(value).setScale(SCALE, RM);
     }
 
     private BigDecimal computeCurrentValues(List<Position> positions,
@@ -109,6 +180,12 @@ public class ProjectionService {
                                                    BigDecimal totalValue,
                                                    ProjectionRequestDto req,
                                                    List<String> pendingTickers) {
+        List<String> historicalTickers = positions.stream()
+                .map(p -> p.getSecurity().getTicker())
+                .filter(ticker -> !req.getOverrides().containsKey(ticker))
+                .toList();
+        ProjectionInputs inputs = projectionInputLoader.load(historicalTickers);
+
         BigDecimal weightedReturn = BigDecimal.ZERO;
         for (Position pos : positions) {
             String ticker = pos.getSecurity().getTicker();
@@ -117,7 +194,7 @@ public class ProjectionService {
             if (req.getOverrides().containsKey(ticker)) {
                 annualReturn = req.getOverrides().get(ticker);
             } else {
-                annualReturn = computeAnnualReturn(ticker, pendingTickers);
+                annualReturn = computeAnnualReturn(ticker, inputs, pendingTickers);
             }
 
             BigDecimal weight = currentValues.get(ticker).divide(totalValue, MC);
@@ -126,26 +203,19 @@ public class ProjectionService {
         return weightedReturn;
     }
 
-    private BigDecimal computeAnnualReturn(String ticker, List<String> pendingTickers) {
-        List<Dividend> paidDividends = dividendRepository.findBySecurity_Ticker(ticker)
-                .stream()
-                .filter(d -> d.getStatus() == DividendStatus.PAID)
-                .toList();
-
+    private BigDecimal computeAnnualReturn(String ticker, ProjectionInputs inputs, List<String> pendingTickers) {
         BigDecimal dividendYield = BigDecimal.ZERO;
         boolean hasDividendData = false;
 
-        if (!paidDividends.isEmpty()) {
-            Map<Integer, BigDecimal> yieldByYear = computeYieldByYear(ticker, paidDividends);
-            if (!yieldByYear.isEmpty()) {
-                hasDividendData = true;
-                BigDecimal sum = yieldByYear.values().stream()
-                        .reduce(BigDecimal.ZERO, BigDecimal::add);
-                dividendYield = sum.divide(BigDecimal.valueOf(yieldByYear.size()), MC);
-            }
+        Map<Integer, BigDecimal> yieldByYear = computeYieldByYear(inputs.paidDividends(ticker));
+        if (!yieldByYear.isEmpty()) {
+            hasDividendData = true;
+            BigDecimal sum = yieldByYear.values().stream()
+                    .reduce(BigDecimal.ZERO, BigDecimal::add);
+            dividendYield = sum.divide(BigDecimal.valueOf(yieldByYear.size()), MC);
         }
 
-        BigDecimal priceCagr = computePriceCagr(ticker);
+        BigDecimal priceCagr = computePriceCagr(inputs.priceRange(ticker));
         boolean hasPriceData = priceCagr.compareTo(BigDecimal.ZERO) != 0;
 
         if (!hasDividendData && !hasPriceData) {
@@ -155,22 +225,19 @@ public class ProjectionService {
         return dividendYield.add(priceCagr);
     }
 
-    private BigDecimal computePriceCagr(String ticker) {
-        List<PriceHistory> history =
-                priceHistoryRepository.findByTickerOrderByTradeDateAsc(ticker);
-
-        if (history.size() < 2) {
+    private BigDecimal computePriceCagr(PriceRange range) {
+        if (range == null) {
             return BigDecimal.ZERO;
         }
 
-        LocalDate firstDate = history.get(0).getTradeDate();
-        LocalDate lastDate = history.get(history.size() - 1).getTradeDate();
+        LocalDate firstDate = range.firstDate();
+        LocalDate lastDate = range.lastDate();
         if (ChronoUnit.DAYS.between(firstDate, lastDate) < 30) {
             return BigDecimal.ZERO;
         }
 
-        BigDecimal priceStart = history.get(0).getClose();
-        BigDecimal priceEnd = history.get(history.size() - 1).getClose();
+        BigDecimal priceStart = range.firstClose();
+        BigDecimal priceEnd = range.lastClose();
         if (priceStart == null || priceStart.compareTo(BigDecimal.ZERO) <= 0) {
             return BigDecimal.ZERO;
         }
@@ -180,38 +247,18 @@ public class ProjectionService {
         return BigDecimal.valueOf(cagr);
     }
 
-    private Map<Integer, BigDecimal> computeYieldByYear(String ticker, List<Dividend> dividends) {
+    private Map<Integer, BigDecimal> computeYieldByYear(List<PaidDividend> dividends) {
         Map<Integer, BigDecimal> yieldByYear = new LinkedHashMap<>();
-        for (Dividend div : dividends) {
-            if (div.getAmountPerShare() == null) {
-                continue;
-            }
-            LocalDate effectiveDate = div.getPaymentDate() != null ? div.getPaymentDate() : div.getRecordDate();
-            if (effectiveDate == null) {
+        for (PaidDividend div : dividends) {
+            if (div.amountPerShare() == null || div.close() == null || div.close().compareTo(BigDecimal.ZERO) <= 0) {
                 continue;
             }
-            BigDecimal yieldI = computeDividendYield(ticker, div.getAmountPerShare(), effectiveDate);
-            if (yieldI == null) {
-                continue;
-            }
-            int year = effectiveDate.getYear();
-            yieldByYear.merge(year, yieldI, BigDecimal::add);
+            BigDecimal yieldI = div.amountPerShare().divide(div.close(), MC);
+            yieldByYear.merge(div.effectiveDate().getYear(), yieldI, BigDecimal::add);
         }
         return yieldByYear;
     }
 
-    private BigDecimal computeDividendYield(String ticker, BigDecimal amountPerShare, LocalDate effectiveDate) {
-        return priceHistoryRepository
-                .findFirstByTickerAndTradeDateLessThanEqualOrderByTradeDateDesc(ticker, effectiveDate)
-                .map(ph -> {
-                    if (ph.getClose() == null || ph.getClose().compareTo(BigDecimal.ZERO) <= 0) {
-                        return null;
-                    }
-                    return amountPerShare.divide(ph.getClose(), MC);
-                })
-                .orElse(null);
-    }
-
     private List<ProjectionPointDto> simulateSeries(BigDecimal startValue,
                                                     BigDecimal monthlyReturn,
                                                     BigDecimal monthlyWithdrawalRate,
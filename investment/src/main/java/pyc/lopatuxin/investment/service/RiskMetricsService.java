@@ -0,0 +1,176 @@
+package pyc.lopatuxin.investment.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import pyc.lopatuxin.investment.dto.response.RiskMetricsDto;
+import pyc.lopatuxin.investment.entity.Position;
+import pyc.lopatuxin.investment.entity.enums.HistoryStatus;
+import pyc.lopatuxin.investment.repository.PositionRepository;
+import pyc.lopatuxin.investment.service.market.MarketDataService;
+import pyc.lopatuxin.investment.service.market.PriceSeries;
+import pyc.lopatuxin.investment.service.market.PriceSeriesStore;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Volatility, drawdown, Sharpe/Sortino, beta against IMOEX and the correlation matrix of a user's positions over the
+ * last three years of daily closes, read from the cached {@link PriceSeries} columns.
+ * <p>
+ * Statistics are cached per user and trading day. The key also carries the user's valuation version and the
+ * benchmark's history version, so trades and history loads take effect at once. Only the risk-free rate varies per
+ * request, and it is applied to the cached moments.
+ */
+@Slf4j
+@Service
+public class RiskMetricsService {
+
+    public static final String BENCHMARK = "IMOEX";
+
+    static final int LOOKBACK_YEARS = 3;
+
+    private static final ZoneId MSK = ZoneId.of("Europe/Moscow");
+    private static final int SCALE = 4;
+    private static final RoundingMode RM = RoundingMode.HALF_UP;
+
+    private final PositionRepository positionRepository;
+    private final PriceSeriesStore priceSeriesStore;
+    private final MarketDataService marketDataService;
+    private final PortfolioValuationService portfolioValuationService;
+    private final Cache<CacheKey, Computed> cache;
+
+    public RiskMetricsService(PositionRepository positionRepository,
+                              PriceSeriesStore priceSeriesStore,
+                              MarketDataService marketDataService,
+                              PortfolioValuationService portfolioValuationService,
+                              MeterRegistry meterRegistry) {
+        this.positionRepository = positionRepository;
+        this.priceSeriesStore = priceSeriesStore;
+        this.marketDataService = marketDataService;
+        this.portfolioValuationService = portfolioValuationService;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(Duration.ofDays(1))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "riskMetrics");
+    }
+
+    public RiskMetricsDto riskMetrics(UUID userId, BigDecimal riskFreeRate) {
+        CacheKey key = new CacheKey(userId, LocalDate.now(MSK),
+                portfolioValuationService.version(userId), priceSeriesStore.version(BENCHMARK));
+        Computed computed = cache.get(key, k -> compute(k.userId(), k.day()));
+        return toDto(computed, riskFreeRate.doubleValue());
+    }
+
+    private Computed compute(UUID userId, LocalDate today) {
+        List<String> tickers = new ArrayList<>();
+        List<PriceSeries> series = new ArrayList<>();
+        List<Double> values = new ArrayList<>();
+        List<String> pendingTickers = new ArrayList<>();
+        for (Position position : positionRepository.findByUserIdWithSecurity(userId)) {
+            String ticker = position.getSecurity().getTicker();
+            if (position.getSecurity().getHistoryStatus() == HistoryStatus.PENDING) {
+                marketDataService.triggerHistoryAsync(ticker);
+                pendingTickers.add(ticker);
+                continue;
+            }
+            PriceSeries history = priceSeriesStore.get(ticker);
+            if (history.isEmpty() || position.getQuantity().signum() <= 0) {
+                continue;
+            }
+            tickers.add(ticker);
+            series.add(history);
+            // weights only need to be proportional, so the last close stays in minor units
+            values.add(position.getQuantity().doubleValue() * history.closeMinor(history.size() - 1));
+        }
+
+        PriceSeries[] assets = series.toArray(PriceSeries[]::new);
+        int[] grid = RiskStatistics.tradingDays(assets,
+                Math.toIntExact(today.minusYears(LOOKBACK_YEARS).toEpochDay()), Math.toIntExact(today.toEpochDay()));
+        double[][] returns = new double[assets.length][];
+        double[] weights = new double[assets.length];
+        for (int a = 0; a < assets.length; a++) {
+            returns[a] = RiskStatistics.returnsOnGrid(assets[a], grid);
+            weights[a] = values.get(a);
+        }
+        PriceSeries benchmark = benchmarkSeries(grid);
+        double[] benchmarkReturns = benchmark.isEmpty() ? null : RiskStatistics.returnsOnGrid(benchmark, grid);
+
+        long startedAt = System.nanoTime();
+        RiskStatistics statistics = RiskStatistics.compute(returns, weights, benchmarkReturns);
+        log.debug("Risk statistics computed: userId={}, assets={}, days={}, {} µs",
+                userId, assets.length, grid.length, (System.nanoTime() - startedAt) / 1_000);
+
+        LocalDate asOf = grid.length > 0 ? LocalDate.ofEpochDay(grid[grid.length - 1]) : null;
+        return new Computed(asOf, tickers, statistics, benchmark.isEmpty(), pendingTickers);
+    }
+
+    /**
+     * Nobody holds the index, so its history is loaded on first use and topped up whenever the portfolio has a
+     * later trading day than the index. The index is seeded as an {@code INDEX} security by migration, and both
+     * loads run on the history loader: this method only reads the database.
+     */
+    private PriceSeries benchmarkSeries(int[] grid) {
+        PriceSeries benchmark = priceSeriesStore.get(BENCHMARK);
+        if (benchmark.isEmpty()
+                || grid.length > 0 && benchmark.epochDay(benchmark.size() - 1) < grid[grid.length - 1]) {
+            marketDataService.triggerHistoryAsync(BENCHMARK);
+        }
+        return benchmark;
+    }
+
+    private RiskMetricsDto toDto(Computed computed, double riskFreeRate) {
+        RiskStatistics stats = computed.statistics();
+        double sqrtYear = Math.sqrt(RiskStatistics.TRADING_DAYS_PER_YEAR);
+        double excessReturn = stats.meanDaily * RiskStatistics.TRADING_DAYS_PER_YEAR - riskFreeRate;
+        double annualizedVolatility = stats.volatilityDaily * sqrtYear;
+        // Sortino counts only the days that fell short of the same risk-free rate Sharpe is measured against
+        double annualizedDownside = stats.downsideDaily(riskFreeRate / RiskStatistics.TRADING_DAYS_PER_YEAR) * sqrtYear;
+
+        List<List<BigDecimal>> correlation = new ArrayList<>(stats.correlation.length);
+        for (double[] row : stats.correlation) {
+            List<BigDecimal> values = new ArrayList<>(row.length);
+            for (double value : row) {
+                values.add(decimal(value));
+            }
+            correlation.add(values);
+        }
+
+        return RiskMetricsDto.builder()
+                .asOf(computed.asOf())
+                .observations(stats.observations)
+                .annualizedVolatility(decimal(annualizedVolatility))
+                .maxDrawdown(decimal(stats.maxDrawdown))
+                .sharpeRatio(decimal(excessReturn / annualizedVolatility))
+                .sortinoRatio(decimal(excessReturn / annualizedDownside))
+                .beta(decimal(stats.beta))
+                .benchmarkPending(computed.benchmarkPending())
+                .tickers(computed.tickers())
+                .correlation(correlation)
+                .pendingHistoryTickers(computed.pendingTickers())
+                .build();
+    }
+
+    // undefined statistics (too little history, no movement) are reported as null
+    private static BigDecimal decimal(double value) {
+        return Double.isFinite(value) ? BigDecimal.valueOf(value).setScale(SCALE, RM) : null;
+    }
+
+    private record CacheKey(UUID userId, LocalDate day, String portfolioVersion, String benchmarkVersion) {
+    }
+
+    private record Computed(LocalDate asOf, List<String> tickers, RiskStatistics statistics,
+                            boolean benchmarkPending, List<String> pendingTickers) {
+    }
+}
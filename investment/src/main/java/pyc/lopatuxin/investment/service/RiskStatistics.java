@@ -0,0 +1,286 @@
+package pyc.lopatuxin.investment.service;
+
+import pyc.lopatuxin.investment.service.market.PriceSeries;
+
+import java.util.Arrays;
+
+/**
+ * Risk statistics of a weighted portfolio over daily returns on a common trading-day grid.
+ * <p>
+ * Everything is accumulated in one pass per series with Welford-style updates of means and co-moments, so nothing
+ * is re-read and there is no catastrophic cancellation from subtracting large sums. A return is {@code NaN} before
+ * a ticker's history starts; after that, closes are forward-filled over the grid, so missing data is always a
+ * prefix and a pair of tickers overlaps on one contiguous range.
+ */
+final class RiskStatistics {
+
+    static final int TRADING_DAYS_PER_YEAR = 252;
+
+    // portfolio daily returns: count, mean and sample standard deviation
+    final int observations;
+    final double meanDaily;
+    final double volatilityDaily;
+    // largest peak-to-trough fall of the cumulative portfolio value, as a positive fraction
+    final double maxDrawdown;
+    // NaN without at least two days shared with the benchmark
+    final double beta;
+    // NaN where a pair has fewer than two common days or one of them never moves, including the diagonal
+    final double[][] correlation;
+
+    // kept for the downside deviation, whose threshold is the per-request risk-free rate
+    private final double[] portfolioReturns;
+
+    private RiskStatistics(int observations, double meanDaily, double volatilityDaily, double[] portfolioReturns,
+                           double maxDrawdown, double beta, double[][] correlation) {
+        this.observations = observations;
+        this.meanDaily = meanDaily;
+        this.volatilityDaily = volatilityDaily;
+        this.portfolioReturns = portfolioReturns;
+        this.maxDrawdown = maxDrawdown;
+        this.beta = beta;
+        this.correlation = correlation;
+    }
+
+    /**
+     * @param returns   daily returns indexed {@code [asset][day]}, all of the same length
+     * @param weights   portfolio weight of each asset; renormalized each day over the assets that have a return
+     * @param benchmark benchmark returns on the same grid, or {@code null}
+     */
+    static RiskStatistics compute(double[][] returns, double[] weights, double[] benchmark) {
+        int assets = returns.length;
+        int days = assets == 0 ? 0 : returns[0].length;
+
+        int n = 0;
+        double mean = 0;
+        double m2 = 0;
+        double[] portfolio = new double[days];
+        double wealth = 1;
+        double peak = 1;
+        double maxDrawdown = 0;
+        int paired = 0;
+        double pMean = 0;
+        double bMean = 0;
+        double bM2 = 0;
+        double coMoment = 0;
+
+        for (int t = 0; t < days; t++) {
+            double weighted = 0;
+            double active = 0;
+            for (int a = 0; a < assets; a++) {
+                double r = returns[a][t];
+                if (!Double.isNaN(r)) {
+                    weighted += weights[a] * r;
+                    active += weights[a];
+                }
+            }
+            if (active <= 0) {
+                continue;
+            }
+            double r = weighted / active;
+
+            portfolio[n++] = r;
+            double delta = r - mean;
+            mean += delta / n;
+            m2 += delta * (r - mean);
+
+            wealth *= 1 + r;
+            peak = Math.max(peak, wealth);
+            maxDrawdown = Math.max(maxDrawdown, 1 - wealth / peak);
+
+            double b = benchmark != null ? benchmark[t] : Double.NaN;
+            if (!Double.isNaN(b)) {
+                paired++;
+                double dp = r - pMean;
+                pMean += dp / paired;
+                double db = b - bMean;
+                bMean += db / paired;
+                bM2 += db * (b - bMean);
+                coMoment += dp * (b - bMean);
+            }
+        }
+
+        double volatility = n > 1 ? Math.sqrt(m2 / (n - 1)) : Double.NaN;
+        double beta = paired > 1 && bM2 > 0 ? coMoment / bM2 : Double.NaN;
+        return new RiskStatistics(n, n > 0 ? mean : Double.NaN, volatility, Arrays.copyOf(portfolio, n),
+                maxDrawdown, beta, correlation(returns));
+    }
+
+    /**
+     * Root mean square of the portfolio's daily shortfalls below {@code thresholdDaily}; days above it count as
+     * zero. NaN without observations.
+     */
+    double downsideDaily(double thresholdDaily) {
+        if (portfolioReturns.length == 0) {
+            return Double.NaN;
+        }
+        double squares = 0;
+        for (double r : portfolioReturns) {
+            double shortfall = Math.min(r - thresholdDaily, 0);
+            squares += shortfall * shortfall;
+        }
+        return Math.sqrt(squares / portfolioReturns.length);
+    }
+
+    /**
+     * Pairwise correlation of the assets' returns over the days both have.
+     * <p>
+     * Assets whose history starts on the same day form a block that shares one multivariate Welford pass: each day
+     * updates every mean once and then the whole co-moment triangle with multiply-adds, so a 50-asset block costs
+     * 50 divisions per day instead of 1,225. Pairs from different blocks get their own streaming co-moment over
+     * their common range.
+     */
+    static double[][] correlation(double[][] returns) {
+        int assets = returns.length;
+        int days = assets == 0 ? 0 : returns[0].length;
+        int[] first = new int[assets];
+        for (int a = 0; a < assets; a++) {
+            int t = 0;
+            while (t < days && Double.isNaN(returns[a][t])) {
+                t++;
+            }
+            first[a] = t;
+        }
+        double[] inverse = new double[days + 1];
+        for (int n = 1; n <= days; n++) {
+            inverse[n] = 1.0 / n;
+        }
+
+        double[][] correlation = new double[assets][assets];
+        for (double[] row : correlation) {
+            Arrays.fill(row, Double.NaN);
+        }
+        boolean[] done = new boolean[assets];
+        for (int a = 0; a < assets; a++) {
+            if (done[a]) {
+                continue;
+            }
+            int[] block = new int[assets];
+            int size = 0;
+            for (int b = a; b < assets; b++) {
+                if (first[b] == first[a]) {
+                    block[size++] = b;
+                    done[b] = true;
+                }
+            }
+            blockCorrelation(returns, Arrays.copyOf(block, size), first[a], inverse, correlation);
+        }
+        for (int i = 0; i < assets; i++) {
+            for (int j = i + 1; j < assets; j++) {
+                if (first[i] != first[j]) {
+                    double value = pairCorrelation(returns[i], returns[j], Math.max(first[i], first[j]), inverse);
+                    correlation[i][j] = value;
+                    correlation[j][i] = value;
+                }
+            }
+        }
+        return correlation;
+    }
+
+    private static void blockCorrelation(double[][] returns, int[] block, int from, double[] inverse,
+                                         double[][] correlation) {
+        int size = block.length;
+        int days = returns[block[0]].length;
+        double[] mean = new double[size];
+        double[] before = new double[size];
+        double[] after = new double[size];
+        double[][] coMoment = new double[size][size];
+        int n = 0;
+        for (int t = from; t < days; t++) {
+            double step = inverse[++n];
+            for (int i = 0; i < size; i++) {
+                double x = returns[block[i]][t];
+                before[i] = x - mean[i];
+                mean[i] += before[i] * step;
+                after[i] = x - mean[i];
+            }
+            for (int i = 0; i < size; i++) {
+                double d = before[i];
+                double[] row = coMoment[i];
+                for (int j = i; j < size; j++) {
+                    row[j] += d * after[j];
+                }
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            for (int j = i; j < size; j++) {
+                double value = correlation(n, coMoment[i][i], coMoment[j][j], coMoment[i][j]);
+                correlation[block[i]][block[j]] = value;
+                correlation[block[j]][block[i]] = value;
+            }
+        }
+    }
+
+    private static double pairCorrelation(double[] x, double[] y, int from, double[] inverse) {
+        int n = 0;
+        double meanX = 0;
+        double meanY = 0;
+        double m2X = 0;
+        double m2Y = 0;
+        double coMoment = 0;
+        for (int t = from; t < x.length; t++) {
+            double step = inverse[++n];
+            double dx = x[t] - meanX;
+            meanX += dx * step;
+            double dy = y[t] - meanY;
+            meanY += dy * step;
+            m2X += dx * (x[t] - meanX);
+            m2Y += dy * (y[t] - meanY);
+            coMoment += dx * (y[t] - meanY);
+        }
+        return correlation(n, m2X, m2Y, coMoment);
+    }
+
+    private static double correlation(int n, double m2X, double m2Y, double coMoment) {
+        return n > 1 && m2X > 0 && m2Y > 0 ? coMoment / Math.sqrt(m2X * m2Y) : Double.NaN;
+    }
+
+    /**
+     * Sorted union of the series' trading days within {@code [fromEpochDay, toEpochDay]}.
+     */
+    static int[] tradingDays(PriceSeries[] series, int fromEpochDay, int toEpochDay) {
+        int total = 0;
+        for (PriceSeries s : series) {
+            total += s.size();
+        }
+        int[] days = new int[total];
+        int size = 0;
+        for (PriceSeries s : series) {
+            for (int i = 0; i < s.size(); i++) {
+                int day = s.epochDay(i);
+                if (day >= fromEpochDay && day <= toEpochDay) {
+                    days[size++] = day;
+                }
+            }
+        }
+        Arrays.sort(days, 0, size);
+        int distinct = 0;
+        for (int i = 0; i < size; i++) {
+            if (distinct == 0 || days[i] != days[distinct - 1]) {
+                days[distinct++] = days[i];
+            }
+        }
+        return Arrays.copyOf(days, distinct);
+    }
+
+    /**
+     * Simple returns between consecutive grid days, from closes forward-filled onto the grid; {@code NaN} until the
+     * series has a close on the earlier day. The result has one element fewer than the grid.
+     */
+    static double[] returnsOnGrid(PriceSeries series, int[] grid) {
+        double[] returns = new double[Math.max(grid.length - 1, 0)];
+        Arrays.fill(returns, Double.NaN);
+        int i = -1;
+        long previous = -1;
+        for (int g = 0; g < grid.length; g++) {
+            while (i + 1 < series.size() && series.epochDay(i + 1) <= grid[g]) {
+                i++;
+            }
+            long close = i >= 0 ? series.closeMinor(i) : -1;
+            if (g > 0 && previous > 0 && close > 0) {
+                returns[g - 1] = (double) close / previous - 1;
+            }
+            previous = close;
+        }
+        return returns;
+    }
+}
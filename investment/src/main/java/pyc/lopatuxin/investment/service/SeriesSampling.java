@@ -0,0 +1,102 @@
+package pyc.lopatuxin.investment.service;
+
+import pyc.lopatuxin.investment.dto.request.SeriesResolution;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Resolution buckets and Largest-Triangle-Three-Buckets downsampling for chart series.
+ */
+final class SeriesSampling {
+
+    // point budget AUTO aims for when the request does not set one
+    static final int AUTO_MAX_POINTS = 400;
+
+    private SeriesSampling() {
+    }
+
+    /**
+     * Replaces AUTO with the finest of DAY/WEEK/MONTH whose bar count over the range fits the point budget.
+     */
+    static SeriesResolution resolve(SeriesResolution requested, LocalDate from, LocalDate to, Integer maxPoints) {
+        if (requested != SeriesResolution.AUTO) {
+            return requested;
+        }
+        int budget = maxPoints != null ? maxPoints : AUTO_MAX_POINTS;
+        // trading days per calendar day, so a year of daily candles counts as ~250 points
+        long days = (ChronoUnit.DAYS.between(from, to) + 1) * 5 / 7;
+        if (days <= budget) {
+            return SeriesResolution.DAY;
+        }
+        if (ChronoUnit.WEEKS.between(from, to) + 1 <= budget) {
+            return SeriesResolution.WEEK;
+        }
+        return SeriesResolution.MONTH;
+    }
+
+    /**
+     * First calendar day of the bar a date belongs to.
+     */
+    static LocalDate bucketStart(LocalDate date, SeriesResolution resolution) {
+        return switch (resolution) {
+            case WEEK -> date.with(DayOfWeek.MONDAY);
+            case MONTH -> date.withDayOfMonth(1);
+            case DAY, AUTO -> date;
+        };
+    }
+
+    /**
+     * Keeps at most {@code threshold} points, always including the first and last, choosing in each bucket the
+     * point that forms the largest triangle with the previously kept point and the next bucket's average, which
+     * preserves peaks and troughs that plain striding would drop.
+     */
+    static <T> List<T> lttb(List<T> points, Integer threshold, ToDoubleFunction<T> x, ToDoubleFunction<T> y) {
+        int n = points.size();
+        if (threshold == null || threshold >= n || threshold < 3) {
+            return points;
+        }
+        List<T> sampled = new ArrayList<>(threshold);
+        sampled.add(points.getFirst());
+
+        double bucketSize = (double) (n - 2) / (threshold - 2);
+        int previous = 0;
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            int nextStart = (int) ((bucket + 1) * bucketSize) + 1;
+            int nextEnd = Math.min((int) ((bucket + 2) * bucketSize) + 1, n);
+            double avgX = 0;
+            double avgY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                avgX += x.applyAsDouble(points.get(i));
+                avgY += y.applyAsDouble(points.get(i));
+            }
+            int nextCount = Math.max(nextEnd - nextStart, 1);
+            avgX /= nextCount;
+            avgY /= nextCount;
+
+            double prevX = x.applyAsDouble(points.get(previous));
+            double prevY = y.applyAsDouble(points.get(previous));
+            int start = (int) (bucket * bucketSize) + 1;
+            int end = (int) ((bucket + 1) * bucketSize) + 1;
+            int chosen = start;
+            double maxArea = -1;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs((prevX - avgX) * (y.applyAsDouble(points.get(i)) - prevY)
+                        - (prevX - x.applyAsDouble(points.get(i))) * (avgY - prevY));
+                if (area > maxArea) {
+                    maxArea = area;
+                    chosen = i;
+                }
+            }
+            sampled.add(points.get(chosen));
+            previous = chosen;
+        }
+
+        sampled.add(points.getLast());
+        return sampled;
+    }
+}
@@ -0,0 +1,207 @@
+package pyc.lopatuxin.investment.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import pyc.lopatuxin.investment.dto.response.TaxReportDto;
+import pyc.lopatuxin.investment.dto.response.TaxTickerReportDto;
+import pyc.lopatuxin.investment.entity.TaxLot;
+import pyc.lopatuxin.investment.entity.TaxLotClosure;
+import pyc.lopatuxin.investment.entity.Transaction;
+import pyc.lopatuxin.investment.entity.enums.TransactionType;
+import pyc.lopatuxin.investment.repository.TaxLotBulkWriter;
+import pyc.lopatuxin.investment.repository.TaxLotClosureRepository;
+import pyc.lopatuxin.investment.repository.TaxLotClosureRepository.RealizedTotal;
+import pyc.lopatuxin.investment.repository.TaxLotRepository;
+import pyc.lopatuxin.investment.repository.TaxLotRepository.OpenHolding;
+import pyc.lopatuxin.investment.repository.TransactionRepository;
+import pyc.lopatuxin.investment.service.market.MarketDataService;
+import pyc.lopatuxin.investment.service.market.dto.SnapshotResult;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * FIFO tax-lot ledger. Every BUY opens a lot and every SELL closes the oldest lots, splitting the last one it touches;
+ * each closure stores its realized result and tax year, so a year-end report is two grouped queries.
+ * <p>
+ * The ledger is kept up to date on write. After the trades of a ticker changed from some instant on, the closures from
+ * that instant are given back to their lots, the lots opened from it are dropped, and only the trades from it are
+ * matched again, so an appended trade touches just the lots it sells.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TaxLotService {
+
+    private static final ZoneId MSK = ZoneId.of("Europe/Moscow");
+    private static final Comparator<Transaction> REPLAY_ORDER = Comparator.comparing(Transaction::getExecutedAt)
+            .thenComparing(Transaction::getCreatedAt);
+
+    private final TaxLotRepository taxLotRepository;
+    private final TaxLotClosureRepository taxLotClosureRepository;
+    private final TaxLotBulkWriter taxLotBulkWriter;
+    private final TransactionRepository transactionRepository;
+    private final MarketDataService marketDataService;
+
+    /**
+     * Rematches the ticker's trades from {@code since}. {@code trades} are the stored trades of the ticker from
+     * {@code since} on in replay order; earlier ones in the list are ignored. A ticker traded before the ledger existed
+     * has no lots yet and is built from its whole history once.
+     */
+    @Transactional
+    public void onTradesChanged(UUID userId, String ticker, Instant since, List<Transaction> trades) {
+        List<Transaction> rematch;
+        if (taxLotRepository.existsByUserIdAndTicker(userId, ticker)) {
+            taxLotRepository.restoreClosedSince(userId, ticker, since);
+            taxLotClosureRepository.deleteClosedSince(userId, ticker, since);
+            taxLotRepository.deleteAcquiredSince(userId, ticker, since);
+            rematch = trades.stream().filter(t -> !t.getExecutedAt().isBefore(since)).toList();
+        } else {
+            rematch = new ArrayList<>(transactionRepository.findByUserIdAndSecurity_Ticker(userId, ticker));
+            rematch.sort(REPLAY_ORDER);
+        }
+        if (rematch.isEmpty()) {
+            return;
+        }
+
+        // lots loaded here are managed, so the remainders they lose are flushed with the transaction
+        Deque<TaxLot> open = new ArrayDeque<>(taxLotRepository.findOpenLots(userId, ticker));
+        List<TaxLot> opened = new ArrayList<>();
+        List<TaxLotClosure> closures = new ArrayList<>();
+        for (Transaction t : rematch) {
+            if (t.getType() == TransactionType.BUY) {
+                TaxLot lot = TaxLot.builder()
+                        .id(UUID.randomUUID())
+                        .userId(userId)
+                        .ticker(ticker)
+                        .buyTransactionId(t.getId())
+                        .acquiredAt(t.getExecutedAt())
+                        .price(t.getPrice())
+                        .quantity(t.getQuantity())
+                        .remainingQuantity(t.getQuantity())
+                        .build();
+                open.addLast(lot);
+                opened.add(lot);
+            } else {
+                close(open, t, closures);
+            }
+        }
+        taxLotBulkWriter.insertLots(opened);
+        taxLotBulkWriter.insertClosures(closures);
+        log.debug("Tax lots rematched: userId={}, ticker={}, trades={}, closures={}",
+                userId, ticker, rematch.size(), closures.size());
+    }
+
+    /**
+     * Realized result of the sales in {@code year} and the unrealized result of the lots held now, per ticker.
+     * Not transactional: quotes may come from MOEX, and no connection is held while they do.
+     */
+    public TaxReportDto report(UUID userId, int year) {
+        Map<String, RealizedTotal> realized = taxLotClosureRepository.findRealizedByYear(userId, year).stream()
+                .collect(Collectors.toMap(RealizedTotal::getTicker, Function.identity()));
+        Map<String, OpenHolding> holdings = taxLotRepository.findOpenHoldings(userId).stream()
+                .collect(Collectors.toMap(OpenHolding::getTicker, Function.identity()));
+        Map<String, SnapshotResult> snapshots = holdings.isEmpty()
+                ? Map.of()
+                : marketDataService.getSnapshots(holdings.keySet());
+
+        Map<String, TaxTickerReportDto> rows = new TreeMap<>();
+        BigDecimal proceeds = BigDecimal.ZERO;
+        BigDecimal costBasis = BigDecimal.ZERO;
+        BigDecimal realizedPnl = BigDecimal.ZERO;
+        for (RealizedTotal r : realized.values()) {
+            TaxTickerReportDto row = rows.computeIfAbsent(r.getTicker(), TaxLotService::emptyRow);
+            row.setSoldQuantity(r.getQuantity());
+            row.setProceeds(money(r.getProceeds()));
+            row.setCostBasis(money(r.getCostBasis()));
+            row.setRealizedPnl(money(r.getRealizedPnl()));
+            proceeds = proceeds.add(r.getProceeds());
+            costBasis = costBasis.add(r.getCostBasis());
+            realizedPnl = realizedPnl.add(r.getRealizedPnl());
+        }
+        BigDecimal unrealizedPnl = BigDecimal.ZERO;
+        for (OpenHolding h : holdings.values()) {
+            TaxTickerReportDto row = rows.computeIfAbsent(h.getTicker(), TaxLotService::emptyRow);
+            row.setOpenQuantity(h.getQuantity());
+            row.setOpenCost(money(h.getCost()));
+            SnapshotResult snapshot = snapshots.get(h.getTicker());
+            if (snapshot != null && snapshot.lastPrice() != null) {
+                BigDecimal pnl = h.getQuantity().multiply(snapshot.lastPrice()).subtract(h.getCost());
+                row.setCurrentPrice(snapshot.lastPrice());
+                row.setUnrealizedPnl(money(pnl));
+                unrealizedPnl = unrealizedPnl.add(pnl);
+            }
+        }
+        return TaxReportDto.builder()
+                .year(year)
+                .proceeds(money(proceeds))
+                .costBasis(money(costBasis))
+                .realizedPnl(money(realizedPnl))
+                .unrealizedPnl(money(unrealizedPnl))
+                .tickers(List.copyOf(rows.values()))
+                .build();
+    }
+
+    private static void close(Deque<TaxLot> open, Transaction sell, List<TaxLotClosure> closures) {
+        BigDecimal left = sell.getQuantity();
+        int taxYear = sell.getExecutedAt().atZone(MSK).getYear();
+        while (left.signum() > 0) {
+            TaxLot lot = open.peekFirst();
+            if (lot == null) {
+                // the position replay rejects such a SELL first
+                throw new IllegalStateException("Insufficient lots for SELL: ticker=" + sell.getSecurity().getTicker());
+            }
+            BigDecimal sold = left.min(lot.getRemainingQuantity());
+            BigDecimal cost = sold.multiply(lot.getPrice());
+            BigDecimal proceeds = sold.multiply(sell.getPrice());
+            closures.add(TaxLotClosure.builder()
+                    .id(UUID.randomUUID())
+                    .lotId(lot.getId())
+                    .userId(lot.getUserId())
+                    .ticker(lot.getTicker())
+                    .sellTransactionId(sell.getId())
+                    .closedAt(sell.getExecutedAt())
+                    .taxYear(taxYear)
+                    .quantity(sold)
+                    .costBasis(cost)
+                    .proceeds(proceeds)
+                    .realizedPnl(proceeds.subtract(cost))
+                    .build());
+            lot.setRemainingQuantity(lot.getRemainingQuantity().subtract(sold));
+            if (lot.getRemainingQuantity().signum() == 0) {
+                open.pollFirst();
+            }
+            left = left.subtract(sold);
+        }
+    }
+
+    private static TaxTickerReportDto emptyRow(String ticker) {
+        return TaxTickerReportDto.builder()
+                .ticker(ticker)
+                .soldQuantity(BigDecimal.ZERO)
+                .proceeds(BigDecimal.ZERO)
+                .costBasis(BigDecimal.ZERO)
+                .realizedPnl(BigDecimal.ZERO)
+                .openQuantity(BigDecimal.ZERO)
+                .openCost(BigDecimal.ZERO)
+                .build();
+    }
+
+    private static BigDecimal money(BigDecimal value) {
+        return value.setScale(2, RoundingMode.HALF_UP);
+    }
+}
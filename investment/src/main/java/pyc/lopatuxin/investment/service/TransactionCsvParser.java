@@ -0,0 +1,195 @@
+package pyc.lopatuxin.investment.service;
+
+import pyc.lopatuxin.investment.entity.enums.SecurityType;
+import pyc.lopatuxin.investment.entity.enums.TransactionType;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Reads trades from a CSV export line by line. The header names the columns in any order:
+ * {@code executed_at, ticker, type, quantity, price} and optionally {@code security_type}; case and underscores are
+ * ignored. The separator is {@code ;} when the header contains one, otherwise {@code ,}; with {@code ;} a decimal comma
+ * is accepted as well. Dates without an offset are Moscow time.
+ * <p>
+ * Every row is checked before anything is stored; the errors of the first {@link #MAX_REPORTED_ERRORS} bad rows are
+ * reported together.
+ */
+final class TransactionCsvParser {
+
+    static final int MAX_ROWS = 100_000;
+    static final int MAX_REPORTED_ERRORS = 10;
+
+    private static final ZoneId MSK = ZoneId.of("Europe/Moscow");
+    private static final List<String> REQUIRED = List.of("executedat", "ticker", "type", "quantity", "price");
+    private static final String SECURITY_TYPE = "securitytype";
+
+    record Row(String ticker, TransactionType type, SecurityType securityType,
+               BigDecimal quantity, BigDecimal price, Instant executedAt) {
+    }
+
+    private TransactionCsvParser() {
+    }
+
+    /**
+     * Passes every row to {@code sink} in file order and returns the number of rows; throws
+     * {@link IllegalArgumentException} listing the bad rows if there are any.
+     */
+    static int parse(Reader source, Consumer<Row> sink) {
+        List<String> errors = new ArrayList<>();
+        int rows = 0;
+        try (BufferedReader reader = new BufferedReader(source)) {
+            String header = reader.readLine();
+            if (header == null || header.isBlank()) {
+                throw new IllegalArgumentException("Файл импорта пуст");
+            }
+            String separator = header.contains(";") ? ";" : ",";
+            boolean decimalComma = separator.equals(";");
+            Map<String, Integer> columns = columns(header.replace("\uFEFF", ""), separator);
+
+            Pattern split = Pattern.compile(Pattern.quote(separator));
+            String line;
+            int lineNumber = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (++rows > MAX_ROWS) {
+                    throw new IllegalArgumentException("Слишком много строк в файле импорта, максимум " + MAX_ROWS);
+                }
+                try {
+                    sink.accept(row(split.split(line, -1), columns, decimalComma));
+                } catch (IllegalArgumentException | DateTimeParseException e) {
+                    if (errors.size() < MAX_REPORTED_ERRORS) {
+                        errors.add("строка " + lineNumber + ": " + e.getMessage());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (!errors.isEmpty()) {
+            throw new IllegalArgumentException("Ошибки в файле импорта: " + String.join("; ", errors));
+        }
+        if (rows == 0) {
+            throw new IllegalArgumentException("В файле импорта нет сделок");
+        }
+        return rows;
+    }
+
+    private static Map<String, Integer> columns(String header, String separator) {
+        String[] names = header.split(Pattern.quote(separator), -1);
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            columns.put(unquote(names[i]).toLowerCase(Locale.ROOT).replace("_", ""), i);
+        }
+        for (String required : REQUIRED) {
+            if (!columns.containsKey(required)) {
+                throw new IllegalArgumentException("В заголовке нет колонки " + required);
+            }
+        }
+        return columns;
+    }
+
+    private static Row row(String[] cells, Map<String, Integer> columns, boolean decimalComma) {
+        String ticker = cell(cells, columns, "ticker").toUpperCase(Locale.ROOT);
+        if (ticker.isEmpty() || ticker.length() > 20) {
+            throw new IllegalArgumentException("некорректный тикер '" + ticker + "'");
+        }
+        BigDecimal quantity = decimal(cell(cells, columns, "quantity"), decimalComma, "quantity", 11, 8);
+        BigDecimal price = decimal(cell(cells, columns, "price"), decimalComma, "price", 13, 2);
+        String securityType = columns.containsKey(SECURITY_TYPE) ? cell(cells, columns, SECURITY_TYPE) : "";
+        return new Row(ticker,
+                type(cell(cells, columns, "type")),
+                securityType(securityType),
+                quantity,
+                price,
+                instant(cell(cells, columns, "executedat")));
+    }
+
+    private static String cell(String[] cells, Map<String, Integer> columns, String name) {
+        int index = columns.get(name);
+        if (index >= cells.length) {
+            throw new IllegalArgumentException("нет значения в колонке " + name);
+        }
+        return unquote(cells[index]);
+    }
+
+    private static String unquote(String value) {
+        String trimmed = value.strip();
+        if (trimmed.length() >= 2 && trimmed.startsWith("\"") && trimmed.endsWith("\"")) {
+            return trimmed.substring(1, trimmed.length() - 1).strip();
+        }
+        return trimmed;
+    }
+
+    // same bounds as CreateTransactionDto
+    private static BigDecimal decimal(String value, boolean decimalComma, String column, int integer, int fraction) {
+        String normalized = value.replace(" ", "").replace("\u00A0", "");
+        if (decimalComma) {
+            normalized = normalized.replace(',', '.');
+        }
+        BigDecimal number;
+        try {
+            number = new BigDecimal(normalized);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(column + " не число: '" + value + "'");
+        }
+        if (number.signum() <= 0) {
+            throw new IllegalArgumentException(column + " должно быть больше нуля");
+        }
+        BigDecimal significant = number.stripTrailingZeros();
+        if (significant.scale() > fraction || significant.precision() - significant.scale() > integer) {
+            throw new IllegalArgumentException(column + " вне допустимого диапазона: " + value);
+        }
+        return number;
+    }
+
+    private static TransactionType type(String value) {
+        return switch (value.toLowerCase(Locale.ROOT)) {
+            case "buy", "покупка" -> TransactionType.BUY;
+            case "sell", "продажа" -> TransactionType.SELL;
+            default -> throw new IllegalArgumentException("неизвестный тип сделки '" + value + "'");
+        };
+    }
+
+    private static SecurityType securityType(String value) {
+        if (value.isEmpty()) {
+            return SecurityType.STOCK;
+        }
+        try {
+            return SecurityType.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("неизвестный тип бумаги '" + value + "'");
+        }
+    }
+
+    private static Instant instant(String value) {
+        try {
+            return OffsetDateTime.parse(value).toInstant();
+        } catch (DateTimeParseException ignored) {
+            // no offset: Moscow time below
+        }
+        if (value.length() > 10) {
+            return LocalDateTime.parse(value.replace(' ', 'T')).atZone(MSK).toInstant();
+        }
+        return LocalDate.parse(value).atStartOfDay(MSK).toInstant();
+    }
+}
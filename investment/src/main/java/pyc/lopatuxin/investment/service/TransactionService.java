@@ -3,28 +3,50 @@ package pyc.lopatuxin.investment.service;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import pyc.lopatuxin.investment.dto.request.CreateTransactionDto;
+import pyc.lopatuxin.investment.dto.request.TransactionPageRequestDto;
+import pyc.lopatuxin.investment.dto.response.TransactionImportResultDto;
+import pyc.lopatuxin.investment.dto.response.TransactionPageDto;
 import pyc.lopatuxin.investment.dto.response.TransactionResponseDto;
 import pyc.lopatuxin.investment.entity.Position;
 import pyc.lopatuxin.investment.entity.Security;
 import pyc.lopatuxin.investment.entity.Transaction;
+import pyc.lopatuxin.investment.entity.enums.OutboxEventType;
+import pyc.lopatuxin.investment.entity.enums.SecurityType;
 import pyc.lopatuxin.investment.entity.enums.TransactionType;
+import pyc.lopatuxin.investment.event.PortfolioChangedEvent;
+import pyc.lopatuxin.investment.event.TradesChangedEvent;
 import pyc.lopatuxin.investment.mapper.TransactionMapper;
 import pyc.lopatuxin.investment.repository.DividendRepository;
 import pyc.lopatuxin.investment.repository.PositionRepository;
 import pyc.lopatuxin.investment.repository.SecurityRepository;
+import pyc.lopatuxin.investment.repository.TransactionBulkWriter;
+import pyc.lopatuxin.investment.repository.TransactionFilter;
+import pyc.lopatuxin.investment.repository.TransactionPageLoader;
 import pyc.lopatuxin.investment.repository.TransactionRepository;
-import pyc.lopatuxin.investment.service.market.DividendSyncService;
+import pyc.lopatuxin.investment.service.market.MarketDataOutbox;
 import pyc.lopatuxin.investment.service.market.MarketDataService;
 
+import java.io.Reader;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
 import java.util.UUID;
 
 @Slf4j
@@ -32,17 +54,32 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class TransactionService {
 
+    private static final ZoneId MSK = ZoneId.of("Europe/Moscow");
+    private static final String CURSOR_SEPARATOR = "|";
+    private static final Comparator<Transaction> REPLAY_ORDER = Comparator.comparing(Transaction::getExecutedAt)
+            .thenComparing(Transaction::getCreatedAt);
+
     private final TransactionRepository transactionRepository;
+    private final TransactionBulkWriter transactionBulkWriter;
+    private final TransactionPageLoader transactionPageLoader;
     private final PositionRepository positionRepository;
     private final SecurityRepository securityRepository;
     private final TransactionMapper transactionMapper;
     private final MarketDataService marketDataService;
-    private final DividendSyncService dividendSyncService;
+    private final MarketDataOutbox marketDataOutbox;
     private final DividendRepository dividendRepository;
+    private final TaxLotService taxLotService;
+    private final ApplicationEventPublisher eventPublisher;
 
+    /**
+     * Stores a trade and brings the position and the tax lots up to date; the valuation series follows after the
+     * commit (see {@link TradesChangedEvent}). An unknown ticker is registered without asking MOEX, so the transaction
+     * holds its connection only for database work; the MOEX details, history and dividends are loaded after the
+     * commit through {@link MarketDataOutbox}.
+     */
     @Transactional
     public TransactionResponseDto create(UUID userId, CreateTransactionDto dto) {
-        Security security = marketDataService.ensureSecurity(dto.getTicker().toUpperCase(), dto.getSecurityType());
+        Security security = marketDataService.registerSecurity(dto.getTicker(), dto.getSecurityType());
 
         Transaction transaction = Transaction.builder()
                 .userId(userId)
@@ -54,12 +91,99 @@ public class TransactionService {
                 .build();
         Transaction saved = transactionRepository.save(transaction);
 
-        recalculatePosition(userId, security.getTicker());
+        recalculatePosition(userId, security.getTicker(), saved.getExecutedAt());
+        eventPublisher.publishEvent(new TradesChangedEvent(userId, saved.getExecutedAt()));
+        eventPublisher.publishEvent(new PortfolioChangedEvent(userId));
 
         log.info("Transaction created: userId={}, ticker={}, type={}", userId, security.getTicker(), dto.getType());
         return transactionMapper.toDto(saved);
     }
 
+    /**
+     * Imports a broker report (see {@link TransactionCsvParser} for the format) in one transaction: the tickers are
+     * registered in one pass without asking MOEX, every position is replayed once from its earliest imported trade,
+     * and the trades go in as one JDBC batch with their position states already filled. Trades keep the file order on
+     * equal timestamps. A row equal to a stored trade (ticker, type, time, quantity, price) is skipped as often as
+     * such trades are stored, so importing the same report again adds nothing while repeated fills inside one report
+     * are kept.
+     */
+    @Transactional
+    public TransactionImportResultDto importTransactions(UUID userId, Reader csv) {
+        List<TransactionCsvParser.Row> rows = new ArrayList<>();
+        Map<String, SecurityType> fallbackTypes = new LinkedHashMap<>();
+        TransactionCsvParser.parse(csv, row -> {
+            rows.add(row);
+            fallbackTypes.putIfAbsent(row.ticker(), row.securityType());
+        });
+        Map<String, Security> securities = marketDataService.registerSecurities(fallbackTypes);
+        Map<TradeKey, Integer> stored = storedTrades(userId, rows);
+
+        // microsecond steps keep the file order in created_at, the tie-breaker of the replay order
+        Instant createdAt = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        Map<String, List<Transaction>> byTicker = new TreeMap<>();
+        int skipped = 0;
+        for (TransactionCsvParser.Row row : rows) {
+            TradeKey key = TradeKey.of(row.ticker(), row.type(), row.executedAt(), row.quantity(), row.price());
+            Integer storedCount = stored.get(key);
+            if (storedCount != null) {
+                if (storedCount == 1) {
+                    stored.remove(key);
+                } else {
+                    stored.put(key, storedCount - 1);
+                }
+                skipped++;
+                continue;
+            }
+            Transaction transaction = Transaction.builder()
+                    .id(UUID.randomUUID())
+                    .userId(userId)
+                    .security(securities.get(row.ticker()))
+                    .type(row.type())
+                    .quantity(row.quantity())
+                    .price(row.price())
+                    .executedAt(row.executedAt())
+                    .createdAt(createdAt)
+                    .build();
+            createdAt = createdAt.plus(1, ChronoUnit.MICROS);
+            byTicker.computeIfAbsent(row.ticker(), t -> new ArrayList<>()).add(transaction);
+        }
+        if (byTicker.isEmpty()) {
+            log.info("Transactions import skipped: userId={}, all {} rows already stored", userId, skipped);
+            return TransactionImportResultDto.builder()
+                    .imported(0)
+                    .skipped(skipped)
+                    .tickers(List.of())
+                    .build();
+        }
+
+        Instant earliest = Instant.MAX;
+        List<Transaction> imported = new ArrayList<>(rows.size());
+        Map<String, Instant> sinceByTicker = new TreeMap<>();
+        Map<String, List<Transaction>> replayedByTicker = new TreeMap<>();
+        for (Map.Entry<String, List<Transaction>> entry : byTicker.entrySet()) {
+            List<Transaction> trades = entry.getValue();
+            Instant since = trades.stream().map(Transaction::getExecutedAt).min(Comparator.naturalOrder()).orElseThrow();
+            replayedByTicker.put(entry.getKey(), recalculatePosition(userId, entry.getKey(), since, trades));
+            sinceByTicker.put(entry.getKey(), since);
+            imported.addAll(trades);
+            earliest = earliest.isBefore(since) ? earliest : since;
+        }
+        transactionBulkWriter.insertTransactions(imported);
+        // lots reference their BUYs, so the ledger follows the insert
+        replayedByTicker.forEach((ticker, replayed) ->
+                taxLotService.onTradesChanged(userId, ticker, sinceByTicker.get(ticker), replayed));
+
+        eventPublisher.publishEvent(new TradesChangedEvent(userId, earliest));
+        eventPublisher.publishEvent(new PortfolioChangedEvent(userId));
+        log.info("Transactions imported: userId={}, rows={}, skipped={}, tickers={}",
+                userId, imported.size(), skipped, byTicker.size());
+        return TransactionImportResultDto.builder()
+                .imported(imported.size())
+                .skipped(skipped)
+                .tickers(List.copyOf(byTicker.keySet()))
+                .build();
+    }
+
     @Transactional(readOnly = true)
     public List<TransactionResponseDto> list(UUID userId, String ticker) {
         List<Transaction> transactions;
@@ -68,10 +192,39 @@ public class TransactionService {
         } else {
             transactions = transactionRepository.findByUserIdWithSecurity(userId);
         }
-        transactions.sort(Comparator.comparing(Transaction::getExecutedAt).reversed());
         return transactionMapper.toDtoList(transactions);
     }
 
+    /**
+     * One page of the user's trades, newest first. The cursor is the key of the last trade of the previous page, so a
+     * page costs the same at any depth and trades added meanwhile do not shift the following pages.
+     */
+    @Transactional(readOnly = true)
+    public TransactionPageDto page(UUID userId, TransactionPageRequestDto dto) {
+        if (dto.getFrom() != null && dto.getTo() != null && dto.getFrom().isAfter(dto.getTo())) {
+            throw new IllegalArgumentException("Дата начала периода позже даты окончания");
+        }
+        TransactionFilter filter = new TransactionFilter(
+                userId,
+                dto.getTicker() != null && !dto.getTicker().isBlank() ? dto.getTicker().toUpperCase() : null,
+                dto.getType(),
+                dto.getFrom() != null ? dto.getFrom().atStartOfDay(MSK).toInstant() : null,
+                dto.getTo() != null ? dto.getTo().plusDays(1).atStartOfDay(MSK).toInstant() : null);
+        CursorKey after = dto.getCursor() != null && !dto.getCursor().isBlank()
+                ? CursorKey.decode(dto.getCursor())
+                : new CursorKey(null, null);
+
+        // one extra row tells whether there is a next page
+        List<Transaction> rows = transactionPageLoader.load(filter, after.executedAt(), after.id(), dto.getLimit() + 1);
+        boolean hasNext = rows.size() > dto.getLimit();
+        List<Transaction> page = hasNext ? rows.subList(0, dto.getLimit()) : rows;
+        Transaction last = hasNext ? page.getLast() : null;
+        return TransactionPageDto.builder()
+                .items(transactionMapper.toDtoList(page))
+                .nextCursor(last != null ? new CursorKey(last.getExecutedAt(), last.getId()).encode() : null)
+                .build();
+    }
+
     @Transactional
     public void delete(UUID userId, UUID id) {
         Transaction tx = transactionRepository.findById(id)
@@ -80,61 +233,118 @@ public class TransactionService {
             throw new EntityNotFoundException("Transaction not found: " + id);
         }
         String ticker = tx.getSecurity().getTicker();
+        Instant executedAt = tx.getExecutedAt();
         transactionRepository.delete(tx);
         transactionRepository.flush();
-        recalculatePosition(userId, ticker);
+        recalculatePosition(userId, ticker, executedAt);
+        eventPublisher.publishEvent(new TradesChangedEvent(userId, executedAt));
+        eventPublisher.publishEvent(new PortfolioChangedEvent(userId));
         log.info("Transaction deleted: userId={}, id={}", userId, id);
     }
 
-    private void recalculatePosition(UUID userId, String ticker) {
-        List<Transaction> txns = new ArrayList<>(transactionRepository
-                .findByUserIdAndSecurity_Ticker(userId, ticker));
-        txns.sort(Comparator.comparing(Transaction::getExecutedAt)
-                .thenComparing(Transaction::getCreatedAt));
-
-        BigDecimal qty = BigDecimal.ZERO;
-        BigDecimal totalCost = BigDecimal.ZERO;
-
-        for (Transaction t : txns) {
-            if (t.getType() == TransactionType.BUY) {
-                totalCost = totalCost.add(t.getQuantity().multiply(t.getPrice()));
-                qty = qty.add(t.getQuantity());
-            } else {
-                if (qty.compareTo(t.getQuantity()) < 0) {
-                    throw new IllegalStateException(
-                            "Insufficient shares for SELL: ticker=" + ticker +
-                            ", tried to sell " + t.getQuantity() + " but only " + qty + " available");
-                }
-                BigDecimal avgCost = totalCost.divide(qty, 8, RoundingMode.HALF_UP);
-                BigDecimal costToRemove = avgCost.multiply(t.getQuantity());
-                totalCost = totalCost.subtract(costToRemove);
-                qty = qty.subtract(t.getQuantity());
-            }
+    // stored trades within the report's time range, counted by key; a count reaching zero drops the key
+    private Map<TradeKey, Integer> storedTrades(UUID userId, List<TransactionCsvParser.Row> rows) {
+        if (rows.isEmpty()) {
+            return new HashMap<>();
+        }
+        Instant from = rows.stream().map(TransactionCsvParser.Row::executedAt).min(Comparator.naturalOrder()).orElseThrow();
+        Instant to = rows.stream().map(TransactionCsvParser.Row::executedAt).max(Comparator.naturalOrder()).orElseThrow();
+        Map<TradeKey, Integer> stored = new HashMap<>();
+        for (TransactionRepository.StoredTrade trade : transactionRepository.findTradesBetween(userId, from, to)) {
+            stored.merge(TradeKey.of(trade.getTicker(), trade.getType(), trade.getExecutedAt(), trade.getQuantity(),
+                    trade.getPrice()), 1, Integer::sum);
         }
+        return stored;
+    }
+
+    private void recalculatePosition(UUID userId, String ticker, Instant since) {
+        List<Transaction> replayed = recalculatePosition(userId, ticker, since, List.of());
+        taxLotService.onTradesChanged(userId, ticker, since, replayed);
+    }
 
+    /**
+     * Brings the position up to date after the trades from {@code since} changed. Replay resumes from the state
+     * stored on the last earlier trade, so a trade appended at the end costs one lookup and one step, and a backdated
+     * edit replays only the trades after it. Trades written before states were kept trigger one full replay.
+     * {@code pending} trades are not stored yet; they are replayed together with the stored ones and get their
+     * states set for the insert. Returns the replayed trades in replay order.
+     */
+    private List<Transaction> recalculatePosition(UUID userId, String ticker, Instant since, List<Transaction> pending) {
+        Optional<Transaction> last = transactionRepository.findLastBefore(userId, ticker, since);
+        PositionState state = last.isPresent() ? PositionState.after(last.get()) : PositionState.EMPTY;
+        List<Transaction> replay;
+        if (state != null) {
+            replay = new ArrayList<>(transactionRepository.findSince(userId, ticker, since));
+        } else {
+            state = PositionState.EMPTY;
+            replay = new ArrayList<>(transactionRepository.findByUserIdAndSecurity_Ticker(userId, ticker));
+            replay.sort(REPLAY_ORDER);
+        }
+        if (!pending.isEmpty()) {
+            replay.addAll(pending);
+            replay.sort(REPLAY_ORDER);
+        }
+        for (Transaction t : replay) {
+            state = state.apply(t);
+            state.storeOn(t);
+        }
+        savePosition(userId, ticker, state);
+        return replay;
+    }
+
+    private void savePosition(UUID userId, String ticker, PositionState state) {
         Optional<Position> existingOpt = positionRepository
                 .findByUserIdAndSecurity_Ticker(userId, ticker);
 
-        if (qty.compareTo(BigDecimal.ZERO) == 0) {
+        if (state.isEmpty()) {
             existingOpt.ifPresent(positionRepository::delete);
             return;
         }
 
-        Security security = securityRepository.findById(ticker).orElseThrow();
-        BigDecimal avgPrice = totalCost.divide(qty, 2, RoundingMode.HALF_UP);
+        BigDecimal avgPrice = state.cost().divide(state.quantity(), 2, RoundingMode.HALF_UP);
 
         Position position = existingOpt.orElseGet(() -> Position.builder()
                 .userId(userId)
-                .security(security)
+                .security(securityRepository.findById(ticker).orElseThrow())
                 .build());
-        position.setQuantity(qty);
-        position.setTotalCost(totalCost.setScale(2, RoundingMode.HALF_UP));
+        position.setQuantity(state.quantity());
+        position.setTotalCost(state.cost().setScale(2, RoundingMode.HALF_UP));
         position.setAveragePrice(avgPrice);
         positionRepository.save(position);
 
-        // Trigger async dividend sync on first encounter of this ticker
-        if (dividendRepository.findBySecurity_Ticker(ticker).isEmpty()) {
-            dividendSyncService.syncDividendsAsync(ticker);
+        // first encounter of this ticker: dividends are loaded once the trade committed
+        if (!dividendRepository.existsBySecurity_Ticker(ticker)) {
+            marketDataOutbox.enqueue(OutboxEventType.DIVIDEND_SYNC, ticker);
+        }
+    }
+
+    // amounts without trailing zeros, so "10" from a report matches 10.00000000 from the database
+    private record TradeKey(String ticker, TransactionType type, Instant executedAt, BigDecimal quantity,
+                            BigDecimal price) {
+
+        static TradeKey of(String ticker, TransactionType type, Instant executedAt, BigDecimal quantity,
+                           BigDecimal price) {
+            return new TradeKey(ticker, type, executedAt, quantity.stripTrailingZeros(), price.stripTrailingZeros());
+        }
+    }
+
+    // opaque to clients: base64url of "<executedAt>|<id>"
+    private record CursorKey(Instant executedAt, UUID id) {
+
+        String encode() {
+            String key = executedAt + CURSOR_SEPARATOR + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static CursorKey decode(String cursor) {
+            try {
+                String key = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = key.indexOf(CURSOR_SEPARATOR);
+                return new CursorKey(Instant.parse(key.substring(0, separator)),
+                        UUID.fromString(key.substring(separator + 1)));
+            } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+                throw new IllegalArgumentException("Некорректный курсор");
+            }
         }
     }
 }
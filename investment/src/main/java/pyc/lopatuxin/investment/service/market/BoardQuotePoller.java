@@ -0,0 +1,79 @@
+package pyc.lopatuxin.investment.service.market;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import pyc.lopatuxin.investment.client.moex.MoexIssClient;
+import pyc.lopatuxin.investment.client.moex.MoexUnavailableException;
+import pyc.lopatuxin.investment.client.moex.dto.MoexBoardQuoteDto;
+import pyc.lopatuxin.investment.config.MoexProperties;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Polls the whole {@code marketdata} block of the main boards and publishes it as a {@link QuoteTable}.
+ * Readers get the latest table through {@link #current()} without any I/O.
+ */
+@Slf4j
+@Service
+public class BoardQuotePoller {
+
+    private static final ZoneId MSK = ZoneId.of("Europe/Moscow");
+    private static final LocalTime SESSION_OPEN = LocalTime.of(10, 0);
+    private static final LocalTime SESSION_CLOSE = LocalTime.of(19, 0);
+
+    // market -> board, in the order the table resolves duplicate SECIDs
+    private static final List<String[]> BOARDS = List.of(
+            new String[]{"shares", "TQBR"},
+            new String[]{"shares", "TQTF"},
+            new String[]{"bonds", "TQOB"});
+
+    private final MoexIssClient moexIssClient;
+    private final MoexProperties moexProperties;
+    private volatile QuoteTable table = QuoteTable.empty();
+
+    public BoardQuotePoller(MoexIssClient moexIssClient, MoexProperties moexProperties) {
+        this.moexIssClient = moexIssClient;
+        this.moexProperties = moexProperties;
+    }
+
+    public QuoteTable current() {
+        return table;
+    }
+
+    @Scheduled(fixedDelayString = "${moex.iss.board-poll-interval-ms:15000}",
+            initialDelayString = "${moex.iss.board-poll-interval-ms:15000}")
+    public void poll() {
+        if (!moexProperties.isBoardPollEnabled() || !isTradingHours(ZonedDateTime.now(MSK))) {
+            return;
+        }
+        List<MoexBoardQuoteDto> quotes = new ArrayList<>();
+        try {
+            for (String[] board : BOARDS) {
+                quotes.addAll(moexIssClient.fetchBoardQuotes(board[0], board[1]));
+            }
+        } catch (MoexUnavailableException e) {
+            // keep serving the previous table; readers drop it once it is older than the snapshot TTL
+            log.warn("Board quote poll failed, keeping table from {}", table.polledAt());
+            return;
+        }
+        table = QuoteTable.of(quotes, Instant.now());
+        log.debug("Board quote table refreshed: {} tickers", table.size());
+    }
+
+    static boolean isTradingHours(ZonedDateTime at) {
+        ZonedDateTime now = at.withZoneSameInstant(MSK);
+        DayOfWeek day = now.getDayOfWeek();
+        if (day == DayOfWeek.SATURDAY || day == DayOfWeek.SUNDAY) {
+            return false;
+        }
+        LocalTime time = now.toLocalTime();
+        return !time.isBefore(SESSION_OPEN) && time.isBefore(SESSION_CLOSE);
+    }
+}
@@ -0,0 +1,116 @@
+package pyc.lopatuxin.investment.service.market;
+
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import pyc.lopatuxin.investment.config.MoexProperties;
+import pyc.lopatuxin.investment.service.market.dto.DividendSyncReport;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Nightly pass that syncs dividends for many tickers at once. Tickers run concurrently, bounded by
+ * {@code dividendSyncConcurrency} and the {@code moexNightly} rate limiter, so the run time grows with the
+ * number of tickers divided by the concurrency rather than with the number of dividend rows.
+ */
+@Slf4j
+@Service
+public class DividendBatchSyncService {
+
+    private static final int PROGRESS_LOG_STEP = 50;
+
+    private final DividendSyncService dividendSyncService;
+    private final MoexProperties moexProperties;
+    private final RateLimiter rateLimiter;
+    private final Counter rowsAddedCounter;
+    private final Counter failuresCounter;
+    private final Timer runTimer;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    public DividendBatchSyncService(DividendSyncService dividendSyncService,
+                                    MoexProperties moexProperties,
+                                    RateLimiterRegistry rateLimiterRegistry,
+                                    MeterRegistry meterRegistry) {
+        this.dividendSyncService = dividendSyncService;
+        this.moexProperties = moexProperties;
+        this.rateLimiter = rateLimiterRegistry.rateLimiter("moexNightly");
+        this.rowsAddedCounter = Counter.builder("investment.dividends.rows.added")
+                .description("Dividend rows added by the nightly sync")
+                .register(meterRegistry);
+        this.failuresCounter = Counter.builder("investment.dividends.sync.failures")
+                .description("Tickers whose dividend sync failed")
+                .register(meterRegistry);
+        this.runTimer = Timer.builder("investment.dividends.sync.duration")
+                .description("Duration of a full dividend sync run")
+                .register(meterRegistry);
+        Gauge.builder("investment.dividends.sync.pending", pending, AtomicInteger::get)
+                .description("Tickers left in the running dividend sync")
+                .register(meterRegistry);
+    }
+
+    public DividendSyncReport syncAll(Collection<String> tickers) {
+        long startedAt = System.nanoTime();
+        int total = tickers.size();
+        pending.set(total);
+        AtomicInteger done = new AtomicInteger();
+        Semaphore permits = new Semaphore(Math.max(1, moexProperties.getDividendSyncConcurrency()));
+        List<Future<Integer>> futures = new ArrayList<>(total);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String ticker : tickers) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        RateLimiter.waitForPermission(rateLimiter);
+                        return dividendSyncService.syncDividends(ticker);
+                    } finally {
+                        permits.release();
+                        pending.decrementAndGet();
+                        int finished = done.incrementAndGet();
+                        if (finished % PROGRESS_LOG_STEP == 0) {
+                            log.info("Dividend sync progress: {}/{} tickers", finished, total);
+                        }
+                    }
+                }));
+            }
+        }
+
+        int rowsAdded = 0;
+        int failed = 0;
+        List<String> ordered = List.copyOf(tickers);
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                rowsAdded += futures.get(i).get();
+            } catch (ExecutionException e) {
+                failed++;
+                log.warn("Dividend sync failed for {}: {}", ordered.get(i), e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed += futures.size() - i;
+                break;
+            }
+        }
+        pending.set(0);
+        rowsAddedCounter.increment(rowsAdded);
+        failuresCounter.increment(failed);
+        Duration duration = Duration.ofNanos(System.nanoTime() - startedAt);
+        runTimer.record(duration);
+        DividendSyncReport report = new DividendSyncReport(total, rowsAdded, failed, duration);
+        log.info("Dividend sync: {} tickers, {} rows added, {} failed in {} ms",
+                report.tickers(), report.rowsAdded(), report.failed(), report.duration().toMillis());
+        return report;
+    }
+}
@@ -1,6 +1,7 @@
 package pyc.lopatuxin.investment.service.market;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -10,11 +11,18 @@ import pyc.lopatuxin.investment.client.moex.dto.MoexDividendDto;
 import pyc.lopatuxin.investment.entity.Dividend;
 import pyc.lopatuxin.investment.entity.Security;
 import pyc.lopatuxin.investment.entity.enums.DividendStatus;
+import pyc.lopatuxin.investment.event.PortfolioChangedEvent;
 import pyc.lopatuxin.investment.repository.DividendRepository;
+import pyc.lopatuxin.investment.repository.MarketDataBulkWriter;
+import pyc.lopatuxin.investment.repository.PositionRepository;
 import pyc.lopatuxin.investment.repository.SecurityRepository;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.UUID;
 
 @Slf4j
 @Service
@@ -23,40 +31,49 @@ public class DividendSyncService {
     private final MoexIssClient moexIssClient;
     private final DividendRepository dividendRepository;
     private final SecurityRepository securityRepository;
+    private final PositionRepository positionRepository;
+    private final MarketDataBulkWriter marketDataBulkWriter;
     private final DividendLoaderService dividendLoaderService;
+    private final ApplicationEventPublisher eventPublisher;
 
     public DividendSyncService(MoexIssClient moexIssClient,
                                DividendRepository dividendRepository,
                                SecurityRepository securityRepository,
-                               @Lazy DividendLoaderService dividendLoaderService) {
+                               PositionRepository positionRepository,
+                               MarketDataBulkWriter marketDataBulkWriter,
+                               @Lazy DividendLoaderService dividendLoaderService,
+                               ApplicationEventPublisher eventPublisher) {
         this.moexIssClient = moexIssClient;
         this.dividendRepository = dividendRepository;
         this.securityRepository = securityRepository;
+        this.positionRepository = positionRepository;
+        this.marketDataBulkWriter = marketDataBulkWriter;
         this.dividendLoaderService = dividendLoaderService;
+        this.eventPublisher = eventPublisher;
     }
 
+    /**
+     * Inserts the ticker's MOEX dividends that are not stored yet, marks announced ones past their record date as
+     * paid and returns how many were new. Holders of the ticker get a {@link PortfolioChangedEvent} when anything
+     * changed. Throws {@link MoexUnavailableException} when ISS is down, so batch runs and the outbox count the ticker
+     * as failed instead of synced.
+     */
     @Transactional
-    public void syncDividends(String ticker) {
-        List<MoexDividendDto> moexDividends;
-        try {
-            moexDividends = moexIssClient.fetchDividends(ticker);
-        } catch (MoexUnavailableException e) {
-            log.warn("MOEX unavailable while syncing dividends for {}", ticker);
-            return;
-        }
+    public int syncDividends(String ticker) {
+        List<MoexDividendDto> moexDividends = moexIssClient.fetchDividends(ticker);
         Security security = securityRepository.findById(ticker).orElse(null);
         if (security == null) {
-            return;
+            return 0;
         }
 
+        Set<LocalDate> known = new HashSet<>(dividendRepository.findRecordDatesByTicker(ticker));
+        List<Dividend> newDividends = new ArrayList<>();
         for (MoexDividendDto dto : moexDividends) {
-            if (dto.getRegistryCloseDate() == null) {
-                continue;
-            }
-            if (dividendRepository.existsBySecurity_TickerAndRecordDate(ticker, dto.getRegistryCloseDate())) {
+            if (dto.getRegistryCloseDate() == null || dto.getValue() == null) {
                 continue;
             }
-            if (dto.getValue() == null) {
+            // add() also drops a record date MOEX lists twice
+            if (!known.add(dto.getRegistryCloseDate())) {
                 continue;
             }
             DividendStatus status = dto.getRegistryCloseDate().isBefore(LocalDate.now())
@@ -69,9 +86,17 @@ public class DividendSyncService {
             dividend.setAmountPerShare(dto.getValue());
             dividend.setCurrency(dto.getCurrencyId() != null ? dto.getCurrencyId() : "RUB");
             dividend.setStatus(status);
-            dividendRepository.save(dividend);
+            newDividends.add(dividend);
+        }
+        marketDataBulkWriter.insertDividends(newDividends);
+        int paid = dividendRepository.markPaidBefore(ticker, LocalDate.now());
+        if (!newDividends.isEmpty() || paid > 0) {
+            for (UUID userId : positionRepository.findUserIdsByTicker(ticker)) {
+                eventPublisher.publishEvent(new PortfolioChangedEvent(userId));
+            }
         }
-        log.debug("Synced {} dividends for {}", moexDividends.size(), ticker);
+        log.debug("Synced {} dividends for {}, {} new", moexDividends.size(), ticker, newDividends.size());
+        return newDividends.size();
     }
 
     // Triggers async dividend sync via a separate @Async proxy bean to avoid calling @Async from within the same transaction
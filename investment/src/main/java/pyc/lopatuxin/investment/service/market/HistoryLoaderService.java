@@ -4,21 +4,27 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
+import pyc.lopatuxin.investment.service.PortfolioValuationService;
 
 @Slf4j
 @Service
 public class HistoryLoaderService {
 
     private final MarketDataService marketDataService;
+    private final PortfolioValuationService portfolioValuationService;
 
-    public HistoryLoaderService(@Lazy MarketDataService marketDataService) {
+    public HistoryLoaderService(@Lazy MarketDataService marketDataService,
+                                PortfolioValuationService portfolioValuationService) {
         this.marketDataService = marketDataService;
+        this.portfolioValuationService = portfolioValuationService;
     }
 
     @Async("historyLoaderExecutor")
     public void loadAsync(String ticker) {
         try {
-            marketDataService.ensureHistory(ticker);
+            if (marketDataService.ensureHistory(ticker) > 0) {
+                portfolioValuationService.onHistoryLoaded(ticker);
+            }
         } catch (Exception e) {
             log.warn("Async history load failed for {}: {}", ticker, e.getMessage());
         }
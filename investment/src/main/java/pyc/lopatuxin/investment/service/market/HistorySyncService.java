@@ -0,0 +1,48 @@
+package pyc.lopatuxin.investment.service.market;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import pyc.lopatuxin.investment.service.market.dto.HistorySyncReport;
+
+import java.time.Duration;
+import java.util.Collection;
+
+/**
+ * Nightly pass that brings every ticker's price history up to date from its watermark.
+ */
+@Slf4j
+@Service
+public class HistorySyncService {
+
+    private final MarketDataService marketDataService;
+    private final Counter rowsAddedCounter;
+
+    public HistorySyncService(MarketDataService marketDataService, MeterRegistry meterRegistry) {
+        this.marketDataService = marketDataService;
+        this.rowsAddedCounter = Counter.builder("investment.history.rows.added")
+                .description("Price history rows added by incremental loads")
+                .register(meterRegistry);
+    }
+
+    public HistorySyncReport syncDeltas(Collection<String> tickers) {
+        long startedAt = System.nanoTime();
+        int rowsAdded = 0;
+        int failed = 0;
+        for (String ticker : tickers) {
+            try {
+                rowsAdded += marketDataService.ensureHistory(ticker);
+            } catch (Exception e) {
+                failed++;
+                log.warn("History delta load failed for {}: {}", ticker, e.getMessage());
+            }
+        }
+        rowsAddedCounter.increment(rowsAdded);
+        HistorySyncReport report = new HistorySyncReport(
+                tickers.size(), rowsAdded, failed, Duration.ofNanos(System.nanoTime() - startedAt));
+        log.info("History delta sync: {} tickers, {} rows added, {} failed in {} ms",
+                report.tickers(), report.rowsAdded(), report.failed(), report.duration().toMillis());
+        return report;
+    }
+}
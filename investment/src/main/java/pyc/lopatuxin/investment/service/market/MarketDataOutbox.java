@@ -0,0 +1,100 @@
+package pyc.lopatuxin.investment.service.market;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import pyc.lopatuxin.investment.entity.OutboxEvent;
+import pyc.lopatuxin.investment.entity.enums.OutboxEventType;
+import pyc.lopatuxin.investment.event.OutboxEnqueuedEvent;
+import pyc.lopatuxin.investment.repository.OutboxEventRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Transactional outbox for the MOEX work a write needs but must not wait for. An event is stored in the transaction
+ * of the write, so it exists exactly when the write committed, and {@link OutboxProcessor} does the work afterwards
+ * with no connection held during ISS calls.
+ * <p>
+ * A claimed event gets its next attempt pushed out by an exponential backoff before any work starts: a failed or
+ * abandoned attempt is retried after that delay, a successful one deletes the row. After {@link #MAX_ATTEMPTS} the row
+ * is kept with its last error and no longer claimed; this is logged at ERROR and counted in
+ * {@code investment.outbox.exhausted}, and an equal event enqueued later starts over.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MarketDataOutbox {
+
+    static final int MAX_ATTEMPTS = 10;
+
+    private static final Duration FIRST_RETRY = Duration.ofSeconds(30);
+    private static final Duration MAX_RETRY = Duration.ofHours(6);
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Stores the event in the caller's transaction unless an equal one is still waiting. Exhausted rows do not count.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueue(OutboxEventType type, String key) {
+        // a duplicate slipping past this check under concurrency only repeats idempotent work
+        if (outboxEventRepository.existsByTypeAndAggregateKeyAndAttemptsLessThan(type, key, MAX_ATTEMPTS)) {
+            return;
+        }
+        outboxEventRepository.save(OutboxEvent.builder()
+                .type(type)
+                .aggregateKey(key)
+                .nextAttemptAt(Instant.now())
+                .build());
+        eventPublisher.publishEvent(new OutboxEnqueuedEvent());
+        log.debug("Outbox event stored: type={}, key={}", type, key);
+    }
+
+    /**
+     * Takes up to {@code limit} due events that no other worker holds and schedules their retry.
+     */
+    @Transactional
+    public List<OutboxEvent> claim(int limit) {
+        Instant now = Instant.now();
+        List<OutboxEvent> due = outboxEventRepository.findDueForUpdate(now, MAX_ATTEMPTS, PageRequest.of(0, limit));
+        for (OutboxEvent event : due) {
+            event.setAttempts(event.getAttempts() + 1);
+            event.setNextAttemptAt(now.plus(retryDelay(event.getAttempts())));
+        }
+        return due;
+    }
+
+    @Transactional
+    public void complete(UUID id) {
+        outboxEventRepository.deleteById(id);
+    }
+
+    @Transactional
+    public void fail(OutboxEvent event, String error) {
+        String message = error != null && error.length() > MAX_ERROR_LENGTH
+                ? error.substring(0, MAX_ERROR_LENGTH)
+                : error;
+        outboxEventRepository.recordError(event.getId(), message);
+        if (event.getAttempts() >= MAX_ATTEMPTS) {
+            log.error("Outbox event exhausted after {} attempts and will not be retried: id={}, type={}, key={}, error={}",
+                    event.getAttempts(), event.getId(), event.getType(), event.getAggregateKey(), message);
+            meterRegistry.counter("investment.outbox.exhausted", "type", event.getType().name()).increment();
+        }
+    }
+
+    static Duration retryDelay(int attempts) {
+        Duration delay = FIRST_RETRY.multipliedBy(1L << Math.min(attempts - 1, 20));
+        return delay.compareTo(MAX_RETRY) > 0 ? MAX_RETRY : delay;
+    }
+}
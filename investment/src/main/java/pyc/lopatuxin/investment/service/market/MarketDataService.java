@@ -7,6 +7,7 @@ import org.springframework.context.annotation.Lazy;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import pyc.lopatuxin.investment.client.moex.MoexCallGovernor;
 import pyc.lopatuxin.investment.client.moex.MoexIssClient;
 import pyc.lopatuxin.investment.client.moex.MoexUnavailableException;
 import pyc.lopatuxin.investment.client.moex.dto.MoexCandleDto;
@@ -18,7 +19,9 @@ import pyc.lopatuxin.investment.entity.PriceHistory;
 import pyc.lopatuxin.investment.entity.PriceSnapshot;
 import pyc.lopatuxin.investment.entity.Security;
 import pyc.lopatuxin.investment.entity.enums.HistoryStatus;
+import pyc.lopatuxin.investment.entity.enums.OutboxEventType;
 import pyc.lopatuxin.investment.entity.enums.SecurityType;
+import pyc.lopatuxin.investment.repository.MarketDataBulkWriter;
 import pyc.lopatuxin.investment.repository.PriceHistoryRepository;
 import pyc.lopatuxin.investment.repository.PriceSnapshotRepository;
 import pyc.lopatuxin.investment.repository.SecurityRepository;
@@ -30,6 +33,7 @@ import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -44,7 +48,10 @@ public class MarketDataService {
     private final SecurityRepository securityRepository;
     private final PriceSnapshotRepository priceSnapshotRepository;
     private final PriceHistoryRepository priceHistoryRepository;
+    private final MarketDataBulkWriter marketDataBulkWriter;
+    private final QuoteCache quoteCache;
     private final MoexProperties moexProperties;
+    private final MarketDataOutbox marketDataOutbox;
     private final HistoryLoaderService historyLoaderService;
     private final MarketDataService self;
 
@@ -52,14 +59,20 @@ public class MarketDataService {
                              SecurityRepository securityRepository,
                              PriceSnapshotRepository priceSnapshotRepository,
                              PriceHistoryRepository priceHistoryRepository,
+                             MarketDataBulkWriter marketDataBulkWriter,
+                             QuoteCache quoteCache,
                              MoexProperties moexProperties,
+                             MarketDataOutbox marketDataOutbox,
                              @Lazy HistoryLoaderService historyLoaderService,
                              @Lazy MarketDataService self) {
         this.moexIssClient = moexIssClient;
         this.securityRepository = securityRepository;
         this.priceSnapshotRepository = priceSnapshotRepository;
         this.priceHistoryRepository = priceHistoryRepository;
+        this.marketDataBulkWriter = marketDataBulkWriter;
+        this.quoteCache = quoteCache;
         this.moexProperties = moexProperties;
+        this.marketDataOutbox = marketDataOutbox;
         this.historyLoaderService = historyLoaderService;
         this.self = self;
     }
@@ -79,6 +92,65 @@ public class MarketDataService {
         return self.persistNewSecurity(normalizedTicker, moexDto, fallbackType);
     }
 
+    /**
+     * Returns the stored security or registers an unknown ticker as PENDING without asking MOEX, so a write path
+     * never waits for ISS. Board, name, sector and history are filled in after the commit through the outbox.
+     */
+    @Transactional
+    public Security registerSecurity(String ticker, SecurityType fallbackType) {
+        String normalizedTicker = ticker.toUpperCase();
+        return securityRepository.findById(normalizedTicker)
+                .orElseGet(() -> registerPending(normalizedTicker, fallbackType));
+    }
+
+    /**
+     * {@link #registerSecurity} for many tickers in one transaction. Keys are upper-case tickers mapped to the type
+     * a new security is registered with.
+     */
+    @Transactional
+    public Map<String, Security> registerSecurities(Map<String, SecurityType> fallbackTypes) {
+        Map<String, Security> result = new HashMap<>();
+        securityRepository.findAllById(fallbackTypes.keySet()).forEach(s -> result.put(s.getTicker(), s));
+        fallbackTypes.forEach((ticker, fallbackType) -> {
+            if (!result.containsKey(ticker)) {
+                result.put(ticker, registerPending(ticker, fallbackType));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Replaces the placeholder details of a registered security with the MOEX description. Throws
+     * {@link MoexUnavailableException}, or {@link IllegalStateException} when MOEX has no description, so the outbox
+     * counts the attempt as failed and retries later.
+     */
+    public void enrichSecurity(String ticker) {
+        MoexSecurityDto dto = moexIssClient.fetchSecurity(ticker)
+                .orElseThrow(() -> new IllegalStateException("MOEX has no description for " + ticker));
+        self.applySecurityInfo(ticker, dto);
+    }
+
+    @Transactional
+    public void applySecurityInfo(String ticker, MoexSecurityDto dto) {
+        securityRepository.findById(ticker).ifPresent(security -> {
+            security.setBoardId(dto.boardId());
+            if (dto.name() != null) {
+                security.setName(dto.name());
+            }
+            if (dto.securityType() != null) {
+                security.setType(dto.securityType());
+            }
+            String sector = dto.sector() != null
+                    ? dto.sector()
+                    : SectorDefaults.resolveSector(ticker, security.getType());
+            if (sector != null) {
+                security.setSector(sector);
+            }
+            security.setCurrency(dto.currency());
+            securityRepository.save(security);
+        });
+    }
+
     @Transactional
     public Security persistNewSecurity(String ticker, MoexSecurityDto moexDto, SecurityType fallbackType) {
         return securityRepository.findById(ticker).orElseGet(() -> {
@@ -109,51 +181,26 @@ public class MarketDataService {
         }
     }
 
-    @Cacheable(value = "moexSnapshots", key = "#ticker")
     public SnapshotResult getSnapshot(String ticker) {
-        Optional<PriceSnapshot> dbSnapshot = priceSnapshotRepository.findById(ticker);
-        if (dbSnapshot.isPresent() && !isStale(dbSnapshot.get())) {
-            return toSnapshotResult(dbSnapshot.get(), false);
-        }
-        try {
-            Map<String, MoexSnapshotDto> fetched = moexIssClient.fetchSnapshots(List.of(ticker));
-            MoexSnapshotDto dto = fetched.get(ticker);
-            if (dto != null) {
-                PriceSnapshot snapshot = upsertSnapshot(ticker, dto);
-                return toSnapshotResult(snapshot, false);
-            }
-            return dbSnapshot.map(s -> toSnapshotResult(s, true))
-                    .orElse(new SnapshotResult(null, null, null, true));
-        } catch (MoexUnavailableException e) {
-            log.warn("MOEX unavailable for snapshot {}", ticker);
-            return dbSnapshot.map(s -> toSnapshotResult(s, true))
-                    .orElse(new SnapshotResult(null, null, null, true));
-        }
+        return quoteCache.get(List.of(ticker)).get(ticker);
     }
 
     public Map<String, SnapshotResult> getSnapshots(Collection<String> tickers) {
         if (tickers.isEmpty()) {
             return Collections.emptyMap();
         }
-        Map<String, SnapshotResult> result = new HashMap<>();
-        try {
-            Map<String, MoexSnapshotDto> fetched = moexIssClient.fetchSnapshots(tickers);
-            for (String ticker : tickers) {
-                MoexSnapshotDto dto = fetched.get(ticker);
-                if (dto != null) {
-                    PriceSnapshot snapshot = upsertSnapshot(ticker, dto);
-                    result.put(ticker, toSnapshotResult(snapshot, false));
-                } else {
-                    result.put(ticker, resolveFromDbOrStale(ticker));
-                }
-            }
-        } catch (MoexUnavailableException e) {
-            log.warn("MOEX unavailable for batch snapshots");
-            for (String ticker : tickers) {
-                result.put(ticker, resolveFromDbOrStale(ticker));
-            }
-        }
-        return result;
+        return quoteCache.get(tickers);
+    }
+
+    /**
+     * See {@link QuoteCache#versions(Collection)}.
+     */
+    public Map<String, String> quoteVersions(Collection<String> tickers) {
+        return quoteCache.versions(tickers);
+    }
+
+    public void refreshSnapshots(Collection<String> tickers) {
+        quoteCache.refresh(tickers);
     }
 
     @Cacheable(value = "moexSecurities", key = "'list:' + (#category != null ? #category.name() : 'ALL')")
@@ -198,46 +245,69 @@ public class MarketDataService {
         };
     }
 
-    public void ensureHistory(String ticker) {
+    /**
+     * Loads candles after the ticker's watermark (or the last 3 years on first load) and returns how many rows were added.
+     * Throws {@link MoexUnavailableException} when ISS cannot deliver the range, so callers can tell "nothing new"
+     * from "nothing fetched"; the watermark then stays where it was.
+     */
+    public int ensureHistory(String ticker) {
         Optional<Security> secOpt = securityRepository.findById(ticker);
         if (secOpt.isEmpty()) {
             log.warn("Security {} not found, skipping history load", ticker);
-            return;
+            return 0;
         }
-        Security security = secOpt.get();
-        if (security.getHistoryStatus() == HistoryStatus.READY && priceHistoryRepository.existsByTicker(ticker)) {
-            return;
-        }
-        LocalDate from = LocalDate.now().minusYears(3);
         LocalDate to = LocalDate.now();
-        try {
-            List<MoexCandleDto> candles = moexIssClient.fetchHistory(ticker, from, to);
-            List<PriceHistory> records = candles.stream()
-                    .map(c -> PriceHistory.builder()
-                            .ticker(c.ticker())
-                            .tradeDate(c.tradeDate())
-                            .open(c.open())
-                            .close(c.close())
-                            .high(c.high())
-                            .low(c.low())
-                            .volume(c.volume())
-                            .build())
-                    .toList();
-            self.saveHistoryAndUpdateStatus(ticker, records);
-        } catch (MoexUnavailableException e) {
-            log.warn("MOEX unavailable for history {}, status remains PENDING", ticker);
+        LocalDate watermark = resolveHistoryWatermark(secOpt.get());
+        LocalDate from = watermark != null ? watermark.plusDays(1) : to.minusYears(3);
+        if (from.isAfter(to)) {
+            return 0;
         }
+        List<MoexCandleDto> candles = secOpt.get().getType() == SecurityType.INDEX
+                ? moexIssClient.fetchIndexHistory(ticker, from, to)
+                : moexIssClient.fetchHistory(ticker, from, to);
+        List<PriceHistory> records = candles.stream()
+                .map(c -> PriceHistory.builder()
+                        .ticker(c.ticker())
+                        .tradeDate(c.tradeDate())
+                        .open(c.open())
+                        .close(c.close())
+                        .high(c.high())
+                        .low(c.low())
+                        .volume(c.volume())
+                        .build())
+                .toList();
+        self.saveHistoryAndUpdateStatus(ticker, records);
+        return records.size();
     }
 
     @Transactional
     public void saveHistoryAndUpdateStatus(String ticker, List<PriceHistory> records) {
-        priceHistoryRepository.saveAll(records);
+        marketDataBulkWriter.upsertPriceHistory(records);
+        if (!records.isEmpty()) {
+            securityRepository.incrementHistoryVersion(ticker);
+        }
+        LocalDate lastLoaded = records.stream()
+                .map(PriceHistory::getTradeDate)
+                .max(Comparator.naturalOrder())
+                .orElse(null);
         securityRepository.findById(ticker).ifPresent(s -> {
             s.setHistoryStatus(HistoryStatus.READY);
+            if (lastLoaded != null
+                    && (s.getHistoryLoadedThrough() == null || lastLoaded.isAfter(s.getHistoryLoadedThrough()))) {
+                s.setHistoryLoadedThrough(lastLoaded);
+            }
             securityRepository.save(s);
         });
     }
 
+    // Securities loaded before watermarks existed fall back to the stored history itself
+    private LocalDate resolveHistoryWatermark(Security security) {
+        if (security.getHistoryLoadedThrough() != null) {
+            return security.getHistoryLoadedThrough();
+        }
+        return priceHistoryRepository.findLastTradeDate(security.getTicker()).orElse(null);
+    }
+
     public void triggerHistoryAsync(String ticker) {
         historyLoaderService.loadAsync(ticker);
     }
@@ -260,6 +330,13 @@ public class MarketDataService {
         );
     }
 
+    private Security registerPending(String ticker, SecurityType fallbackType) {
+        // flushed at once: the import writes its trades through JDBC, past the persistence context
+        Security security = securityRepository.saveAndFlush(buildPendingSecurity(ticker, fallbackType));
+        marketDataOutbox.enqueue(OutboxEventType.SECURITY_ENRICHMENT, ticker);
+        return security;
+    }
+
     private Security buildReadySecurity(String ticker, MoexSecurityDto dto) {
         // If MOEX did not return a sector, resolve from local dictionary
         String sector = dto.sector() != null
@@ -286,21 +363,6 @@ public class MarketDataService {
                 .build();
     }
 
-    private PriceSnapshot upsertSnapshot(String ticker, MoexSnapshotDto dto) {
-        PriceSnapshot snapshot = priceSnapshotRepository.findById(ticker)
-                .orElseGet(() -> PriceSnapshot.builder().ticker(ticker).build());
-        snapshot.setLastPrice(dto.lastPrice());
-        snapshot.setPreviousClose(dto.previousClose());
-        snapshot.setFetchedAt(Instant.now());
-        return priceSnapshotRepository.save(snapshot);
-    }
-
-    private SnapshotResult resolveFromDbOrStale(String ticker) {
-        return priceSnapshotRepository.findById(ticker)
-                .map(s -> toSnapshotResult(s, true))
-                .orElse(new SnapshotResult(null, null, null, true));
-    }
-
     private boolean isStale(PriceSnapshot snapshot) {
         return snapshot.getFetchedAt().isBefore(
                 Instant.now().minus(moexProperties.getSnapshotTtlMinutes(), ChronoUnit.MINUTES)
@@ -335,7 +397,8 @@ public class MarketDataService {
         for (Security security : candidates) {
             if (!isOfzTicker(security.getTicker())) continue;
             try {
-                Optional<MoexSecurityDto> dto = moexIssClient.fetchSecurity(security.getTicker());
+                Optional<MoexSecurityDto> dto = MoexCallGovernor.inBackground(
+                        () -> moexIssClient.fetchSecurity(security.getTicker()));
                 if (dto.isPresent() && dto.get().securityType() == SecurityType.OFZ) {
                     security.setType(SecurityType.OFZ);
                     security.setSector(SectorDefaults.GOVERNMENT_BONDS);
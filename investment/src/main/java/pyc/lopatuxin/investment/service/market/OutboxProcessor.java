@@ -0,0 +1,84 @@
+package pyc.lopatuxin.investment.service.market;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import pyc.lopatuxin.investment.client.moex.MoexCallGovernor;
+import pyc.lopatuxin.investment.entity.OutboxEvent;
+import pyc.lopatuxin.investment.event.OutboxEnqueuedEvent;
+import pyc.lopatuxin.investment.service.PortfolioValuationService;
+
+import java.util.List;
+
+/**
+ * Works off the {@link MarketDataOutbox}: right after a write that stored events committed, and on a fixed delay for
+ * retries and for events left behind by a restart. Events are claimed in a short transaction and processed outside of
+ * it, each step opening its own. An event is retried only when its work throws, so the steps below report an ISS
+ * outage as {@link pyc.lopatuxin.investment.client.moex.MoexUnavailableException} rather than as "nothing to do".
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class OutboxProcessor {
+
+    private static final int BATCH_SIZE = 20;
+
+    private final MarketDataOutbox marketDataOutbox;
+    private final MarketDataService marketDataService;
+    private final DividendSyncService dividendSyncService;
+    private final PortfolioValuationService portfolioValuationService;
+
+    @Async("outboxExecutor")
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEnqueued(OutboxEnqueuedEvent event) {
+        drain();
+    }
+
+    @Scheduled(fixedDelay = 30_000, initialDelay = 30_000)
+    public void poll() {
+        drain();
+    }
+
+    /**
+     * Processes due events until none is left; returns how many were taken.
+     */
+    public int drain() {
+        int processed = 0;
+        List<OutboxEvent> batch;
+        while (!(batch = marketDataOutbox.claim(BATCH_SIZE)).isEmpty()) {
+            for (OutboxEvent event : batch) {
+                process(event);
+            }
+            processed += batch.size();
+        }
+        return processed;
+    }
+
+    private void process(OutboxEvent event) {
+        String ticker = event.getAggregateKey();
+        try {
+            MoexCallGovernor.inBackground(() -> {
+                switch (event.getType()) {
+                    case SECURITY_ENRICHMENT -> enrich(ticker);
+                    case DIVIDEND_SYNC -> dividendSyncService.syncDividends(ticker);
+                }
+                return null;
+            });
+            marketDataOutbox.complete(event.getId());
+        } catch (Exception e) {
+            log.warn("Outbox event failed: type={}, ticker={}, attempt={}: {}",
+                    event.getType(), ticker, event.getAttempts(), e.getMessage());
+            marketDataOutbox.fail(event, e.getMessage());
+        }
+    }
+
+    private void enrich(String ticker) {
+        marketDataService.enrichSecurity(ticker);
+        if (marketDataService.ensureHistory(ticker) > 0) {
+            portfolioValuationService.onHistoryLoaded(ticker);
+        }
+    }
+}
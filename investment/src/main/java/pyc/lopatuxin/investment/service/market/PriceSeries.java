@@ -0,0 +1,182 @@
+package pyc.lopatuxin.investment.service.market;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Immutable daily candles of one ticker in columnar form, ordered by date. Dates are epoch days and prices are
+ * kept in minor units (kopecks — {@code price_history} stores two decimals), so a candle costs 44 bytes instead
+ * of an entity with four {@link BigDecimal} fields.
+ */
+public final class PriceSeries {
+
+    static final int PRICE_SCALE = 2;
+    static final long NO_VOLUME = Long.MIN_VALUE;
+
+    // array headers plus the object itself; only used for cache weighing
+    private static final int OVERHEAD_BYTES = 6 * 16 + 32;
+    private static final int BYTES_PER_CANDLE = Integer.BYTES + 5 * Long.BYTES;
+
+    private static final PriceSeries EMPTY = new PriceSeries(new int[0], new long[0], new long[0], new long[0],
+            new long[0], new long[0]);
+
+    private final int[] epochDay;
+    private final long[] open;
+    private final long[] high;
+    private final long[] low;
+    private final long[] close;
+    private final long[] volume;
+
+    private PriceSeries(int[] epochDay, long[] open, long[] high, long[] low, long[] close, long[] volume) {
+        this.epochDay = epochDay;
+        this.open = open;
+        this.high = high;
+        this.low = low;
+        this.close = close;
+        this.volume = volume;
+    }
+
+    public static PriceSeries empty() {
+        return EMPTY;
+    }
+
+    public static Builder builder(int expectedSize) {
+        return new Builder(expectedSize);
+    }
+
+    public int size() {
+        return epochDay.length;
+    }
+
+    public boolean isEmpty() {
+        return epochDay.length == 0;
+    }
+
+    public LocalDate date(int i) {
+        return LocalDate.ofEpochDay(epochDay[i]);
+    }
+
+    public int epochDay(int i) {
+        return epochDay[i];
+    }
+
+    public BigDecimal open(int i) {
+        return BigDecimal.valueOf(open[i], PRICE_SCALE);
+    }
+
+    public BigDecimal high(int i) {
+        return BigDecimal.valueOf(high[i], PRICE_SCALE);
+    }
+
+    public BigDecimal low(int i) {
+        return BigDecimal.valueOf(low[i], PRICE_SCALE);
+    }
+
+    public BigDecimal close(int i) {
+        return BigDecimal.valueOf(close[i], PRICE_SCALE);
+    }
+
+    /**
+     * Close in minor units, for arithmetic that should stay on primitives.
+     */
+    public long closeMinor(int i) {
+        return close[i];
+    }
+
+    public Long volume(int i) {
+        return volume[i] == NO_VOLUME ? null : volume[i];
+    }
+
+    /**
+     * Index of the last candle on or before the date (the forward-filled price for that day), or -1.
+     */
+    public int indexAtOrBefore(LocalDate date) {
+        int found = Arrays.binarySearch(epochDay, Math.toIntExact(date.toEpochDay()));
+        return found >= 0 ? found : -found - 2;
+    }
+
+    /**
+     * Index of the first candle on or after the date; {@link #size()} when there is none.
+     */
+    public int indexAtOrAfter(LocalDate date) {
+        int found = Arrays.binarySearch(epochDay, Math.toIntExact(date.toEpochDay()));
+        return found >= 0 ? found : -found - 1;
+    }
+
+    public long estimatedBytes() {
+        return OVERHEAD_BYTES + (long) BYTES_PER_CANDLE * epochDay.length;
+    }
+
+    /**
+     * Appends candles in ascending date order; a repeated date overwrites the previous candle.
+     */
+    public static final class Builder {
+
+        private int[] epochDay;
+        private long[] open;
+        private long[] high;
+        private long[] low;
+        private long[] close;
+        private long[] volume;
+        private int size;
+
+        private Builder(int expectedSize) {
+            int capacity = Math.max(16, expectedSize);
+            epochDay = new int[capacity];
+            open = new long[capacity];
+            high = new long[capacity];
+            low = new long[capacity];
+            close = new long[capacity];
+            volume = new long[capacity];
+        }
+
+        public Builder add(LocalDate date, BigDecimal open, BigDecimal high, BigDecimal low, BigDecimal close,
+                           Long volume) {
+            int day = Math.toIntExact(date.toEpochDay());
+            if (size > 0 && day < epochDay[size - 1]) {
+                throw new IllegalArgumentException("Candles must be added in date order: " + date);
+            }
+            int i = size > 0 && day == epochDay[size - 1] ? size - 1 : size;
+            if (i == size) {
+                ensureCapacity(size + 1);
+                size++;
+            }
+            long closeMinor = toMinor(close);
+            epochDay[i] = day;
+            this.close[i] = closeMinor;
+            this.open[i] = open != null ? toMinor(open) : closeMinor;
+            this.high[i] = high != null ? toMinor(high) : closeMinor;
+            this.low[i] = low != null ? toMinor(low) : closeMinor;
+            this.volume[i] = volume != null ? volume : NO_VOLUME;
+            return this;
+        }
+
+        public PriceSeries build() {
+            if (size == 0) {
+                return EMPTY;
+            }
+            return new PriceSeries(Arrays.copyOf(epochDay, size), Arrays.copyOf(open, size),
+                    Arrays.copyOf(high, size), Arrays.copyOf(low, size), Arrays.copyOf(close, size),
+                    Arrays.copyOf(volume, size));
+        }
+
+        private void ensureCapacity(int required) {
+            if (required <= epochDay.length) {
+                return;
+            }
+            int capacity = Math.max(required, epochDay.length * 2);
+            epochDay = Arrays.copyOf(epochDay, capacity);
+            open = Arrays.copyOf(open, capacity);
+            high = Arrays.copyOf(high, capacity);
+            low = Arrays.copyOf(low, capacity);
+            close = Arrays.copyOf(close, capacity);
+            volume = Arrays.copyOf(volume, capacity);
+        }
+
+        private static long toMinor(BigDecimal price) {
+            return price.movePointRight(PRICE_SCALE).setScale(0, RoundingMode.HALF_UP).longValueExact();
+        }
+    }
+}
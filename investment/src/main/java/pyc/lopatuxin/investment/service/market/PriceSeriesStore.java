@@ -0,0 +1,95 @@
+package pyc.lopatuxin.investment.service.market;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import pyc.lopatuxin.investment.config.MoexProperties;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Read-optimized price history: one {@link PriceSeries} per ticker, loaded lazily from {@code price_history} with
+ * plain JDBC (no entity hydration) and kept in a cache bounded by the total size of the arrays and by a TTL.
+ * Every cached series carries the {@link #version(String)} it was loaded at and is reloaded once the stored
+ * version moves on, so history written by any instance is picked up on the next read.
+ * <p>
+ * Meant for readers that walk the whole series (price history, risk metrics). Projections need a few points per
+ * ticker and read them with {@code ProjectionInputLoader} instead.
+ */
+@Slf4j
+@Service
+public class PriceSeriesStore {
+
+    private static final String SELECT_SERIES = """
+            SELECT trade_date, open, high, low, close, volume FROM price_history
+            WHERE ticker = ?
+            ORDER BY trade_date
+            """;
+
+    private static final String SELECT_VERSION = """
+            SELECT history_loaded_through, history_version FROM securities WHERE ticker = ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Cache<String, Versioned> cache;
+
+    public PriceSeriesStore(JdbcTemplate jdbcTemplate, MoexProperties moexProperties, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(moexProperties.getPriceSeriesCacheMaxMb() * 1024L * 1024L)
+                .weigher((String ticker, Versioned entry) ->
+                        (int) Math.min(Integer.MAX_VALUE, entry.series().estimatedBytes()))
+                .expireAfterWrite(Duration.ofMinutes(moexProperties.getPriceSeriesCacheTtlMinutes()))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "priceSeries");
+    }
+
+    /**
+     * Returns the ticker's full daily series, empty when nothing is stored.
+     */
+    public PriceSeries get(String ticker) {
+        // the version is read before the rows, so a series is never tagged newer than its data
+        String version = version(ticker);
+        Versioned cached = cache.get(ticker, t -> new Versioned(version, load(t)));
+        if (!cached.version().equals(version)) {
+            cache.asMap().remove(ticker, cached);
+            cached = cache.get(ticker, t -> new Versioned(version, load(t)));
+        }
+        return cached.series();
+    }
+
+    /**
+     * Changes with every committed write to the ticker's history: the last stored trade date and the count of
+     * writes, both kept on the {@code securities} row, so the value holds across restarts and instances.
+     */
+    public String version(String ticker) {
+        List<String> versions = jdbcTemplate.query(SELECT_VERSION,
+                (rs, i) -> rs.getObject(1, LocalDate.class) + "." + rs.getLong(2), ticker);
+        return versions.isEmpty() ? "none" : versions.getFirst();
+    }
+
+    private PriceSeries load(String ticker) {
+        PriceSeries.Builder builder = PriceSeries.builder(256);
+        jdbcTemplate.query(SELECT_SERIES, rs -> {
+            builder.add(rs.getObject(1, LocalDate.class),
+                    rs.getBigDecimal(2),
+                    rs.getBigDecimal(3),
+                    rs.getBigDecimal(4),
+                    rs.getBigDecimal(5),
+                    rs.getObject(6, Long.class));
+        }, ticker);
+        PriceSeries series = builder.build();
+        log.debug("Price series loaded: ticker={}, candles={}", ticker, series.size());
+        return series;
+    }
+
+    private record Versioned(String version, PriceSeries series) {
+    }
+}
@@ -0,0 +1,285 @@
+package pyc.lopatuxin.investment.service.market;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import pyc.lopatuxin.investment.client.moex.MoexCallGovernor;
+import pyc.lopatuxin.investment.client.moex.MoexSnapshotDispatcher;
+import pyc.lopatuxin.investment.client.moex.dto.MoexSnapshotDto;
+import pyc.lopatuxin.investment.config.MoexProperties;
+import pyc.lopatuxin.investment.entity.PriceSnapshot;
+import pyc.lopatuxin.investment.repository.MarketDataBulkWriter;
+import pyc.lopatuxin.investment.repository.PriceSnapshotRepository;
+import pyc.lopatuxin.investment.service.market.dto.SnapshotResult;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tiered quote lookup: in-memory L1, {@code price_snapshots} as L2, MOEX as the origin.
+ * A fresh board-wide {@link QuoteTable} from {@link BoardQuotePoller} answers before any tier.
+ * <ul>
+ *     <li>younger than {@code snapshotTtlMinutes} — served as is;</li>
+ *     <li>younger than {@code snapshotMaxStaleMinutes} — served as is and refreshed in the background;</li>
+ *     <li>older or unknown — fetched from MOEX on the caller's thread, falling back to the stored quote.</li>
+ * </ul>
+ * Concurrent loads of the same ticker share one MOEX call; loads of different tickers are merged by
+ * {@link MoexSnapshotDispatcher}. Writes to {@code price_snapshots} always run on
+ * the refresh executor, so callers inside read-only transactions never write.
+ */
+@Slf4j
+@Service
+public class QuoteCache {
+
+    private static final SnapshotResult MISSING = new SnapshotResult(null, null, null, true);
+
+    private final MoexSnapshotDispatcher moexSnapshotDispatcher;
+    private final PriceSnapshotRepository priceSnapshotRepository;
+    private final MarketDataBulkWriter marketDataBulkWriter;
+    private final MoexProperties moexProperties;
+    private final BoardQuotePoller boardQuotePoller;
+    private final Executor refreshExecutor;
+    private final Cache<String, PriceSnapshot> quotes;
+    private final Map<String, CompletableFuture<PriceSnapshot>> inFlight = new ConcurrentHashMap<>();
+
+    public QuoteCache(MoexSnapshotDispatcher moexSnapshotDispatcher,
+                      PriceSnapshotRepository priceSnapshotRepository,
+                      MarketDataBulkWriter marketDataBulkWriter,
+                      MoexProperties moexProperties,
+                      BoardQuotePoller boardQuotePoller,
+                      @Qualifier("quoteRefreshExecutor") Executor refreshExecutor) {
+        this.moexSnapshotDispatcher = moexSnapshotDispatcher;
+        this.priceSnapshotRepository = priceSnapshotRepository;
+        this.marketDataBulkWriter = marketDataBulkWriter;
+        this.moexProperties = moexProperties;
+        this.boardQuotePoller = boardQuotePoller;
+        this.refreshExecutor = refreshExecutor;
+        this.quotes = Caffeine.newBuilder()
+                .maximumSize(moexProperties.getQuoteCacheMaxSize())
+                .expireAfterWrite(Duration.ofMinutes(moexProperties.getSnapshotMaxStaleMinutes()))
+                .build();
+    }
+
+    public Map<String, SnapshotResult> get(Collection<String> tickers) {
+        Instant now = Instant.now();
+        Instant freshSince = now.minus(Duration.ofMinutes(moexProperties.getSnapshotTtlMinutes()));
+        Instant usableSince = now.minus(Duration.ofMinutes(moexProperties.getSnapshotMaxStaleMinutes()));
+
+        Map<String, SnapshotResult> result = new HashMap<>();
+        List<String> remaining = new ArrayList<>();
+        QuoteTable board = boardQuotePoller.current();
+        boolean boardFresh = !board.polledAt().isBefore(freshSince);
+        for (String ticker : new LinkedHashSet<>(tickers)) {
+            SnapshotResult quote = boardFresh ? board.get(ticker) : null;
+            if (quote != null) {
+                result.put(ticker, quote);
+            } else {
+                remaining.add(ticker);
+            }
+        }
+        if (remaining.isEmpty()) {
+            return result;
+        }
+
+        Map<String, PriceSnapshot> known = lookup(remaining);
+        List<String> revalidate = new ArrayList<>();
+        List<String> load = new ArrayList<>();
+        for (String ticker : remaining) {
+            PriceSnapshot snapshot = known.get(ticker);
+            if (snapshot == null || snapshot.getFetchedAt().isBefore(usableSince)) {
+                load.add(ticker);
+                continue;
+            }
+            if (snapshot.getFetchedAt().isBefore(freshSince)) {
+                revalidate.add(ticker);
+            }
+            result.put(ticker, toResult(snapshot, false));
+        }
+        if (!revalidate.isEmpty()) {
+            refreshInBackground(revalidate);
+        }
+        if (!load.isEmpty()) {
+            Map<String, PriceSnapshot> loaded = loadFromOrigin(load);
+            for (String ticker : load) {
+                PriceSnapshot snapshot = loaded.get(ticker);
+                if (snapshot != null) {
+                    result.put(ticker, toResult(snapshot, false));
+                } else {
+                    PriceSnapshot stored = known.get(ticker);
+                    result.put(ticker, stored != null ? toResult(stored, true) : MISSING);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Fetches the tickers from MOEX regardless of their age. Used by the scheduler to keep held tickers warm.
+     */
+    public void refresh(Collection<String> tickers) {
+        loadFromOrigin(new LinkedHashSet<>(tickers));
+    }
+
+    /**
+     * The quote each ticker currently has in memory, as {@code last/previous}: the fresh board table first, then L1;
+     * {@code "none"} when neither holds it. Reads no database and calls no MOEX, so a cached projection can be checked
+     * against its own tickers on every request.
+     */
+    public Map<String, String> versions(Collection<String> tickers) {
+        Instant freshSince = Instant.now().minus(Duration.ofMinutes(moexProperties.getSnapshotTtlMinutes()));
+        QuoteTable board = boardQuotePoller.current();
+        boolean boardFresh = !board.polledAt().isBefore(freshSince);
+        Map<String, String> versions = new HashMap<>();
+        for (String ticker : tickers) {
+            SnapshotResult quote = boardFresh ? board.get(ticker) : null;
+            if (quote == null) {
+                PriceSnapshot snapshot = quotes.getIfPresent(ticker);
+                quote = snapshot != null ? toResult(snapshot, false) : null;
+            }
+            versions.put(ticker, quote != null ? quote.lastPrice() + "/" + quote.previousClose() : "none");
+        }
+        return versions;
+    }
+
+    // L1 first, then one read of price_snapshots for everything L1 did not have
+    private Map<String, PriceSnapshot> lookup(Collection<String> tickers) {
+        Map<String, PriceSnapshot> known = new HashMap<>(quotes.getAllPresent(tickers));
+        List<String> misses = tickers.stream()
+                .filter(t -> !known.containsKey(t))
+                .distinct()
+                .toList();
+        if (!misses.isEmpty()) {
+            for (PriceSnapshot stored : priceSnapshotRepository.findAllById(misses)) {
+                known.put(stored.getTicker(), stored);
+                quotes.put(stored.getTicker(), stored);
+            }
+        }
+        return known;
+    }
+
+    private void refreshInBackground(Collection<String> tickers) {
+        Map<String, CompletableFuture<PriceSnapshot>> claimed = new HashMap<>();
+        claim(tickers, claimed);
+        if (claimed.isEmpty()) {
+            return;
+        }
+        try {
+            // revalidation serves no waiting caller, so it queues behind interactive ISS traffic
+            refreshExecutor.execute(() -> MoexCallGovernor.runInBackground(() -> fetch(claimed)));
+        } catch (RejectedExecutionException e) {
+            log.warn("Quote refresh queue full, dropping revalidation of {} tickers", claimed.size());
+            release(claimed, null);
+        }
+    }
+
+    // Fetches the tickers nobody else is loading and waits for the rest; a ticker maps to null when MOEX had no quote
+    private Map<String, PriceSnapshot> loadFromOrigin(Collection<String> tickers) {
+        Map<String, CompletableFuture<PriceSnapshot>> claimed = new HashMap<>();
+        Map<String, CompletableFuture<PriceSnapshot>> pending = claim(tickers, claimed);
+        if (!claimed.isEmpty()) {
+            fetch(claimed);
+        }
+        Map<String, PriceSnapshot> loaded = new HashMap<>();
+        for (Map.Entry<String, CompletableFuture<PriceSnapshot>> entry : pending.entrySet()) {
+            try {
+                loaded.put(entry.getKey(), entry.getValue().get(moexProperties.getTimeoutMs(), TimeUnit.MILLISECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.debug("Quote load for {} failed: {}", entry.getKey(), e.getMessage());
+            }
+        }
+        return loaded;
+    }
+
+    // Registers a future per ticker: ours in "claimed" if no load is running, otherwise the running one
+    private Map<String, CompletableFuture<PriceSnapshot>> claim(Collection<String> tickers,
+                                                                Map<String, CompletableFuture<PriceSnapshot>> claimed) {
+        Map<String, CompletableFuture<PriceSnapshot>> pending = new HashMap<>();
+        for (String ticker : tickers) {
+            CompletableFuture<PriceSnapshot> own = new CompletableFuture<>();
+            CompletableFuture<PriceSnapshot> running = inFlight.putIfAbsent(ticker, own);
+            if (running == null) {
+                claimed.put(ticker, own);
+                pending.put(ticker, own);
+            } else {
+                pending.put(ticker, running);
+            }
+        }
+        return pending;
+    }
+
+    private void fetch(Map<String, CompletableFuture<PriceSnapshot>> claimed) {
+        Map<String, PriceSnapshot> fetched = new HashMap<>();
+        try {
+            Map<String, MoexSnapshotDto> quotesByTicker = moexSnapshotDispatcher.fetchSnapshots(claimed.keySet());
+            Instant fetchedAt = Instant.now();
+            List<PriceSnapshot> persistable = new ArrayList<>();
+            for (String ticker : claimed.keySet()) {
+                MoexSnapshotDto dto = quotesByTicker.get(ticker);
+                if (dto == null) {
+                    continue;
+                }
+                PriceSnapshot snapshot = PriceSnapshot.builder()
+                        .ticker(ticker)
+                        .lastPrice(dto.lastPrice())
+                        .previousClose(dto.previousClose())
+                        .fetchedAt(fetchedAt)
+                        .build();
+                fetched.put(ticker, snapshot);
+                quotes.put(ticker, snapshot);
+                // last_price is NOT NULL: quotes with only PREVPRICE stay in memory
+                if (snapshot.getLastPrice() != null) {
+                    persistable.add(snapshot);
+                }
+            }
+            persist(persistable);
+            release(claimed, fetched);
+        } catch (RuntimeException e) {
+            log.warn("MOEX snapshot fetch for {} tickers failed: {}", claimed.size(), e.getMessage());
+            release(claimed, fetched);
+        }
+    }
+
+    private void persist(List<PriceSnapshot> snapshots) {
+        if (snapshots.isEmpty()) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    marketDataBulkWriter.upsertSnapshots(snapshots);
+                } catch (Exception e) {
+                    log.warn("Failed to persist {} snapshots: {}", snapshots.size(), e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("Quote refresh queue full, {} snapshots kept in memory only", snapshots.size());
+        }
+    }
+
+    private void release(Map<String, CompletableFuture<PriceSnapshot>> claimed, Map<String, PriceSnapshot> fetched) {
+        claimed.forEach((ticker, future) -> {
+            inFlight.remove(ticker, future);
+            future.complete(fetched != null ? fetched.get(ticker) : null);
+        });
+    }
+
+    private static SnapshotResult toResult(PriceSnapshot snapshot, boolean stale) {
+        return new SnapshotResult(snapshot.getLastPrice(), snapshot.getPreviousClose(), snapshot.getFetchedAt(), stale);
+    }
+}
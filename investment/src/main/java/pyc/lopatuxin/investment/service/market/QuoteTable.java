@@ -0,0 +1,90 @@
+package pyc.lopatuxin.investment.service.market;
+
+import pyc.lopatuxin.investment.client.moex.dto.MoexBoardQuoteDto;
+import pyc.lopatuxin.investment.service.market.dto.SnapshotResult;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable board-wide quote table. Prices are kept as {@code long} values scaled by the instrument's
+ * {@code DECIMALS}, so a few thousand tickers cost three primitive arrays and one index map.
+ */
+public final class QuoteTable {
+
+    private static final long NO_PRICE = Long.MIN_VALUE;
+
+    private static final QuoteTable EMPTY = new QuoteTable(Map.of(), new long[0], new long[0], new byte[0], Instant.EPOCH);
+
+    private final Map<String, Integer> index;
+    private final long[] last;
+    private final long[] previous;
+    private final byte[] scale;
+    private final Instant polledAt;
+
+    private QuoteTable(Map<String, Integer> index, long[] last, long[] previous, byte[] scale, Instant polledAt) {
+        this.index = index;
+        this.last = last;
+        this.previous = previous;
+        this.scale = scale;
+        this.polledAt = polledAt;
+    }
+
+    public static QuoteTable empty() {
+        return EMPTY;
+    }
+
+    public static QuoteTable of(Collection<MoexBoardQuoteDto> quotes, Instant polledAt) {
+        int size = quotes.size();
+        Map<String, Integer> index = HashMap.newHashMap(size);
+        long[] last = new long[size];
+        long[] previous = new long[size];
+        byte[] scale = new byte[size];
+        int i = 0;
+        for (MoexBoardQuoteDto quote : quotes) {
+            if (index.putIfAbsent(quote.ticker(), i) != null) {
+                continue; // the same SECID on two boards: the first board listed wins
+            }
+            int decimals = Math.clamp(quote.decimals(), 0, 18);
+            scale[i] = (byte) decimals;
+            last[i] = toScaled(quote.lastPrice(), decimals);
+            previous[i] = toScaled(quote.previousClose(), decimals);
+            i++;
+        }
+        return new QuoteTable(Map.copyOf(index), last, previous, scale, polledAt);
+    }
+
+    public Instant polledAt() {
+        return polledAt;
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Returns the quote for the ticker, or {@code null} when the table has no last price for it.
+     */
+    public SnapshotResult get(String ticker) {
+        Integer i = index.get(ticker);
+        if (i == null || last[i] == NO_PRICE) {
+            return null;
+        }
+        return new SnapshotResult(fromScaled(last[i], scale[i]), fromScaled(previous[i], scale[i]), polledAt, false);
+    }
+
+    private static long toScaled(BigDecimal price, int decimals) {
+        if (price == null) {
+            return NO_PRICE;
+        }
+        return price.setScale(decimals, RoundingMode.HALF_UP).unscaledValue().longValue();
+    }
+
+    private static BigDecimal fromScaled(long value, int decimals) {
+        return value == NO_PRICE ? null : BigDecimal.valueOf(value, decimals);
+    }
+}
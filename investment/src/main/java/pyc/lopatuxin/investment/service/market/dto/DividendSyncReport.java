@@ -0,0 +1,11 @@
+package pyc.lopatuxin.investment.service.market.dto;
+
+import java.time.Duration;
+
+public record DividendSyncReport(
+        int tickers,
+        int rowsAdded,
+        int failed,
+        Duration duration
+) {
+}
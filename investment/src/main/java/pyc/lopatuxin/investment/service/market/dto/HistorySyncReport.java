@@ -0,0 +1,11 @@
+package pyc.lopatuxin.investment.service.market.dto;
+
+import java.time.Duration;
+
+public record HistorySyncReport(
+        int tickers,
+        int rowsAdded,
+        int failed,
+        Duration duration
+) {
+}
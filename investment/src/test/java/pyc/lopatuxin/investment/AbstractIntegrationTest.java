@@ -33,4 +33,5 @@ public abstract class AbstractIntegrationTest {
     protected @Autowired PriceSnapshotRepository priceSnapshotRepository;
     protected @Autowired PriceHistoryRepository priceHistoryRepository;
     protected @Autowired DividendRepository dividendRepository;
+    protected @Autowired OutboxEventRepository outboxEventRepository;
 }
@@ -1,8 +1,13 @@
 package pyc.lopatuxin.investment.client;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.Dispatcher;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -10,15 +15,20 @@ import org.junit.jupiter.api.Test;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.web.client.RestClient;
+import pyc.lopatuxin.investment.client.moex.MoexCallGovernor;
 import pyc.lopatuxin.investment.client.moex.MoexIssClient;
+import pyc.lopatuxin.investment.client.moex.MoexUnavailableException;
+import pyc.lopatuxin.investment.client.moex.dto.MoexBoardQuoteDto;
 import pyc.lopatuxin.investment.client.moex.dto.MoexCandleDto;
 import pyc.lopatuxin.investment.client.moex.dto.MoexSecurityDto;
 import pyc.lopatuxin.investment.client.moex.dto.MoexSnapshotDto;
+import pyc.lopatuxin.investment.config.MoexProperties;
 import pyc.lopatuxin.investment.entity.enums.SecurityType;
 
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -40,7 +50,10 @@ class MoexIssClientTest {
                 .baseUrl(mockWebServer.url("/").toString())
                 .defaultHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
                 .build();
-        client = new MoexIssClient(restClient, new ObjectMapper());
+        MoexProperties properties = new MoexProperties();
+        MoexCallGovernor governor = new MoexCallGovernor(RateLimiterRegistry.ofDefaults(),
+                BulkheadRegistry.ofDefaults(), properties, new SimpleMeterRegistry());
+        client = new MoexIssClient(restClient, new ObjectMapper(), properties, governor);
     }
 
     @AfterEach
@@ -111,6 +124,35 @@ class MoexIssClientTest {
         assertThat(snap.previousClose()).isEqualByComparingTo(new BigDecimal("308.00"));
     }
 
+    @Test
+    @DisplayName("fetchBoardQuotes — объединяет PREVPRICE/DECIMALS из securities и LAST из marketdata")
+    void fetchBoardQuotes_joinsSecuritiesAndMarketData() throws InterruptedException {
+        String response = """
+                {
+                  "securities": {
+                    "columns": ["SECID","PREVPRICE","DECIMALS"],
+                    "data": [["SBER",309.1,2], ["GAZP",160.5,2]]
+                  },
+                  "marketdata": {
+                    "columns": ["SECID","LAST"],
+                    "data": [["SBER",310.55], ["GAZP",null]]
+                  }
+                }
+                """;
+        mockWebServer.enqueue(new MockResponse()
+                .setBody(response)
+                .addHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE));
+
+        List<MoexBoardQuoteDto> result = client.fetchBoardQuotes("shares", "TQBR");
+
+        assertThat(mockWebServer.takeRequest().getPath()).contains("/engines/stock/markets/shares/boards/TQBR/securities.json");
+        assertThat(result).extracting(MoexBoardQuoteDto::ticker).containsExactly("SBER", "GAZP");
+        assertThat(result.get(0).lastPrice()).isEqualByComparingTo("310.55");
+        assertThat(result.get(0).previousClose()).isEqualByComparingTo("309.1");
+        assertThat(result.get(0).decimals()).isEqualTo(2);
+        assertThat(result.get(1).lastPrice()).isNull();
+    }
+
     @Test
     @DisplayName("fetchSecurity — SBER без SECTOR в MOEX-ответе → sector = 'Финансы' из локального справочника")
     void fetchSecurity_resolvesSectorFromLocalDictionaryWhenMoexHasNone() {
@@ -194,6 +236,48 @@ class MoexIssClientTest {
         assertThat(mockWebServer.getRequestCount()).isEqualTo(2);
     }
 
+    @Test
+    @DisplayName("fetchHistory — TOTAL=350, PAGESIZE=100: первая страница + три оставшиеся, каждая запрошена один раз")
+    void fetchHistory_fetchesRemainingPagesOnce() throws InterruptedException {
+        for (int index = 0; index < 400; index += 100) {
+            mockWebServer.enqueue(new MockResponse().setBody(buildHistoryResponse("SBER", index, 350, 100))
+                    .addHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE));
+        }
+
+        List<MoexCandleDto> result = client.fetchHistory("SBER", LocalDate.of(2021, 1, 1), LocalDate.of(2024, 1, 1));
+
+        assertThat(result).hasSize(4);
+        assertThat(mockWebServer.getRequestCount()).isEqualTo(4);
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            paths.add(mockWebServer.takeRequest().getPath());
+        }
+        assertThat(paths.get(0)).contains("start=0");
+        assertThat(paths).anyMatch(p -> p.contains("start=100"))
+                .anyMatch(p -> p.contains("start=200"))
+                .anyMatch(p -> p.contains("start=300"));
+    }
+
+    @Test
+    @DisplayName("fetchHistory — вторая из трёх страниц не разбирается → весь диапазон падает, а не теряет страницу")
+    void fetchHistory_malformedMiddlePage_failsWholeRange() {
+        // pages are fetched in parallel, so responses are picked by offset rather than by queue order
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String path = request.getPath();
+                String body = path.contains("start=100")
+                        ? "{\"history\": {\"columns\": [\"TRADEDATE\"], \"data\": [["
+                        : buildHistoryResponse("SBER", path.contains("start=200") ? 200 : 0, 300, 100);
+                return new MockResponse().setBody(body)
+                        .addHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+            }
+        });
+
+        assertThatThrownBy(() -> client.fetchHistory("SBER", LocalDate.of(2021, 1, 1), LocalDate.of(2024, 1, 1)))
+                .isInstanceOf(MoexUnavailableException.class);
+    }
+
     @Test
     @DisplayName("fetchHistory — shares пустой, bonds возвращает данные")
     void fetchHistory_fallsBackToBonds() {
@@ -210,6 +294,33 @@ class MoexIssClientTest {
         assertThat(result.get(0).ticker()).isEqualTo("LKOH");
     }
 
+    @Test
+    @DisplayName("fetchHistory — shares и bonds пустые → пустой список, рынок index не запрашивается")
+    void fetchHistory_doesNotTryIndexMarket() {
+        for (int i = 0; i < 2; i++) {
+            mockWebServer.enqueue(new MockResponse().setBody(buildEmptyHistoryResponse())
+                    .addHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE));
+        }
+
+        List<MoexCandleDto> result = client.fetchHistory("NONAME", LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31));
+
+        assertThat(result).isEmpty();
+        assertThat(mockWebServer.getRequestCount()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("fetchIndexHistory — один запрос к рынку index (IMOEX)")
+    void fetchIndexHistory_queriesIndexMarketOnly() throws InterruptedException {
+        mockWebServer.enqueue(new MockResponse().setBody(buildHistoryResponse("IMOEX", 0, 1, 100))
+                .addHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE));
+
+        List<MoexCandleDto> result = client.fetchIndexHistory("IMOEX", LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31));
+
+        assertThat(result).singleElement().extracting(MoexCandleDto::ticker).isEqualTo("IMOEX");
+        assertThat(mockWebServer.getRequestCount()).isEqualTo(1);
+        assertThat(mockWebServer.takeRequest().getPath()).contains("/markets/index/");
+    }
+
     @Test
     @DisplayName("fetchHistory — сервер 500 → RuntimeException (в проде Resilience4j вызовет MoexUnavailableException через fallback)")
     void fetchHistory_throwsOnUnavailable() {
@@ -0,0 +1,128 @@
+package pyc.lopatuxin.investment.client.moex;
+
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pyc.lopatuxin.investment.config.MoexProperties;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("MoexCallGovernorTest")
+class MoexCallGovernorTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private MoexCallGovernor governor;
+
+    @BeforeEach
+    void setUp() {
+        MoexProperties properties = new MoexProperties();
+        properties.setGovernorCongestedLatencyMs(50);
+        properties.setGovernorBackgroundYieldConcurrency(1);
+        BulkheadRegistry bulkheads = BulkheadRegistry.of(BulkheadConfig.custom()
+                .maxConcurrentCalls(2)
+                .maxWaitDuration(Duration.ZERO)
+                .build());
+        meterRegistry = new SimpleMeterRegistry();
+        governor = new MoexCallGovernor(RateLimiterRegistry.ofDefaults(), bulkheads, properties, meterRegistry);
+    }
+
+    @Test
+    @DisplayName("call — медленные интерактивные запросы → фон сужается до одного слота и восстанавливается")
+    void call_slowInteractive_backgroundYieldsAndRecovers() {
+        governor.call(MoexCallClass.INTERACTIVE, () -> sleep(100));
+        governor.call(MoexCallClass.BACKGROUND, () -> "ok");
+
+        assertThat(governor.isYielding()).isTrue();
+        assertThat(availablePermits("background")).isEqualTo(1.0);
+
+        for (int i = 0; i < 5; i++) {
+            governor.call(MoexCallClass.INTERACTIVE, () -> "fast");
+        }
+        governor.call(MoexCallClass.BACKGROUND, () -> "ok");
+
+        assertThat(governor.isYielding()).isFalse();
+        assertThat(availablePermits("background")).isEqualTo(2.0);
+    }
+
+    @Test
+    @DisplayName("call — все слоты заняты → BulkheadFullException и счётчик отказов")
+    void call_bulkheadFull_rejectedAndCounted() throws Exception {
+        CountDownLatch inside = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        try (ExecutorService callers = Executors.newFixedThreadPool(2)) {
+            Future<?> first = callers.submit(() -> governor.call(MoexCallClass.INTERACTIVE, () -> hold(inside, release)));
+            Future<?> second = callers.submit(() -> governor.call(MoexCallClass.INTERACTIVE, () -> hold(inside, release)));
+            inside.await();
+
+            assertThatThrownBy(() -> governor.call(MoexCallClass.INTERACTIVE, () -> "late"))
+                    .isInstanceOf(BulkheadFullException.class);
+            // the background class has its own slots
+            assertThat(governor.call(MoexCallClass.BACKGROUND, () -> "ok")).isEqualTo("ok");
+
+            release.countDown();
+            first.get();
+            second.get();
+        }
+        assertThat(meterRegistry.counter("investment.moex.governor.rejections",
+                "class", "interactive", "reason", "bulkhead").count()).isEqualTo(1.0);
+    }
+
+    @Test
+    @DisplayName("inBackground — интерактивный запрос внутри фоновой задачи учитывается как фоновый")
+    void inBackground_demotesInteractiveCalls() {
+        MoexCallGovernor.inBackground(() -> governor.call(MoexCallClass.INTERACTIVE, () -> "ok"));
+
+        assertThat(meterRegistry.timer("investment.moex.governor.wait", "class", "background").count()).isEqualTo(1);
+        assertThat(meterRegistry.timer("investment.moex.governor.wait", "class", "interactive").count()).isZero();
+    }
+
+    @Test
+    @DisplayName("inCurrentScope — задача из фоновой задачи на другом потоке остаётся фоновой")
+    void inCurrentScope_carriesBackgroundScopeToWorker() throws Exception {
+        try (ExecutorService worker = Executors.newSingleThreadExecutor()) {
+            Runnable task = MoexCallGovernor.inBackground(() -> MoexCallGovernor.inCurrentScope(
+                    () -> governor.call(MoexCallClass.INTERACTIVE, () -> "ok")));
+            worker.submit(task).get();
+            worker.submit(MoexCallGovernor.inCurrentScope(
+                    () -> governor.call(MoexCallClass.INTERACTIVE, () -> "ok"))).get();
+        }
+
+        assertThat(meterRegistry.timer("investment.moex.governor.wait", "class", "background").count()).isEqualTo(1);
+        assertThat(meterRegistry.timer("investment.moex.governor.wait", "class", "interactive").count()).isEqualTo(1);
+    }
+
+    private double availablePermits(String callClass) {
+        return meterRegistry.get("investment.moex.governor.permits.available").tag("class", callClass).gauge().value();
+    }
+
+    private static String hold(CountDownLatch inside, CountDownLatch release) {
+        inside.countDown();
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "held";
+    }
+
+    private static String sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "slow";
+    }
+}
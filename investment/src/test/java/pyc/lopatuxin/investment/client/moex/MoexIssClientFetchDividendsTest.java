@@ -1,6 +1,9 @@
 package pyc.lopatuxin.investment.client.moex;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import org.junit.jupiter.api.AfterEach;
@@ -11,6 +14,7 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.web.client.RestClient;
 import pyc.lopatuxin.investment.client.moex.dto.MoexDividendDto;
+import pyc.lopatuxin.investment.config.MoexProperties;
 
 import java.io.IOException;
 import java.math.BigDecimal;
@@ -33,7 +37,10 @@ class MoexIssClientFetchDividendsTest {
                 .baseUrl(mockWebServer.url("/").toString())
                 .defaultHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
                 .build();
-        client = new MoexIssClient(restClient, new ObjectMapper());
+        MoexProperties properties = new MoexProperties();
+        MoexCallGovernor governor = new MoexCallGovernor(RateLimiterRegistry.ofDefaults(),
+                BulkheadRegistry.ofDefaults(), properties, new SimpleMeterRegistry());
+        client = new MoexIssClient(restClient, new ObjectMapper(), properties, governor);
     }
 
     @AfterEach
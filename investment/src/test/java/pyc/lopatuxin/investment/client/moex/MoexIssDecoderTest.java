@@ -0,0 +1,71 @@
+package pyc.lopatuxin.investment.client.moex;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("MoexIssDecoderTest")
+class MoexIssDecoderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    @DisplayName("decode — читает только запрошенный блок, пропуская metadata и прочие блоки")
+    void decode_readsRequestedBlockOnly() throws IOException {
+        String json = """
+                {
+                  "securities": {
+                    "metadata": {"SECID": {"type": "string"}},
+                    "columns": ["SECID","LAST"],
+                    "data": [["SBER", 310.5], ["GAZP", null]]
+                  },
+                  "marketdata": {
+                    "columns": ["SECID"],
+                    "data": [["LKOH"]]
+                  }
+                }
+                """;
+        List<String[]> rows = new ArrayList<>();
+        List<String> seenColumns = new ArrayList<>();
+
+        decode(json, Map.of("securities", cols -> {
+            seenColumns.addAll(cols);
+            return row -> rows.add(row.clone());
+        }));
+
+        assertThat(seenColumns).containsExactly("SECID", "LAST");
+        assertThat(rows).hasSize(2);
+        assertThat(rows.get(0)).containsExactly("SBER", "310.5");
+        assertThat(rows.get(1)).containsExactly("GAZP", null);
+    }
+
+    @Test
+    @DisplayName("decode — короткие строки дополняются null, вложенные значения заменяются null")
+    void decode_padsShortRowsAndSkipsNestedValues() throws IOException {
+        String json = """
+                {"history": {"columns": ["A","B","C"], "data": [["1",[2,3],{"x":1}], ["4"]]}}
+                """;
+        List<String[]> rows = new ArrayList<>();
+
+        decode(json, Map.of("history", cols -> row -> rows.add(row.clone())));
+
+        assertThat(rows).hasSize(2);
+        assertThat(Arrays.asList(rows.get(0))).containsExactly("1", null, null);
+        assertThat(Arrays.asList(rows.get(1))).containsExactly("4", null, null);
+    }
+
+    private void decode(String json, Map<String, MoexIssDecoder.RowBinder> blocks) throws IOException {
+        MoexIssDecoder.decode(objectMapper.getFactory(),
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), blocks);
+    }
+}
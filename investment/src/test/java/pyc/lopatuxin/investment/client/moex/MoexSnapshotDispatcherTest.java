@@ -0,0 +1,136 @@
+package pyc.lopatuxin.investment.client.moex;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import pyc.lopatuxin.investment.client.moex.dto.MoexSnapshotDto;
+import pyc.lopatuxin.investment.config.MoexProperties;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("MoexSnapshotDispatcherTest")
+class MoexSnapshotDispatcherTest {
+
+    @Mock
+    private MoexIssClient moexIssClient;
+
+    private MoexProperties properties;
+    private MoexSnapshotDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        properties = new MoexProperties();
+        // wide window so both callers land in the same batch on a slow CI machine
+        properties.setSnapshotBatchWindowMs(300);
+        dispatcher = new MoexSnapshotDispatcher(moexIssClient, properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    @DisplayName("fetchSnapshots — запросы в одном окне → один вызов MOEX с объединением тикеров")
+    @SuppressWarnings("unchecked")
+    void fetchSnapshots_concurrentCallers_shareOneCall() throws Exception {
+        when(moexIssClient.fetchSnapshots(anyCollection())).thenReturn(Map.of(
+                "SBER", quote("SBER", "310.00"),
+                "GAZP", quote("GAZP", "160.00"),
+                "LKOH", quote("LKOH", "7000.00")));
+        CountDownLatch start = new CountDownLatch(1);
+
+        Map<String, MoexSnapshotDto> first;
+        Map<String, MoexSnapshotDto> second;
+        try (ExecutorService callers = Executors.newFixedThreadPool(2)) {
+            Future<Map<String, MoexSnapshotDto>> a = callers.submit(() -> {
+                start.await();
+                return dispatcher.fetchSnapshots(List.of("SBER", "GAZP"));
+            });
+            Future<Map<String, MoexSnapshotDto>> b = callers.submit(() -> {
+                start.await();
+                return dispatcher.fetchSnapshots(List.of("GAZP", "LKOH"));
+            });
+            start.countDown();
+            first = a.get();
+            second = b.get();
+        }
+
+        assertThat(first).containsOnlyKeys("SBER", "GAZP");
+        assertThat(second).containsOnlyKeys("GAZP", "LKOH");
+        ArgumentCaptor<Collection<String>> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(moexIssClient, times(1)).fetchSnapshots(captor.capture());
+        assertThat(captor.getValue()).containsExactlyInAnyOrder("SBER", "GAZP", "LKOH");
+    }
+
+    @Test
+    @DisplayName("fetchSnapshots — пакет набрал максимум тикеров → уходит без ожидания окна")
+    void fetchSnapshots_fullBatch_dispatchedImmediately() {
+        properties.setSnapshotBatchWindowMs(60_000);
+        properties.setSnapshotBatchMaxTickers(2);
+        when(moexIssClient.fetchSnapshots(anyCollection())).thenReturn(Map.of("SBER", quote("SBER", "310.00")));
+
+        Map<String, MoexSnapshotDto> result = dispatcher.fetchSnapshots(List.of("SBER", "GAZP"));
+
+        assertThat(result).containsOnlyKeys("SBER");
+    }
+
+    @Test
+    @DisplayName("fetchSnapshots — MOEX недоступен → MoexUnavailableException у вызывающего")
+    void fetchSnapshots_moexUnavailable_propagates() {
+        when(moexIssClient.fetchSnapshots(anyCollection())).thenThrow(new MoexUnavailableException("MOEX down"));
+
+        assertThatThrownBy(() -> dispatcher.fetchSnapshots(List.of("SBER")))
+                .isInstanceOf(MoexUnavailableException.class);
+    }
+
+    @Test
+    @DisplayName("fetchSnapshots — окно 0 → прямой вызов без пакетирования")
+    void fetchSnapshots_windowDisabled_callsClientDirectly() {
+        properties.setSnapshotBatchWindowMs(0);
+        when(moexIssClient.fetchSnapshots(List.of("SBER"))).thenReturn(Map.of("SBER", quote("SBER", "310.00")));
+
+        assertThat(dispatcher.fetchSnapshots(List.of("SBER"))).containsOnlyKeys("SBER");
+    }
+
+    @Test
+    @DisplayName("fetchSnapshots — вызов из фоновой задачи → пакет уходит в MOEX в фоновом режиме")
+    void fetchSnapshots_backgroundCaller_dispatchedInBackgroundScope() {
+        AtomicBoolean scope = new AtomicBoolean();
+        when(moexIssClient.fetchSnapshots(anyCollection())).thenAnswer(inv -> {
+            scope.set(MoexCallGovernor.isBackgroundScope());
+            return Map.of("SBER", quote("SBER", "310.00"));
+        });
+
+        MoexCallGovernor.inBackground(() -> dispatcher.fetchSnapshots(List.of("SBER")));
+        assertThat(scope).isTrue();
+
+        dispatcher.fetchSnapshots(List.of("SBER"));
+        assertThat(scope).isFalse();
+    }
+
+    private static MoexSnapshotDto quote(String ticker, String last) {
+        return new MoexSnapshotDto(ticker, new BigDecimal(last), null);
+    }
+}
@@ -3,9 +3,12 @@ package pyc.lopatuxin.investment.controller;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MvcResult;
 import pyc.lopatuxin.investment.AbstractIntegrationTest;
+import pyc.lopatuxin.investment.dto.request.SeriesResolution;
 import pyc.lopatuxin.investment.dto.response.PortfolioValuePointDto;
 import pyc.lopatuxin.investment.dto.response.PricePointDto;
 import pyc.lopatuxin.investment.dto.response.SeriesResponseDto;
@@ -15,15 +18,26 @@ import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @DisplayName("Интеграционные тесты AnalyticsController")
@@ -49,7 +63,8 @@ class AnalyticsControllerTest extends AbstractIntegrationTest {
                 PortfolioValuePointDto.builder().date(LocalDate.of(2024, 1, 16)).value(new BigDecimal("2750.00")).build()
         );
         SeriesResponseDto<PortfolioValuePointDto> mockResult = new SeriesResponseDto<>(series, false, List.of());
-        when(analyticsService.portfolioValueHistory(any(UUID.class), any(LocalDate.class), any(LocalDate.class)))
+        when(analyticsService.portfolioValueHistory(any(UUID.class), any(LocalDate.class), any(LocalDate.class),
+                eq(SeriesResolution.DAY), any()))
                 .thenReturn(mockResult);
 
         mockMvc.perform(post(BASE_URL + "/portfolio/value-history")
@@ -68,7 +83,8 @@ class AnalyticsControllerTest extends AbstractIntegrationTest {
                 PricePointDto.builder().date(LocalDate.of(2024, 1, 15)).close(new BigDecimal("271.00")).build()
         );
         SeriesResponseDto<PricePointDto> mockResult = new SeriesResponseDto<>(priceSeries, false, List.of());
-        when(analyticsService.securityPriceHistory(anyString(), any(LocalDate.class), any(LocalDate.class)))
+        when(analyticsService.securityPriceHistory(anyString(), any(LocalDate.class), any(LocalDate.class),
+                eq(SeriesResolution.DAY), any()))
                 .thenReturn(mockResult);
 
         mockMvc.perform(post(BASE_URL + "/security/price-history")
@@ -80,6 +96,106 @@ class AnalyticsControllerTest extends AbstractIntegrationTest {
                 .andExpect(jsonPath("$.body.series", hasSize(1)));
     }
 
+    @Test
+    @DisplayName("POST /portfolio/value-history/stream — NDJSON, по строке на точку, незагруженные тикеры в заголовке")
+    void portfolioValueHistoryStream_writesNdjson() throws Exception {
+        when(analyticsService.pendingPortfolioTickers(userId)).thenReturn(List.of("GAZP"));
+        doAnswer(invocation -> {
+            Consumer<PortfolioValuePointDto> sink = invocation.getArgument(5);
+            sink.accept(PortfolioValuePointDto.builder()
+                    .date(LocalDate.of(2024, 1, 15)).value(new BigDecimal("2700.00")).build());
+            sink.accept(PortfolioValuePointDto.builder()
+                    .date(LocalDate.of(2024, 1, 16)).value(new BigDecimal("2750.00")).build());
+            return null;
+        }).when(analyticsService).streamPortfolioValueHistory(eq(userId), any(LocalDate.class), any(LocalDate.class),
+                eq(SeriesResolution.DAY), any(), any());
+
+        MvcResult result = mockMvc.perform(post(BASE_URL + "/portfolio/value-history/stream")
+                        .content(buildPortfolioRequest(userId, "2024-01-01", "2024-01-31"))
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(header().string("X-Pending-Tickers", "GAZP"))
+                .andExpect(content().string("""
+                        {"date":"2024-01-15","value":2700.00}
+                        {"date":"2024-01-16","value":2750.00}
+                        """));
+    }
+
+    @Test
+    @DisplayName("POST /security/price-history/stream — история загружается → пустое тело и тикер в заголовке")
+    void securityPriceHistoryStream_pending_returnsEmptyBody() throws Exception {
+        when(analyticsService.isPendingAndTrigger("SBER")).thenReturn(true);
+
+        MvcResult result = mockMvc.perform(post(BASE_URL + "/security/price-history/stream")
+                        .content(buildSecurityHistoryRequest(userId, "SBER", "2024-01-01", "2024-01-31"))
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Pending-Tickers", "SBER"))
+                .andExpect(content().string(""));
+        verify(analyticsService, never()).streamSecurityPriceHistory(
+                anyString(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("POST /security/price-history — повтор с If-None-Match → 304 без обращения к сервису, новая версия → 200")
+    void securityPriceHistory_ifNoneMatch_returnsNotModified() throws Exception {
+        SeriesResponseDto<PricePointDto> mockResult = new SeriesResponseDto<>(List.of(
+                PricePointDto.builder().date(LocalDate.of(2024, 1, 15)).close(new BigDecimal("271.00")).build()),
+                false, List.of());
+        when(analyticsService.priceHistoryVersion("SBER")).thenReturn("1.0");
+        when(analyticsService.securityPriceHistory(anyString(), any(LocalDate.class), any(LocalDate.class),
+                eq(SeriesResolution.DAY), any()))
+                .thenReturn(mockResult);
+        String body = buildSecurityHistoryRequest(userId, "SBER", "2024-01-01", "2024-01-31");
+
+        String etag = mockMvc.perform(post(BASE_URL + "/security/price-history")
+                        .content(body)
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(post(BASE_URL + "/security/price-history")
+                        .content(body)
+                        .header(HttpHeaders.IF_NONE_MATCH, etag)
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(content().string(""));
+        verify(analyticsService, times(1)).securityPriceHistory(anyString(), any(), any(), any(), any());
+
+        when(analyticsService.priceHistoryVersion("SBER")).thenReturn("1.1");
+        mockMvc.perform(post(BASE_URL + "/security/price-history")
+                        .content(body)
+                        .header(HttpHeaders.IF_NONE_MATCH, etag)
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, not(etag)));
+    }
+
+    @Test
+    @DisplayName("POST /portfolio/value-history — история ещё загружается → ответ без ETag")
+    void portfolioValueHistory_pending_hasNoEtag() throws Exception {
+        when(analyticsService.portfolioValueHistory(any(UUID.class), any(LocalDate.class), any(LocalDate.class),
+                eq(SeriesResolution.DAY), any()))
+                .thenReturn(new SeriesResponseDto<>(List.of(), true, List.of("SBER")));
+
+        mockMvc.perform(post(BASE_URL + "/portfolio/value-history")
+                        .content(buildPortfolioRequest(userId, "2024-01-01", "2024-01-31"))
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.ETAG));
+    }
+
     @Test
     @DisplayName("POST /portfolio/value-history — from после to возвращает 400")
     void portfolioValueHistory_invalidRange_returnsBadRequest() throws Exception {
@@ -6,13 +6,15 @@ import org.junit.jupiter.api.Test;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import pyc.lopatuxin.investment.AbstractIntegrationTest;
-import pyc.lopatuxin.investment.service.market.DividendLoaderService;
+import pyc.lopatuxin.investment.service.market.OutboxProcessor;
 
 import java.util.UUID;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
@@ -23,10 +25,10 @@ class TransactionControllerTest extends AbstractIntegrationTest {
 
     private static final String BASE_URL = "/api/investment/transactions";
 
-    // Suppress async dividend loading to avoid FK violations during setUp cleanup
+    // Suppress outbox processing (enrichment, history, dividends) to avoid FK violations during setUp cleanup
     @MockitoBean
     @SuppressWarnings("unused")
-    private DividendLoaderService dividendLoaderService;
+    private OutboxProcessor outboxProcessor;
 
     private UUID userId;
 
@@ -36,6 +38,7 @@ class TransactionControllerTest extends AbstractIntegrationTest {
         positionRepository.deleteAll();
         dividendRepository.deleteAll();
         securityRepository.deleteAll();
+        outboxEventRepository.deleteAll();
         userId = UUID.randomUUID();
     }
 
@@ -147,6 +150,129 @@ class TransactionControllerTest extends AbstractIntegrationTest {
                 .andExpect(jsonPath("$.message", containsString("Insufficient shares for SELL")));
     }
 
+    @Test
+    @DisplayName("POST /import — CSV из двух сделок → 201, сделки в списке, позиция пересчитана")
+    void shouldImportCsvAndRecalculatePosition() throws Exception {
+        String csv = "executed_at;ticker;type;quantity;price\\n"
+                + "2026-01-15 10:00;SBER;BUY;10;250,00\\n"
+                + "2026-01-16 10:00;SBER;SELL;4;260,00\\n";
+
+        mockMvc.perform(post(BASE_URL + "/import")
+                        .content(buildImportRequest(userId, csv))
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.body.imported", is(2)))
+                .andExpect(jsonPath("$.body.tickers[0]", is("SBER")));
+
+        mockMvc.perform(post(BASE_URL + "/list")
+                        .content(buildListRequest(userId, null))
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.body", hasSize(2)));
+        assertThat(positionRepository.findByUserIdAndSecurity_Ticker(userId, "SBER"))
+                .hasValueSatisfying(p -> assertThat(p.getQuantity()).isEqualByComparingTo("6"));
+    }
+
+    @Test
+    @DisplayName("POST /import — повторный импорт того же отчёта → сделки не дублируются, добавляются только новые строки")
+    void shouldSkipAlreadyImportedRows() throws Exception {
+        String csv = "executed_at,ticker,type,quantity,price\\n"
+                + "2026-01-15T10:00:00Z,SBER,BUY,10,250.00\\n"
+                + "2026-01-15T10:00:00Z,SBER,BUY,10,250.00\\n";
+        mockMvc.perform(post(BASE_URL + "/import")
+                        .content(buildImportRequest(userId, csv))
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.body.imported", is(2)));
+
+        mockMvc.perform(post(BASE_URL + "/import")
+                        .content(buildImportRequest(userId, csv + "2026-01-16T10:00:00Z,SBER,SELL,5,260\\n"))
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.body.imported", is(1)))
+                .andExpect(jsonPath("$.body.skipped", is(2)));
+
+        assertThat(transactionRepository.findByUserId(userId)).hasSize(3);
+        assertThat(positionRepository.findByUserIdAndSecurity_Ticker(userId, "SBER"))
+                .hasValueSatisfying(p -> assertThat(p.getQuantity()).isEqualByComparingTo("15"));
+    }
+
+    @Test
+    @DisplayName("POST /import — некорректная строка → 400, ничего не сохраняется")
+    void shouldRejectImportWithBadRow() throws Exception {
+        String csv = "executed_at,ticker,type,quantity,price\\n"
+                + "2026-01-15T10:00:00Z,SBER,BUY,10,250.00\\n"
+                + "2026-01-16T10:00:00Z,SBER,HOLD,4,260.00\\n";
+
+        mockMvc.perform(post(BASE_URL + "/import")
+                        .content(buildImportRequest(userId, csv))
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message", containsString("строка 3")));
+
+        assertThat(transactionRepository.findAll()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("POST /analytics/tax-report — после импорта SELL закрывает лоты по FIFO, прибыль в году продажи")
+    void shouldReportRealizedPnlOfImportedSales() throws Exception {
+        String csv = "executed_at,ticker,type,quantity,price\\n"
+                + "2025-03-01T10:00:00Z,SBER,BUY,10,100.00\\n"
+                + "2025-03-02T10:00:00Z,SBER,BUY,10,120.00\\n"
+                + "2025-06-02T10:00:00Z,SBER,SELL,20,150.00\\n";
+        mockMvc.perform(post(BASE_URL + "/import")
+                        .content(buildImportRequest(userId, csv))
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isCreated());
+
+        mockMvc.perform(post("/api/investment/analytics/tax-report")
+                        .content(buildTaxReportRequest(userId, 2025))
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.body.proceeds", is(3000.00)))
+                .andExpect(jsonPath("$.body.realizedPnl", is(800.00)))
+                .andExpect(jsonPath("$.body.unrealizedPnl", is(0.00)))
+                .andExpect(jsonPath("$.body.tickers[0].openQuantity", is(0)));
+    }
+
+    @Test
+    @DisplayName("POST /page — страницы по курсору от новых к старым, фильтр по типу")
+    void shouldPageTransactionsByCursor() throws Exception {
+        String csv = "executed_at,ticker,type,quantity,price\\n"
+                + "2026-01-10T10:00:00Z,SBER,BUY,10,250.00\\n"
+                + "2026-01-11T10:00:00Z,SBER,BUY,5,260.00\\n"
+                + "2026-01-12T10:00:00Z,SBER,SELL,3,270.00\\n";
+        mockMvc.perform(post(BASE_URL + "/import")
+                        .content(buildImportRequest(userId, csv))
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isCreated());
+
+        String firstPage = mockMvc.perform(post(BASE_URL + "/page")
+                        .content(buildPageRequest(userId, "\"limit\": 2"))
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.body.items", hasSize(2)))
+                .andExpect(jsonPath("$.body.items[0].type", is("SELL")))
+                .andExpect(jsonPath("$.body.nextCursor", notNullValue()))
+                .andReturn().getResponse().getContentAsString();
+        String cursor = com.jayway.jsonpath.JsonPath.read(firstPage, "$.body.nextCursor");
+
+        mockMvc.perform(post(BASE_URL + "/page")
+                        .content(buildPageRequest(userId, "\"limit\": 2, \"cursor\": \"%s\"".formatted(cursor)))
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.body.items", hasSize(1)))
+                .andExpect(jsonPath("$.body.items[0].executedAt", containsString("2026-01-10")))
+                .andExpect(jsonPath("$.body.nextCursor", nullValue()));
+
+        mockMvc.perform(post(BASE_URL + "/page")
+                        .content(buildPageRequest(userId, "\"type\": \"BUY\", \"from\": \"2026-01-11\""))
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.body.items", hasSize(1)))
+                .andExpect(jsonPath("$.body.items[0].quantity", is(5.0)));
+    }
+
     private String buildCreateRequest(UUID reqUserId, String ticker, String type, String quantity, String price) {
         return """
                 {
@@ -168,6 +294,54 @@ class TransactionControllerTest extends AbstractIntegrationTest {
                 """.formatted(reqUserId, UUID.randomUUID(), ticker, type, quantity, price);
     }
 
+    private String buildImportRequest(UUID reqUserId, String csv) {
+        return """
+                {
+                  "user": {
+                    "userId": "%s",
+                    "email": "test@example.com",
+                    "role": "USER",
+                    "sessionId": "%s"
+                  },
+                  "data": {
+                    "csv": "%s"
+                  }
+                }
+                """.formatted(reqUserId, UUID.randomUUID(), csv);
+    }
+
+    private String buildTaxReportRequest(UUID reqUserId, int year) {
+        return """
+                {
+                  "user": {
+                    "userId": "%s",
+                    "email": "test@example.com",
+                    "role": "USER",
+                    "sessionId": "%s"
+                  },
+                  "data": {
+                    "year": %d
+                  }
+                }
+                """.formatted(reqUserId, UUID.randomUUID(), year);
+    }
+
+    private String buildPageRequest(UUID reqUserId, String data) {
+        return """
+                {
+                  "user": {
+                    "userId": "%s",
+                    "email": "test@example.com",
+                    "role": "USER",
+                    "sessionId": "%s"
+                  },
+                  "data": {
+                    %s
+                  }
+                }
+                """.formatted(reqUserId, UUID.randomUUID(), data);
+    }
+
     private String buildListRequest(UUID reqUserId, String ticker) {
         String tickerField = ticker != null ? "\"ticker\": \"%s\"".formatted(ticker) : "";
         return """
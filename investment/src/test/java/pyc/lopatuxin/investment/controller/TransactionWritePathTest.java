@@ -0,0 +1,109 @@
+package pyc.lopatuxin.investment.controller;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import pyc.lopatuxin.investment.AbstractIntegrationTest;
+import pyc.lopatuxin.investment.client.moex.MoexIssClient;
+import pyc.lopatuxin.investment.client.moex.dto.MoexSecurityDto;
+import pyc.lopatuxin.investment.entity.Security;
+import pyc.lopatuxin.investment.entity.enums.HistoryStatus;
+import pyc.lopatuxin.investment.entity.enums.SecurityType;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@DisplayName("Запись сделки не держит соединение с БД на время запросов к MOEX")
+class TransactionWritePathTest extends AbstractIntegrationTest {
+
+    private static final String BASE_URL = "/api/investment/transactions";
+    private static final Duration MOEX_LATENCY = Duration.ofSeconds(3);
+
+    @MockitoBean
+    private MoexIssClient moexIssClient;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        transactionRepository.deleteAll();
+        positionRepository.deleteAll();
+        dividendRepository.deleteAll();
+        securityRepository.deleteAll();
+        outboxEventRepository.deleteAll();
+        when(moexIssClient.fetchSecurity(anyString())).thenAnswer(inv -> {
+            Thread.sleep(MOEX_LATENCY.toMillis());
+            return Optional.of(new MoexSecurityDto(inv.getArgument(0), "TQBR", "Сбербанк", SecurityType.STOCK,
+                    null, "SUR"));
+        });
+    }
+
+    @Test
+    @DisplayName("Новый тикер при медленной MOEX — ответ и суммарное время занятости соединений меньше задержки MOEX")
+    void shouldNotHoldConnectionWhileMoexIsSlow() throws Exception {
+        Timer usage = meterRegistry.find("hikaricp.connections.usage").timer();
+        assertThat(usage).isNotNull();
+        long countBefore = usage.count();
+        double heldBeforeMs = usage.totalTime(TimeUnit.MILLISECONDS);
+
+        long started = System.nanoTime();
+        mockMvc.perform(post(BASE_URL)
+                        .content(buildCreateRequest(UUID.randomUUID(), "SBER"))
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isCreated());
+        Duration response = Duration.ofNanos(System.nanoTime() - started);
+
+        // the enrichment waits for MOEX after the commit; wait until the outbox is empty
+        long deadline = System.nanoTime() + MOEX_LATENCY.multipliedBy(5).toNanos();
+        while (outboxEventRepository.count() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+        }
+        assertThat(outboxEventRepository.count()).isZero();
+
+        assertThat(response).isLessThan(MOEX_LATENCY);
+        // every connection borrowed for the write and for the enrichment is counted; one held across an ISS call
+        // alone would add the whole MOEX latency
+        assertThat(usage.count()).isGreaterThan(countBefore);
+        assertThat(usage.totalTime(TimeUnit.MILLISECONDS) - heldBeforeMs).isLessThan(MOEX_LATENCY.toMillis());
+
+        Security security = securityRepository.findById("SBER").orElseThrow();
+        assertThat(security.getBoardId()).isEqualTo("TQBR");
+        assertThat(security.getName()).isEqualTo("Сбербанк");
+        assertThat(security.getHistoryStatus()).isEqualTo(HistoryStatus.READY);
+    }
+
+    private String buildCreateRequest(UUID reqUserId, String ticker) {
+        return """
+                {
+                  "user": {
+                    "userId": "%s",
+                    "email": "test@example.com",
+                    "role": "USER",
+                    "sessionId": "%s"
+                  },
+                  "data": {
+                    "ticker": "%s",
+                    "type": "BUY",
+                    "securityType": "STOCK",
+                    "quantity": 10,
+                    "price": 250.00,
+                    "executedAt": "2026-01-15T10:00:00Z"
+                  }
+                }
+                """.formatted(reqUserId, UUID.randomUUID(), ticker);
+    }
+}
@@ -0,0 +1,186 @@
+package pyc.lopatuxin.investment.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import pyc.lopatuxin.investment.AbstractIntegrationTest;
+import pyc.lopatuxin.investment.entity.Dividend;
+import pyc.lopatuxin.investment.entity.PriceHistory;
+import pyc.lopatuxin.investment.entity.PriceHistoryId;
+import pyc.lopatuxin.investment.entity.PriceSnapshot;
+import pyc.lopatuxin.investment.entity.Security;
+import pyc.lopatuxin.investment.entity.enums.DividendStatus;
+import pyc.lopatuxin.investment.entity.enums.HistoryStatus;
+import pyc.lopatuxin.investment.entity.enums.SecurityType;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MarketDataBulkWriterIT extends AbstractIntegrationTest {
+
+    private static final Logger log = LoggerFactory.getLogger(MarketDataBulkWriterIT.class);
+
+    @Autowired
+    private MarketDataBulkWriter marketDataBulkWriter;
+
+    private Security sber;
+
+    @BeforeEach
+    void cleanUp() {
+        dividendRepository.deleteAll();
+        priceSnapshotRepository.deleteAll();
+        priceHistoryRepository.deleteAll();
+        transactionRepository.deleteAll();
+        positionRepository.deleteAll();
+        securityRepository.deleteAll();
+        sber = securityRepository.save(security("SBER"));
+    }
+
+    @Test
+    @DisplayName("upsertPriceHistory — новые свечи вставляются, существующие перезаписываются")
+    void upsertPriceHistory_insertsAndOverwrites() {
+        LocalDate date = LocalDate.of(2024, 1, 15);
+        marketDataBulkWriter.upsertPriceHistory(List.of(candle("SBER", date, "270.00")));
+
+        int written = marketDataBulkWriter.upsertPriceHistory(List.of(
+                candle("SBER", date, "275.50"),
+                candle("SBER", date.plusDays(1), "276.00")));
+
+        assertThat(written).isEqualTo(2);
+        assertThat(priceHistoryRepository.count()).isEqualTo(2);
+        assertThat(priceHistoryRepository.findById(new PriceHistoryId("SBER", date)))
+                .get()
+                .extracting(PriceHistory::getClose)
+                .satisfies(close -> assertThat(close).isEqualByComparingTo("275.50"));
+    }
+
+    @Test
+    @DisplayName("upsertPriceHistory — дубликаты ключа в одном пакете → побеждает последняя свеча")
+    void upsertPriceHistory_duplicateKeysInBatch_lastWins() {
+        LocalDate date = LocalDate.of(2024, 1, 15);
+
+        int written = marketDataBulkWriter.upsertPriceHistory(List.of(
+                candle("SBER", date, "270.00"),
+                candle("SBER", date, "271.00")));
+
+        assertThat(written).isEqualTo(1);
+        assertThat(priceHistoryRepository.findById(new PriceHistoryId("SBER", date)))
+                .get()
+                .extracting(PriceHistory::getClose)
+                .satisfies(close -> assertThat(close).isEqualByComparingTo("271.00"));
+    }
+
+    @Test
+    @DisplayName("insertDividends — существующая дата отсечки пропускается")
+    void insertDividends_skipsExistingRecordDate() {
+        LocalDate recordDate = LocalDate.of(2024, 7, 11);
+        marketDataBulkWriter.insertDividends(List.of(dividend(recordDate, "33.30")));
+
+        marketDataBulkWriter.insertDividends(List.of(
+                dividend(recordDate, "99.99"),
+                dividend(recordDate.plusYears(1), "34.84")));
+
+        List<Dividend> stored = dividendRepository.findBySecurity_Ticker("SBER");
+        assertThat(stored).hasSize(2);
+        assertThat(stored)
+                .filteredOn(d -> d.getRecordDate().equals(recordDate))
+                .singleElement()
+                .satisfies(d -> assertThat(d.getAmountPerShare()).isEqualByComparingTo("33.30"));
+    }
+
+    @Test
+    @DisplayName("upsertSnapshots — один пакет вставляет новые и обновляет существующие котировки")
+    void upsertSnapshots_insertsAndOverwrites() {
+        securityRepository.save(security("GAZP"));
+        Instant earlier = Instant.now().minus(10, ChronoUnit.MINUTES).truncatedTo(ChronoUnit.MICROS);
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        marketDataBulkWriter.upsertSnapshots(List.of(snapshot("SBER", "300.00", earlier)));
+
+        marketDataBulkWriter.upsertSnapshots(List.of(
+                snapshot("SBER", "315.00", now),
+                snapshot("GAZP", "160.00", now)));
+
+        assertThat(priceSnapshotRepository.count()).isEqualTo(2);
+        PriceSnapshot sberSnapshot = priceSnapshotRepository.findById("SBER").orElseThrow();
+        assertThat(sberSnapshot.getLastPrice()).isEqualByComparingTo("315.00");
+        assertThat(sberSnapshot.getFetchedAt()).isEqualTo(now);
+    }
+
+    @Test
+    @DisplayName("upsertPriceHistory vs saveAll — сравнение времени загрузки")
+    void upsertPriceHistory_comparedWithSaveAll() {
+        int rows = 5_000;
+        securityRepository.save(security("GAZP"));
+        List<PriceHistory> viaSaveAll = candles("SBER", rows);
+        List<PriceHistory> viaBulk = candles("GAZP", rows);
+
+        long start = System.nanoTime();
+        priceHistoryRepository.saveAll(viaSaveAll);
+        long saveAllMs = (System.nanoTime() - start) / 1_000_000;
+
+        start = System.nanoTime();
+        marketDataBulkWriter.upsertPriceHistory(viaBulk);
+        long bulkMs = (System.nanoTime() - start) / 1_000_000;
+
+        log.info("price_history load of {} rows: saveAll {} ms, bulk upsert {} ms", rows, saveAllMs, bulkMs);
+        assertThat(priceHistoryRepository.count()).isEqualTo(2L * rows);
+    }
+
+    private List<PriceHistory> candles(String ticker, int count) {
+        LocalDate start = LocalDate.of(2000, 1, 1);
+        List<PriceHistory> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(candle(ticker, start.plusDays(i), String.valueOf(100 + i % 50)));
+        }
+        return result;
+    }
+
+    private static PriceHistory candle(String ticker, LocalDate date, String close) {
+        BigDecimal price = new BigDecimal(close);
+        return PriceHistory.builder()
+                .ticker(ticker)
+                .tradeDate(date)
+                .open(price)
+                .close(price)
+                .high(price)
+                .low(price)
+                .volume(1000L)
+                .build();
+    }
+
+    private static PriceSnapshot snapshot(String ticker, String lastPrice, Instant fetchedAt) {
+        return PriceSnapshot.builder()
+                .ticker(ticker)
+                .lastPrice(new BigDecimal(lastPrice))
+                .fetchedAt(fetchedAt)
+                .build();
+    }
+
+    private Dividend dividend(LocalDate recordDate, String amount) {
+        return Dividend.builder()
+                .security(sber)
+                .recordDate(recordDate)
+                .amountPerShare(new BigDecimal(amount))
+                .currency("RUB")
+                .status(DividendStatus.PAID)
+                .build();
+    }
+
+    private static Security security(String ticker) {
+        return Security.builder()
+                .ticker(ticker)
+                .name(ticker)
+                .type(SecurityType.STOCK)
+                .historyStatus(HistoryStatus.PENDING)
+                .build();
+    }
+}
@@ -0,0 +1,129 @@
+package pyc.lopatuxin.investment.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
+import pyc.lopatuxin.investment.AbstractIntegrationTest;
+import pyc.lopatuxin.investment.entity.PortfolioValuation;
+import pyc.lopatuxin.investment.entity.PriceHistory;
+import pyc.lopatuxin.investment.entity.Security;
+import pyc.lopatuxin.investment.entity.Transaction;
+import pyc.lopatuxin.investment.entity.enums.HistoryStatus;
+import pyc.lopatuxin.investment.entity.enums.SecurityType;
+import pyc.lopatuxin.investment.entity.enums.TransactionType;
+import pyc.lopatuxin.investment.repository.PortfolioValuationRepository.ValuationPoint;
+import pyc.lopatuxin.investment.service.PortfolioValuationService;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PortfolioValuationRepositoryIT extends AbstractIntegrationTest {
+
+    private static final ZoneId MSK = ZoneId.of("Europe/Moscow");
+
+    @Autowired
+    private PortfolioValuationRepository portfolioValuationRepository;
+
+    @Autowired
+    private PortfolioValuationService portfolioValuationService;
+
+    private Security sber;
+
+    @BeforeEach
+    void cleanUp() {
+        portfolioValuationRepository.deleteAll();
+        dividendRepository.deleteAll();
+        priceSnapshotRepository.deleteAll();
+        priceHistoryRepository.deleteAll();
+        transactionRepository.deleteAll();
+        positionRepository.deleteAll();
+        securityRepository.deleteAll();
+        sber = securityRepository.save(Security.builder()
+                .ticker("SBER")
+                .name("Сбербанк")
+                .type(SecurityType.STOCK)
+                .historyStatus(HistoryStatus.READY)
+                .build());
+    }
+
+    @Test
+    @DisplayName("recomputeFrom — оценки пишутся по дням, пересчёт с поздней даты не трогает ранние строки")
+    void recomputeFrom_writesSeriesAndKeepsEarlierRows() {
+        UUID userId = UUID.randomUUID();
+        LocalDate day1 = LocalDate.of(2024, 1, 15);
+        LocalDate day2 = LocalDate.of(2024, 1, 16);
+        LocalDate day3 = LocalDate.of(2024, 1, 17);
+        priceHistoryRepository.saveAll(List.of(
+                candle(day1, "270.00"), candle(day2, "280.00"), candle(day3, "290.00")));
+        transactionRepository.save(buy(userId, "10", day1));
+
+        portfolioValuationService.recomputeFrom(userId, day1);
+
+        assertThat(portfolioValuationRepository.findByUserIdAndValuationDateBetweenOrderByValuationDateAsc(
+                userId, day1, day3))
+                .extracting(PortfolioValuation::getValue)
+                .usingElementComparator(BigDecimal::compareTo)
+                .containsExactly(new BigDecimal("2700.00"), new BigDecimal("2800.00"), new BigDecimal("2900.00"));
+
+        transactionRepository.save(buy(userId, "5", day3));
+        portfolioValuationService.recomputeFrom(userId, day3);
+
+        assertThat(portfolioValuationRepository.findByUserIdAndValuationDateBetweenOrderByValuationDateAsc(
+                userId, day1, day3))
+                .extracting(PortfolioValuation::getValue)
+                .usingElementComparator(BigDecimal::compareTo)
+                .containsExactly(new BigDecimal("2700.00"), new BigDecimal("2800.00"), new BigDecimal("4350.00"));
+        assertThat(portfolioValuationRepository.findLastValuationDate(userId)).contains(day3);
+    }
+
+    @Test
+    @DisplayName("findPoints — страница ограничена limit и упорядочена по дате, следующая начинается после неё")
+    void findPoints_returnsKeysetPages() {
+        UUID userId = UUID.randomUUID();
+        LocalDate day1 = LocalDate.of(2024, 1, 15);
+        LocalDate day3 = LocalDate.of(2024, 1, 17);
+        priceHistoryRepository.saveAll(List.of(
+                candle(day1, "270.00"), candle(day1.plusDays(1), "280.00"), candle(day3, "290.00")));
+        transactionRepository.save(buy(userId, "10", day1));
+        portfolioValuationService.recomputeFrom(userId, day1);
+
+        List<ValuationPoint> first = portfolioValuationRepository
+                .findPointsByUserIdAndValuationDateBetweenOrderByValuationDateAsc(userId, day1, day3, Limit.of(2));
+        List<ValuationPoint> second = portfolioValuationRepository
+                .findPointsByUserIdAndValuationDateBetweenOrderByValuationDateAsc(userId,
+                        first.getLast().getValuationDate().plusDays(1), day3, Limit.of(2));
+
+        assertThat(first).extracting(ValuationPoint::getValuationDate).containsExactly(day1, day1.plusDays(1));
+        assertThat(second).extracting(ValuationPoint::getValuationDate).containsExactly(day3);
+    }
+
+    private Transaction buy(UUID userId, String quantity, LocalDate date) {
+        return Transaction.builder()
+                .userId(userId)
+                .security(sber)
+                .type(TransactionType.BUY)
+                .quantity(new BigDecimal(quantity))
+                .price(new BigDecimal("250.00"))
+                .executedAt(date.atTime(12, 0).atZone(MSK).toInstant())
+                .build();
+    }
+
+    private PriceHistory candle(LocalDate date, String close) {
+        return PriceHistory.builder()
+                .ticker("SBER")
+                .tradeDate(date)
+                .open(new BigDecimal(close))
+                .close(new BigDecimal(close))
+                .high(new BigDecimal(close))
+                .low(new BigDecimal(close))
+                .volume(1_000L)
+                .build();
+    }
+}
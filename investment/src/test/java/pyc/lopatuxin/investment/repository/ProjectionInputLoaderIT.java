@@ -0,0 +1,201 @@
+package pyc.lopatuxin.investment.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import pyc.lopatuxin.investment.AbstractIntegrationTest;
+import pyc.lopatuxin.investment.entity.Dividend;
+import pyc.lopatuxin.investment.entity.PriceHistory;
+import pyc.lopatuxin.investment.entity.Security;
+import pyc.lopatuxin.investment.entity.enums.DividendStatus;
+import pyc.lopatuxin.investment.entity.enums.HistoryStatus;
+import pyc.lopatuxin.investment.entity.enums.SecurityType;
+import pyc.lopatuxin.investment.repository.ProjectionInputs.PaidDividend;
+import pyc.lopatuxin.investment.repository.ProjectionInputs.PriceRange;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class ProjectionInputLoaderIT extends AbstractIntegrationTest {
+
+    private static final int TICKERS = 30;
+    private static final int YEARS = 10;
+    private static final int FIRST_YEAR = 2015;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private final AtomicInteger statements = new AtomicInteger();
+    private ProjectionInputLoader loader;
+
+    @BeforeEach
+    void cleanUp() {
+        dividendRepository.deleteAll();
+        priceSnapshotRepository.deleteAll();
+        priceHistoryRepository.deleteAll();
+        transactionRepository.deleteAll();
+        positionRepository.deleteAll();
+        securityRepository.deleteAll();
+        statements.set(0);
+        loader = new ProjectionInputLoader(new JdbcTemplate(countingStatements(dataSource)));
+    }
+
+    @Test
+    @DisplayName("load — 30 тикеров × 10 лет дивидендов → ровно 2 SQL-запроса")
+    void load_usesFixedNumberOfStatements() {
+        List<String> tickers = new ArrayList<>();
+        List<PriceHistory> candles = new ArrayList<>();
+        List<Dividend> dividends = new ArrayList<>();
+        for (int t = 0; t < TICKERS; t++) {
+            Security security = securityRepository.save(security("T" + t));
+            tickers.add(security.getTicker());
+            for (int y = 0; y < YEARS; y++) {
+                LocalDate payment = LocalDate.of(FIRST_YEAR + y, 7, 1);
+                candles.add(candle(security.getTicker(), payment.minusDays(1), String.valueOf(100 + y)));
+                dividends.add(paid(security, payment, "10.00"));
+            }
+        }
+        priceHistoryRepository.saveAll(candles);
+        dividendRepository.saveAll(dividends);
+
+        ProjectionInputs inputs = loader.load(tickers);
+
+        assertThat(statements.get()).isEqualTo(2);
+        assertThat(inputs.priceRanges()).hasSize(TICKERS);
+        assertThat(inputs.paidDividends()).hasSize(TICKERS);
+        assertThat(inputs.paidDividends("T7")).hasSize(YEARS);
+        assertThat(inputs.paidDividends("T7").getLast().close()).isEqualByComparingTo("109");
+    }
+
+    @Test
+    @DisplayName("load — первая/последняя цена, цена на дату выплаты с переносом, дивиденд до истории и неоплаченный")
+    void load_resolvesRangesAndDividendCloses() {
+        Security sber = securityRepository.save(security("SBER"));
+        Security gazp = securityRepository.save(security("GAZP"));
+        priceHistoryRepository.saveAll(List.of(
+                candle("SBER", LocalDate.of(2022, 6, 30), "200.00"),
+                candle("SBER", LocalDate.of(2023, 6, 30), "300.00"),
+                candle("SBER", LocalDate.of(2024, 1, 10), "280.00")));
+        Dividend announced = paid(sber, LocalDate.of(2024, 7, 1), "33.00");
+        announced.setStatus(DividendStatus.ANNOUNCED);
+        dividendRepository.saveAll(List.of(
+                paid(sber, LocalDate.of(2021, 7, 1), "15.00"),
+                paid(sber, LocalDate.of(2023, 7, 2), "30.00"),
+                announced,
+                paid(gazp, LocalDate.of(2023, 7, 1), "12.00")));
+
+        ProjectionInputs inputs = loader.load(List.of("SBER", "GAZP"));
+
+        PriceRange sberRange = inputs.priceRange("SBER");
+        assertThat(sberRange.firstDate()).isEqualTo(LocalDate.of(2022, 6, 30));
+        assertThat(sberRange.firstClose()).isEqualByComparingTo("200.00");
+        assertThat(sberRange.lastDate()).isEqualTo(LocalDate.of(2024, 1, 10));
+        assertThat(sberRange.lastClose()).isEqualByComparingTo("280.00");
+        assertThat(inputs.priceRange("GAZP")).isNull();
+
+        List<PaidDividend> sberDividends = inputs.paidDividends("SBER");
+        assertThat(sberDividends).extracting(PaidDividend::effectiveDate)
+                .containsExactly(LocalDate.of(2021, 7, 1), LocalDate.of(2023, 7, 2));
+        assertThat(sberDividends.get(0).close()).isNull();
+        assertThat(sberDividends.get(1).close()).isEqualByComparingTo("300.00");
+        assertThat(inputs.paidDividends("GAZP")).singleElement()
+                .extracting(PaidDividend::close).isNull();
+    }
+
+    @Test
+    @DisplayName("loadMonthlyVolatility — std лог-доходностей по последней цене месяца, меньше трёх месяцев → нет оценки")
+    void loadMonthlyVolatility_usesMonthEndCloses() {
+        securityRepository.save(security("SBER"));
+        securityRepository.save(security("GAZP"));
+        priceHistoryRepository.saveAll(List.of(
+                candle("SBER", LocalDate.of(2024, 1, 31), "100.00"),
+                candle("SBER", LocalDate.of(2024, 2, 15), "150.00"),
+                candle("SBER", LocalDate.of(2024, 2, 29), "110.00"),
+                candle("SBER", LocalDate.of(2024, 3, 29), "99.00"),
+                candle("GAZP", LocalDate.of(2024, 1, 31), "160.00"),
+                candle("GAZP", LocalDate.of(2024, 2, 29), "170.00")));
+
+        Map<String, Double> volatility = loader.loadMonthlyVolatility(List.of("SBER", "GAZP"));
+
+        double up = Math.log(1.1);
+        double down = Math.log(0.9);
+        double mean = (up + down) / 2;
+        // sample standard deviation of two returns, n - 1 = 1
+        double expected = Math.sqrt(Math.pow(up - mean, 2) + Math.pow(down - mean, 2));
+        assertThat(volatility).containsOnlyKeys("SBER");
+        assertThat(volatility.get("SBER")).isCloseTo(expected, within(1e-9));
+        assertThat(statements.get()).isEqualTo(1);
+    }
+
+    private DataSource countingStatements(DataSource target) {
+        return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{DataSource.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(target, method, args);
+                    if (!method.getName().equals("getConnection")) {
+                        return result;
+                    }
+                    Connection connection = (Connection) result;
+                    return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                            (p, m, a) -> {
+                                if (m.getName().startsWith("prepare") || m.getName().equals("createStatement")) {
+                                    statements.incrementAndGet();
+                                }
+                                return invoke(connection, m, a);
+                            });
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    private static Security security(String ticker) {
+        return Security.builder()
+                .ticker(ticker)
+                .name(ticker)
+                .type(SecurityType.STOCK)
+                .historyStatus(HistoryStatus.READY)
+                .build();
+    }
+
+    private static PriceHistory candle(String ticker, LocalDate date, String close) {
+        return PriceHistory.builder()
+                .ticker(ticker)
+                .tradeDate(date)
+                .open(new BigDecimal(close))
+                .close(new BigDecimal(close))
+                .high(new BigDecimal(close))
+                .low(new BigDecimal(close))
+                .volume(1_000L)
+                .build();
+    }
+
+    private static Dividend paid(Security security, LocalDate paymentDate, String amount) {
+        return Dividend.builder()
+                .security(security)
+                .recordDate(paymentDate.minusDays(14))
+                .paymentDate(paymentDate)
+                .amountPerShare(new BigDecimal(amount))
+                .currency("RUB")
+                .status(DividendStatus.PAID)
+                .build();
+    }
+}
@@ -8,7 +8,9 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import pyc.lopatuxin.investment.client.moex.MoexUnavailableException;
 import pyc.lopatuxin.investment.repository.PositionRepository;
-import pyc.lopatuxin.investment.service.market.DividendSyncService;
+import pyc.lopatuxin.investment.service.PortfolioValuationService;
+import pyc.lopatuxin.investment.service.market.DividendBatchSyncService;
+import pyc.lopatuxin.investment.service.market.HistorySyncService;
 import pyc.lopatuxin.investment.service.market.MarketDataService;
 
 import java.util.List;
@@ -31,65 +33,57 @@ class MarketDataRefreshSchedulerTest {
     private MarketDataService marketDataService;
 
     @Mock
-    private DividendSyncService dividendSyncService;
+    private DividendBatchSyncService dividendBatchSyncService;
+
+    @Mock
+    private HistorySyncService historySyncService;
+
+    @Mock
+    private PortfolioValuationService portfolioValuationService;
 
     @InjectMocks
     private MarketDataRefreshScheduler scheduler;
 
     @Test
-    @DisplayName("refreshActiveSnapshots — тикеры есть → getSnapshots вызван с этим списком")
-    void refreshActiveSnapshots_callsGetSnapshots_whenTickersPresent() {
+    @DisplayName("refreshActiveSnapshots — тикеры есть → refreshSnapshots вызван с этим списком")
+    void refreshActiveSnapshots_callsRefreshSnapshots_whenTickersPresent() {
         when(positionRepository.findActiveTickers()).thenReturn(List.of("SBER"));
 
         scheduler.refreshActiveSnapshots();
 
-        verify(marketDataService).getSnapshots(List.of("SBER"));
+        verify(marketDataService).refreshSnapshots(List.of("SBER"));
     }
 
     @Test
-    @DisplayName("refreshActiveSnapshots — пустой список тикеров → getSnapshots не вызывается")
+    @DisplayName("refreshActiveSnapshots — пустой список тикеров → refreshSnapshots не вызывается")
     void refreshActiveSnapshots_doesNothing_whenNoTickers() {
         when(positionRepository.findActiveTickers()).thenReturn(List.of());
 
         scheduler.refreshActiveSnapshots();
 
-        verify(marketDataService, never()).getSnapshots(anyList());
+        verify(marketDataService, never()).refreshSnapshots(anyList());
     }
 
     @Test
-    @DisplayName("refreshActiveSnapshots — getSnapshots бросает MoexUnavailableException → метод не падает")
+    @DisplayName("refreshActiveSnapshots — refreshSnapshots бросает MoexUnavailableException → метод не падает")
     void refreshActiveSnapshots_doesNotThrow_whenMoexUnavailable() {
         when(positionRepository.findActiveTickers()).thenReturn(List.of("SBER"));
-        when(marketDataService.getSnapshots(anyList()))
-                .thenThrow(new MoexUnavailableException("MOEX unavailable"));
+        doThrow(new MoexUnavailableException("MOEX unavailable"))
+                .when(marketDataService).refreshSnapshots(anyList());
 
         assertThatCode(() -> scheduler.refreshActiveSnapshots())
                 .doesNotThrowAnyException();
     }
 
     @Test
-    @DisplayName("refreshHistoryAndDividends — тикер GAZP → triggerHistoryAsync и syncDividends вызваны")
+    @DisplayName("refreshHistoryAndDividends — тикер GAZP → syncDeltas, syncAll и продление оценок вызваны")
     void refreshHistoryAndDividends_callsBothServices() {
         when(positionRepository.findActiveTickers()).thenReturn(List.of("GAZP"));
 
         scheduler.refreshHistoryAndDividends();
 
-        verify(marketDataService).triggerHistoryAsync("GAZP");
-        verify(dividendSyncService).syncDividends("GAZP");
-    }
-
-    @Test
-    @DisplayName("refreshHistoryAndDividends — первый тикер бросает исключение → второй тикер обрабатывается")
-    void refreshHistoryAndDividends_continuesOnError_forOneTicker() {
-        when(positionRepository.findActiveTickers()).thenReturn(List.of("SBER", "GAZP"));
-        // triggerHistoryAsync is void; use doThrow for the first ticker, then proceed normally
-        doThrow(new RuntimeException("history unavailable"))
-                .when(marketDataService).triggerHistoryAsync("SBER");
-
-        scheduler.refreshHistoryAndDividends();
-
-        // second ticker must still be processed
-        verify(marketDataService).triggerHistoryAsync("GAZP");
-        verify(dividendSyncService).syncDividends("GAZP");
+        verify(historySyncService).syncDeltas(List.of("GAZP"));
+        verify(dividendBatchSyncService).syncAll(List.of("GAZP"));
+        verify(portfolioValuationService).extendThroughLatestClose();
     }
 }
@@ -7,27 +7,36 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import pyc.lopatuxin.investment.dto.request.SeriesResolution;
 import pyc.lopatuxin.investment.dto.response.PortfolioValuePointDto;
 import pyc.lopatuxin.investment.dto.response.PricePointDto;
 import pyc.lopatuxin.investment.dto.response.SeriesResponseDto;
+import pyc.lopatuxin.investment.entity.PortfolioValuation;
 import pyc.lopatuxin.investment.entity.Position;
-import pyc.lopatuxin.investment.entity.PriceHistory;
 import pyc.lopatuxin.investment.entity.Security;
 import pyc.lopatuxin.investment.entity.enums.HistoryStatus;
 import pyc.lopatuxin.investment.entity.enums.SecurityType;
 import pyc.lopatuxin.investment.repository.DividendRepository;
+import pyc.lopatuxin.investment.repository.PortfolioValuationRepository.ValuationPoint;
 import pyc.lopatuxin.investment.repository.PositionRepository;
-import pyc.lopatuxin.investment.repository.PriceHistoryRepository;
 import pyc.lopatuxin.investment.service.market.MarketDataService;
+import pyc.lopatuxin.investment.service.market.PriceSeries;
+import pyc.lopatuxin.investment.service.market.PriceSeriesStore;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -35,7 +44,7 @@ import static org.mockito.Mockito.when;
 class AnalyticsServiceTest {
 
     @Mock
-    private PriceHistoryRepository priceHistoryRepository;
+    private PriceSeriesStore priceSeriesStore;
 
     @Mock
     private PositionRepository positionRepository;
@@ -46,6 +55,9 @@ class AnalyticsServiceTest {
     @Mock
     private DividendRepository dividendRepository;
 
+    @Mock
+    private PortfolioValuationService portfolioValuationService;
+
     @InjectMocks
     private AnalyticsService analyticsService;
 
@@ -64,101 +76,155 @@ class AnalyticsServiceTest {
     }
 
     @Test
-    @DisplayName("portfolioValueHistory — одна позиция 10 акций, 5 дней истории: value = qty × close каждый день")
-    void portfolioValueHistory_singleBuy_correctValue() {
+    @DisplayName("portfolioValueHistory — серия читается из материализованных оценок, без загрузки истории цен")
+    void portfolioValueHistory_readsMaterializedSeries() {
         Position position = buildPosition("SBER", "10");
         when(positionRepository.findByUserIdWithSecurity(userId)).thenReturn(List.of(position));
+        LocalDate day1 = LocalDate.of(2024, 1, 15);
+        LocalDate day2 = LocalDate.of(2024, 1, 16);
+        when(portfolioValuationService.findRange(userId, day1, day2)).thenReturn(List.of(
+                valuation(day1, "2700.00"),
+                valuation(day2, "2800.00")));
 
-        LocalDate base = LocalDate.of(2024, 1, 15);
-        List<PriceHistory> history = buildHistoryDays("SBER", base, 5, "270.00");
-        when(priceHistoryRepository.findByTickerInAndTradeDateBetweenOrderByTradeDateAsc(any(), any(), any()))
-                .thenReturn(history);
-
-        LocalDate from = base;
-        LocalDate to = base.plusDays(4);
-        SeriesResponseDto<PortfolioValuePointDto> result = analyticsService.portfolioValueHistory(userId, from, to);
+        SeriesResponseDto<PortfolioValuePointDto> result = analyticsService.portfolioValueHistory(
+                userId, day1, day2, SeriesResolution.DAY, null);
 
-        assertThat(result.getSeries()).hasSize(5);
-        result.getSeries().forEach(p -> assertThat(p.getValue()).isEqualByComparingTo(new BigDecimal("2700.00")));
+        assertThat(result.getSeries()).extracting(PortfolioValuePointDto::getDate).containsExactly(day1, day2);
+        assertThat(result.getSeries().get(0).getValue()).isEqualByComparingTo("2700.00");
+        assertThat(result.getSeries().get(1).getValue()).isEqualByComparingTo("2800.00");
+        assertThat(result.isHistoryPending()).isFalse();
+        verifyNoInteractions(priceSeriesStore);
     }
 
     @Test
-    @DisplayName("portfolioValueHistory — позиция 5 акций (после частичной продажи): value = 5 × close")
-    void portfolioValueHistory_buyThenSell_quantityDecreases() {
-        // After a BUY 10 + SELL 5, TransactionService stores qty=5 in Position.
-        // AnalyticsService reads current position qty from positionRepository.
-        Position position = buildPosition("SBER", "5");
+    @DisplayName("portfolioValueHistory — тикер без истории → загрузка запущена, тикер в pending")
+    void portfolioValueHistory_pendingTicker_triggersLoad() {
+        Position position = buildPosition("GAZP", "10");
+        position.getSecurity().setHistoryStatus(HistoryStatus.PENDING);
         when(positionRepository.findByUserIdWithSecurity(userId)).thenReturn(List.of(position));
+        when(portfolioValuationService.findRange(any(), any(), any())).thenReturn(List.of());
 
-        LocalDate day1 = LocalDate.of(2024, 1, 1);
-        LocalDate day2 = LocalDate.of(2024, 1, 2);
-        List<PriceHistory> history = List.of(
-                buildPriceHistory("SBER", day1, "270.00"),
-                buildPriceHistory("SBER", day2, "280.00")
-        );
-        when(priceHistoryRepository.findByTickerInAndTradeDateBetweenOrderByTradeDateAsc(any(), any(), any()))
-                .thenReturn(history);
+        SeriesResponseDto<PortfolioValuePointDto> result = analyticsService.portfolioValueHistory(
+                userId, LocalDate.now().minusYears(1), LocalDate.now(), SeriesResolution.DAY, null);
 
-        SeriesResponseDto<PortfolioValuePointDto> result = analyticsService.portfolioValueHistory(userId, day1, day2);
+        assertThat(result.getSeries()).isEmpty();
+        assertThat(result.isHistoryPending()).isTrue();
+        assertThat(result.getPendingTickers()).containsExactly("GAZP");
+        verify(marketDataService).triggerHistoryAsync("GAZP");
+    }
 
-        assertThat(result.getSeries()).hasSize(2);
-        // 5 × 270 = 1350
-        assertThat(result.getSeries().get(0).getValue()).isEqualByComparingTo(new BigDecimal("1350.00"));
-        // 5 × 280 = 1400
-        assertThat(result.getSeries().get(1).getValue()).isEqualByComparingTo(new BigDecimal("1400.00"));
+    @Test
+    @DisplayName("securityPriceHistory — 3 свечи серии маппируются в 3 PricePointDto с корректными полями")
+    void securityPriceHistory_mapsToPricePointDto() {
+        when(marketDataService.getSecurityHistoryStatus("SBER")).thenReturn(HistoryStatus.READY);
+
+        LocalDate base = LocalDate.of(2024, 1, 15);
+        when(priceSeriesStore.get("SBER")).thenReturn(buildSeries(base.minusDays(1), 5, "271.00"));
+
+        SeriesResponseDto<PricePointDto> result = analyticsService.securityPriceHistory(
+                "SBER", base, base.plusDays(2), SeriesResolution.DAY, null);
+
+        assertThat(result.getSeries()).hasSize(3);
+        assertThat(result.getSeries().get(0).getDate()).isEqualTo(base);
+        assertThat(result.getSeries().get(0).getClose()).isEqualByComparingTo(new BigDecimal("271.00"));
+        assertThat(result.getSeries().get(0).getOpen()).isEqualByComparingTo(new BigDecimal("270.00"));
+        assertThat(result.getSeries().get(0).getVolume()).isEqualTo(11000L);
     }
 
     @Test
-    @DisplayName("portfolioValueHistory — позиции есть, история пустая, возвращает пустой список")
-    void portfolioValueHistory_emptyHistory_returnsEmpty() {
-        Position position = buildPosition("SBER", "10");
-        when(positionRepository.findByUserIdWithSecurity(userId)).thenReturn(List.of(position));
-        when(priceHistoryRepository.findByTickerInAndTradeDateBetweenOrderByTradeDateAsc(any(), any(), any()))
-                .thenReturn(List.of());
+    @DisplayName("securityPriceHistory — WEEK → OHLC по неделям: первый open, max high, min low, последний close, сумма объёмов")
+    void securityPriceHistory_week_aggregatesOhlc() {
+        when(marketDataService.getSecurityHistoryStatus("SBER")).thenReturn(HistoryStatus.READY);
+        LocalDate monday = LocalDate.of(2024, 1, 15);
+        when(priceSeriesStore.get("SBER")).thenReturn(PriceSeries.builder(4)
+                .add(monday, new BigDecimal("270"), new BigDecimal("275"), new BigDecimal("268"), new BigDecimal("272"), 100L)
+                .add(monday.plusDays(2), new BigDecimal("272"), new BigDecimal("280"), new BigDecimal("271"), new BigDecimal("279"), 200L)
+                .add(monday.plusDays(4), new BigDecimal("279"), new BigDecimal("279"), new BigDecimal("265"), new BigDecimal("266"), null)
+                .add(monday.plusDays(7), new BigDecimal("266"), new BigDecimal("270"), new BigDecimal("262"), new BigDecimal("268"), 50L)
+                .build());
 
-        SeriesResponseDto<PortfolioValuePointDto> result = analyticsService.portfolioValueHistory(
-                userId, LocalDate.now().minusYears(1), LocalDate.now());
+        SeriesResponseDto<PricePointDto> result = analyticsService.securityPriceHistory(
+                "SBER", monday.minusDays(3), monday.plusDays(7), SeriesResolution.WEEK, null);
 
-        assertThat(result.getSeries()).isEmpty();
+        assertThat(result.getSeries()).hasSize(2);
+        PricePointDto week = result.getSeries().getFirst();
+        assertThat(week.getDate()).isEqualTo(monday);
+        assertThat(week.getOpen()).isEqualByComparingTo("270");
+        assertThat(week.getHigh()).isEqualByComparingTo("280");
+        assertThat(week.getLow()).isEqualByComparingTo("265");
+        assertThat(week.getClose()).isEqualByComparingTo("266");
+        assertThat(week.getVolume()).isEqualTo(300L);
+        assertThat(result.getSeries().getLast().getDate()).isEqualTo(monday.plusDays(7));
     }
 
     @Test
-    @DisplayName("portfolioValueHistory — forward fill: тикер без цены на день использует последнюю известную")
-    void portfolioValueHistory_forwardFill() {
-        Position position = buildPosition("SBER", "10");
-        when(positionRepository.findByUserIdWithSecurity(userId)).thenReturn(List.of(position));
+    @DisplayName("securityPriceHistory — maxPoints → серия ужата LTTB, первая и последняя свечи сохранены")
+    void securityPriceHistory_maxPoints_downsamples() {
+        when(marketDataService.getSecurityHistoryStatus("SBER")).thenReturn(HistoryStatus.READY);
+        LocalDate start = LocalDate.of(2020, 1, 1);
+        when(priceSeriesStore.get("SBER")).thenReturn(buildSeries(start, 1_000, "271.00"));
 
-        LocalDate day1 = LocalDate.of(2024, 1, 15);
-        LocalDate day2 = LocalDate.of(2024, 1, 16);
-        // day2 has no price — only day1 present in DB result
-        List<PriceHistory> history = List.of(buildPriceHistory("SBER", day1, "270.00"));
-        when(priceHistoryRepository.findByTickerInAndTradeDateBetweenOrderByTradeDateAsc(any(), any(), any()))
-                .thenReturn(history);
+        SeriesResponseDto<PricePointDto> result = analyticsService.securityPriceHistory(
+                "SBER", start, start.plusDays(999), SeriesResolution.DAY, 100);
+
+        assertThat(result.getSeries()).hasSize(100);
+        assertThat(result.getSeries().getFirst().getDate()).isEqualTo(start);
+        assertThat(result.getSeries().getLast().getDate()).isEqualTo(start.plusDays(999));
+    }
 
-        SeriesResponseDto<PortfolioValuePointDto> result = analyticsService.portfolioValueHistory(userId, day1, day2);
+    @Test
+    @DisplayName("portfolioValueHistory — MONTH → последнее значение каждого месяца")
+    void portfolioValueHistory_month_keepsLastValueOfMonth() {
+        when(positionRepository.findByUserIdWithSecurity(userId)).thenReturn(List.of());
+        LocalDate jan30 = LocalDate.of(2024, 1, 30);
+        LocalDate jan31 = LocalDate.of(2024, 1, 31);
+        LocalDate feb1 = LocalDate.of(2024, 2, 1);
+        when(portfolioValuationService.findRange(any(), any(), any())).thenReturn(List.of(
+                valuation(jan30, "2700.00"),
+                valuation(jan31, "2750.00"),
+                valuation(feb1, "2800.00")));
+
+        SeriesResponseDto<PortfolioValuePointDto> result = analyticsService.portfolioValueHistory(
+                userId, jan30, feb1, SeriesResolution.MONTH, null);
 
-        // Only day1 has data in history, so only 1 point is produced
-        assertThat(result.getSeries()).hasSize(1);
-        assertThat(result.getSeries().get(0).getValue()).isEqualByComparingTo(new BigDecimal("2700.00"));
+        assertThat(result.getSeries()).extracting(PortfolioValuePointDto::getDate).containsExactly(jan31, feb1);
+        assertThat(result.getSeries().getFirst().getValue()).isEqualByComparingTo("2750.00");
     }
 
     @Test
-    @DisplayName("securityPriceHistory — 3 PriceHistory маппируются в 3 PricePointDto с корректными полями")
-    void securityPriceHistory_mapsToPricePointDto() {
-        when(marketDataService.getSecurityHistoryStatus("SBER")).thenReturn(HistoryStatus.READY);
+    @DisplayName("streamPortfolioValueHistory — точки уходят в приёмник по мере чтения курсора, WEEK → последняя за неделю")
+    void streamPortfolioValueHistory_emitsLastPerWeekFromCursor() {
+        LocalDate friday = LocalDate.of(2024, 1, 19);
+        LocalDate monday = friday.plusDays(3);
+        doAnswer(invocation -> {
+            Consumer<ValuationPoint> sink = invocation.getArgument(3);
+            sink.accept(point(friday.minusDays(1), "2700.00"));
+            sink.accept(point(friday, "2750.00"));
+            sink.accept(point(monday, "2800.00"));
+            return null;
+        }).when(portfolioValuationService).streamRange(eq(userId), any(), any(), any());
+        List<PortfolioValuePointDto> received = new ArrayList<>();
+
+        analyticsService.streamPortfolioValueHistory(
+                userId, friday.minusDays(4), monday, SeriesResolution.WEEK, null, received::add);
+
+        assertThat(received).extracting(PortfolioValuePointDto::getDate).containsExactly(friday, monday);
+        assertThat(received.getFirst().getValue()).isEqualByComparingTo("2750.00");
+        verify(portfolioValuationService, never()).findRange(any(), any(), any());
+    }
 
-        LocalDate base = LocalDate.of(2024, 1, 15);
-        List<PriceHistory> history = buildHistoryDays("SBER", base, 3, "271.00");
-        when(priceHistoryRepository.findByTickerAndTradeDateBetweenOrderByTradeDateAsc(
-                anyString(), any(), any())).thenReturn(history);
+    @Test
+    @DisplayName("streamSecurityPriceHistory — свечи из кэшированной серии передаются по одной, maxPoints не ужимает поток")
+    void streamSecurityPriceHistory_emitsEveryCandle() {
+        LocalDate start = LocalDate.of(2020, 1, 1);
+        when(priceSeriesStore.get("SBER")).thenReturn(buildSeries(start, 1_000, "271.00"));
+        List<PricePointDto> received = new ArrayList<>();
 
-        SeriesResponseDto<PricePointDto> result = analyticsService.securityPriceHistory("SBER", base, base.plusDays(2));
+        analyticsService.streamSecurityPriceHistory(
+                "SBER", start, start.plusDays(999), SeriesResolution.DAY, 100, received::add);
 
-        assertThat(result.getSeries()).hasSize(3);
-        assertThat(result.getSeries().get(0).getDate()).isEqualTo(base);
-        assertThat(result.getSeries().get(0).getClose()).isEqualByComparingTo(new BigDecimal("271.00"));
-        assertThat(result.getSeries().get(0).getOpen()).isEqualByComparingTo(new BigDecimal("270.00"));
-        assertThat(result.getSeries().get(0).getVolume()).isEqualTo(11000L);
+        assertThat(received).hasSize(1_000);
+        assertThat(received.getLast().getDate()).isEqualTo(start.plusDays(999));
     }
 
     private Position buildPosition(String ticker, String quantity) {
@@ -178,21 +244,27 @@ class AnalyticsServiceTest {
                 .build();
     }
 
-    private List<PriceHistory> buildHistoryDays(String ticker, LocalDate startDate, int days, String close) {
-        return java.util.stream.IntStream.range(0, days)
-                .mapToObj(i -> buildPriceHistory(ticker, startDate.plusDays(i), close))
-                .toList();
+    private PortfolioValuation valuation(LocalDate date, String value) {
+        return PortfolioValuation.builder()
+                .userId(userId)
+                .valuationDate(date)
+                .value(new BigDecimal(value))
+                .build();
+    }
+
+    private static ValuationPoint point(LocalDate date, String value) {
+        return new Point(date, new BigDecimal(value));
     }
 
-    private PriceHistory buildPriceHistory(String ticker, LocalDate date, String close) {
-        return PriceHistory.builder()
-                .ticker(ticker)
-                .tradeDate(date)
-                .open(new BigDecimal("270.00"))
-                .close(new BigDecimal(close))
-                .high(new BigDecimal("272.00"))
-                .low(new BigDecimal("268.00"))
-                .volume(11000L)
-                .build();
+    private record Point(LocalDate getValuationDate, BigDecimal getValue) implements ValuationPoint {
+    }
+
+    private PriceSeries buildSeries(LocalDate startDate, int days, String close) {
+        PriceSeries.Builder builder = PriceSeries.builder(days);
+        for (int i = 0; i < days; i++) {
+            builder.add(startDate.plusDays(i), new BigDecimal("270.00"), new BigDecimal("272.00"),
+                    new BigDecimal("268.00"), new BigDecimal(close), 11000L);
+        }
+        return builder.build();
     }
 }
@@ -9,29 +9,35 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import pyc.lopatuxin.investment.client.moex.MoexIssClient;
 import pyc.lopatuxin.investment.client.moex.MoexUnavailableException;
+import pyc.lopatuxin.investment.client.moex.dto.MoexCandleDto;
 import pyc.lopatuxin.investment.client.moex.dto.MoexSecurityDto;
-import pyc.lopatuxin.investment.client.moex.dto.MoexSnapshotDto;
 import pyc.lopatuxin.investment.config.MoexProperties;
 import pyc.lopatuxin.investment.dto.request.SearchCategory;
-import pyc.lopatuxin.investment.entity.PriceSnapshot;
 import pyc.lopatuxin.investment.entity.Security;
 import pyc.lopatuxin.investment.entity.enums.HistoryStatus;
+import pyc.lopatuxin.investment.entity.enums.OutboxEventType;
 import pyc.lopatuxin.investment.entity.enums.SecurityType;
+import pyc.lopatuxin.investment.repository.MarketDataBulkWriter;
 import pyc.lopatuxin.investment.repository.PriceHistoryRepository;
 import pyc.lopatuxin.investment.repository.PriceSnapshotRepository;
 import pyc.lopatuxin.investment.repository.SecurityRepository;
 import pyc.lopatuxin.investment.service.market.HistoryLoaderService;
+import pyc.lopatuxin.investment.service.market.MarketDataOutbox;
 import pyc.lopatuxin.investment.service.market.MarketDataService;
+import pyc.lopatuxin.investment.service.market.QuoteCache;
+import pyc.lopatuxin.investment.service.market.SectorDefaults;
 import pyc.lopatuxin.investment.service.market.dto.SnapshotResult;
 
 import java.lang.reflect.Field;
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.never;
@@ -55,9 +61,18 @@ class MarketDataServiceTest {
     @Mock
     private PriceHistoryRepository priceHistoryRepository;
 
+    @Mock
+    private MarketDataBulkWriter marketDataBulkWriter;
+
+    @Mock
+    private QuoteCache quoteCache;
+
     @Mock
     private MoexProperties moexProperties;
 
+    @Mock
+    private MarketDataOutbox marketDataOutbox;
+
     @Mock
     private HistoryLoaderService historyLoaderService;
 
@@ -72,7 +87,10 @@ class MarketDataServiceTest {
                 securityRepository,
                 priceSnapshotRepository,
                 priceHistoryRepository,
+                marketDataBulkWriter,
+                quoteCache,
                 moexProperties,
+                marketDataOutbox,
                 historyLoaderService,
                 null   // self — set below
         ));
@@ -118,86 +136,165 @@ class MarketDataServiceTest {
     }
 
     @Test
-    @DisplayName("getSnapshot — свежий снимок в БД → не вызывает MOEX")
-    void getSnapshot_freshInDb_doesNotCallMoex() {
-        when(moexProperties.getSnapshotTtlMinutes()).thenReturn(5);
-        PriceSnapshot snapshot = PriceSnapshot.builder()
-                .ticker("SBER")
-                .lastPrice(new BigDecimal("310.50"))
-                .previousClose(new BigDecimal("308.00"))
-                .fetchedAt(Instant.now())
-                .build();
-        when(priceSnapshotRepository.findById("SBER")).thenReturn(Optional.of(snapshot));
+    @DisplayName("registerSecurity — нет в БД → PENDING без обращения к MOEX, обогащение ставится в outbox")
+    void registerSecurity_notInDb_savedAsPendingWithoutMoex() {
+        when(securityRepository.findById("SBER")).thenReturn(Optional.empty());
+        when(securityRepository.saveAndFlush(any(Security.class))).thenAnswer(inv -> inv.getArgument(0));
 
-        SnapshotResult result = marketDataService.getSnapshot("SBER");
+        Security result = marketDataService.registerSecurity("sber", SecurityType.STOCK);
 
-        verify(moexIssClient, never()).fetchSnapshots(any());
-        assertThat(result.lastPrice()).isEqualByComparingTo(new BigDecimal("310.50"));
-        assertThat(result.stale()).isFalse();
+        assertThat(result.getTicker()).isEqualTo("SBER");
+        assertThat(result.getHistoryStatus()).isEqualTo(HistoryStatus.PENDING);
+        verify(moexIssClient, never()).fetchSecurity(anyString());
+        verify(marketDataOutbox).enqueue(OutboxEventType.SECURITY_ENRICHMENT, "SBER");
+    }
+
+    @Test
+    @DisplayName("registerSecurity — уже в БД → возвращается как есть, outbox не трогается")
+    void registerSecurity_inDb_returnedAsIs() {
+        Security stored = Security.builder().ticker("SBER").name("Сбербанк").type(SecurityType.STOCK)
+                .historyStatus(HistoryStatus.READY).build();
+        when(securityRepository.findById("SBER")).thenReturn(Optional.of(stored));
+
+        assertThat(marketDataService.registerSecurity("SBER", SecurityType.STOCK)).isSameAs(stored);
+        verify(securityRepository, never()).saveAndFlush(any());
+        verify(marketDataOutbox, never()).enqueue(any(), anyString());
+    }
+
+    @Test
+    @DisplayName("enrichSecurity — данные MOEX заменяют заглушку PENDING-бумаги")
+    void enrichSecurity_appliesMoexDescription() {
+        Security pending = Security.builder().ticker("SU26238RMFS4").name("SU26238RMFS4").type(SecurityType.BOND)
+                .historyStatus(HistoryStatus.PENDING).build();
+        when(securityRepository.findById("SU26238RMFS4")).thenReturn(Optional.of(pending));
+        when(moexIssClient.fetchSecurity("SU26238RMFS4")).thenReturn(Optional.of(new MoexSecurityDto(
+                "SU26238RMFS4", "TQOB", "ОФЗ 26238", SecurityType.OFZ, null, "SUR")));
+
+        marketDataService.enrichSecurity("SU26238RMFS4");
+
+        assertThat(pending.getBoardId()).isEqualTo("TQOB");
+        assertThat(pending.getName()).isEqualTo("ОФЗ 26238");
+        assertThat(pending.getType()).isEqualTo(SecurityType.OFZ);
+        assertThat(pending.getSector()).isEqualTo(SectorDefaults.GOVERNMENT_BONDS);
+        assertThat(pending.getCurrency()).isEqualTo("SUR");
+        // history is still missing, the status changes once it is loaded
+        assertThat(pending.getHistoryStatus()).isEqualTo(HistoryStatus.PENDING);
+        verify(securityRepository).save(pending);
+    }
+
+    @Test
+    @DisplayName("enrichSecurity — MOEX не знает бумагу → исключение, попытка считается неудачной")
+    void enrichSecurity_unknownToMoex_throws() {
+        when(moexIssClient.fetchSecurity("NONAME")).thenReturn(Optional.empty());
+
+        assertThatThrownBy(() -> marketDataService.enrichSecurity("NONAME"))
+                .isInstanceOf(IllegalStateException.class);
+        verify(securityRepository, never()).save(any());
     }
 
     @Test
-    @DisplayName("getSnapshot — снимок устарел → вызывает MOEX и обновляет")
-    void getSnapshot_staleInDb_callsMoexAndUpdates() {
-        when(moexProperties.getSnapshotTtlMinutes()).thenReturn(5);
-        PriceSnapshot staleSnapshot = PriceSnapshot.builder()
-                .ticker("SBER")
-                .lastPrice(new BigDecimal("300.00"))
-                .previousClose(new BigDecimal("298.00"))
-                .fetchedAt(Instant.now().minusSeconds(600))
-                .build();
-        when(priceSnapshotRepository.findById("SBER")).thenReturn(Optional.of(staleSnapshot));
+    @DisplayName("getSnapshots — пустой список → кеш котировок не вызывается")
+    void getSnapshots_emptyTickers_skipsQuoteCache() {
+        assertThat(marketDataService.getSnapshots(List.of())).isEmpty();
+
+        verify(quoteCache, never()).get(any());
+    }
+
+    @Test
+    @DisplayName("getSnapshot — котировка берётся из кеша котировок")
+    void getSnapshot_delegatesToQuoteCache() {
+        SnapshotResult cached = new SnapshotResult(new BigDecimal("310.50"), null, Instant.now(), false);
+        when(quoteCache.get(List.of("SBER"))).thenReturn(Map.of("SBER", cached));
+
+        assertThat(marketDataService.getSnapshot("SBER")).isEqualTo(cached);
+        verify(moexIssClient, never()).fetchSnapshots(any());
+    }
 
-        MoexSnapshotDto moexDto = new MoexSnapshotDto("SBER", new BigDecimal("315.00"), new BigDecimal("310.00"));
-        when(moexIssClient.fetchSnapshots(List.of("SBER")))
-                .thenReturn(Map.of("SBER", moexDto));
+    @Test
+    @DisplayName("ensureHistory — есть watermark → запрашивается только [watermark+1, сегодня], watermark сдвигается")
+    void ensureHistory_withWatermark_loadsOnlyDelta() {
+        LocalDate today = LocalDate.now();
+        LocalDate watermark = today.minusDays(3);
+        Security security = Security.builder().ticker("SBER").name("Сбербанк").type(SecurityType.STOCK)
+                .historyStatus(HistoryStatus.READY).historyLoadedThrough(watermark).build();
+        when(securityRepository.findById("SBER")).thenReturn(Optional.of(security));
+        MoexCandleDto candle = new MoexCandleDto("SBER", today.minusDays(1), new BigDecimal("300"),
+                new BigDecimal("301"), new BigDecimal("302"), new BigDecimal("299"), 1000L);
+        when(moexIssClient.fetchHistory("SBER", watermark.plusDays(1), today)).thenReturn(List.of(candle));
+
+        int added = marketDataService.ensureHistory("SBER");
+
+        assertThat(added).isEqualTo(1);
+        assertThat(security.getHistoryLoadedThrough()).isEqualTo(today.minusDays(1));
+        verify(marketDataBulkWriter).upsertPriceHistory(any());
+        verify(securityRepository).incrementHistoryVersion("SBER");
+        verify(priceHistoryRepository, never()).findLastTradeDate(anyString());
+        verify(priceHistoryRepository, never()).saveAll(any());
+    }
 
-        PriceSnapshot updated = PriceSnapshot.builder()
-                .ticker("SBER")
-                .lastPrice(new BigDecimal("315.00"))
-                .previousClose(new BigDecimal("310.00"))
-                .fetchedAt(Instant.now())
-                .build();
-        when(priceSnapshotRepository.save(any(PriceSnapshot.class))).thenReturn(updated);
+    @Test
+    @DisplayName("ensureHistory — watermark сегодня → MOEX не вызывается")
+    void ensureHistory_watermarkToday_skipsMoex() {
+        Security security = Security.builder().ticker("SBER").name("Сбербанк").type(SecurityType.STOCK)
+                .historyStatus(HistoryStatus.READY).historyLoadedThrough(LocalDate.now()).build();
+        when(securityRepository.findById("SBER")).thenReturn(Optional.of(security));
 
-        SnapshotResult result = marketDataService.getSnapshot("SBER");
+        int added = marketDataService.ensureHistory("SBER");
 
-        verify(moexIssClient).fetchSnapshots(List.of("SBER"));
-        assertThat(result.lastPrice()).isEqualByComparingTo(new BigDecimal("315.00"));
-        assertThat(result.stale()).isFalse();
+        assertThat(added).isZero();
+        verify(moexIssClient, never()).fetchHistory(anyString(), any(), any());
     }
 
     @Test
-    @DisplayName("getSnapshot — MOEX недоступен → stale=true")
-    void getSnapshot_moexUnavailable_returnsStale() {
-        when(moexProperties.getSnapshotTtlMinutes()).thenReturn(5);
-        PriceSnapshot staleSnapshot = PriceSnapshot.builder()
-                .ticker("SBER")
-                .lastPrice(new BigDecimal("300.00"))
-                .previousClose(new BigDecimal("298.00"))
-                .fetchedAt(Instant.now().minusSeconds(600))
-                .build();
-        when(priceSnapshotRepository.findById("SBER")).thenReturn(Optional.of(staleSnapshot));
-        when(moexIssClient.fetchSnapshots(any()))
-                .thenThrow(new MoexUnavailableException("MOEX down"));
+    @DisplayName("ensureHistory — нет watermark и истории → полная загрузка за 3 года")
+    void ensureHistory_noWatermark_loadsThreeYears() {
+        LocalDate today = LocalDate.now();
+        Security security = Security.builder().ticker("SBER").name("Сбербанк").type(SecurityType.STOCK)
+                .historyStatus(HistoryStatus.PENDING).build();
+        when(securityRepository.findById("SBER")).thenReturn(Optional.of(security));
+        when(priceHistoryRepository.findLastTradeDate("SBER")).thenReturn(Optional.empty());
+        when(moexIssClient.fetchHistory("SBER", today.minusYears(3), today)).thenReturn(List.of());
 
-        SnapshotResult result = marketDataService.getSnapshot("SBER");
+        marketDataService.ensureHistory("SBER");
 
-        assertThat(result.stale()).isTrue();
-        assertThat(result.lastPrice()).isEqualByComparingTo(new BigDecimal("300.00"));
+        verify(moexIssClient).fetchHistory("SBER", today.minusYears(3), today);
+        assertThat(security.getHistoryStatus()).isEqualTo(HistoryStatus.READY);
+        assertThat(security.getHistoryLoadedThrough()).isNull();
     }
 
     @Test
-    @DisplayName("getSnapshot — нет в БД и MOEX недоступен → stale=true, nulls")
-    void getSnapshot_notInDbAndMoexUnavailable_returnsNullStale() {
-        when(priceSnapshotRepository.findById(anyString())).thenReturn(Optional.empty());
-        when(moexIssClient.fetchSnapshots(any()))
-                .thenThrow(new MoexUnavailableException("MOEX down"));
+    @DisplayName("ensureHistory — страница истории не разобрана → исключение, ничего не сохраняется, watermark не двигается")
+    void ensureHistory_malformedPage_keepsWatermark() {
+        LocalDate today = LocalDate.now();
+        LocalDate watermark = today.minusDays(10);
+        Security security = Security.builder().ticker("SBER").name("Сбербанк").type(SecurityType.STOCK)
+                .historyStatus(HistoryStatus.READY).historyLoadedThrough(watermark).build();
+        when(securityRepository.findById("SBER")).thenReturn(Optional.of(security));
+        when(moexIssClient.fetchHistory("SBER", watermark.plusDays(1), today))
+                .thenThrow(new MoexUnavailableException("Malformed MOEX history page for SBER"));
+
+        assertThatThrownBy(() -> marketDataService.ensureHistory("SBER"))
+                .isInstanceOf(MoexUnavailableException.class);
+
+        verify(marketDataBulkWriter, never()).upsertPriceHistory(any());
+        verify(securityRepository, never()).incrementHistoryVersion(anyString());
+        assertThat(security.getHistoryLoadedThrough()).isEqualTo(watermark);
+    }
+
+    @Test
+    @DisplayName("ensureHistory — индекс IMOEX → история запрашивается только с рынка index")
+    void ensureHistory_index_usesIndexMarket() {
+        LocalDate today = LocalDate.now();
+        Security security = Security.builder().ticker("IMOEX").name("Индекс МосБиржи").type(SecurityType.INDEX)
+                .historyStatus(HistoryStatus.PENDING).build();
+        when(securityRepository.findById("IMOEX")).thenReturn(Optional.of(security));
+        when(priceHistoryRepository.findLastTradeDate("IMOEX")).thenReturn(Optional.empty());
+        when(moexIssClient.fetchIndexHistory("IMOEX", today.minusYears(3), today)).thenReturn(List.of());
 
-        SnapshotResult result = marketDataService.getSnapshot("SBER");
+        marketDataService.ensureHistory("IMOEX");
 
-        assertThat(result.stale()).isTrue();
-        assertThat(result.lastPrice()).isNull();
+        verify(moexIssClient).fetchIndexHistory("IMOEX", today.minusYears(3), today);
+        verify(moexIssClient, never()).fetchHistory(anyString(), any(), any());
     }
 
     @Test
@@ -0,0 +1,85 @@
+package pyc.lopatuxin.investment.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+@DisplayName("MonteCarloSimulatorTest")
+class MonteCarloSimulatorTest {
+
+    private static final ForkJoinPool POOL = ForkJoinPool.commonPool();
+
+    @Test
+    @DisplayName("simulate — одинаковый seed → одинаковые полосы независимо от параллелизма")
+    void simulate_sameSeed_sameBands() {
+        double[][] first;
+        double[][] second;
+        try (ForkJoinPool single = new ForkJoinPool(1); ForkJoinPool four = new ForkJoinPool(4)) {
+            first = MonteCarloSimulator.simulate(single, 100_000, 0.01, 0.05, 1_000, 0.0, 120, 3_000, 42L);
+            second = MonteCarloSimulator.simulate(four, 100_000, 0.01, 0.05, 1_000, 0.0, 120, 3_000, 42L);
+        }
+
+        assertThat(second).isDeepEqualTo(first);
+    }
+
+    @Test
+    @DisplayName("simulate — перцентили упорядочены в каждом месяце, медиана около детерминированного значения")
+    void simulate_bandsAreOrdered() {
+        int months = 60;
+        double[][] bands = MonteCarloSimulator.simulate(POOL, 100_000, 0.01, 0.04, 0.0, 0.0, months, 10_000, 7L);
+
+        for (int m = 0; m < months; m++) {
+            for (int k = 1; k < MonteCarloSimulator.PERCENTILES.length; k++) {
+                assertThat(bands[k][m]).isGreaterThanOrEqualTo(bands[k - 1][m]);
+            }
+        }
+        // the median of a lognormal lies below its mean by exp(-σ²/2) per month
+        double expectedMedian = 100_000 * Math.pow(1.01, months) * Math.exp(-0.5 * 0.04 * 0.04 * months);
+        assertThat(bands[2][months - 1]).isCloseTo(expectedMedian, within(expectedMedian * 0.02));
+    }
+
+    @Test
+    @DisplayName("simulate — нулевая волатильность → все полосы совпадают с детерминированным рядом")
+    void simulate_zeroVolatility_collapsesToDeterministic() {
+        double[][] bands = MonteCarloSimulator.simulate(POOL, 10_000, 0.02, 0.0, 500, 0.01, 3, 1_000, 1L);
+
+        double value = 10_000;
+        for (int m = 0; m < 3; m++) {
+            value = value * 1.02 + 500;
+            value -= value * 0.01;
+            for (double[] band : bands) {
+                assertThat(band[m]).isCloseTo(value, within(1e-6));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("percentiles — совпадают с линейной интерполяцией по отсортированному массиву, включая повторы")
+    void percentiles_matchSortedInterpolation() {
+        SplittableRandom random = new SplittableRandom(3);
+        for (int n : new int[]{1, 2, 5, 21, 1_000}) {
+            double[] values = new double[n];
+            for (int i = 0; i < n; i++) {
+                values[i] = random.nextInt(4) == 0 ? random.nextInt(3) : random.nextGaussian();
+            }
+            double[] sorted = values.clone();
+            Arrays.sort(sorted);
+
+            double[] result = MonteCarloSimulator.percentiles(values);
+
+            for (int k = 0; k < MonteCarloSimulator.PERCENTILES.length; k++) {
+                double rank = MonteCarloSimulator.PERCENTILES[k] * (n - 1);
+                int lower = (int) rank;
+                int upper = Math.min(lower + 1, n - 1);
+                double expected = sorted[lower] + (rank - lower) * (sorted[upper] - sorted[lower]);
+                assertThat(result[k]).isCloseTo(expected, within(1e-12));
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package pyc.lopatuxin.investment.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import pyc.lopatuxin.investment.config.MoexProperties;
+import pyc.lopatuxin.investment.dto.response.PortfolioPageResponseDto;
+import pyc.lopatuxin.investment.dto.response.PositionResponseDto;
+import pyc.lopatuxin.investment.entity.Position;
+import pyc.lopatuxin.investment.entity.Security;
+import pyc.lopatuxin.investment.entity.enums.HistoryStatus;
+import pyc.lopatuxin.investment.entity.enums.SecurityType;
+import pyc.lopatuxin.investment.event.PortfolioChangedEvent;
+import pyc.lopatuxin.investment.mapper.PositionMapper;
+import pyc.lopatuxin.investment.repository.DividendRepository;
+import pyc.lopatuxin.investment.repository.PositionRepository;
+import pyc.lopatuxin.investment.service.market.MarketDataService;
+import pyc.lopatuxin.investment.service.market.dto.SnapshotResult;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("PortfolioServiceTest")
+class PortfolioServiceTest {
+
+    @Mock
+    private PositionRepository positionRepository;
+
+    @Mock
+    private PositionMapper positionMapper;
+
+    @Mock
+    private MarketDataService marketDataService;
+
+    @Mock
+    private DividendRepository dividendRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private PortfolioService service;
+    private UUID userId;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        service = new PortfolioService(positionRepository, positionMapper, marketDataService, dividendRepository,
+                new MoexProperties(), meterRegistry);
+        userId = UUID.randomUUID();
+
+        Security sber = Security.builder()
+                .ticker("SBER")
+                .name("Сбербанк")
+                .type(SecurityType.STOCK)
+                .historyStatus(HistoryStatus.READY)
+                .build();
+        Position position = Position.builder()
+                .userId(userId)
+                .security(sber)
+                .quantity(new BigDecimal("10"))
+                .averagePrice(new BigDecimal("250.00"))
+                .totalCost(new BigDecimal("2500.00"))
+                .build();
+        lenient().when(positionRepository.findByUserIdWithSecurity(userId)).thenReturn(List.of(position));
+        lenient().when(positionMapper.toDto(any(Position.class))).thenAnswer(inv -> PositionResponseDto.builder()
+                .ticker("SBER")
+                .quantity(new BigDecimal("10"))
+                .averagePrice(new BigDecimal("250.00"))
+                .build());
+        lenient().when(marketDataService.getSnapshots(anyCollection())).thenReturn(Map.of("SBER",
+                new SnapshotResult(new BigDecimal("300"), new BigDecimal("290"), Instant.now(), false)));
+        lenient().when(positionRepository.findPortfolioVersion(userId)).thenReturn(Optional.of(1L));
+        lenient().when(marketDataService.quoteVersions(anyCollection())).thenReturn(Map.of("SBER", "300/290"));
+    }
+
+    @Test
+    @DisplayName("getPortfolioPage — повторный запрос отдаётся из кэша без обращения к БД и MOEX")
+    void getPortfolioPage_secondCallServedFromCache() {
+        PortfolioPageResponseDto first = service.getPortfolioPage(userId);
+        PortfolioPageResponseDto second = service.getPortfolioPage(userId);
+
+        assertThat(second).isSameAs(first);
+        assertThat(first.getOverview().getTotalValue()).isEqualByComparingTo("3000.00");
+        verify(positionRepository, times(1)).findByUserIdWithSecurity(userId);
+        verify(marketDataService, times(1)).getSnapshots(anyCollection());
+        assertThat(meterRegistry.get("investment.portfolio.page.rebuild").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("PortfolioChangedEvent — версия портфеля увеличивается в БД")
+    void onPortfolioChanged_incrementsStoredVersion() {
+        service.onPortfolioChanged(new PortfolioChangedEvent(userId));
+
+        verify(positionRepository).incrementPortfolioVersion(userId);
+    }
+
+    @Test
+    @DisplayName("Новая версия портфеля в БД — следующий запрос пересобирает страницу")
+    void getPortfolioPage_versionChanged_rebuildsPage() {
+        service.getPortfolioPage(userId);
+
+        when(positionRepository.findPortfolioVersion(userId)).thenReturn(Optional.of(2L));
+        service.getPortfolioPage(userId);
+
+        verify(positionRepository, times(2)).findByUserIdWithSecurity(userId);
+    }
+
+    @Test
+    @DisplayName("Котировка тикера страницы изменилась — страница пересобирается с новыми ценами")
+    void getPortfolioPage_ownQuoteChanged_rebuildsPage() {
+        service.getPortfolioPage(userId);
+
+        when(marketDataService.quoteVersions(anyCollection())).thenReturn(Map.of("SBER", "310/290"));
+        when(marketDataService.getSnapshots(anyCollection())).thenReturn(Map.of("SBER",
+                new SnapshotResult(new BigDecimal("310"), new BigDecimal("290"), Instant.now(), false)));
+        PortfolioPageResponseDto page = service.getPortfolioPage(userId);
+
+        assertThat(page.getOverview().getTotalValue()).isEqualByComparingTo("3100.00");
+        verify(positionRepository, times(2)).findByUserIdWithSecurity(userId);
+    }
+
+    @Test
+    @DisplayName("Проверка котировок кэшированной страницы — только по её тикерам")
+    void getPortfolioPage_checksOwnTickersOnly() {
+        service.getPortfolioPage(userId);
+        service.getPortfolioPage(userId);
+
+        verify(marketDataService, times(2)).quoteVersions(Set.of("SBER"));
+        verify(positionRepository, times(1)).findByUserIdWithSecurity(userId);
+    }
+}
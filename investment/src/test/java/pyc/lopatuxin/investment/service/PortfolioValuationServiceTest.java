@@ -0,0 +1,325 @@
+package pyc.lopatuxin.investment.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import pyc.lopatuxin.investment.entity.PortfolioValuation;
+import pyc.lopatuxin.investment.entity.enums.TransactionType;
+import pyc.lopatuxin.investment.event.TradesChangedEvent;
+import pyc.lopatuxin.investment.repository.MarketDataBulkWriter;
+import pyc.lopatuxin.investment.repository.PortfolioValuationRepository;
+import pyc.lopatuxin.investment.repository.PortfolioValuationRepository.ValuationPoint;
+import pyc.lopatuxin.investment.repository.PriceHistoryRepository;
+import pyc.lopatuxin.investment.repository.PriceHistoryRepository.ClosePrice;
+import pyc.lopatuxin.investment.repository.TransactionRepository;
+import pyc.lopatuxin.investment.repository.TransactionRepository.NetQuantity;
+import pyc.lopatuxin.investment.repository.TransactionRepository.TradeDelta;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("PortfolioValuationServiceTest")
+class PortfolioValuationServiceTest {
+
+    private static final ZoneId MSK = ZoneId.of("Europe/Moscow");
+
+    @Mock
+    private PortfolioValuationRepository portfolioValuationRepository;
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    @Mock
+    private PriceHistoryRepository priceHistoryRepository;
+
+    @Mock
+    private MarketDataBulkWriter marketDataBulkWriter;
+
+    private PortfolioValuationService service;
+    private UUID userId;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        service = new PortfolioValuationService(portfolioValuationRepository, transactionRepository,
+                priceHistoryRepository, marketDataBulkWriter, null);
+        Field selfField = PortfolioValuationService.class.getDeclaredField("self");
+        selfField.setAccessible(true);
+        selfField.set(service, service);
+        userId = UUID.randomUUID();
+        lenient().when(transactionRepository.findNetQuantitiesBefore(any(), any())).thenReturn(List.of());
+        lenient().when(priceHistoryRepository.findLastClosesBefore(any(), any())).thenReturn(List.of());
+    }
+
+    @Test
+    @DisplayName("recomputeFrom — BUY 10, затем SELL 5: каждый день оценивается количеством на эту дату")
+    void recomputeFrom_valuesQuantityHeldOnEachDay() {
+        LocalDate day1 = LocalDate.of(2024, 1, 15);
+        LocalDate day2 = LocalDate.of(2024, 1, 16);
+        when(transactionRepository.findDistinctTickersByUserId(userId)).thenReturn(List.of("SBER"));
+        when(transactionRepository.streamTradesSince(userId, startOf(day1))).thenReturn(Stream.of(
+                trade("SBER", TransactionType.BUY, "10", day1),
+                trade("SBER", TransactionType.SELL, "5", day2)));
+        when(priceHistoryRepository.streamClosesBetween(any(), eq(day1), any())).thenReturn(Stream.of(
+                close("SBER", day1, "270.00"),
+                close("SBER", day2, "280.00")));
+
+        service.recomputeFrom(userId, day1);
+
+        verify(portfolioValuationRepository).deleteFrom(userId, day1);
+        List<PortfolioValuation> rows = captureWritten();
+        assertThat(rows).extracting(PortfolioValuation::getValuationDate).containsExactly(day1, day2);
+        assertThat(rows.get(0).getValue()).isEqualByComparingTo("2700.00");
+        assertThat(rows.get(1).getValue()).isEqualByComparingTo("1400.00");
+    }
+
+    @Test
+    @DisplayName("onTradesChanged — пересчёт от даты сделки по МСК, ошибка пересчёта не выходит наружу")
+    void onTradesChanged_recomputesFromMoscowTradeDate() {
+        // 22:30 UTC on the 15th is already the 16th in Moscow
+        Instant executedAt = Instant.parse("2024-01-15T22:30:00Z");
+        when(transactionRepository.findDistinctTickersByUserId(userId)).thenThrow(new IllegalStateException("db down"));
+
+        service.onTradesChanged(new TradesChangedEvent(userId, executedAt));
+
+        verify(portfolioValuationRepository).deleteFrom(userId, LocalDate.of(2024, 1, 16));
+    }
+
+    @Test
+    @DisplayName("recomputeFrom — сделка по тикеру, которого не было в списке на момент чтения → пересчёт не падает")
+    void recomputeFrom_tradeInTickerMissingFromList_growsHoldings() {
+        LocalDate day = LocalDate.of(2024, 1, 15);
+        // GAZP was bought after the ticker list was read
+        when(transactionRepository.findDistinctTickersByUserId(userId)).thenReturn(List.of("SBER"));
+        when(transactionRepository.streamTradesSince(userId, startOf(day))).thenReturn(Stream.of(
+                trade("SBER", TransactionType.BUY, "10", day),
+                trade("GAZP", TransactionType.BUY, "100", day)));
+        when(priceHistoryRepository.streamClosesBetween(any(), eq(day), any())).thenReturn(Stream.of(
+                close("SBER", day, "270.00")));
+
+        service.recomputeFrom(userId, day);
+
+        List<PortfolioValuation> rows = captureWritten();
+        assertThat(rows).singleElement().satisfies(row -> assertThat(row.getValue()).isEqualByComparingTo("2700.00"));
+    }
+
+    @Test
+    @DisplayName("streamRange — полная страница → следующая читается со дня после последней строки, неполная — конец")
+    void streamRange_readsKeysetPages() {
+        LocalDate from = LocalDate.of(2020, 1, 1);
+        LocalDate to = LocalDate.of(2026, 1, 1);
+        List<ValuationPoint> full = new ArrayList<>();
+        for (int i = 0; i < PortfolioValuationService.STREAM_PAGE; i++) {
+            full.add(new Point(from.plusDays(i), BigDecimal.ONE));
+        }
+        LocalDate secondFrom = from.plusDays(PortfolioValuationService.STREAM_PAGE);
+        when(portfolioValuationRepository.findPointsByUserIdAndValuationDateBetweenOrderByValuationDateAsc(
+                userId, from, to, Limit.of(PortfolioValuationService.STREAM_PAGE))).thenReturn(full);
+        when(portfolioValuationRepository.findPointsByUserIdAndValuationDateBetweenOrderByValuationDateAsc(
+                userId, secondFrom, to, Limit.of(PortfolioValuationService.STREAM_PAGE)))
+                .thenReturn(List.of(new Point(secondFrom, BigDecimal.TEN)));
+
+        List<ValuationPoint> streamed = new ArrayList<>();
+        service.streamRange(userId, from, to, streamed::add);
+
+        assertThat(streamed).hasSize(PortfolioValuationService.STREAM_PAGE + 1);
+        assertThat(streamed.getLast().getValuationDate()).isEqualTo(secondFrom);
+    }
+
+    @Test
+    @DisplayName("version — счётчик пересчётов из БД, пересчёт увеличивает его до удаления старых строк")
+    void version_readsStoredCounter() {
+        when(portfolioValuationRepository.findVersion(userId)).thenReturn(Optional.of(7L));
+        when(transactionRepository.findDistinctTickersByUserId(userId)).thenReturn(List.of());
+
+        service.recomputeFrom(userId, LocalDate.of(2024, 1, 15));
+
+        assertThat(service.version(userId)).isEqualTo("v7");
+        assertThat(service.version(UUID.randomUUID())).isEqualTo("v0");
+        InOrder order = inOrder(portfolioValuationRepository);
+        order.verify(portfolioValuationRepository).incrementVersion(userId);
+        order.verify(portfolioValuationRepository).deleteFrom(userId, LocalDate.of(2024, 1, 15));
+    }
+
+    @Test
+    @DisplayName("recomputeFrom — позиции до даты пересчёта, сделка в выходной и пропуск цены: forward fill")
+    void recomputeFrom_seedsHoldingsAndForwardFills() {
+        LocalDate friday = LocalDate.of(2024, 1, 12);
+        LocalDate saturday = LocalDate.of(2024, 1, 13);
+        LocalDate monday = LocalDate.of(2024, 1, 15);
+        LocalDate tuesday = LocalDate.of(2024, 1, 16);
+        when(transactionRepository.findDistinctTickersByUserId(userId)).thenReturn(List.of("SBER", "GAZP"));
+        when(transactionRepository.findNetQuantitiesBefore(userId, startOf(saturday)))
+                .thenReturn(List.of(net("SBER", "10")));
+        when(priceHistoryRepository.findLastClosesBefore(List.of("SBER", "GAZP"), saturday))
+                .thenReturn(List.of(close("SBER", friday, "265.00")));
+        when(transactionRepository.streamTradesSince(userId, startOf(saturday))).thenReturn(Stream.of(
+                trade("GAZP", TransactionType.BUY, "5", saturday)));
+        when(priceHistoryRepository.streamClosesBetween(any(), eq(saturday), any())).thenReturn(Stream.of(
+                close("GAZP", monday, "160.00"),
+                close("SBER", tuesday, "270.00")));
+
+        service.recomputeFrom(userId, saturday);
+
+        List<PortfolioValuation> rows = captureWritten();
+        assertThat(rows).extracting(PortfolioValuation::getValuationDate).containsExactly(monday, tuesday);
+        // 10 × 265 (Friday close carried over) + 5 × 160
+        assertThat(rows.get(0).getValue()).isEqualByComparingTo("3450.00");
+        // 10 × 270 + 5 × 160 (carried over)
+        assertThat(rows.get(1).getValue()).isEqualByComparingTo("3500.00");
+    }
+
+    @Test
+    @DisplayName("recomputeFrom — длинный диапазон пишется пачками по WRITE_BATCH строк")
+    void recomputeFrom_writesInBatches() {
+        LocalDate from = LocalDate.of(2020, 1, 1);
+        int days = 2 * PortfolioValuationService.WRITE_BATCH + 1;
+        when(transactionRepository.findDistinctTickersByUserId(userId)).thenReturn(List.of("SBER"));
+        when(transactionRepository.streamTradesSince(userId, startOf(from))).thenReturn(Stream.of(
+                trade("SBER", TransactionType.BUY, "1", from)));
+        when(priceHistoryRepository.streamClosesBetween(any(), eq(from), any())).thenReturn(
+                Stream.iterate(from, d -> d.plusDays(1)).limit(days).map(d -> close("SBER", d, "100.00")));
+
+        int written = service.recomputeFrom(userId, from);
+
+        assertThat(written).isEqualTo(days);
+        verify(marketDataBulkWriter, times(3)).upsertValuations(any());
+    }
+
+    @Test
+    @DisplayName("extendThroughLatestClose — от последней сохранённой даты, без оценок — от первой сделки")
+    void extendThroughLatestClose_resumesFromLastStoredDay() {
+        UUID newcomer = UUID.randomUUID();
+        LocalDate lastStored = LocalDate.of(2024, 3, 1);
+        LocalDate firstTrade = LocalDate.of(2024, 2, 5);
+        when(transactionRepository.findDistinctUserIds()).thenReturn(List.of(userId, newcomer));
+        when(portfolioValuationRepository.findLastValuationDate(userId)).thenReturn(Optional.of(lastStored));
+        when(portfolioValuationRepository.findLastValuationDate(newcomer)).thenReturn(Optional.empty());
+        when(transactionRepository.findFirstExecutedAt(newcomer)).thenReturn(Optional.of(atNoon(firstTrade)));
+        when(transactionRepository.findDistinctTickersByUserId(any())).thenReturn(List.of());
+
+        int processed = service.extendThroughLatestClose();
+
+        assertThat(processed).isEqualTo(2);
+        verify(portfolioValuationRepository).deleteFrom(userId, lastStored);
+        verify(portfolioValuationRepository).deleteFrom(newcomer, firstTrade);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<PortfolioValuation> captureWritten() {
+        ArgumentCaptor<List<PortfolioValuation>> captor = ArgumentCaptor.forClass(List.class);
+        verify(marketDataBulkWriter).upsertValuations(captor.capture());
+        return captor.getValue();
+    }
+
+    private static TradeDelta trade(String ticker, TransactionType type, String quantity, LocalDate date) {
+        return new Trade(ticker, type, new BigDecimal(quantity), atNoon(date));
+    }
+
+    private static NetQuantity net(String ticker, String quantity) {
+        return new Net(ticker, new BigDecimal(quantity));
+    }
+
+    private static Instant startOf(LocalDate date) {
+        return date.atStartOfDay(MSK).toInstant();
+    }
+
+    private static Instant atNoon(LocalDate date) {
+        return date.atTime(12, 0).atZone(MSK).toInstant();
+    }
+
+    private static ClosePrice close(String ticker, LocalDate date, String close) {
+        return new Close(ticker, date, new BigDecimal(close));
+    }
+
+    private record Close(String ticker, LocalDate tradeDate, BigDecimal close) implements ClosePrice {
+
+        @Override
+        public String getTicker() {
+            return ticker;
+        }
+
+        @Override
+        public LocalDate getTradeDate() {
+            return tradeDate;
+        }
+
+        @Override
+        public BigDecimal getClose() {
+            return close;
+        }
+    }
+
+    private record Trade(String ticker, TransactionType type, BigDecimal quantity, Instant executedAt)
+            implements TradeDelta {
+
+        @Override
+        public String getTicker() {
+            return ticker;
+        }
+
+        @Override
+        public TransactionType getType() {
+            return type;
+        }
+
+        @Override
+        public BigDecimal getQuantity() {
+            return quantity;
+        }
+
+        @Override
+        public Instant getExecutedAt() {
+            return executedAt;
+        }
+    }
+
+    private record Net(String ticker, BigDecimal quantity) implements NetQuantity {
+
+        @Override
+        public String getTicker() {
+            return ticker;
+        }
+
+        @Override
+        public BigDecimal getQuantity() {
+            return quantity;
+        }
+    }
+
+    private record Point(LocalDate valuationDate, BigDecimal value) implements ValuationPoint {
+
+        @Override
+        public LocalDate getValuationDate() {
+            return valuationDate;
+        }
+
+        @Override
+        public BigDecimal getValue() {
+            return value;
+        }
+    }
+}
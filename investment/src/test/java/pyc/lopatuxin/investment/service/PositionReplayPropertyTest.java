@@ -0,0 +1,228 @@
+package pyc.lopatuxin.investment.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import pyc.lopatuxin.investment.dto.request.CreateTransactionDto;
+import pyc.lopatuxin.investment.entity.Position;
+import pyc.lopatuxin.investment.entity.Security;
+import pyc.lopatuxin.investment.entity.Transaction;
+import pyc.lopatuxin.investment.entity.enums.HistoryStatus;
+import pyc.lopatuxin.investment.entity.enums.SecurityType;
+import pyc.lopatuxin.investment.entity.enums.TransactionType;
+import pyc.lopatuxin.investment.mapper.TransactionMapper;
+import pyc.lopatuxin.investment.repository.DividendRepository;
+import pyc.lopatuxin.investment.repository.PositionRepository;
+import pyc.lopatuxin.investment.repository.SecurityRepository;
+import pyc.lopatuxin.investment.repository.TransactionRepository;
+import pyc.lopatuxin.investment.service.market.MarketDataOutbox;
+import pyc.lopatuxin.investment.service.market.MarketDataService;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+
+/**
+ * Random sequences of appended, backdated and deleted trades: after every step the incrementally maintained position
+ * and the states stored on the trades must equal a replay of the whole history.
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("PositionReplayPropertyTest")
+class PositionReplayPropertyTest {
+
+    private static final int STEPS = 300;
+    private static final Comparator<Transaction> ORDER = Comparator.comparing(Transaction::getExecutedAt)
+            .thenComparing(Transaction::getCreatedAt);
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    @Mock
+    private PositionRepository positionRepository;
+
+    @Mock
+    private SecurityRepository securityRepository;
+
+    @Mock
+    private TransactionMapper transactionMapper;
+
+    @Mock
+    private MarketDataService marketDataService;
+
+    @Mock
+    private MarketDataOutbox marketDataOutbox;
+
+    @Mock
+    private DividendRepository dividendRepository;
+
+    @Mock
+    private TaxLotService taxLotService;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @InjectMocks
+    private TransactionService transactionService;
+
+    private final List<Transaction> store = new ArrayList<>();
+    private final AtomicReference<Position> position = new AtomicReference<>();
+    private UUID userId;
+    private long clock;
+
+    @BeforeEach
+    void setUp() {
+        userId = UUID.randomUUID();
+        Security security = Security.builder()
+                .ticker("SBER")
+                .name("Сбербанк")
+                .type(SecurityType.STOCK)
+                .historyStatus(HistoryStatus.READY)
+                .build();
+        lenient().when(marketDataService.registerSecurity(anyString(), any())).thenReturn(security);
+        lenient().when(securityRepository.findById("SBER")).thenReturn(Optional.of(security));
+
+        lenient().when(transactionRepository.save(any(Transaction.class))).thenAnswer(inv -> {
+            Transaction t = inv.getArgument(0);
+            t.setId(UUID.randomUUID());
+            t.setCreatedAt(Instant.ofEpochMilli(++clock));
+            store.add(t);
+            return t;
+        });
+        lenient().when(transactionRepository.findById(any())).thenAnswer(inv -> store.stream()
+                .filter(t -> t.getId().equals(inv.getArgument(0)))
+                .findFirst());
+        lenient().doAnswer(inv -> store.remove(inv.<Transaction>getArgument(0)))
+                .when(transactionRepository).delete(any(Transaction.class));
+        lenient().when(transactionRepository.findLastBefore(any(), anyString(), any())).thenAnswer(inv -> store.stream()
+                .filter(t -> t.getExecutedAt().isBefore(inv.getArgument(2)))
+                .max(ORDER));
+        lenient().when(transactionRepository.findSince(any(), anyString(), any())).thenAnswer(inv -> store.stream()
+                .filter(t -> !t.getExecutedAt().isBefore(inv.getArgument(2)))
+                .sorted(ORDER)
+                .toList());
+        lenient().when(transactionRepository.findByUserIdAndSecurity_Ticker(any(), anyString()))
+                .thenAnswer(inv -> List.copyOf(store));
+
+        lenient().when(positionRepository.findByUserIdAndSecurity_Ticker(any(), anyString()))
+                .thenAnswer(inv -> Optional.ofNullable(position.get()));
+        lenient().when(positionRepository.save(any(Position.class))).thenAnswer(inv -> {
+            position.set(inv.getArgument(0));
+            return inv.getArgument(0);
+        });
+        lenient().doAnswer(inv -> {
+            position.set(null);
+            return null;
+        }).when(positionRepository).delete(any(Position.class));
+    }
+
+    @ParameterizedTest(name = "seed={0}")
+    @ValueSource(longs = {1, 2, 3, 5, 8, 13, 21, 34})
+    @DisplayName("Инкрементальный пересчёт позиции совпадает с полным проигрыванием истории")
+    void incrementalUpdatesMatchFullReplay(long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        long lastSecond = 0;
+        for (int step = 0; step < STEPS; step++) {
+            int op = random.nextInt(4);
+            if (op == 3 && !store.isEmpty()) {
+                Transaction victim = store.get(random.nextInt(store.size()));
+                List<Transaction> candidate = new ArrayList<>(store);
+                candidate.remove(victim);
+                if (replay(candidate) == null) {
+                    continue;
+                }
+                transactionService.delete(userId, victim.getId());
+            } else {
+                // mostly appended at the end, sometimes backdated; equal instants are allowed on purpose
+                long second = op == 2 ? random.nextLong(lastSecond + 1) : lastSecond + random.nextInt(3);
+                lastSecond = Math.max(lastSecond, second);
+                boolean sell = random.nextInt(5) < 2;
+                BigDecimal quantity = BigDecimal.valueOf(1 + random.nextInt(5_000), 3);
+                BigDecimal price = BigDecimal.valueOf(1 + random.nextInt(100_000), 2);
+                Transaction probe = Transaction.builder()
+                        .type(sell ? TransactionType.SELL : TransactionType.BUY)
+                        .quantity(quantity)
+                        .price(price)
+                        .executedAt(Instant.ofEpochSecond(second))
+                        .createdAt(Instant.ofEpochMilli(clock + 1))
+                        .build();
+                List<Transaction> candidate = new ArrayList<>(store);
+                candidate.add(probe);
+                if (replay(candidate) == null) {
+                    continue;
+                }
+                transactionService.create(userId, CreateTransactionDto.builder()
+                        .ticker("SBER")
+                        .type(probe.getType())
+                        .securityType(SecurityType.STOCK)
+                        .quantity(quantity)
+                        .price(price)
+                        .executedAt(probe.getExecutedAt())
+                        .build());
+            }
+            assertMatchesReplay(seed, step);
+        }
+    }
+
+    private void assertMatchesReplay(long seed, int step) {
+        String context = "seed=" + seed + ", step=" + step;
+        List<BigDecimal[]> expected = replay(store);
+        List<Transaction> ordered = store.stream().sorted(ORDER).toList();
+        for (int i = 0; i < ordered.size(); i++) {
+            assertThat(ordered.get(i).getPositionQuantity()).as(context).isEqualByComparingTo(expected.get(i)[0]);
+            assertThat(ordered.get(i).getPositionCost()).as(context).isEqualByComparingTo(expected.get(i)[1]);
+        }
+        BigDecimal[] last = expected.isEmpty() ? new BigDecimal[]{BigDecimal.ZERO, BigDecimal.ZERO} : expected.getLast();
+        if (last[0].signum() == 0) {
+            assertThat(position.get()).as(context).isNull();
+            return;
+        }
+        Position actual = position.get();
+        assertThat(actual).as(context).isNotNull();
+        assertThat(actual.getQuantity()).as(context).isEqualByComparingTo(last[0]);
+        assertThat(actual.getTotalCost()).as(context).isEqualByComparingTo(last[1].setScale(2, RoundingMode.HALF_UP));
+        assertThat(actual.getAveragePrice()).as(context)
+                .isEqualByComparingTo(last[1].divide(last[0], 2, RoundingMode.HALF_UP));
+    }
+
+    /**
+     * Running {quantity, cost} after each trade of the whole history, or {@code null} when a SELL exceeds the holding.
+     */
+    private static List<BigDecimal[]> replay(List<Transaction> trades) {
+        List<BigDecimal[]> states = new ArrayList<>();
+        BigDecimal quantity = BigDecimal.ZERO;
+        BigDecimal cost = BigDecimal.ZERO;
+        for (Transaction t : trades.stream().sorted(ORDER).toList()) {
+            if (t.getType() == TransactionType.BUY) {
+                quantity = quantity.add(t.getQuantity());
+                cost = cost.add(t.getQuantity().multiply(t.getPrice()));
+            } else {
+                if (quantity.compareTo(t.getQuantity()) < 0) {
+                    return null;
+                }
+                BigDecimal avgCost = cost.divide(quantity, 8, RoundingMode.HALF_UP);
+                quantity = quantity.subtract(t.getQuantity());
+                cost = quantity.signum() == 0 ? BigDecimal.ZERO : cost.subtract(avgCost.multiply(t.getQuantity()));
+            }
+            states.add(new BigDecimal[]{quantity, cost});
+        }
+        return states;
+    }
+}
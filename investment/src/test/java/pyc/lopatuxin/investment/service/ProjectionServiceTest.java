@@ -4,21 +4,21 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import pyc.lopatuxin.investment.dto.request.ProjectionMode;
 import pyc.lopatuxin.investment.dto.request.ProjectionRequestDto;
+import pyc.lopatuxin.investment.dto.response.ProjectionBandDto;
 import pyc.lopatuxin.investment.dto.response.ProjectionResultDto;
-import pyc.lopatuxin.investment.entity.Dividend;
-import pyc.lopatuxin.investment.entity.PriceHistory;
 import pyc.lopatuxin.investment.entity.Position;
 import pyc.lopatuxin.investment.entity.Security;
-import pyc.lopatuxin.investment.entity.enums.DividendStatus;
 import pyc.lopatuxin.investment.entity.enums.HistoryStatus;
 import pyc.lopatuxin.investment.entity.enums.SecurityType;
-import pyc.lopatuxin.investment.repository.DividendRepository;
 import pyc.lopatuxin.investment.repository.PositionRepository;
-import pyc.lopatuxin.investment.repository.PriceHistoryRepository;
+import pyc.lopatuxin.investment.repository.ProjectionInputLoader;
+import pyc.lopatuxin.investment.repository.ProjectionInputs;
+import pyc.lopatuxin.investment.repository.ProjectionInputs.PaidDividend;
+import pyc.lopatuxin.investment.repository.ProjectionInputs.PriceRange;
 import pyc.lopatuxin.investment.service.market.MarketDataService;
 import pyc.lopatuxin.investment.service.market.dto.SnapshotResult;
 
@@ -27,12 +27,12 @@ import java.time.Instant;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -45,15 +45,11 @@ class ProjectionServiceTest {
     private PositionRepository positionRepository;
 
     @Mock
-    private PriceHistoryRepository priceHistoryRepository;
-
-    @Mock
-    private DividendRepository dividendRepository;
+    private ProjectionInputLoader projectionInputLoader;
 
     @Mock
     private MarketDataService marketDataService;
 
-    @InjectMocks
     private ProjectionService projectionService;
 
     private UUID userId;
@@ -61,6 +57,8 @@ class ProjectionServiceTest {
 
     @BeforeEach
     void setUp() {
+        projectionService = new ProjectionService(positionRepository, projectionInputLoader, marketDataService,
+                ForkJoinPool.commonPool());
         userId = UUID.randomUUID();
         sber = Security.builder()
                 .ticker("SBER")
@@ -101,23 +99,15 @@ class ProjectionServiceTest {
         SnapshotResult snap = new SnapshotResult(new BigDecimal("300.00"), new BigDecimal("295.00"), Instant.now(), false);
         when(marketDataService.getSnapshots(List.of("SBER"))).thenReturn(Map.of("SBER", snap));
 
-        // year 2022: amountPerShare=20, close=200 → yield=0.10
-        Dividend div2022 = buildPaidDividend("SBER", LocalDate.of(2022, 7, 1), new BigDecimal("20.00"));
-        // year 2023: amountPerShare=30, close=300 → yield=0.10
-        Dividend div2023 = buildPaidDividend("SBER", LocalDate.of(2023, 7, 1), new BigDecimal("30.00"));
-
-        when(dividendRepository.findBySecurity_Ticker("SBER"))
-                .thenReturn(List.of(div2022, div2023));
-
-        PriceHistory ph2022 = buildPriceHistory("SBER", LocalDate.of(2022, 6, 30), new BigDecimal("200.00"));
-        PriceHistory ph2023 = buildPriceHistory("SBER", LocalDate.of(2023, 6, 30), new BigDecimal("300.00"));
-
-        when(priceHistoryRepository.findFirstByTickerAndTradeDateLessThanEqualOrderByTradeDateDesc(
-                eq("SBER"), eq(LocalDate.of(2022, 7, 1))))
-                .thenReturn(Optional.of(ph2022));
-        when(priceHistoryRepository.findFirstByTickerAndTradeDateLessThanEqualOrderByTradeDateDesc(
-                eq("SBER"), eq(LocalDate.of(2023, 7, 1))))
-                .thenReturn(Optional.of(ph2023));
+        when(projectionInputLoader.load(List.of("SBER"))).thenReturn(new ProjectionInputs(
+                Map.of("SBER", new PriceRange(
+                        LocalDate.of(2022, 6, 30), new BigDecimal("200.00"),
+                        LocalDate.of(2023, 6, 30), new BigDecimal("300.00"))),
+                Map.of("SBER", List.of(
+                        // year 2022: amountPerShare=20, close=200 → yield=0.10
+                        new PaidDividend(LocalDate.of(2022, 7, 1), new BigDecimal("20.00"), new BigDecimal("200.00")),
+                        // year 2023: amountPerShare=30, close=300 → yield=0.10
+                        new PaidDividend(LocalDate.of(2023, 7, 1), new BigDecimal("30.00"), new BigDecimal("300.00"))))));
 
         ProjectionRequestDto req = new ProjectionRequestDto();
         req.setHorizonMonths(3);
@@ -150,7 +140,7 @@ class ProjectionServiceTest {
         when(marketDataService.getSnapshots(List.of("SBER")))
                 .thenReturn(Map.of("SBER", new SnapshotResult(new BigDecimal("250.00"), null, Instant.now(), false)));
 
-        when(dividendRepository.findBySecurity_Ticker("SBER")).thenReturn(List.of());
+        when(projectionInputLoader.load(List.of("SBER"))).thenReturn(ProjectionInputs.empty());
 
         ProjectionRequestDto req = new ProjectionRequestDto();
         req.setHorizonMonths(3);
@@ -176,12 +166,8 @@ class ProjectionServiceTest {
         when(marketDataService.getSnapshots(List.of("SBER")))
                 .thenReturn(Map.of("SBER", new SnapshotResult(new BigDecimal("250.00"), null, Instant.now(), false)));
 
-        Dividend div = buildPaidDividend("SBER", LocalDate.of(2023, 7, 1), new BigDecimal("20.00"));
-        when(dividendRepository.findBySecurity_Ticker("SBER")).thenReturn(List.of(div));
-
-        when(priceHistoryRepository.findFirstByTickerAndTradeDateLessThanEqualOrderByTradeDateDesc(
-                eq("SBER"), any(LocalDate.class)))
-                .thenReturn(Optional.empty());
+        when(projectionInputLoader.load(List.of("SBER"))).thenReturn(new ProjectionInputs(Map.of(),
+                Map.of("SBER", List.of(new PaidDividend(LocalDate.of(2023, 7, 1), new BigDecimal("20.00"), null)))));
 
         ProjectionRequestDto req = new ProjectionRequestDto();
         req.setHorizonMonths(3);
@@ -192,7 +178,7 @@ class ProjectionServiceTest {
     }
 
     @Test
-    @DisplayName("project — override для тикера → dividendRepository и priceHistoryRepository не вызываются для этого тикера")
+    @DisplayName("project — override для тикера → входные данные по истории для этого тикера не загружаются")
     void project_usesOverride_whenProvided() {
         Position position = Position.builder()
                 .id(UUID.randomUUID())
@@ -213,9 +199,86 @@ class ProjectionServiceTest {
 
         projectionService.project(userId, req);
 
-        verify(dividendRepository, never()).findBySecurity_Ticker(eq("SBER"));
-        verify(priceHistoryRepository, never())
-                .findFirstByTickerAndTradeDateLessThanEqualOrderByTradeDateDesc(eq("SBER"), any());
+        verify(projectionInputLoader, never()).load(argThat(tickers -> tickers.contains("SBER")));
+    }
+
+    @Test
+    @DisplayName("project — MONTE_CARLO → полосы по каждому месяцу, p5 ≤ p50 ≤ p95, волатильность взвешена по стоимости")
+    void project_monteCarlo_returnsOrderedBands() {
+        Security gazp = Security.builder()
+                .ticker("GAZP")
+                .name("Газпром")
+                .type(SecurityType.STOCK)
+                .historyStatus(HistoryStatus.READY)
+                .build();
+        Position sberPosition = Position.builder()
+                .id(UUID.randomUUID())
+                .userId(userId)
+                .security(sber)
+                .quantity(new BigDecimal("10"))
+                .averagePrice(new BigDecimal("300.00"))
+                .totalCost(new BigDecimal("3000.00"))
+                .build();
+        Position gazpPosition = Position.builder()
+                .id(UUID.randomUUID())
+                .userId(userId)
+                .security(gazp)
+                .quantity(new BigDecimal("20"))
+                .averagePrice(new BigDecimal("150.00"))
+                .totalCost(new BigDecimal("3000.00"))
+                .build();
+
+        when(positionRepository.findByUserIdWithSecurity(userId)).thenReturn(List.of(sberPosition, gazpPosition));
+        when(marketDataService.getSnapshots(List.of("SBER", "GAZP"))).thenReturn(Map.of(
+                "SBER", new SnapshotResult(new BigDecimal("300.00"), null, Instant.now(), false),
+                "GAZP", new SnapshotResult(new BigDecimal("150.00"), null, Instant.now(), false)));
+        // GAZP has too little history for a volatility estimate and contributes nothing
+        when(projectionInputLoader.loadMonthlyVolatility(List.of("SBER", "GAZP"))).thenReturn(Map.of("SBER", 0.08));
+
+        ProjectionRequestDto req = new ProjectionRequestDto();
+        req.setHorizonMonths(24);
+        req.setMode(ProjectionMode.MONTE_CARLO);
+        req.setPaths(2_000);
+        req.setSeed(11L);
+        req.setOverrides(Map.of("SBER", new BigDecimal("0.12"), "GAZP", new BigDecimal("0.12")));
+
+        ProjectionResultDto result = projectionService.project(userId, req);
+
+        assertThat(result.getMonthlyVolatility()).isEqualByComparingTo("0.040000");
+        assertThat(result.getBands()).hasSize(24);
+        ProjectionBandDto last = result.getBands().getLast();
+        assertThat(last.getMonth()).isEqualTo(24);
+        assertThat(last.getP5()).isLessThan(last.getP25());
+        assertThat(last.getP25()).isLessThan(last.getP50());
+        assertThat(last.getP50()).isLessThan(last.getP75());
+        assertThat(last.getP75()).isLessThan(last.getP95());
+        assertThat(projectionService.project(userId, req).getBands()).isEqualTo(result.getBands());
+    }
+
+    @Test
+    @DisplayName("project — режим по умолчанию → полос нет, волатильность не загружается")
+    void project_deterministicMode_hasNoBands() {
+        Position position = Position.builder()
+                .id(UUID.randomUUID())
+                .userId(userId)
+                .security(sber)
+                .quantity(new BigDecimal("10"))
+                .averagePrice(new BigDecimal("300.00"))
+                .totalCost(new BigDecimal("3000.00"))
+                .build();
+
+        when(positionRepository.findByUserIdWithSecurity(userId)).thenReturn(List.of(position));
+        when(marketDataService.getSnapshots(List.of("SBER")))
+                .thenReturn(Map.of("SBER", new SnapshotResult(new BigDecimal("300.00"), null, Instant.now(), false)));
+
+        ProjectionRequestDto req = new ProjectionRequestDto();
+        req.setHorizonMonths(3);
+        req.setOverrides(Map.of("SBER", new BigDecimal("0.10")));
+
+        ProjectionResultDto result = projectionService.project(userId, req);
+
+        assertThat(result.getBands()).isNull();
+        verify(projectionInputLoader, never()).loadMonthlyVolatility(any());
     }
 
     @Test
@@ -246,34 +309,4 @@ class ProjectionServiceTest {
         result.getSeries().forEach(point ->
                 assertThat(point.getDeposit()).isEqualByComparingTo(new BigDecimal("10000.00")));
     }
-
-    private Dividend buildPaidDividend(String ticker, LocalDate paymentDate, BigDecimal amountPerShare) {
-        Security sec = Security.builder()
-                .ticker(ticker)
-                .name(ticker)
-                .type(SecurityType.STOCK)
-                .historyStatus(HistoryStatus.READY)
-                .build();
-        return Dividend.builder()
-                .id(UUID.randomUUID())
-                .security(sec)
-                .recordDate(paymentDate.minusDays(14))
-                .paymentDate(paymentDate)
-                .amountPerShare(amountPerShare)
-                .currency("RUB")
-                .status(DividendStatus.PAID)
-                .build();
-    }
-
-    private PriceHistory buildPriceHistory(String ticker, LocalDate tradeDate, BigDecimal close) {
-        return PriceHistory.builder()
-                .ticker(ticker)
-                .tradeDate(tradeDate)
-                .open(close)
-                .close(close)
-                .high(close)
-                .low(close)
-                .volume(10000L)
-                .build();
-    }
 }
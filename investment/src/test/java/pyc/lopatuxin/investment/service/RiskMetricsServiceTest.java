@@ -0,0 +1,153 @@
+package pyc.lopatuxin.investment.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import pyc.lopatuxin.investment.dto.response.RiskMetricsDto;
+import pyc.lopatuxin.investment.entity.Position;
+import pyc.lopatuxin.investment.entity.Security;
+import pyc.lopatuxin.investment.entity.enums.HistoryStatus;
+import pyc.lopatuxin.investment.entity.enums.SecurityType;
+import pyc.lopatuxin.investment.repository.PositionRepository;
+import pyc.lopatuxin.investment.service.market.MarketDataService;
+import pyc.lopatuxin.investment.service.market.PriceSeries;
+import pyc.lopatuxin.investment.service.market.PriceSeriesStore;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("RiskMetricsServiceTest")
+class RiskMetricsServiceTest {
+
+    private static final LocalDate TODAY = LocalDate.now(ZoneId.of("Europe/Moscow"));
+
+    @Mock
+    private PositionRepository positionRepository;
+
+    @Mock
+    private PriceSeriesStore priceSeriesStore;
+
+    @Mock
+    private MarketDataService marketDataService;
+
+    @Mock
+    private PortfolioValuationService portfolioValuationService;
+
+    private RiskMetricsService service;
+    private UUID userId;
+
+    @BeforeEach
+    void setUp() {
+        service = new RiskMetricsService(positionRepository, priceSeriesStore, marketDataService,
+                portfolioValuationService, new SimpleMeterRegistry());
+        userId = UUID.randomUUID();
+        lenient().when(portfolioValuationService.version(userId)).thenReturn("1.0");
+        lenient().when(priceSeriesStore.version(anyString())).thenReturn("1.0");
+    }
+
+    @Test
+    @DisplayName("riskMetrics — две бумаги: матрица корреляций, бета к IMOEX и Sharpe с безрисковой ставкой")
+    void riskMetrics_computesMetrics() {
+        when(positionRepository.findByUserIdWithSecurity(userId)).thenReturn(List.of(
+                position("SBER", HistoryStatus.READY), position("GAZP", HistoryStatus.READY)));
+        when(priceSeriesStore.get("SBER")).thenReturn(series(100, 101, 99, 102, 104, 103));
+        when(priceSeriesStore.get("GAZP")).thenReturn(series(200, 204, 197, 203, 209, 205));
+        when(priceSeriesStore.get(RiskMetricsService.BENCHMARK)).thenReturn(series(3000, 3020, 2980, 3030, 3060, 3050));
+
+        RiskMetricsDto result = service.riskMetrics(userId, new BigDecimal("0.16"));
+        RiskMetricsDto withoutRate = service.riskMetrics(userId, BigDecimal.ZERO);
+
+        assertThat(result.getTickers()).containsExactly("SBER", "GAZP");
+        assertThat(result.getObservations()).isEqualTo(5);
+        assertThat(result.getAsOf()).isEqualTo(TODAY);
+        assertThat(result.getCorrelation().get(0).get(0)).isEqualByComparingTo("1");
+        assertThat(result.getCorrelation().get(0).get(1)).isEqualByComparingTo(result.getCorrelation().get(1).get(0));
+        assertThat(result.getCorrelation().get(0).get(1).doubleValue()).isGreaterThan(0.9);
+        assertThat(result.getBeta()).isNotNull();
+        assertThat(result.getAnnualizedVolatility()).isPositive();
+        assertThat(result.getMaxDrawdown()).isPositive();
+        assertThat(result.isBenchmarkPending()).isFalse();
+        assertThat(result.getSharpeRatio()).isLessThan(withoutRate.getSharpeRatio());
+        // the rate lowers the excess return and raises the shortfall below the threshold
+        assertThat(result.getSortinoRatio()).isLessThan(withoutRate.getSortinoRatio());
+        verify(positionRepository, times(1)).findByUserIdWithSecurity(userId);
+    }
+
+    @Test
+    @DisplayName("riskMetrics — новая версия портфеля → статистика пересчитывается, иначе берётся из кэша")
+    void riskMetrics_recomputesOnVersionChange() {
+        when(positionRepository.findByUserIdWithSecurity(userId)).thenReturn(List.of());
+        when(priceSeriesStore.get(RiskMetricsService.BENCHMARK)).thenReturn(series(3000, 3020));
+
+        service.riskMetrics(userId, BigDecimal.ZERO);
+        service.riskMetrics(userId, BigDecimal.ZERO);
+        when(portfolioValuationService.version(userId)).thenReturn("1.1");
+        service.riskMetrics(userId, BigDecimal.ZERO);
+
+        verify(positionRepository, times(2)).findByUserIdWithSecurity(userId);
+    }
+
+    @Test
+    @DisplayName("riskMetrics — история бумаги и IMOEX не загружены → загрузка запущена, бета null")
+    void riskMetrics_pendingHistory_triggersLoads() {
+        when(positionRepository.findByUserIdWithSecurity(userId)).thenReturn(List.of(
+                position("SBER", HistoryStatus.READY), position("YDEX", HistoryStatus.PENDING)));
+        when(priceSeriesStore.get("SBER")).thenReturn(series(100, 101, 99));
+        when(priceSeriesStore.get(RiskMetricsService.BENCHMARK)).thenReturn(PriceSeries.empty());
+
+        RiskMetricsDto result = service.riskMetrics(userId, BigDecimal.ZERO);
+
+        assertThat(result.getPendingHistoryTickers()).containsExactly("YDEX");
+        assertThat(result.getTickers()).containsExactly("SBER");
+        assertThat(result.isBenchmarkPending()).isTrue();
+        assertThat(result.getBeta()).isNull();
+        verify(marketDataService).triggerHistoryAsync("YDEX");
+        verify(marketDataService, never()).ensureSecurity(anyString(), any());
+        verify(marketDataService).triggerHistoryAsync(RiskMetricsService.BENCHMARK);
+        verify(priceSeriesStore, never()).get("YDEX");
+    }
+
+    private Position position(String ticker, HistoryStatus status) {
+        Security security = Security.builder()
+                .ticker(ticker)
+                .name(ticker)
+                .type(SecurityType.STOCK)
+                .historyStatus(status)
+                .build();
+        return Position.builder()
+                .id(UUID.randomUUID())
+                .userId(userId)
+                .security(security)
+                .quantity(new BigDecimal("10"))
+                .averagePrice(BigDecimal.ONE)
+                .totalCost(BigDecimal.TEN)
+                .build();
+    }
+
+    // daily closes ending today
+    private static PriceSeries series(double... closes) {
+        PriceSeries.Builder builder = PriceSeries.builder(closes.length);
+        for (int i = 0; i < closes.length; i++) {
+            BigDecimal close = BigDecimal.valueOf(closes[i]);
+            builder.add(TODAY.minusDays(closes.length - 1 - i), close, close, close, close, 1L);
+        }
+        return builder.build();
+    }
+}
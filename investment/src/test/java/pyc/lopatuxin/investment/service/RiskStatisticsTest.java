@@ -0,0 +1,148 @@
+package pyc.lopatuxin.investment.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pyc.lopatuxin.investment.service.market.PriceSeries;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+@DisplayName("RiskStatisticsTest")
+class RiskStatisticsTest {
+
+    @Test
+    @DisplayName("correlation — совпадает с двухпроходной формулой, в том числе для бумаг с короткой историей")
+    void correlation_matchesTwoPass() {
+        SplittableRandom random = new SplittableRandom(11);
+        int days = 750;
+        double[][] returns = new double[6][days];
+        for (int t = 0; t < days; t++) {
+            double market = random.nextGaussian() * 0.01;
+            for (int a = 0; a < returns.length; a++) {
+                returns[a][t] = market * a * 0.3 + random.nextGaussian() * 0.02;
+            }
+        }
+        Arrays.fill(returns[4], 0, 200, Double.NaN);
+        Arrays.fill(returns[5], 0, 200, Double.NaN);
+
+        double[][] correlation = RiskStatistics.correlation(returns);
+
+        for (int i = 0; i < returns.length; i++) {
+            assertThat(correlation[i][i]).isEqualTo(1.0, within(1e-12));
+            for (int j = 0; j < returns.length; j++) {
+                int from = i >= 4 || j >= 4 ? 200 : 0;
+                assertThat(correlation[i][j]).isCloseTo(twoPassCorrelation(returns[i], returns[j], from), within(1e-12));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("correlation — бумага без движения цены → NaN, а не деление на ноль")
+    void correlation_flatAsset_isNaN() {
+        double[][] returns = {{0.01, -0.02, 0.03}, {0.0, 0.0, 0.0}};
+
+        double[][] correlation = RiskStatistics.correlation(returns);
+
+        assertThat(correlation[0][1]).isNaN();
+        assertThat(correlation[1][1]).isNaN();
+    }
+
+    @Test
+    @DisplayName("compute — волатильность, просадка и бета портфеля из двух бумаг с весами")
+    void compute_portfolioMoments() {
+        double[][] returns = {{0.10, -0.20, 0.05}, {0.0, 0.0, 0.05}};
+        double[] weights = {1, 1};
+        double[] benchmark = {0.04, -0.08, 0.04};
+
+        RiskStatistics stats = RiskStatistics.compute(returns, weights, benchmark);
+
+        assertThat(stats.observations).isEqualTo(3);
+        assertThat(stats.meanDaily).isCloseTo(0.0, within(1e-12));
+        assertThat(stats.volatilityDaily).isCloseTo(Math.sqrt((0.0025 + 0.01 + 0.0025) / 2), within(1e-12));
+        assertThat(stats.downsideDaily(0)).isCloseTo(Math.sqrt(0.01 / 3), within(1e-12));
+        // against a 1% threshold the down day falls short by 11%, the two 5% days still count as zero
+        assertThat(stats.downsideDaily(0.01)).isCloseTo(Math.sqrt(0.0121 / 3), within(1e-12));
+        // 1.05 → 0.945: a fall of 10% from the peak
+        assertThat(stats.maxDrawdown).isCloseTo(0.10, within(1e-12));
+        // portfolio returns 0.05, -0.10, 0.05 are 1.25× the benchmark every day
+        assertThat(stats.beta).isCloseTo(1.25, within(1e-12));
+    }
+
+    @Test
+    @DisplayName("compute — день без данных ни по одной бумаге пропускается, без бенчмарка бета NaN")
+    void compute_skipsEmptyDays() {
+        double[][] returns = {{Double.NaN, 0.01, 0.02}};
+
+        RiskStatistics stats = RiskStatistics.compute(returns, new double[]{5}, null);
+
+        assertThat(stats.observations).isEqualTo(2);
+        assertThat(stats.meanDaily).isCloseTo(0.015, within(1e-12));
+        assertThat(stats.beta).isNaN();
+    }
+
+    @Test
+    @DisplayName("returnsOnGrid — цены переносятся на дни сетки, до начала истории NaN")
+    void returnsOnGrid_forwardFills() {
+        LocalDate monday = LocalDate.of(2024, 1, 15);
+        PriceSeries series = PriceSeries.builder(2)
+                .add(monday.plusDays(1), BigDecimal.ONE, BigDecimal.ONE, BigDecimal.ONE, new BigDecimal("100.00"), 1L)
+                .add(monday.plusDays(3), BigDecimal.ONE, BigDecimal.ONE, BigDecimal.ONE, new BigDecimal("110.00"), 1L)
+                .build();
+        int[] grid = {epochDay(monday), epochDay(monday.plusDays(1)), epochDay(monday.plusDays(2)),
+                epochDay(monday.plusDays(3))};
+
+        double[] returns = RiskStatistics.returnsOnGrid(series, grid);
+
+        assertThat(returns[0]).isNaN();
+        assertThat(returns[1]).isZero();
+        assertThat(returns[2]).isCloseTo(0.10, within(1e-12));
+    }
+
+    @Test
+    @DisplayName("tradingDays — объединение дат всех бумаг в окне без повторов")
+    void tradingDays_unionWithinWindow() {
+        LocalDate day = LocalDate.of(2024, 1, 15);
+        PriceSeries first = series(day, day.plusDays(1), day.plusDays(7));
+        PriceSeries second = series(day.plusDays(1), day.plusDays(2));
+
+        int[] grid = RiskStatistics.tradingDays(new PriceSeries[]{first, second}, epochDay(day), epochDay(day.plusDays(2)));
+
+        assertThat(grid).containsExactly(epochDay(day), epochDay(day.plusDays(1)), epochDay(day.plusDays(2)));
+    }
+
+    private static double twoPassCorrelation(double[] x, double[] y, int from) {
+        int n = x.length - from;
+        double meanX = 0;
+        double meanY = 0;
+        for (int t = from; t < x.length; t++) {
+            meanX += x[t] / n;
+            meanY += y[t] / n;
+        }
+        double sxy = 0;
+        double sxx = 0;
+        double syy = 0;
+        for (int t = from; t < x.length; t++) {
+            sxy += (x[t] - meanX) * (y[t] - meanY);
+            sxx += (x[t] - meanX) * (x[t] - meanX);
+            syy += (y[t] - meanY) * (y[t] - meanY);
+        }
+        return sxy / Math.sqrt(sxx * syy);
+    }
+
+    private static PriceSeries series(LocalDate... dates) {
+        PriceSeries.Builder builder = PriceSeries.builder(dates.length);
+        for (LocalDate date : dates) {
+            builder.add(date, BigDecimal.ONE, BigDecimal.ONE, BigDecimal.ONE, BigDecimal.TEN, null);
+        }
+        return builder.build();
+    }
+
+    private static int epochDay(LocalDate date) {
+        return Math.toIntExact(date.toEpochDay());
+    }
+}
@@ -0,0 +1,57 @@
+package pyc.lopatuxin.investment.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pyc.lopatuxin.investment.dto.request.SeriesResolution;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("SeriesSamplingTest")
+class SeriesSamplingTest {
+
+    @Test
+    @DisplayName("lttb — пики сохраняются, размер равен порогу, края на месте")
+    void lttb_keepsPeaksAndEnds() {
+        List<double[]> points = IntStream.range(0, 1_000)
+                .mapToObj(i -> new double[]{i, i == 437 ? 500 : Math.sin(i / 20.0)})
+                .toList();
+
+        List<double[]> sampled = SeriesSampling.lttb(points, 50, p -> p[0], p -> p[1]);
+
+        assertThat(sampled).hasSize(50);
+        assertThat(sampled.getFirst()[0]).isZero();
+        assertThat(sampled.getLast()[0]).isEqualTo(999);
+        assertThat(sampled).anySatisfy(p -> assertThat(p[1]).isEqualTo(500));
+        assertThat(sampled).isSortedAccordingTo((a, b) -> Double.compare(a[0], b[0]));
+    }
+
+    @Test
+    @DisplayName("lttb — без порога или порог не меньше размера → серия без изменений")
+    void lttb_noThreshold_returnsInput() {
+        List<double[]> points = List.of(new double[]{0, 1}, new double[]{1, 2}, new double[]{2, 3});
+
+        assertThat(SeriesSampling.lttb(points, null, p -> p[0], p -> p[1])).isSameAs(points);
+        assertThat(SeriesSampling.lttb(points, 3, p -> p[0], p -> p[1])).isSameAs(points);
+    }
+
+    @Test
+    @DisplayName("resolve — AUTO выбирает самую детальную гранулярность в пределах бюджета точек")
+    void resolve_auto_picksFinestWithinBudget() {
+        LocalDate to = LocalDate.of(2024, 12, 31);
+
+        assertThat(SeriesSampling.resolve(SeriesResolution.AUTO, to.minusYears(1), to, null))
+                .isEqualTo(SeriesResolution.DAY);
+        assertThat(SeriesSampling.resolve(SeriesResolution.AUTO, to.minusYears(5), to, null))
+                .isEqualTo(SeriesResolution.WEEK);
+        assertThat(SeriesSampling.resolve(SeriesResolution.AUTO, to.minusYears(10), to, null))
+                .isEqualTo(SeriesResolution.MONTH);
+        assertThat(SeriesSampling.resolve(SeriesResolution.AUTO, to.minusYears(1), to, 100))
+                .isEqualTo(SeriesResolution.WEEK);
+        assertThat(SeriesSampling.resolve(SeriesResolution.MONTH, to.minusDays(10), to, null))
+                .isEqualTo(SeriesResolution.MONTH);
+    }
+}
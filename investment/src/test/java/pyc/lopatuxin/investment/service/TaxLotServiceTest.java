@@ -0,0 +1,318 @@
+package pyc.lopatuxin.investment.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import pyc.lopatuxin.investment.dto.response.TaxReportDto;
+import pyc.lopatuxin.investment.dto.response.TaxTickerReportDto;
+import pyc.lopatuxin.investment.entity.Security;
+import pyc.lopatuxin.investment.entity.TaxLot;
+import pyc.lopatuxin.investment.entity.TaxLotClosure;
+import pyc.lopatuxin.investment.entity.Transaction;
+import pyc.lopatuxin.investment.entity.enums.HistoryStatus;
+import pyc.lopatuxin.investment.entity.enums.SecurityType;
+import pyc.lopatuxin.investment.entity.enums.TransactionType;
+import pyc.lopatuxin.investment.repository.TaxLotBulkWriter;
+import pyc.lopatuxin.investment.repository.TaxLotClosureRepository;
+import pyc.lopatuxin.investment.repository.TaxLotClosureRepository.RealizedTotal;
+import pyc.lopatuxin.investment.repository.TaxLotRepository;
+import pyc.lopatuxin.investment.repository.TaxLotRepository.OpenHolding;
+import pyc.lopatuxin.investment.repository.TransactionRepository;
+import pyc.lopatuxin.investment.service.market.MarketDataService;
+import pyc.lopatuxin.investment.service.market.dto.SnapshotResult;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * The lot tables are kept in memory with the semantics of the queries, including the cascade from a lot to its
+ * closures.
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("TaxLotServiceTest")
+class TaxLotServiceTest {
+
+    private static final Comparator<Transaction> ORDER = Comparator.comparing(Transaction::getExecutedAt)
+            .thenComparing(Transaction::getCreatedAt);
+
+    @Mock
+    private TaxLotRepository taxLotRepository;
+
+    @Mock
+    private TaxLotClosureRepository taxLotClosureRepository;
+
+    @Mock
+    private TaxLotBulkWriter taxLotBulkWriter;
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    @Mock
+    private MarketDataService marketDataService;
+
+    @InjectMocks
+    private TaxLotService taxLotService;
+
+    private final Map<UUID, TaxLot> lots = new LinkedHashMap<>();
+    private final List<TaxLotClosure> closures = new ArrayList<>();
+    private final List<Transaction> trades = new ArrayList<>();
+    private Security security;
+    private UUID userId;
+    private long clock;
+
+    @BeforeEach
+    void setUp() {
+        userId = UUID.randomUUID();
+        security = Security.builder()
+                .ticker("SBER")
+                .name("Сбербанк")
+                .type(SecurityType.STOCK)
+                .historyStatus(HistoryStatus.READY)
+                .build();
+
+        lenient().when(taxLotRepository.existsByUserIdAndTicker(any(), anyString())).thenAnswer(inv -> !lots.isEmpty());
+        lenient().when(taxLotRepository.findOpenLots(any(), anyString())).thenAnswer(inv -> {
+            Map<UUID, Instant> createdAt = new HashMap<>();
+            trades.forEach(t -> createdAt.put(t.getId(), t.getCreatedAt()));
+            return lots.values().stream()
+                    .filter(l -> l.getRemainingQuantity().signum() > 0)
+                    .sorted(Comparator.comparing(TaxLot::getAcquiredAt)
+                            .thenComparing(l -> createdAt.get(l.getBuyTransactionId())))
+                    .toList();
+        });
+        lenient().when(taxLotRepository.restoreClosedSince(any(), anyString(), any())).thenAnswer(inv -> {
+            Instant since = inv.getArgument(2);
+            closures.stream().filter(c -> !c.getClosedAt().isBefore(since)).forEach(c -> {
+                TaxLot lot = lots.get(c.getLotId());
+                lot.setRemainingQuantity(lot.getRemainingQuantity().add(c.getQuantity()));
+            });
+            return 0;
+        });
+        lenient().when(taxLotClosureRepository.deleteClosedSince(any(), anyString(), any())).thenAnswer(inv -> {
+            Instant since = inv.getArgument(2);
+            closures.removeIf(c -> !c.getClosedAt().isBefore(since));
+            return 0;
+        });
+        lenient().when(taxLotRepository.deleteAcquiredSince(any(), anyString(), any())).thenAnswer(inv -> {
+            Instant since = inv.getArgument(2);
+            lots.values().removeIf(l -> !l.getAcquiredAt().isBefore(since));
+            closures.removeIf(c -> !lots.containsKey(c.getLotId()));
+            return 0;
+        });
+        lenient().when(taxLotBulkWriter.insertLots(anyCollection())).thenAnswer(inv -> {
+            inv.<Collection<TaxLot>>getArgument(0).forEach(l -> lots.put(l.getId(), l));
+            return 0;
+        });
+        lenient().when(taxLotBulkWriter.insertClosures(anyCollection())).thenAnswer(inv -> {
+            closures.addAll(inv.getArgument(0));
+            return 0;
+        });
+        lenient().when(transactionRepository.findByUserIdAndSecurity_Ticker(any(), anyString()))
+                .thenAnswer(inv -> List.copyOf(trades));
+    }
+
+    @Test
+    @DisplayName("SELL закрывает старейший лот целиком и делит следующий, прибыль считается по цене каждого лота")
+    void sellClosesOldestLotsFirst() {
+        Transaction first = add(TransactionType.BUY, "10", "100.00", "2024-03-01T10:00:00Z");
+        Transaction second = add(TransactionType.BUY, "10", "120.00", "2024-03-02T10:00:00Z");
+        Transaction sell = add(TransactionType.SELL, "15", "150.00", "2024-12-31T22:00:00Z");
+
+        taxLotService.onTradesChanged(userId, "SBER", first.getExecutedAt(), sorted());
+
+        assertThat(closures).hasSize(2);
+        TaxLotClosure whole = closureOf(first);
+        assertThat(whole.getQuantity()).isEqualByComparingTo("10");
+        assertThat(whole.getRealizedPnl()).isEqualByComparingTo("500");
+        TaxLotClosure split = closureOf(second);
+        assertThat(split.getQuantity()).isEqualByComparingTo("5");
+        assertThat(split.getCostBasis()).isEqualByComparingTo("600");
+        assertThat(split.getRealizedPnl()).isEqualByComparingTo("150");
+        assertThat(split.getSellTransactionId()).isEqualTo(sell.getId());
+        // 01:00 on January 1st in Moscow
+        assertThat(split.getTaxYear()).isEqualTo(2025);
+        assertThat(lotOf(second).getRemainingQuantity()).isEqualByComparingTo("5");
+    }
+
+    @Test
+    @DisplayName("Удалённая SELL возвращает проданные доли в лоты")
+    void deletedSellRestoresLots() {
+        Transaction buy = add(TransactionType.BUY, "10", "100.00", "2024-03-01T10:00:00Z");
+        Transaction sell = add(TransactionType.SELL, "4", "150.00", "2024-03-05T10:00:00Z");
+        taxLotService.onTradesChanged(userId, "SBER", buy.getExecutedAt(), sorted());
+
+        trades.remove(sell);
+        taxLotService.onTradesChanged(userId, "SBER", sell.getExecutedAt(), List.of());
+
+        assertThat(closures).isEmpty();
+        assertThat(lotOf(buy).getRemainingQuantity()).isEqualByComparingTo("10");
+    }
+
+    @Test
+    @DisplayName("Тикер без лотов строится по всей истории из БД")
+    void tickerWithoutLotsIsBuiltFromWholeHistory() {
+        Transaction legacy = add(TransactionType.BUY, "10", "100.00", "2023-01-10T10:00:00Z");
+        Transaction sell = add(TransactionType.SELL, "10", "130.00", "2024-02-01T10:00:00Z");
+
+        taxLotService.onTradesChanged(userId, "SBER", sell.getExecutedAt(), List.of(sell));
+
+        assertThat(lotOf(legacy).getRemainingQuantity()).isEqualByComparingTo("0");
+        assertThat(closureOf(legacy).getRealizedPnl()).isEqualByComparingTo("300");
+    }
+
+    @Test
+    @DisplayName("report — реализованный результат года и нереализованный по текущей котировке")
+    void reportCombinesRealizedAndUnrealized() {
+        RealizedTotal realized = mock(RealizedTotal.class);
+        when(realized.getTicker()).thenReturn("SBER");
+        when(realized.getQuantity()).thenReturn(new BigDecimal("15"));
+        when(realized.getCostBasis()).thenReturn(new BigDecimal("1600"));
+        when(realized.getProceeds()).thenReturn(new BigDecimal("2250"));
+        when(realized.getRealizedPnl()).thenReturn(new BigDecimal("650"));
+        OpenHolding holding = mock(OpenHolding.class);
+        when(holding.getTicker()).thenReturn("SBER");
+        when(holding.getQuantity()).thenReturn(new BigDecimal("5"));
+        when(holding.getCost()).thenReturn(new BigDecimal("600"));
+        when(taxLotClosureRepository.findRealizedByYear(userId, 2024)).thenReturn(List.of(realized));
+        when(taxLotRepository.findOpenHoldings(userId)).thenReturn(List.of(holding));
+        when(marketDataService.getSnapshots(anyCollection())).thenReturn(Map.of("SBER",
+                new SnapshotResult(new BigDecimal("130"), new BigDecimal("128"), Instant.now(), false)));
+
+        TaxReportDto report = taxLotService.report(userId, 2024);
+
+        assertThat(report.getRealizedPnl()).isEqualByComparingTo("650.00");
+        assertThat(report.getUnrealizedPnl()).isEqualByComparingTo("50.00");
+        TaxTickerReportDto row = report.getTickers().getFirst();
+        assertThat(row.getOpenQuantity()).isEqualByComparingTo("5");
+        assertThat(row.getCurrentPrice()).isEqualByComparingTo("130");
+    }
+
+    @ParameterizedTest(name = "seed={0}")
+    @ValueSource(longs = {1, 2, 3, 5, 8, 13})
+    @DisplayName("Инкрементальное сопоставление лотов совпадает с FIFO по всей истории")
+    void incrementalUpdatesMatchFullFifo(long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        long lastSecond = 0;
+        for (int step = 0; step < 200; step++) {
+            Instant since;
+            int op = random.nextInt(4);
+            if (op == 3 && !trades.isEmpty()) {
+                Transaction victim = trades.get(random.nextInt(trades.size()));
+                trades.remove(victim);
+                if (fifo(trades) == null) {
+                    trades.add(victim);
+                    continue;
+                }
+                since = victim.getExecutedAt();
+            } else {
+                long second = op == 2 ? random.nextLong(lastSecond + 1) : lastSecond + random.nextInt(3);
+                lastSecond = Math.max(lastSecond, second);
+                TransactionType type = random.nextInt(5) < 2 ? TransactionType.SELL : TransactionType.BUY;
+                Transaction trade = add(type, BigDecimal.valueOf(1 + random.nextInt(50)).toPlainString(),
+                        BigDecimal.valueOf(1 + random.nextInt(100_000), 2).toPlainString(),
+                        Instant.ofEpochSecond(second).toString());
+                if (fifo(trades) == null) {
+                    trades.remove(trade);
+                    continue;
+                }
+                since = trade.getExecutedAt();
+            }
+            Instant from = since;
+            taxLotService.onTradesChanged(userId, "SBER", since,
+                    sorted().stream().filter(t -> !t.getExecutedAt().isBefore(from)).toList());
+
+            Map<String, BigDecimal> actual = new HashMap<>();
+            closures.forEach(c -> actual.merge(c.getSellTransactionId() + "/" + lots.get(c.getLotId()).getBuyTransactionId(),
+                    c.getQuantity(), BigDecimal::add));
+            Map<String, BigDecimal> expected = fifo(trades);
+            String context = "seed=%d, step=%d".formatted(seed, step);
+            assertThat(actual.keySet()).as(context).isEqualTo(expected.keySet());
+            expected.forEach((key, quantity) ->
+                    assertThat(actual.get(key)).as(context).isEqualByComparingTo(quantity));
+        }
+    }
+
+    /**
+     * Sold quantity per (SELL, BUY) pair of a FIFO over the whole history, or {@code null} when a SELL is uncovered.
+     */
+    private static Map<String, BigDecimal> fifo(List<Transaction> history) {
+        Map<String, BigDecimal> matched = new HashMap<>();
+        List<Transaction> buys = new ArrayList<>();
+        List<BigDecimal> left = new ArrayList<>();
+        int head = 0;
+        for (Transaction t : history.stream().sorted(ORDER).toList()) {
+            if (t.getType() == TransactionType.BUY) {
+                buys.add(t);
+                left.add(t.getQuantity());
+                continue;
+            }
+            BigDecimal need = t.getQuantity();
+            while (need.signum() > 0) {
+                if (head == buys.size()) {
+                    return null;
+                }
+                BigDecimal sold = need.min(left.get(head));
+                matched.merge(t.getId() + "/" + buys.get(head).getId(), sold, BigDecimal::add);
+                left.set(head, left.get(head).subtract(sold));
+                need = need.subtract(sold);
+                if (left.get(head).signum() == 0) {
+                    head++;
+                }
+            }
+        }
+        return matched;
+    }
+
+    private Transaction add(TransactionType type, String quantity, String price, String executedAt) {
+        Transaction t = Transaction.builder()
+                .id(UUID.randomUUID())
+                .userId(userId)
+                .security(security)
+                .type(type)
+                .quantity(new BigDecimal(quantity))
+                .price(new BigDecimal(price))
+                .executedAt(Instant.parse(executedAt))
+                .createdAt(Instant.ofEpochMilli(++clock))
+                .build();
+        trades.add(t);
+        return t;
+    }
+
+    private List<Transaction> sorted() {
+        return trades.stream().sorted(ORDER).toList();
+    }
+
+    private TaxLot lotOf(Transaction buy) {
+        return lots.values().stream()
+                .filter(l -> l.getBuyTransactionId().equals(buy.getId()))
+                .findFirst().orElseThrow();
+    }
+
+    private TaxLotClosure closureOf(Transaction buy) {
+        UUID lotId = lotOf(buy).getId();
+        return closures.stream().filter(c -> c.getLotId().equals(lotId)).findFirst().orElseThrow();
+    }
+}
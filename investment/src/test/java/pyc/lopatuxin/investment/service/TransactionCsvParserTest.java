@@ -0,0 +1,94 @@
+package pyc.lopatuxin.investment.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pyc.lopatuxin.investment.entity.enums.SecurityType;
+import pyc.lopatuxin.investment.entity.enums.TransactionType;
+
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("TransactionCsvParserTest")
+class TransactionCsvParserTest {
+
+    @Test
+    @DisplayName("parse — колонки в любом порядке, ';' с десятичной запятой, время без зоны считается московским")
+    void parse_semicolonReport() {
+        String csv = """
+                Ticker;Type;Quantity;Price;Executed_At;Security_Type
+                sber;Покупка;10;250,50;2024-01-15 10:00;STOCK
+
+                OFZ26238;продажа;1 000;98,75;2024-01-16;BOND
+                """;
+
+        List<TransactionCsvParser.Row> rows = parse(csv);
+
+        assertThat(rows).hasSize(2);
+        TransactionCsvParser.Row first = rows.getFirst();
+        assertThat(first.ticker()).isEqualTo("SBER");
+        assertThat(first.type()).isEqualTo(TransactionType.BUY);
+        assertThat(first.price()).isEqualByComparingTo("250.50");
+        assertThat(first.executedAt()).isEqualTo(Instant.parse("2024-01-15T07:00:00Z"));
+        TransactionCsvParser.Row second = rows.get(1);
+        assertThat(second.type()).isEqualTo(TransactionType.SELL);
+        assertThat(second.securityType()).isEqualTo(SecurityType.BOND);
+        assertThat(second.quantity()).isEqualByComparingTo(new BigDecimal("1000"));
+        assertThat(second.executedAt()).isEqualTo(Instant.parse("2024-01-15T21:00:00Z"));
+    }
+
+    @Test
+    @DisplayName("parse — ',' и время с зоной, тип бумаги по умолчанию STOCK")
+    void parse_commaSeparated() {
+        String csv = """
+                executed_at,ticker,type,quantity,price
+                2024-01-16T10:00:00Z,"LKOH",BUY,1,7000.00
+                """;
+
+        List<TransactionCsvParser.Row> rows = parse(csv);
+
+        assertThat(rows).singleElement().satisfies(row -> {
+            assertThat(row.ticker()).isEqualTo("LKOH");
+            assertThat(row.securityType()).isEqualTo(SecurityType.STOCK);
+            assertThat(row.executedAt()).isEqualTo(Instant.parse("2024-01-16T10:00:00Z"));
+        });
+    }
+
+    @Test
+    @DisplayName("parse — ошибки всех строк собираются в одно сообщение с номерами строк")
+    void parse_reportsEveryBadRow() {
+        String csv = """
+                executed_at,ticker,type,quantity,price
+                2024-01-15,SBER,HOLD,1,1
+                2024-01-15,SBER,BUY,-1,1
+                2024-01-15,SBER,BUY,1,1.234
+                2024-01-15,SBER,BUY,1,100
+                """;
+
+        assertThatThrownBy(() -> parse(csv))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("строка 2")
+                .hasMessageContaining("строка 3")
+                .hasMessageContaining("строка 4")
+                .hasMessageNotContaining("строка 5");
+    }
+
+    @Test
+    @DisplayName("parse — нет обязательной колонки → IllegalArgumentException")
+    void parse_missingColumn() {
+        assertThatThrownBy(() -> parse("ticker,type,quantity,price\nSBER,BUY,1,1\n"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("executedat");
+    }
+
+    private static List<TransactionCsvParser.Row> parse(String csv) {
+        List<TransactionCsvParser.Row> rows = new ArrayList<>();
+        TransactionCsvParser.parse(new StringReader(csv), rows::add);
+        return rows;
+    }
+}
@@ -6,35 +6,54 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import pyc.lopatuxin.investment.dto.request.CreateTransactionDto;
+import pyc.lopatuxin.investment.dto.request.TransactionPageRequestDto;
+import pyc.lopatuxin.investment.dto.response.TransactionImportResultDto;
+import pyc.lopatuxin.investment.dto.response.TransactionPageDto;
 import pyc.lopatuxin.investment.dto.response.TransactionResponseDto;
 import pyc.lopatuxin.investment.entity.Position;
 import pyc.lopatuxin.investment.entity.Security;
 import pyc.lopatuxin.investment.entity.Transaction;
 import pyc.lopatuxin.investment.entity.enums.HistoryStatus;
+import pyc.lopatuxin.investment.entity.enums.OutboxEventType;
 import pyc.lopatuxin.investment.entity.enums.SecurityType;
 import pyc.lopatuxin.investment.entity.enums.TransactionType;
+import pyc.lopatuxin.investment.event.PortfolioChangedEvent;
+import pyc.lopatuxin.investment.event.TradesChangedEvent;
 import pyc.lopatuxin.investment.mapper.TransactionMapper;
 import pyc.lopatuxin.investment.repository.DividendRepository;
 import pyc.lopatuxin.investment.repository.PositionRepository;
 import pyc.lopatuxin.investment.repository.SecurityRepository;
+import pyc.lopatuxin.investment.repository.TransactionBulkWriter;
+import pyc.lopatuxin.investment.repository.TransactionFilter;
+import pyc.lopatuxin.investment.repository.TransactionPageLoader;
 import pyc.lopatuxin.investment.repository.TransactionRepository;
-import pyc.lopatuxin.investment.service.market.DividendSyncService;
+import pyc.lopatuxin.investment.service.market.MarketDataOutbox;
 import pyc.lopatuxin.investment.service.market.MarketDataService;
 
+import java.io.StringReader;
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -45,6 +64,12 @@ class TransactionServiceUnitTest {
     @Mock
     private TransactionRepository transactionRepository;
 
+    @Mock
+    private TransactionBulkWriter transactionBulkWriter;
+
+    @Mock
+    private TransactionPageLoader transactionPageLoader;
+
     @Mock
     private PositionRepository positionRepository;
 
@@ -58,11 +83,17 @@ class TransactionServiceUnitTest {
     private MarketDataService marketDataService;
 
     @Mock
-    private DividendSyncService dividendSyncService;
+    private MarketDataOutbox marketDataOutbox;
 
     @Mock
     private DividendRepository dividendRepository;
 
+    @Mock
+    private TaxLotService taxLotService;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     @InjectMocks
     private TransactionService transactionService;
 
@@ -92,8 +123,8 @@ class TransactionServiceUnitTest {
                 .executedAt(Instant.now())
                 .build();
 
-        // marketDataService.ensureSecurity is called in create(); recalculatePosition uses securityRepository directly
-        when(marketDataService.ensureSecurity("SBER", SecurityType.STOCK)).thenReturn(security);
+        // marketDataService.registerSecurity is called in create(); recalculatePosition uses securityRepository directly
+        when(marketDataService.registerSecurity("SBER", SecurityType.STOCK)).thenReturn(security);
         when(securityRepository.findById("SBER")).thenReturn(Optional.of(security));
 
         Transaction savedTx = Transaction.builder()
@@ -116,7 +147,7 @@ class TransactionServiceUnitTest {
                 .executedAt(Instant.now())
                 .createdAt(Instant.now())
                 .build();
-        when(transactionRepository.findByUserIdAndSecurity_Ticker(userId, "SBER"))
+        when(transactionRepository.findSince(userId, "SBER", dto.getExecutedAt()))
                 .thenReturn(List.of(buyTx));
         when(positionRepository.findByUserIdAndSecurity_Ticker(userId, "SBER"))
                 .thenReturn(Optional.empty());
@@ -129,6 +160,11 @@ class TransactionServiceUnitTest {
         Position savedPos = posCaptor.getValue();
         assertThat(savedPos.getQuantity()).isEqualByComparingTo(new BigDecimal("10"));
         assertThat(savedPos.getAveragePrice()).isEqualByComparingTo(new BigDecimal("250.00"));
+        verify(taxLotService).onTradesChanged(userId, "SBER", dto.getExecutedAt(), List.of(buyTx));
+        verify(eventPublisher).publishEvent(new TradesChangedEvent(userId, dto.getExecutedAt()));
+        verify(eventPublisher).publishEvent(new PortfolioChangedEvent(userId));
+        // dividends of a new ticker are loaded after the commit, not from inside the write
+        verify(marketDataOutbox).enqueue(OutboxEventType.DIVIDEND_SYNC, "SBER");
     }
 
     @Test
@@ -142,7 +178,9 @@ class TransactionServiceUnitTest {
                 .type(TransactionType.BUY)
                 .quantity(new BigDecimal("10"))
                 .price(new BigDecimal("250.00"))
-                .executedAt(t1).createdAt(t1).build();
+                .executedAt(t1).createdAt(t1)
+                .positionQuantity(new BigDecimal("10")).positionCost(new BigDecimal("2500"))
+                .build();
 
         Transaction buy2 = Transaction.builder()
                 .userId(userId).security(security)
@@ -156,11 +194,11 @@ class TransactionServiceUnitTest {
                 .quantity(new BigDecimal("5")).price(new BigDecimal("280.00"))
                 .executedAt(t2).build();
 
-        when(marketDataService.ensureSecurity("SBER", SecurityType.STOCK)).thenReturn(security);
+        when(marketDataService.registerSecurity("SBER", SecurityType.STOCK)).thenReturn(security);
         when(securityRepository.findById("SBER")).thenReturn(Optional.of(security));
         when(transactionRepository.save(any())).thenReturn(buy2);
-        when(transactionRepository.findByUserIdAndSecurity_Ticker(userId, "SBER"))
-                .thenReturn(List.of(buy1, buy2));
+        when(transactionRepository.findLastBefore(userId, "SBER", t2)).thenReturn(Optional.of(buy1));
+        when(transactionRepository.findSince(userId, "SBER", t2)).thenReturn(List.of(buy2));
         when(positionRepository.findByUserIdAndSecurity_Ticker(userId, "SBER"))
                 .thenReturn(Optional.empty());
         when(transactionMapper.toDto(any())).thenReturn(new TransactionResponseDto());
@@ -171,6 +209,10 @@ class TransactionServiceUnitTest {
         verify(positionRepository).save(captor.capture());
         assertThat(captor.getValue().getQuantity()).isEqualByComparingTo(new BigDecimal("15"));
         assertThat(captor.getValue().getAveragePrice()).isEqualByComparingTo(new BigDecimal("260.00"));
+        assertThat(buy2.getPositionQuantity()).isEqualByComparingTo(new BigDecimal("15"));
+        assertThat(buy2.getPositionCost()).isEqualByComparingTo(new BigDecimal("3900"));
+        // appended at the end: nothing before the new trade is reloaded
+        verify(transactionRepository, never()).findByUserIdAndSecurity_Ticker(any(), any());
     }
 
     @Test
@@ -184,7 +226,9 @@ class TransactionServiceUnitTest {
                 .type(TransactionType.BUY)
                 .quantity(new BigDecimal("10"))
                 .price(new BigDecimal("250.00"))
-                .executedAt(t1).createdAt(t1).build();
+                .executedAt(t1).createdAt(t1)
+                .positionQuantity(new BigDecimal("10")).positionCost(new BigDecimal("2500"))
+                .build();
 
         Transaction sell = Transaction.builder()
                 .userId(userId).security(security)
@@ -198,11 +242,11 @@ class TransactionServiceUnitTest {
                 .quantity(new BigDecimal("4")).price(new BigDecimal("300.00"))
                 .executedAt(t2).build();
 
-        when(marketDataService.ensureSecurity("SBER", SecurityType.STOCK)).thenReturn(security);
+        when(marketDataService.registerSecurity("SBER", SecurityType.STOCK)).thenReturn(security);
         when(securityRepository.findById("SBER")).thenReturn(Optional.of(security));
         when(transactionRepository.save(any())).thenReturn(sell);
-        when(transactionRepository.findByUserIdAndSecurity_Ticker(userId, "SBER"))
-                .thenReturn(List.of(buy, sell));
+        when(transactionRepository.findLastBefore(userId, "SBER", t2)).thenReturn(Optional.of(buy));
+        when(transactionRepository.findSince(userId, "SBER", t2)).thenReturn(List.of(sell));
         when(positionRepository.findByUserIdAndSecurity_Ticker(userId, "SBER"))
                 .thenReturn(Optional.empty());
         when(transactionMapper.toDto(any())).thenReturn(new TransactionResponseDto());
@@ -227,7 +271,9 @@ class TransactionServiceUnitTest {
                 .type(TransactionType.BUY)
                 .quantity(new BigDecimal("10"))
                 .price(new BigDecimal("250.00"))
-                .executedAt(t1).createdAt(t1).build();
+                .executedAt(t1).createdAt(t1)
+                .positionQuantity(new BigDecimal("10")).positionCost(new BigDecimal("2500"))
+                .build();
 
         Transaction sell = Transaction.builder()
                 .userId(userId).security(security)
@@ -248,10 +294,10 @@ class TransactionServiceUnitTest {
                 .quantity(new BigDecimal("10")).price(new BigDecimal("300.00"))
                 .executedAt(t2).build();
 
-        when(marketDataService.ensureSecurity("SBER", SecurityType.STOCK)).thenReturn(security);
+        when(marketDataService.registerSecurity("SBER", SecurityType.STOCK)).thenReturn(security);
         when(transactionRepository.save(any())).thenReturn(sell);
-        when(transactionRepository.findByUserIdAndSecurity_Ticker(userId, "SBER"))
-                .thenReturn(List.of(buy, sell));
+        when(transactionRepository.findLastBefore(userId, "SBER", t2)).thenReturn(Optional.of(buy));
+        when(transactionRepository.findSince(userId, "SBER", t2)).thenReturn(List.of(sell));
         when(positionRepository.findByUserIdAndSecurity_Ticker(userId, "SBER"))
                 .thenReturn(Optional.of(existingPosition));
         when(transactionMapper.toDto(any())).thenReturn(new TransactionResponseDto());
@@ -279,10 +325,9 @@ class TransactionServiceUnitTest {
                 .quantity(new BigDecimal("5")).price(new BigDecimal("300.00"))
                 .executedAt(t1).build();
 
-        when(marketDataService.ensureSecurity("SBER", SecurityType.STOCK)).thenReturn(security);
+        when(marketDataService.registerSecurity("SBER", SecurityType.STOCK)).thenReturn(security);
         when(transactionRepository.save(any())).thenReturn(sell);
-        when(transactionRepository.findByUserIdAndSecurity_Ticker(userId, "SBER"))
-                .thenReturn(List.of(sell));
+        when(transactionRepository.findSince(userId, "SBER", t1)).thenReturn(List.of(sell));
 
         assertThatThrownBy(() -> transactionService.create(userId, dto))
                 .isInstanceOf(IllegalStateException.class)
@@ -333,8 +378,7 @@ class TransactionServiceUnitTest {
 
         // After deleting tx1, only tx2 remains
         when(transactionRepository.findById(txId)).thenReturn(Optional.of(tx1));
-        when(transactionRepository.findByUserIdAndSecurity_Ticker(userId, "SBER"))
-                .thenReturn(List.of(tx2));
+        when(transactionRepository.findSince(userId, "SBER", t1)).thenReturn(List.of(tx2));
         when(positionRepository.findByUserIdAndSecurity_Ticker(userId, "SBER"))
                 .thenReturn(Optional.empty());
         when(securityRepository.findById("SBER")).thenReturn(Optional.of(security));
@@ -347,5 +391,186 @@ class TransactionServiceUnitTest {
         verify(positionRepository).save(captor.capture());
         assertThat(captor.getValue().getQuantity()).isEqualByComparingTo(new BigDecimal("5"));
         assertThat(captor.getValue().getAveragePrice()).isEqualByComparingTo(new BigDecimal("200.00"));
+        // valuations are rebuilt from the deleted transaction's date, not from the remaining one
+        verify(eventPublisher).publishEvent(new TradesChangedEvent(userId, t1));
+        verify(eventPublisher).publishEvent(new PortfolioChangedEvent(userId));
+    }
+
+    @Test
+    @DisplayName("Задним числом BUY — пересчитываются только последующие сделки, их сохранённое состояние обновляется")
+    void shouldReplayOnlyTradesAfterBackdatedBuy() {
+        Instant t1 = Instant.ofEpochSecond(1000);
+        Instant t2 = Instant.ofEpochSecond(2000);
+        Instant t3 = Instant.ofEpochSecond(3000);
+
+        Transaction first = Transaction.builder()
+                .userId(userId).security(security)
+                .type(TransactionType.BUY)
+                .quantity(new BigDecimal("10")).price(new BigDecimal("100.00"))
+                .executedAt(t1).createdAt(t1)
+                .positionQuantity(new BigDecimal("10")).positionCost(new BigDecimal("1000"))
+                .build();
+        Transaction backdated = Transaction.builder()
+                .userId(userId).security(security)
+                .type(TransactionType.BUY)
+                .quantity(new BigDecimal("10")).price(new BigDecimal("200.00"))
+                .executedAt(t2).createdAt(t3).build();
+        Transaction sell = Transaction.builder()
+                .userId(userId).security(security)
+                .type(TransactionType.SELL)
+                .quantity(new BigDecimal("5")).price(new BigDecimal("300.00"))
+                .executedAt(t3).createdAt(t3)
+                .positionQuantity(new BigDecimal("5")).positionCost(new BigDecimal("500"))
+                .build();
+
+        CreateTransactionDto dto = CreateTransactionDto.builder()
+                .ticker("SBER").type(TransactionType.BUY).securityType(SecurityType.STOCK)
+                .quantity(new BigDecimal("10")).price(new BigDecimal("200.00"))
+                .executedAt(t2).build();
+
+        when(marketDataService.registerSecurity("SBER", SecurityType.STOCK)).thenReturn(security);
+        when(securityRepository.findById("SBER")).thenReturn(Optional.of(security));
+        when(transactionRepository.save(any())).thenReturn(backdated);
+        when(transactionRepository.findLastBefore(userId, "SBER", t2)).thenReturn(Optional.of(first));
+        when(transactionRepository.findSince(userId, "SBER", t2)).thenReturn(List.of(backdated, sell));
+        when(transactionMapper.toDto(any())).thenReturn(new TransactionResponseDto());
+
+        transactionService.create(userId, dto);
+
+        // 20 shares for 3000, then 5 sold at the 150 average
+        assertThat(sell.getPositionQuantity()).isEqualByComparingTo(new BigDecimal("15"));
+        assertThat(sell.getPositionCost()).isEqualByComparingTo(new BigDecimal("2250"));
+        assertThat(first.getPositionCost()).isEqualByComparingTo(new BigDecimal("1000"));
+        ArgumentCaptor<Position> captor = ArgumentCaptor.forClass(Position.class);
+        verify(positionRepository).save(captor.capture());
+        assertThat(captor.getValue().getAveragePrice()).isEqualByComparingTo(new BigDecimal("150.00"));
+        verify(transactionRepository, never()).findByUserIdAndSecurity_Ticker(any(), any());
+    }
+
+    @Test
+    @DisplayName("Сделки без сохранённого состояния — один полный пересчёт истории")
+    void shouldReplayWholeHistoryWhenStateIsMissing() {
+        Instant t1 = Instant.ofEpochSecond(1000);
+        Instant t2 = Instant.ofEpochSecond(2000);
+
+        Transaction legacy = Transaction.builder()
+                .userId(userId).security(security)
+                .type(TransactionType.BUY)
+                .quantity(new BigDecimal("10")).price(new BigDecimal("250.00"))
+                .executedAt(t1).createdAt(t1).build();
+        Transaction buy = Transaction.builder()
+                .userId(userId).security(security)
+                .type(TransactionType.BUY)
+                .quantity(new BigDecimal("5")).price(new BigDecimal("280.00"))
+                .executedAt(t2).createdAt(t2).build();
+
+        CreateTransactionDto dto = CreateTransactionDto.builder()
+                .ticker("SBER").type(TransactionType.BUY).securityType(SecurityType.STOCK)
+                .quantity(new BigDecimal("5")).price(new BigDecimal("280.00"))
+                .executedAt(t2).build();
+
+        when(marketDataService.registerSecurity("SBER", SecurityType.STOCK)).thenReturn(security);
+        when(securityRepository.findById("SBER")).thenReturn(Optional.of(security));
+        when(transactionRepository.save(any())).thenReturn(buy);
+        when(transactionRepository.findLastBefore(userId, "SBER", t2)).thenReturn(Optional.of(legacy));
+        when(transactionRepository.findByUserIdAndSecurity_Ticker(userId, "SBER")).thenReturn(List.of(buy, legacy));
+        when(transactionMapper.toDto(any())).thenReturn(new TransactionResponseDto());
+
+        transactionService.create(userId, dto);
+
+        assertThat(legacy.getPositionQuantity()).isEqualByComparingTo(new BigDecimal("10"));
+        assertThat(buy.getPositionQuantity()).isEqualByComparingTo(new BigDecimal("15"));
+        assertThat(buy.getPositionCost()).isEqualByComparingTo(new BigDecimal("3900"));
+        verify(transactionRepository, never()).findSince(any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("importTransactions — тикеры разрешаются одним вызовом, вставка одним пакетом, каждая позиция один раз")
+    @SuppressWarnings("unchecked")
+    void shouldImportWithOneResolutionOneBatchAndOneRecalculationPerTicker() {
+        Security gazp = Security.builder()
+                .ticker("GAZP").name("Газпром").type(SecurityType.STOCK).historyStatus(HistoryStatus.READY).build();
+        String csv = """
+                executed_at,ticker,type,quantity,price
+                2024-01-10T10:00:00Z,SBER,BUY,10,250.00
+                2024-01-11T10:00:00Z,GAZP,BUY,100,150.00
+                2024-01-12T10:00:00Z,SBER,SELL,4,300.00
+                2024-01-12T10:00:00Z,SBER,BUY,2,280.00
+                """;
+
+        when(marketDataService.registerSecurities(Map.of("SBER", SecurityType.STOCK, "GAZP", SecurityType.STOCK)))
+                .thenReturn(Map.of("SBER", security, "GAZP", gazp));
+        when(securityRepository.findById("SBER")).thenReturn(Optional.of(security));
+        when(securityRepository.findById("GAZP")).thenReturn(Optional.of(gazp));
+
+        TransactionImportResultDto result = transactionService.importTransactions(userId, new StringReader(csv));
+
+        assertThat(result.getImported()).isEqualTo(4);
+        assertThat(result.getTickers()).containsExactly("GAZP", "SBER");
+        verify(marketDataService, never()).registerSecurity(any(), any());
+
+        ArgumentCaptor<Collection<Transaction>> inserted = ArgumentCaptor.forClass(Collection.class);
+        InOrder order = inOrder(transactionBulkWriter, taxLotService);
+        order.verify(transactionBulkWriter).insertTransactions(inserted.capture());
+        assertThat(inserted.getValue()).hasSize(4).allSatisfy(t -> assertThat(t.getPositionQuantity()).isNotNull());
+        // lots reference the inserted BUYs, so the ledger is updated after the batch
+        order.verify(taxLotService).onTradesChanged(eq(userId), eq("GAZP"),
+                eq(Instant.parse("2024-01-11T10:00:00Z")), any());
+        order.verify(taxLotService).onTradesChanged(eq(userId), eq("SBER"),
+                eq(Instant.parse("2024-01-10T10:00:00Z")), any());
+
+        ArgumentCaptor<Position> positions = ArgumentCaptor.forClass(Position.class);
+        verify(positionRepository, times(2)).save(positions.capture());
+        Position sber = positions.getAllValues().stream()
+                .filter(p -> p.getSecurity() == security).findFirst().orElseThrow();
+        // 10 × 250, 4 sold at the 250 average, then 2 × 280 on the same instant in file order: 6 × 250 + 560 = 2060
+        assertThat(sber.getQuantity()).isEqualByComparingTo(new BigDecimal("8"));
+        assertThat(sber.getTotalCost()).isEqualByComparingTo(new BigDecimal("2060.00"));
+        verify(eventPublisher).publishEvent(new TradesChangedEvent(userId, Instant.parse("2024-01-10T10:00:00Z")));
+        verify(eventPublisher).publishEvent(new PortfolioChangedEvent(userId));
+    }
+
+    @Test
+    @DisplayName("page — лишняя строка даёт курсор, курсор следующего запроса продолжает с ключа последней сделки")
+    void shouldReturnNextCursorAndContinueAfterIt() {
+        Transaction newer = Transaction.builder().id(UUID.randomUUID()).userId(userId).security(security)
+                .type(TransactionType.BUY).executedAt(Instant.parse("2024-01-12T10:00:00Z")).build();
+        Transaction older = Transaction.builder().id(UUID.randomUUID()).userId(userId).security(security)
+                .type(TransactionType.BUY).executedAt(Instant.parse("2024-01-11T10:00:00Z")).build();
+        Transaction oldest = Transaction.builder().id(UUID.randomUUID()).userId(userId).security(security)
+                .type(TransactionType.BUY).executedAt(Instant.parse("2024-01-10T10:00:00Z")).build();
+        TransactionFilter filter = new TransactionFilter(userId, "SBER", TransactionType.BUY,
+                Instant.parse("2023-12-31T21:00:00Z"), Instant.parse("2024-01-31T21:00:00Z"));
+        when(transactionPageLoader.load(filter, null, null, 3)).thenReturn(List.of(newer, older, oldest));
+        when(transactionPageLoader.load(filter, older.getExecutedAt(), older.getId(), 3)).thenReturn(List.of(oldest));
+
+        TransactionPageRequestDto request = new TransactionPageRequestDto();
+        request.setTicker("sber");
+        request.setType(TransactionType.BUY);
+        request.setFrom(LocalDate.of(2024, 1, 1));
+        request.setTo(LocalDate.of(2024, 1, 31));
+        request.setLimit(2);
+        TransactionPageDto first = transactionService.page(userId, request);
+
+        assertThat(first.getNextCursor()).isNotNull();
+        verify(transactionMapper).toDtoList(List.of(newer, older));
+
+        request.setCursor(first.getNextCursor());
+        TransactionPageDto second = transactionService.page(userId, request);
+
+        assertThat(second.getNextCursor()).isNull();
+        verify(transactionMapper).toDtoList(List.of(oldest));
+    }
+
+    @Test
+    @DisplayName("page — испорченный курсор → IllegalArgumentException")
+    void shouldRejectMalformedCursor() {
+        TransactionPageRequestDto request = new TransactionPageRequestDto();
+        request.setCursor("not-a-cursor");
+
+        assertThatThrownBy(() -> transactionService.page(userId, request))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("курсор");
+        verify(transactionPageLoader, never()).load(any(), any(), any(), anyInt());
     }
 }
@@ -0,0 +1,49 @@
+package pyc.lopatuxin.investment.service.market;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import pyc.lopatuxin.investment.client.moex.MoexIssClient;
+import pyc.lopatuxin.investment.config.MoexProperties;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("BoardQuotePollerTest")
+class BoardQuotePollerTest {
+
+    @Mock
+    private MoexIssClient moexIssClient;
+
+    @Test
+    @DisplayName("poll — опрос выключен → MOEX не вызывается, таблица пустая")
+    void poll_disabled_doesNothing() {
+        MoexProperties properties = new MoexProperties();
+        properties.setBoardPollEnabled(false);
+        BoardQuotePoller poller = new BoardQuotePoller(moexIssClient, properties);
+
+        poller.poll();
+
+        verifyNoInteractions(moexIssClient);
+        assertThat(poller.current()).isSameAs(QuoteTable.empty());
+    }
+
+    @Test
+    @DisplayName("isTradingHours — будни 10:00–19:00 МСК, выходные и вечер — нет")
+    void isTradingHours_mskWeekdaySession() {
+        ZoneId msk = ZoneId.of("Europe/Moscow");
+
+        assertThat(BoardQuotePoller.isTradingHours(ZonedDateTime.of(2026, 3, 2, 10, 0, 0, 0, msk))).isTrue();
+        assertThat(BoardQuotePoller.isTradingHours(ZonedDateTime.of(2026, 3, 2, 18, 59, 0, 0, msk))).isTrue();
+        assertThat(BoardQuotePoller.isTradingHours(ZonedDateTime.of(2026, 3, 2, 19, 0, 0, 0, msk))).isFalse();
+        assertThat(BoardQuotePoller.isTradingHours(ZonedDateTime.of(2026, 3, 7, 12, 0, 0, 0, msk))).isFalse();
+        // 07:30 UTC is 10:30 in Moscow
+        assertThat(BoardQuotePoller.isTradingHours(ZonedDateTime.of(2026, 3, 2, 7, 30, 0, 0, ZoneId.of("UTC")))).isTrue();
+    }
+}
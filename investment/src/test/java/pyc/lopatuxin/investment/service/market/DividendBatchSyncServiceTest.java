@@ -0,0 +1,103 @@
+package pyc.lopatuxin.investment.service.market;
+
+import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import pyc.lopatuxin.investment.client.moex.MoexIssClient;
+import pyc.lopatuxin.investment.client.moex.MoexUnavailableException;
+import pyc.lopatuxin.investment.config.MoexProperties;
+import pyc.lopatuxin.investment.repository.DividendRepository;
+import pyc.lopatuxin.investment.repository.MarketDataBulkWriter;
+import pyc.lopatuxin.investment.repository.PositionRepository;
+import pyc.lopatuxin.investment.repository.SecurityRepository;
+import pyc.lopatuxin.investment.service.market.dto.DividendSyncReport;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("DividendBatchSyncServiceTest")
+class DividendBatchSyncServiceTest {
+
+    @Mock
+    private DividendSyncService dividendSyncService;
+
+    private MoexProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private DividendBatchSyncService batchSyncService;
+
+    @BeforeEach
+    void setUp() {
+        properties = new MoexProperties();
+        properties.setDividendSyncConcurrency(2);
+        meterRegistry = new SimpleMeterRegistry();
+        batchSyncService = new DividendBatchSyncService(dividendSyncService, properties,
+                RateLimiterRegistry.ofDefaults(), meterRegistry);
+    }
+
+    @Test
+    @DisplayName("syncAll — первый тикер падает → второй обрабатывается, отказ учтён в отчёте")
+    void syncAll_continuesOnError_forOneTicker() {
+        when(dividendSyncService.syncDividends("SBER")).thenThrow(new RuntimeException("dividends unavailable"));
+        when(dividendSyncService.syncDividends("GAZP")).thenReturn(2);
+
+        DividendSyncReport report = batchSyncService.syncAll(List.of("SBER", "GAZP"));
+
+        assertThat(report.tickers()).isEqualTo(2);
+        assertThat(report.rowsAdded()).isEqualTo(2);
+        assertThat(report.failed()).isEqualTo(1);
+        verify(dividendSyncService).syncDividends("SBER");
+        verify(dividendSyncService).syncDividends("GAZP");
+        assertThat(meterRegistry.counter("investment.dividends.rows.added").count()).isEqualTo(2.0);
+        assertThat(meterRegistry.counter("investment.dividends.sync.failures").count()).isEqualTo(1.0);
+    }
+
+    @Test
+    @DisplayName("syncAll — MOEX недоступна → тикеры считаются отказами, а не синхронизированными")
+    void syncAll_moexUnavailable_countedAsFailures() {
+        MoexIssClient moexIssClient = mock(MoexIssClient.class);
+        when(moexIssClient.fetchDividends(anyString())).thenThrow(new MoexUnavailableException("MOEX unavailable"));
+        DividendSyncService realSync = new DividendSyncService(moexIssClient, mock(DividendRepository.class),
+                mock(SecurityRepository.class), mock(PositionRepository.class), mock(MarketDataBulkWriter.class),
+                mock(DividendLoaderService.class), mock(ApplicationEventPublisher.class));
+        DividendBatchSyncService service = new DividendBatchSyncService(realSync, properties,
+                RateLimiterRegistry.ofDefaults(), meterRegistry);
+
+        DividendSyncReport report = service.syncAll(List.of("SBER", "GAZP"));
+
+        assertThat(report.rowsAdded()).isZero();
+        assertThat(report.failed()).isEqualTo(2);
+        assertThat(meterRegistry.counter("investment.dividends.sync.failures").count()).isEqualTo(2.0);
+    }
+
+    @Test
+    @DisplayName("syncAll — тикеров больше лимита → одновременно работает не больше dividendSyncConcurrency")
+    void syncAll_respectsConcurrencyLimit() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        when(dividendSyncService.syncDividends(anyString())).thenAnswer(inv -> {
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            running.decrementAndGet();
+            return 1;
+        });
+
+        DividendSyncReport report = batchSyncService.syncAll(List.of("T1", "T2", "T3", "T4", "T5", "T6"));
+
+        assertThat(report.rowsAdded()).isEqualTo(6);
+        assertThat(report.failed()).isZero();
+        assertThat(peak.get()).isLessThanOrEqualTo(2);
+    }
+}
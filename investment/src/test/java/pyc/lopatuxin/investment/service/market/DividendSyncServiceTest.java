@@ -8,6 +8,7 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import pyc.lopatuxin.investment.client.moex.MoexIssClient;
 import pyc.lopatuxin.investment.client.moex.MoexUnavailableException;
 import pyc.lopatuxin.investment.client.moex.dto.MoexDividendDto;
@@ -16,16 +17,21 @@ import pyc.lopatuxin.investment.entity.Security;
 import pyc.lopatuxin.investment.entity.enums.DividendStatus;
 import pyc.lopatuxin.investment.entity.enums.HistoryStatus;
 import pyc.lopatuxin.investment.entity.enums.SecurityType;
+import pyc.lopatuxin.investment.event.PortfolioChangedEvent;
 import pyc.lopatuxin.investment.repository.DividendRepository;
+import pyc.lopatuxin.investment.repository.MarketDataBulkWriter;
+import pyc.lopatuxin.investment.repository.PositionRepository;
 import pyc.lopatuxin.investment.repository.SecurityRepository;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -44,6 +50,15 @@ class DividendSyncServiceTest {
     @Mock
     private SecurityRepository securityRepository;
 
+    @Mock
+    private PositionRepository positionRepository;
+
+    @Mock
+    private MarketDataBulkWriter marketDataBulkWriter;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     @InjectMocks
     private DividendSyncService dividendSyncService;
 
@@ -70,22 +85,47 @@ class DividendSyncServiceTest {
 
         when(moexIssClient.fetchDividends("SBER")).thenReturn(List.of(dto));
         when(securityRepository.findById("SBER")).thenReturn(Optional.of(sber));
-        when(dividendRepository.existsBySecurity_TickerAndRecordDate("SBER", LocalDate.of(2023, 5, 15)))
-                .thenReturn(false);
+        when(dividendRepository.findRecordDatesByTicker("SBER")).thenReturn(Set.of());
+        UUID holder = UUID.randomUUID();
+        when(positionRepository.findUserIdsByTicker("SBER")).thenReturn(List.of(holder));
 
         dividendSyncService.syncDividends("SBER");
 
-        ArgumentCaptor<Dividend> captor = ArgumentCaptor.forClass(Dividend.class);
-        verify(dividendRepository).save(captor.capture());
-        Dividend saved = captor.getValue();
+        List<Dividend> inserted = captureInserted();
+        assertThat(inserted).hasSize(1);
+        Dividend saved = inserted.getFirst();
         assertThat(saved.getSecurity()).isEqualTo(sber);
         assertThat(saved.getAmountPerShare()).isEqualByComparingTo(new BigDecimal("25.0"));
         assertThat(saved.getCurrency()).isEqualTo("RUB");
         assertThat(saved.getRecordDate()).isEqualTo(LocalDate.of(2023, 5, 15));
+        verify(eventPublisher).publishEvent(new PortfolioChangedEvent(holder));
     }
 
     @Test
-    @DisplayName("syncDividends — дивиденд уже существует → save не вызывается")
+    @DisplayName("syncDividends — новых нет, объявленный дивиденд стал выплаченным → держатели получают PortfolioChangedEvent")
+    void syncDividends_statusUpdated_notifiesHolders() {
+        MoexDividendDto dto = new MoexDividendDto();
+        dto.setSecid("SBER");
+        dto.setRegistryCloseDate(LocalDate.of(2023, 5, 15));
+        dto.setValue(new BigDecimal("25.0"));
+
+        when(moexIssClient.fetchDividends("SBER")).thenReturn(List.of(dto));
+        when(securityRepository.findById("SBER")).thenReturn(Optional.of(sber));
+        when(dividendRepository.findRecordDatesByTicker("SBER")).thenReturn(Set.of(LocalDate.of(2023, 5, 15)));
+        when(dividendRepository.markPaidBefore("SBER", LocalDate.now())).thenReturn(1);
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        when(positionRepository.findUserIdsByTicker("SBER")).thenReturn(List.of(first, second));
+
+        dividendSyncService.syncDividends("SBER");
+
+        assertThat(captureInserted()).isEmpty();
+        verify(eventPublisher).publishEvent(new PortfolioChangedEvent(first));
+        verify(eventPublisher).publishEvent(new PortfolioChangedEvent(second));
+    }
+
+    @Test
+    @DisplayName("syncDividends — дивиденд уже существует → в пакет вставки не попадает")
     void syncDividends_skipsExisting_whenAlreadySaved() {
         MoexDividendDto dto = new MoexDividendDto();
         dto.setSecid("SBER");
@@ -95,24 +135,24 @@ class DividendSyncServiceTest {
 
         when(moexIssClient.fetchDividends("SBER")).thenReturn(List.of(dto));
         when(securityRepository.findById("SBER")).thenReturn(Optional.of(sber));
-        when(dividendRepository.existsBySecurity_TickerAndRecordDate("SBER", LocalDate.of(2023, 5, 15)))
-                .thenReturn(true);
+        when(dividendRepository.findRecordDatesByTicker("SBER")).thenReturn(Set.of(LocalDate.of(2023, 5, 15)));
 
         dividendSyncService.syncDividends("SBER");
 
-        verify(dividendRepository, never()).save(any());
+        assertThat(captureInserted()).isEmpty();
+        verify(eventPublisher, never()).publishEvent(any(Object.class));
     }
 
     @Test
-    @DisplayName("syncDividends — MOEX недоступен → метод завершается без исключений, save не вызывается")
-    void syncDividends_doesNotThrow_whenMoexUnavailable() {
+    @DisplayName("syncDividends — MOEX недоступен → исключение пробрасывается, вставка не вызывается")
+    void syncDividends_throws_whenMoexUnavailable() {
         when(moexIssClient.fetchDividends("SBER"))
                 .thenThrow(new MoexUnavailableException("MOEX unavailable"));
 
-        assertThatCode(() -> dividendSyncService.syncDividends("SBER"))
-                .doesNotThrowAnyException();
+        assertThatThrownBy(() -> dividendSyncService.syncDividends("SBER"))
+                .isInstanceOf(MoexUnavailableException.class);
 
-        verify(dividendRepository, never()).save(any());
+        verify(marketDataBulkWriter, never()).insertDividends(any());
     }
 
     @Test
@@ -126,13 +166,11 @@ class DividendSyncServiceTest {
 
         when(moexIssClient.fetchDividends("SBER")).thenReturn(List.of(dto));
         when(securityRepository.findById("SBER")).thenReturn(Optional.of(sber));
-        when(dividendRepository.existsBySecurity_TickerAndRecordDate(any(), any())).thenReturn(false);
+        when(dividendRepository.findRecordDatesByTicker("SBER")).thenReturn(Set.of());
 
         dividendSyncService.syncDividends("SBER");
 
-        ArgumentCaptor<Dividend> captor = ArgumentCaptor.forClass(Dividend.class);
-        verify(dividendRepository).save(captor.capture());
-        assertThat(captor.getValue().getStatus()).isEqualTo(DividendStatus.PAID);
+        assertThat(captureInserted().getFirst().getStatus()).isEqualTo(DividendStatus.PAID);
     }
 
     @Test
@@ -146,12 +184,39 @@ class DividendSyncServiceTest {
 
         when(moexIssClient.fetchDividends("SBER")).thenReturn(List.of(dto));
         when(securityRepository.findById("SBER")).thenReturn(Optional.of(sber));
-        when(dividendRepository.existsBySecurity_TickerAndRecordDate(any(), any())).thenReturn(false);
+        when(dividendRepository.findRecordDatesByTicker("SBER")).thenReturn(Set.of());
 
         dividendSyncService.syncDividends("SBER");
 
-        ArgumentCaptor<Dividend> captor = ArgumentCaptor.forClass(Dividend.class);
-        verify(dividendRepository).save(captor.capture());
-        assertThat(captor.getValue().getStatus()).isEqualTo(DividendStatus.ANNOUNCED);
+        assertThat(captureInserted().getFirst().getStatus()).isEqualTo(DividendStatus.ANNOUNCED);
+    }
+
+    @Test
+    @DisplayName("syncDividends — MOEX повторяет дату отсечки → строка вставляется один раз")
+    void syncDividends_duplicateRecordDate_insertedOnce() {
+        MoexDividendDto first = new MoexDividendDto();
+        first.setSecid("SBER");
+        first.setRegistryCloseDate(LocalDate.of(2023, 5, 15));
+        first.setValue(new BigDecimal("25.0"));
+        MoexDividendDto repeated = new MoexDividendDto();
+        repeated.setSecid("SBER");
+        repeated.setRegistryCloseDate(LocalDate.of(2023, 5, 15));
+        repeated.setValue(new BigDecimal("25.0"));
+
+        when(moexIssClient.fetchDividends("SBER")).thenReturn(List.of(first, repeated));
+        when(securityRepository.findById("SBER")).thenReturn(Optional.of(sber));
+        when(dividendRepository.findRecordDatesByTicker("SBER")).thenReturn(Set.of());
+
+        int added = dividendSyncService.syncDividends("SBER");
+
+        assertThat(added).isEqualTo(1);
+        assertThat(captureInserted()).hasSize(1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Dividend> captureInserted() {
+        ArgumentCaptor<List<Dividend>> captor = ArgumentCaptor.forClass(List.class);
+        verify(marketDataBulkWriter).insertDividends(captor.capture());
+        return captor.getValue();
     }
 }
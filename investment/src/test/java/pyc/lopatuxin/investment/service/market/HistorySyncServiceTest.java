@@ -0,0 +1,48 @@
+package pyc.lopatuxin.investment.service.market;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import pyc.lopatuxin.investment.client.moex.MoexUnavailableException;
+import pyc.lopatuxin.investment.service.market.dto.HistorySyncReport;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("HistorySyncServiceTest")
+class HistorySyncServiceTest {
+
+    @Mock
+    private MarketDataService marketDataService;
+
+    private SimpleMeterRegistry meterRegistry;
+    private HistorySyncService historySyncService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        historySyncService = new HistorySyncService(marketDataService, meterRegistry);
+    }
+
+    @Test
+    @DisplayName("syncDeltas — MOEX недоступна для тикера → считается в failed, а не как «нет новых строк»")
+    void syncDeltas_moexUnavailable_countedAsFailed() {
+        when(marketDataService.ensureHistory("SBER")).thenReturn(3);
+        when(marketDataService.ensureHistory("GAZP")).thenReturn(0);
+        when(marketDataService.ensureHistory("LKOH")).thenThrow(new MoexUnavailableException("MOEX down"));
+
+        HistorySyncReport report = historySyncService.syncDeltas(List.of("SBER", "GAZP", "LKOH"));
+
+        assertThat(report.tickers()).isEqualTo(3);
+        assertThat(report.rowsAdded()).isEqualTo(3);
+        assertThat(report.failed()).isEqualTo(1);
+        assertThat(meterRegistry.get("investment.history.rows.added").counter().count()).isEqualTo(3);
+    }
+}
@@ -0,0 +1,76 @@
+package pyc.lopatuxin.investment.service.market;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import pyc.lopatuxin.investment.entity.OutboxEvent;
+import pyc.lopatuxin.investment.entity.enums.OutboxEventType;
+import pyc.lopatuxin.investment.repository.OutboxEventRepository;
+
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("MarketDataOutboxTest")
+class MarketDataOutboxTest {
+
+    @Mock
+    private OutboxEventRepository outboxEventRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    private SimpleMeterRegistry meterRegistry;
+    private MarketDataOutbox outbox;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        outbox = new MarketDataOutbox(outboxEventRepository, eventPublisher, meterRegistry);
+    }
+
+    @Test
+    @DisplayName("enqueue — есть только исчерпанное событие → новое сохраняется")
+    void enqueue_onlyExhaustedRowStored_storesNewEvent() {
+        when(outboxEventRepository.existsByTypeAndAggregateKeyAndAttemptsLessThan(
+                OutboxEventType.DIVIDEND_SYNC, "SBER", MarketDataOutbox.MAX_ATTEMPTS)).thenReturn(false);
+
+        outbox.enqueue(OutboxEventType.DIVIDEND_SYNC, "SBER");
+
+        verify(outboxEventRepository).save(any(OutboxEvent.class));
+    }
+
+    @Test
+    @DisplayName("fail — последняя попытка → событие считается в метрике исчерпанных, более ранние — нет")
+    void fail_lastAttempt_countsExhausted() {
+        outbox.fail(event(MarketDataOutbox.MAX_ATTEMPTS - 1), "MOEX down");
+        assertThat(meterRegistry.find("investment.outbox.exhausted").counter()).isNull();
+
+        OutboxEvent last = event(MarketDataOutbox.MAX_ATTEMPTS);
+        outbox.fail(last, "MOEX down");
+
+        verify(outboxEventRepository).recordError(last.getId(), "MOEX down");
+        assertThat(meterRegistry.get("investment.outbox.exhausted").tag("type", "SECURITY_ENRICHMENT").counter()
+                .count()).isEqualTo(1);
+    }
+
+    private static OutboxEvent event(int attempts) {
+        return OutboxEvent.builder()
+                .id(UUID.randomUUID())
+                .type(OutboxEventType.SECURITY_ENRICHMENT)
+                .aggregateKey("SBER")
+                .attempts(attempts)
+                .nextAttemptAt(Instant.now())
+                .build();
+    }
+}
@@ -0,0 +1,126 @@
+package pyc.lopatuxin.investment.service.market;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import pyc.lopatuxin.investment.client.moex.MoexUnavailableException;
+import pyc.lopatuxin.investment.entity.OutboxEvent;
+import pyc.lopatuxin.investment.entity.enums.OutboxEventType;
+import pyc.lopatuxin.investment.service.PortfolioValuationService;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("OutboxProcessorTest")
+class OutboxProcessorTest {
+
+    @Mock
+    private MarketDataOutbox marketDataOutbox;
+
+    @Mock
+    private MarketDataService marketDataService;
+
+    @Mock
+    private DividendSyncService dividendSyncService;
+
+    @Mock
+    private PortfolioValuationService portfolioValuationService;
+
+    @InjectMocks
+    private OutboxProcessor outboxProcessor;
+
+    @Test
+    @DisplayName("drain — обогащение: описание MOEX, история, пересчёт стоимости; событие удаляется")
+    void drain_enrichment_completesEvent() {
+        OutboxEvent event = event(OutboxEventType.SECURITY_ENRICHMENT, "SBER");
+        when(marketDataOutbox.claim(anyInt())).thenReturn(List.of(event), List.of());
+        when(marketDataService.ensureHistory("SBER")).thenReturn(750);
+
+        assertThat(outboxProcessor.drain()).isEqualTo(1);
+
+        verify(marketDataService).enrichSecurity("SBER");
+        verify(portfolioValuationService).onHistoryLoaded("SBER");
+        verify(marketDataOutbox).complete(event.getId());
+        verify(marketDataOutbox, never()).fail(any(), anyString());
+    }
+
+    @Test
+    @DisplayName("drain — MOEX недоступна → ошибка записана, событие остаётся для повтора, остальные обрабатываются")
+    void drain_failure_recordsErrorAndContinues() {
+        OutboxEvent enrichment = event(OutboxEventType.SECURITY_ENRICHMENT, "SBER");
+        OutboxEvent dividends = event(OutboxEventType.DIVIDEND_SYNC, "GAZP");
+        when(marketDataOutbox.claim(anyInt())).thenReturn(List.of(enrichment, dividends), List.of());
+        doThrow(new MoexUnavailableException("MOEX down")).when(marketDataService).enrichSecurity("SBER");
+
+        assertThat(outboxProcessor.drain()).isEqualTo(2);
+
+        verify(marketDataOutbox).fail(enrichment, "MOEX down");
+        verify(marketDataOutbox, never()).complete(enrichment.getId());
+        verify(marketDataService, never()).ensureHistory(anyString());
+        verify(dividendSyncService).syncDividends("GAZP");
+        verify(marketDataOutbox).complete(dividends.getId());
+    }
+
+    @Test
+    @DisplayName("drain — синхронизация дивидендов упирается в недоступную MOEX → событие остаётся в очереди")
+    void drain_dividendSyncUnavailable_keepsEventQueued() {
+        OutboxEvent dividends = event(OutboxEventType.DIVIDEND_SYNC, "GAZP");
+        when(marketDataOutbox.claim(anyInt())).thenReturn(List.of(dividends), List.of());
+        when(dividendSyncService.syncDividends("GAZP")).thenThrow(new MoexUnavailableException("MOEX down"));
+
+        outboxProcessor.drain();
+
+        verify(marketDataOutbox).fail(dividends, "MOEX down");
+        verify(marketDataOutbox, never()).complete(dividends.getId());
+    }
+
+    @Test
+    @DisplayName("drain — описание получено, но история упирается в недоступную MOEX → событие остаётся в очереди")
+    void drain_historyUnavailable_keepsEventQueued() {
+        OutboxEvent enrichment = event(OutboxEventType.SECURITY_ENRICHMENT, "SBER");
+        when(marketDataOutbox.claim(anyInt())).thenReturn(List.of(enrichment), List.of());
+        when(marketDataService.ensureHistory("SBER")).thenThrow(new MoexUnavailableException("MOEX down"));
+
+        outboxProcessor.drain();
+
+        verify(marketDataService).enrichSecurity("SBER");
+        verify(marketDataOutbox).fail(enrichment, "MOEX down");
+        verify(marketDataOutbox, never()).complete(enrichment.getId());
+        verify(portfolioValuationService, never()).onHistoryLoaded(anyString());
+    }
+
+    @Test
+    @DisplayName("retryDelay — удваивается с каждой попыткой и ограничена сверху")
+    void retryDelay_growsExponentiallyWithCap() {
+        assertThat(MarketDataOutbox.retryDelay(1)).isEqualTo(Duration.ofSeconds(30));
+        assertThat(MarketDataOutbox.retryDelay(2)).isEqualTo(Duration.ofMinutes(1));
+        assertThat(MarketDataOutbox.retryDelay(5)).isEqualTo(Duration.ofMinutes(8));
+        assertThat(MarketDataOutbox.retryDelay(10)).isEqualTo(Duration.ofHours(4).plusMinutes(16));
+        assertThat(MarketDataOutbox.retryDelay(40)).isEqualTo(Duration.ofHours(6));
+    }
+
+    private static OutboxEvent event(OutboxEventType type, String ticker) {
+        return OutboxEvent.builder()
+                .id(UUID.randomUUID())
+                .type(type)
+                .aggregateKey(ticker)
+                .attempts(1)
+                .nextAttemptAt(Instant.now())
+                .build();
+    }
+}
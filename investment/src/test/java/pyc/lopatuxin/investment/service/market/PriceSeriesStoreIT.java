@@ -0,0 +1,70 @@
+package pyc.lopatuxin.investment.service.market;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import pyc.lopatuxin.investment.AbstractIntegrationTest;
+import pyc.lopatuxin.investment.entity.PriceHistory;
+import pyc.lopatuxin.investment.entity.Security;
+import pyc.lopatuxin.investment.entity.enums.HistoryStatus;
+import pyc.lopatuxin.investment.entity.enums.SecurityType;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PriceSeriesStoreIT extends AbstractIntegrationTest {
+
+    @Autowired
+    private PriceSeriesStore priceSeriesStore;
+
+    @Autowired
+    private MarketDataService marketDataService;
+
+    @BeforeEach
+    void cleanUp() {
+        dividendRepository.deleteAll();
+        priceSnapshotRepository.deleteAll();
+        priceHistoryRepository.deleteAll();
+        transactionRepository.deleteAll();
+        positionRepository.deleteAll();
+        securityRepository.deleteAll();
+        securityRepository.save(Security.builder()
+                .ticker("SBER")
+                .name("Сбербанк")
+                .type(SecurityType.STOCK)
+                .historyStatus(HistoryStatus.PENDING)
+                .build());
+    }
+
+    @Test
+    @DisplayName("Запись истории → версия из БД меняется, закэшированная серия перечитывается")
+    void shouldChangeVersionAndReloadSeriesOnHistoryWrite() {
+        LocalDate day = LocalDate.of(2024, 1, 15);
+        marketDataService.saveHistoryAndUpdateStatus("SBER", List.of(candle(day, "270.00")));
+        String first = priceSeriesStore.version("SBER");
+        assertThat(priceSeriesStore.get("SBER").size()).isEqualTo(1);
+        assertThat(priceSeriesStore.version("SBER")).isEqualTo(first);
+
+        marketDataService.saveHistoryAndUpdateStatus("SBER", List.of(candle(day.plusDays(1), "280.00")));
+
+        assertThat(priceSeriesStore.version("SBER")).isNotEqualTo(first);
+        assertThat(priceSeriesStore.get("SBER").size()).isEqualTo(2);
+        assertThat(priceSeriesStore.version("UNKNOWN")).isEqualTo("none");
+    }
+
+    private static PriceHistory candle(LocalDate date, String close) {
+        return PriceHistory.builder()
+                .ticker("SBER")
+                .tradeDate(date)
+                .open(new BigDecimal(close))
+                .close(new BigDecimal(close))
+                .high(new BigDecimal(close))
+                .low(new BigDecimal(close))
+                .volume(1_000L)
+                .build();
+    }
+}
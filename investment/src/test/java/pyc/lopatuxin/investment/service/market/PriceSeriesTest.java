@@ -0,0 +1,79 @@
+package pyc.lopatuxin.investment.service.market;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("PriceSeriesTest")
+class PriceSeriesTest {
+
+    private static final LocalDate FRIDAY = LocalDate.of(2024, 1, 12);
+    private static final LocalDate MONDAY = LocalDate.of(2024, 1, 15);
+    private static final LocalDate TUESDAY = LocalDate.of(2024, 1, 16);
+
+    @Test
+    @DisplayName("indexAtOrBefore / indexAtOrAfter — выходные и даты за границами серии")
+    void indexLookups_handleGapsAndBounds() {
+        PriceSeries series = PriceSeries.builder(3)
+                .add(FRIDAY, null, null, null, new BigDecimal("265.00"), null)
+                .add(MONDAY, null, null, null, new BigDecimal("270.00"), null)
+                .add(TUESDAY, null, null, null, new BigDecimal("280.00"), null)
+                .build();
+        LocalDate saturday = FRIDAY.plusDays(1);
+
+        assertThat(series.indexAtOrBefore(saturday)).isZero();
+        assertThat(series.indexAtOrAfter(saturday)).isEqualTo(1);
+        assertThat(series.indexAtOrBefore(MONDAY)).isEqualTo(1);
+        assertThat(series.indexAtOrAfter(MONDAY)).isEqualTo(1);
+        assertThat(series.indexAtOrBefore(FRIDAY.minusDays(1))).isEqualTo(-1);
+        assertThat(series.indexAtOrAfter(TUESDAY.plusDays(1))).isEqualTo(series.size());
+    }
+
+    @Test
+    @DisplayName("add — цены хранятся в копейках, пустые open/high/low берутся из close, объём может отсутствовать")
+    void add_storesMinorUnits() {
+        PriceSeries series = PriceSeries.builder(1)
+                .add(MONDAY, new BigDecimal("269.5"), new BigDecimal("272.004"), null, new BigDecimal("271.10"), 11000L)
+                .build();
+
+        assertThat(series.open(0)).isEqualByComparingTo("269.50");
+        assertThat(series.high(0)).isEqualByComparingTo("272.00");
+        assertThat(series.low(0)).isEqualByComparingTo("271.10");
+        assertThat(series.closeMinor(0)).isEqualTo(27110L);
+        assertThat(series.volume(0)).isEqualTo(11000L);
+        assertThat(PriceSeries.builder(1)
+                .add(MONDAY, null, null, null, BigDecimal.ONE, null)
+                .build()
+                .volume(0)).isNull();
+    }
+
+    @Test
+    @DisplayName("add — повтор даты заменяет свечу, дата из прошлого → IllegalArgumentException")
+    void add_repeatedDateOverwrites_outOfOrderThrows() {
+        PriceSeries.Builder builder = PriceSeries.builder(2)
+                .add(FRIDAY, null, null, null, new BigDecimal("265.00"), null)
+                .add(MONDAY, null, null, null, new BigDecimal("270.00"), null)
+                .add(MONDAY, null, null, null, new BigDecimal("271.00"), null);
+
+        assertThatThrownBy(() -> builder.add(FRIDAY, null, null, null, BigDecimal.ONE, null))
+                .isInstanceOf(IllegalArgumentException.class);
+        PriceSeries series = builder.build();
+        assertThat(series.size()).isEqualTo(2);
+        assertThat(series.close(1)).isEqualByComparingTo("271.00");
+    }
+
+    @Test
+    @DisplayName("build — пустой билдер возвращает пустую серию")
+    void build_empty() {
+        PriceSeries series = PriceSeries.builder(0).build();
+
+        assertThat(series.isEmpty()).isTrue();
+        assertThat(series.indexAtOrBefore(MONDAY)).isEqualTo(-1);
+        assertThat(series.indexAtOrAfter(MONDAY)).isZero();
+    }
+}
@@ -0,0 +1,75 @@
+package pyc.lopatuxin.investment.service.market;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import pyc.lopatuxin.investment.AbstractIntegrationTest;
+import pyc.lopatuxin.investment.client.moex.MoexSnapshotDispatcher;
+import pyc.lopatuxin.investment.client.moex.dto.MoexSnapshotDto;
+import pyc.lopatuxin.investment.entity.PriceSnapshot;
+import pyc.lopatuxin.investment.entity.Security;
+import pyc.lopatuxin.investment.entity.enums.HistoryStatus;
+import pyc.lopatuxin.investment.entity.enums.SecurityType;
+import pyc.lopatuxin.investment.service.market.dto.SnapshotResult;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.when;
+
+class QuoteCacheIT extends AbstractIntegrationTest {
+
+    @MockitoBean
+    private MoexSnapshotDispatcher moexSnapshotDispatcher;
+
+    @Autowired
+    private MarketDataService marketDataService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    void cleanUp() {
+        dividendRepository.deleteAll();
+        priceSnapshotRepository.deleteAll();
+        priceHistoryRepository.deleteAll();
+        transactionRepository.deleteAll();
+        positionRepository.deleteAll();
+        securityRepository.deleteAll();
+        securityRepository.save(Security.builder()
+                .ticker("SBER")
+                .name("Сбербанк")
+                .type(SecurityType.STOCK)
+                .historyStatus(HistoryStatus.READY)
+                .build());
+    }
+
+    @Test
+    @DisplayName("Котировка загружена с MOEX внутри read-only транзакции → ответ получен, снимок сохранён вне её")
+    void shouldPersistQuotesFetchedInsideReadOnlyTransaction() throws Exception {
+        when(moexSnapshotDispatcher.fetchSnapshots(anyCollection())).thenReturn(Map.of(
+                "SBER", new MoexSnapshotDto("SBER", new BigDecimal("315.40"), new BigDecimal("312.00"))));
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+
+        // the same kind of transaction ProjectionService and the portfolio readers run in
+        Map<String, SnapshotResult> quotes = readOnly.execute(status -> marketDataService.getSnapshots(List.of("SBER")));
+
+        assertThat(quotes.get("SBER").lastPrice()).isEqualByComparingTo("315.40");
+        assertThat(quotes.get("SBER").stale()).isFalse();
+        Optional<PriceSnapshot> stored = Optional.empty();
+        for (int i = 0; i < 50 && stored.isEmpty(); i++) {
+            Thread.sleep(100);
+            stored = priceSnapshotRepository.findById("SBER");
+        }
+        assertThat(stored).hasValueSatisfying(s -> assertThat(s.getLastPrice()).isEqualByComparingTo("315.40"));
+    }
+}
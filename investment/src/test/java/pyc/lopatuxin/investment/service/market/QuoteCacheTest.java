@@ -0,0 +1,238 @@
+package pyc.lopatuxin.investment.service.market;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import pyc.lopatuxin.investment.client.moex.MoexSnapshotDispatcher;
+import pyc.lopatuxin.investment.client.moex.MoexUnavailableException;
+import pyc.lopatuxin.investment.client.moex.dto.MoexBoardQuoteDto;
+import pyc.lopatuxin.investment.client.moex.dto.MoexSnapshotDto;
+import pyc.lopatuxin.investment.config.MoexProperties;
+import pyc.lopatuxin.investment.entity.PriceSnapshot;
+import pyc.lopatuxin.investment.repository.MarketDataBulkWriter;
+import pyc.lopatuxin.investment.repository.PriceSnapshotRepository;
+import pyc.lopatuxin.investment.service.market.dto.SnapshotResult;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("QuoteCacheTest")
+class QuoteCacheTest {
+
+    @Mock
+    private MoexSnapshotDispatcher moexSnapshotDispatcher;
+
+    @Mock
+    private PriceSnapshotRepository priceSnapshotRepository;
+
+    @Mock
+    private MarketDataBulkWriter marketDataBulkWriter;
+
+    @Mock
+    private BoardQuotePoller boardQuotePoller;
+
+    private final List<Runnable> backgroundTasks = new ArrayList<>();
+
+    private QuoteCache quoteCache;
+
+    @BeforeEach
+    void setUp() {
+        MoexProperties properties = new MoexProperties();
+        properties.setSnapshotTtlMinutes(5);
+        properties.setSnapshotMaxStaleMinutes(60);
+        // background work is queued and run explicitly to keep the order observable
+        quoteCache = new QuoteCache(moexSnapshotDispatcher, priceSnapshotRepository, marketDataBulkWriter, properties,
+                boardQuotePoller, backgroundTasks::add);
+        lenient().when(boardQuotePoller.current()).thenReturn(QuoteTable.empty());
+    }
+
+    @Test
+    @DisplayName("get — свежий снимок в БД → MOEX не вызывается, повторный запрос обслуживается из памяти")
+    void get_freshInDb_servedWithoutMoex() {
+        when(priceSnapshotRepository.findAllById(any())).thenReturn(List.of(snapshot("SBER", "310.50", 1)));
+
+        SnapshotResult first = quoteCache.get(List.of("SBER")).get("SBER");
+        SnapshotResult second = quoteCache.get(List.of("SBER")).get("SBER");
+
+        assertThat(first.lastPrice()).isEqualByComparingTo("310.50");
+        assertThat(first.stale()).isFalse();
+        assertThat(second).isEqualTo(first);
+        verify(priceSnapshotRepository, times(1)).findAllById(any());
+        verify(moexSnapshotDispatcher, never()).fetchSnapshots(any());
+        assertThat(backgroundTasks).isEmpty();
+    }
+
+    @Test
+    @DisplayName("get — свежая таблица котировок по доске → ни БД, ни MOEX не вызываются")
+    void get_freshBoardTable_servedWithoutIo() {
+        QuoteTable table = QuoteTable.of(List.of(
+                new MoexBoardQuoteDto("SBER", new BigDecimal("310.55"), new BigDecimal("309.10"), 2)), Instant.now());
+        when(boardQuotePoller.current()).thenReturn(table);
+
+        SnapshotResult result = quoteCache.get(List.of("SBER")).get("SBER");
+
+        assertThat(result.lastPrice()).isEqualByComparingTo("310.55");
+        assertThat(result.previousClose()).isEqualByComparingTo("309.10");
+        assertThat(result.stale()).isFalse();
+        verifyNoInteractions(priceSnapshotRepository, moexSnapshotDispatcher);
+    }
+
+    @Test
+    @DisplayName("get — снимок старше TTL → отдаётся сразу, обновляется в фоне")
+    void get_staleWithinWindow_servedAndRevalidatedInBackground() {
+        when(priceSnapshotRepository.findAllById(any())).thenReturn(List.of(snapshot("SBER", "300.00", 10)));
+        when(moexSnapshotDispatcher.fetchSnapshots(anyCollection())).thenReturn(
+                Map.of("SBER", new MoexSnapshotDto("SBER", new BigDecimal("315.00"), new BigDecimal("310.00"))));
+
+        SnapshotResult served = quoteCache.get(List.of("SBER")).get("SBER");
+
+        assertThat(served.lastPrice()).isEqualByComparingTo("300.00");
+        assertThat(served.stale()).isFalse();
+        verify(moexSnapshotDispatcher, never()).fetchSnapshots(any());
+
+        runBackgroundTasks();
+
+        verify(moexSnapshotDispatcher).fetchSnapshots(anyCollection());
+        verify(marketDataBulkWriter).upsertSnapshots(any());
+        assertThat(quoteCache.get(List.of("SBER")).get("SBER").lastPrice()).isEqualByComparingTo("315.00");
+    }
+
+    @Test
+    @DisplayName("versions — из памяти без БД и MOEX: новая цена тикера меняет только его версию")
+    void versions_followOwnTickerOnly() {
+        when(priceSnapshotRepository.findAllById(any())).thenReturn(List.of(snapshot("GAZP", "160.00", 1)));
+        quoteCache.get(List.of("GAZP"));
+        when(boardQuotePoller.current()).thenReturn(QuoteTable.of(List.of(
+                new MoexBoardQuoteDto("SBER", new BigDecimal("310.55"), new BigDecimal("309.10"), 2)), Instant.now()));
+
+        Map<String, String> before = quoteCache.versions(List.of("SBER", "GAZP", "YDEX"));
+        when(boardQuotePoller.current()).thenReturn(QuoteTable.of(List.of(
+                new MoexBoardQuoteDto("SBER", new BigDecimal("311.00"), new BigDecimal("309.10"), 2)), Instant.now()));
+        Map<String, String> after = quoteCache.versions(List.of("SBER", "GAZP", "YDEX"));
+
+        assertThat(before).containsEntry("GAZP", "160.00/null").containsEntry("YDEX", "none");
+        assertThat(after.get("SBER")).isNotEqualTo(before.get("SBER"));
+        assertThat(after.get("GAZP")).isEqualTo(before.get("GAZP"));
+        verify(priceSnapshotRepository, times(1)).findAllById(any());
+        verify(moexSnapshotDispatcher, never()).fetchSnapshots(any());
+    }
+
+    @Test
+    @DisplayName("get — снимок старше окна и MOEX недоступен → stale=true со старой ценой")
+    void get_expiredAndMoexUnavailable_returnsStoredAsStale() {
+        when(priceSnapshotRepository.findAllById(any())).thenReturn(List.of(snapshot("SBER", "300.00", 120)));
+        when(moexSnapshotDispatcher.fetchSnapshots(anyCollection())).thenThrow(new MoexUnavailableException("MOEX down"));
+
+        SnapshotResult result = quoteCache.get(List.of("SBER")).get("SBER");
+
+        assertThat(result.stale()).isTrue();
+        assertThat(result.lastPrice()).isEqualByComparingTo("300.00");
+    }
+
+    @Test
+    @DisplayName("get — нет в БД и MOEX недоступен → stale=true, nulls")
+    void get_unknownAndMoexUnavailable_returnsNullStale() {
+        when(priceSnapshotRepository.findAllById(any())).thenReturn(List.of());
+        when(moexSnapshotDispatcher.fetchSnapshots(anyCollection())).thenThrow(new MoexUnavailableException("MOEX down"));
+
+        SnapshotResult result = quoteCache.get(List.of("SBER")).get("SBER");
+
+        assertThat(result.stale()).isTrue();
+        assertThat(result.lastPrice()).isNull();
+        verify(marketDataBulkWriter, never()).upsertSnapshots(any());
+    }
+
+    @ParameterizedTest(name = "позиций={0}")
+    @ValueSource(ints = {1, 5, 40})
+    @DisplayName("get — число обращений к БД и MOEX не зависит от размера портфеля")
+    void get_statementCountIndependentOfPortfolioSize(int size) {
+        List<String> tickers = IntStream.range(0, size).mapToObj(i -> "T" + i).toList();
+        Map<String, MoexSnapshotDto> quotes = new HashMap<>();
+        for (String ticker : tickers) {
+            quotes.put(ticker, new MoexSnapshotDto(ticker, new BigDecimal("100.00"), new BigDecimal("99.00")));
+        }
+        when(priceSnapshotRepository.findAllById(any())).thenReturn(List.of());
+        when(moexSnapshotDispatcher.fetchSnapshots(anyCollection())).thenReturn(quotes);
+
+        Map<String, SnapshotResult> result = quoteCache.get(tickers);
+        runBackgroundTasks();
+
+        assertThat(result).hasSize(size);
+        verify(priceSnapshotRepository, atMost(1)).findAllById(any());
+        verify(moexSnapshotDispatcher, times(1)).fetchSnapshots(anyCollection());
+        verify(marketDataBulkWriter, times(1)).upsertSnapshots(any());
+        verify(priceSnapshotRepository, never()).findById(any());
+        verify(priceSnapshotRepository, never()).save(any());
+    }
+
+    @Test
+    @DisplayName("get — параллельные промахи по одному тикеру → один запрос к MOEX")
+    @SuppressWarnings("unchecked")
+    void get_concurrentMisses_shareOneMoexCall() throws Exception {
+        CountDownLatch moexCalled = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(priceSnapshotRepository.findAllById(any())).thenReturn(List.of());
+        when(moexSnapshotDispatcher.fetchSnapshots(anyCollection())).thenAnswer(inv -> {
+            moexCalled.countDown();
+            release.await();
+            return Map.of("SBER", new MoexSnapshotDto("SBER", new BigDecimal("315.00"), null));
+        });
+
+        try (ExecutorService callers = Executors.newFixedThreadPool(2)) {
+            Future<Map<String, SnapshotResult>> first = callers.submit(() -> quoteCache.get(List.of("SBER")));
+            moexCalled.await();
+            Future<Map<String, SnapshotResult>> second = callers.submit(() -> quoteCache.get(List.of("SBER")));
+            Thread.sleep(50);
+            release.countDown();
+
+            assertThat(first.get().get("SBER").lastPrice()).isEqualByComparingTo("315.00");
+            assertThat(second.get().get("SBER").lastPrice()).isEqualByComparingTo("315.00");
+        }
+        ArgumentCaptor<Collection<String>> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(moexSnapshotDispatcher, times(1)).fetchSnapshots(captor.capture());
+        assertThat(captor.getValue()).containsExactly("SBER");
+    }
+
+    private void runBackgroundTasks() {
+        while (!backgroundTasks.isEmpty()) {
+            backgroundTasks.removeFirst().run();
+        }
+    }
+
+    private static PriceSnapshot snapshot(String ticker, String lastPrice, long ageMinutes) {
+        return PriceSnapshot.builder()
+                .ticker(ticker)
+                .lastPrice(new BigDecimal(lastPrice))
+                .fetchedAt(Instant.now().minus(ageMinutes, ChronoUnit.MINUTES))
+                .build();
+    }
+}
@@ -0,0 +1,58 @@
+package pyc.lopatuxin.investment.service.market;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pyc.lopatuxin.investment.client.moex.dto.MoexBoardQuoteDto;
+import pyc.lopatuxin.investment.service.market.dto.SnapshotResult;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("QuoteTableTest")
+class QuoteTableTest {
+
+    @Test
+    @DisplayName("get — цены восстанавливаются с точностью DECIMALS")
+    void get_restoresScaledPrices() {
+        Instant polledAt = Instant.parse("2026-03-02T09:00:00Z");
+        QuoteTable table = QuoteTable.of(List.of(
+                new MoexBoardQuoteDto("SBER", new BigDecimal("310.55"), new BigDecimal("309.1"), 2),
+                new MoexBoardQuoteDto("SU26238RMFS4", new BigDecimal("58.123"), new BigDecimal("58.2"), 3)), polledAt);
+
+        SnapshotResult sber = table.get("SBER");
+        SnapshotResult ofz = table.get("SU26238RMFS4");
+
+        assertThat(table.size()).isEqualTo(2);
+        assertThat(sber.lastPrice()).isEqualByComparingTo("310.55");
+        assertThat(sber.previousClose()).isEqualByComparingTo("309.10");
+        assertThat(sber.fetchedAt()).isEqualTo(polledAt);
+        assertThat(sber.stale()).isFalse();
+        assertThat(ofz.lastPrice()).isEqualByComparingTo("58.123");
+    }
+
+    @Test
+    @DisplayName("get — нет LAST или тикера → null, предыдущая цена без LAST не отдаётся")
+    void get_missingLastOrTicker_returnsNull() {
+        QuoteTable table = QuoteTable.of(List.of(
+                new MoexBoardQuoteDto("GAZP", null, new BigDecimal("160.00"), 2)), Instant.now());
+
+        assertThat(table.get("GAZP")).isNull();
+        assertThat(table.get("LKOH")).isNull();
+        assertThat(QuoteTable.empty().get("SBER")).isNull();
+    }
+
+    @Test
+    @DisplayName("of — тикер на двух досках → берётся первая доска")
+    void of_duplicateTicker_firstBoardWins() {
+        QuoteTable table = QuoteTable.of(List.of(
+                new MoexBoardQuoteDto("TMOS", new BigDecimal("7.10"), null, 2),
+                new MoexBoardQuoteDto("TMOS", new BigDecimal("9.99"), null, 2)), Instant.now());
+
+        assertThat(table.size()).isEqualTo(1);
+        assertThat(table.get("TMOS").lastPrice()).isEqualByComparingTo("7.10");
+        assertThat(table.get("TMOS").previousClose()).isNull();
+    }
+}